@@ -0,0 +1,84 @@
+package benchmark;
+
+import crypto.AlgorithmType;
+import crypto.CodeGen;
+import crypto.CryptoBackend;
+import main.args.option.Granularity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Signature generation and verification of one OCT message (a salaries row plus its serial) and of one OCF
+ *     message (a single field plus its serial) for every algorithm
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlgorithmBenchmark {
+
+    @Param({"RSA", "RSA_AGGREGATE", "AES", "AES_AGGREGATE", "SHA", "SHA_AGGREGATE", "ECElgamal",
+            "SIPHASH", "SIPHASH128", "BLAKE2B", "POLY1305"})
+    public AlgorithmType algorithm;
+
+    @Param({"JCE", "BC"})
+    public CryptoBackend backend;
+
+    private CodeGen codeGen;
+    private byte[] message;
+    private byte[] signature;
+    private byte[] fieldMessage;
+    private byte[] fieldSignature;
+
+    @Setup
+    public void setup() throws Exception {
+        codeGen = Fixtures.config(algorithm, Granularity.TUPLE).codeGen;
+        CryptoBackend.setCurrent(backend);
+
+        final byte[] data = (String.join(",", Fixtures.row(0)) + "," + Fixtures.TABLE).getBytes(StandardCharsets.UTF_8);
+        message = ByteBuffer.allocate(data.length + 8).put(data).putLong(123456789L).array();
+        signature = codeGen.generateSignature(message);
+
+        final byte[] field = Fixtures.row(0).get(1).getBytes(StandardCharsets.UTF_8);
+        fieldMessage = ByteBuffer.allocate(field.length + 8).put(field).putLong(123456789L).array();
+        fieldSignature = codeGen.generateSignature(fieldMessage);
+    }
+
+    @Benchmark
+    public byte[] generateSignature() {
+        return codeGen.generateSignature(message);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return codeGen.verify(message, signature);
+    }
+
+    @Benchmark
+    public byte[] generateFieldSignature() {
+        return codeGen.generateSignature(fieldMessage);
+    }
+
+    @Benchmark
+    public boolean verifyField() {
+        return codeGen.verify(fieldMessage, fieldSignature);
+    }
+
+}
@@ -0,0 +1,56 @@
+package benchmark;
+
+import crypto.Convert;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Base64 encoding of integrity codes, as written to converted CSV files and textual INSERT statements.
+ *     16 bytes is an AES CMAC, 32 a SHA-256 HMAC and 256 a 2048-bit RSA signature.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertBenchmark {
+
+    @Param({"16", "32", "256"})
+    public int size;
+
+    private byte[] signature;
+    private String encoded;
+
+    @Setup
+    public void setup() {
+        signature = new byte[size];
+        new Random(42).nextBytes(signature);
+        encoded = Convert.toBase64(signature);
+    }
+
+    @Benchmark
+    public String toBase64() {
+        return Convert.toBase64(signature);
+    }
+
+    @Benchmark
+    public byte[] fromBase64() {
+        return Convert.fromBase64(encoded);
+    }
+
+}
@@ -0,0 +1,84 @@
+package benchmark;
+
+import crypto.AlgorithmType;
+import io.FileConverter;
+import main.args.option.Granularity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Per-row OCT and OCF encoding of an exported CSV file, as done by convert-db.
+ *     Each invocation converts a file of {@link #ROWS} rows, and the score is per row.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileConverterBenchmark {
+
+    public static final int ROWS = 1000;
+
+    @Param({"AES", "SHA", "RSA"})
+    public AlgorithmType algorithm;
+
+    @Param({"TUPLE", "FIELD"})
+    public Granularity granularity;
+
+    private FileConverter converter;
+    private File directory;
+    private File input;
+    private File output;
+
+    @Setup
+    public void setup() throws IOException {
+        converter = new FileConverter(Fixtures.db(), Fixtures.config(algorithm, granularity).codeGen, granularity);
+
+        directory = Files.createTempDirectory("icdb-jmh").toFile();
+        input = new File(directory, Fixtures.TABLE + ".csv");
+        output = new File(directory, Fixtures.TABLE + "-converted.csv");
+
+        final List<String> lines = new ArrayList<>(ROWS + 1);
+        lines.add(String.join(",", Fixtures.COLUMNS));
+        for (int i = 0; i < ROWS; i++) {
+            lines.add(String.join(",", Fixtures.row(i)));
+        }
+        Files.write(input.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input.toPath());
+        Files.deleteIfExists(output.toPath());
+        Files.deleteIfExists(directory.toPath());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void convertRow() {
+        converter.convertFile(input, output);
+    }
+
+}
@@ -0,0 +1,87 @@
+package benchmark;
+
+import com.google.gson.Gson;
+import crypto.AlgorithmType;
+import io.DBConnection;
+import io.SchemaConverter;
+import main.args.config.ConfigArgs;
+import main.args.config.UserConfig;
+import main.args.option.Granularity;
+import main.args.option.StorageLayout;
+import verify.serial.Icrl;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *     Shared setup of the benchmarks: the user configuration and an offline ICDB shaped like the employees.salaries
+ *     table, plus synthetic rows for it. Benchmarks run from the ICDB directory, so config.json, the RSA key and the
+ *     EC parameters resolve as they do for the tool.
+ * </p>
+ */
+public final class Fixtures {
+
+    public static final String TABLE = "salaries";
+    public static final List<String> COLUMNS = Arrays.asList("emp_no", "salary", "from_date", "to_date");
+    public static final List<String> PRIMARY_KEYS = Arrays.asList("emp_no", "from_date");
+
+    private static final LocalDate START_DATE = LocalDate.of(1985, 1, 1);
+
+    private Fixtures() {
+    }
+
+    /**
+     * Loads config.json with the given algorithm and granularity. Serials are leased from a NullIcrl, so the
+     * benchmarks never touch the ICRL of the working directory.
+     */
+    public static UserConfig config(AlgorithmType algorithm, Granularity granularity) throws FileNotFoundException {
+        Icrl.Companion.debug(true);
+
+        final ConfigArgs configArgs = new Gson().fromJson(new FileReader("config.json"), ConfigArgs.class);
+        configArgs.algorithm = algorithm;
+        configArgs.granularity = granularity;
+
+        return UserConfig.init(configArgs);
+    }
+
+    /**
+     * @return the plain (unconverted) database
+     */
+    public static DBConnection db() {
+        return DBConnection.offline("employees", Collections.singletonMap(TABLE, COLUMNS),
+                Collections.singletonMap(TABLE, PRIMARY_KEYS));
+    }
+
+    /**
+     * @return the converted database, with the code columns of the granularity in the order SchemaConverter adds them
+     */
+    public static DBConnection icdb(Granularity granularity) {
+        final List<String> fields = new ArrayList<>(COLUMNS);
+        fields.addAll(SchemaConverter.codeColumns(db(), TABLE, granularity, StorageLayout.current()));
+
+        final Map<String, List<String>> fieldMap = Collections.singletonMap(TABLE, fields);
+        return DBConnection.offline("employees_icdb", fieldMap, Collections.singletonMap(TABLE, PRIMARY_KEYS));
+    }
+
+    /**
+     * @return the values of a synthetic salary row, in table column order
+     */
+    public static List<String> row(int i) {
+        final LocalDate from = START_DATE.plusDays(i % 10000);
+
+        return Arrays.asList(
+                Integer.toString(10001 + i / 16),
+                Integer.toString(40000 + (i * 7919) % 100000),
+                from.toString(),
+                from.plusYears(1).toString()
+        );
+    }
+
+}
@@ -0,0 +1,103 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import verify.serial.IcrlLog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     ICRL lookups of revoked (in the snapshot and in the log) and valid serials, as done once per integrity code by
+ *     the aggregate verifiers
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IcrlBenchmark {
+
+    private static final int LOOKUPS = 1 << 16;
+
+    @Param({"10000", "1000000"})
+    public int revoked;
+
+    private File directory;
+    private IcrlLog log;
+    private long[] snapshotSerials;
+    private long[] logSerials;
+    private long[] validSerials;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("icdb-jmh").toFile();
+
+        // Half the serials are compacted into the snapshot, the rest stay in the log
+        final long[] serials = new Random(42).longs(revoked, 0, Long.MAX_VALUE).toArray();
+        try (IcrlLog snapshot = new IcrlLog(directory, revoked / 2)) {
+            snapshot.revokeAll(Arrays.copyOf(serials, revoked / 2));
+        }
+
+        log = new IcrlLog(directory, Integer.MAX_VALUE);
+        log.revokeAll(Arrays.copyOfRange(serials, revoked / 2, revoked));
+
+        snapshotSerials = new long[LOOKUPS];
+        logSerials = new long[LOOKUPS];
+        validSerials = new long[LOOKUPS];
+
+        final Random random = new Random(7);
+        for (int i = 0; i < LOOKUPS; i++) {
+            snapshotSerials[i] = serials[random.nextInt(revoked / 2)];
+            logSerials[i] = serials[revoked / 2 + random.nextInt(revoked - revoked / 2)];
+            validSerials[i] = -1 - random.nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.close();
+
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(directory.toPath());
+    }
+
+    @Benchmark
+    public boolean containsSnapshot() {
+        return log.contains(snapshotSerials[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public boolean containsLog() {
+        return log.contains(logSerials[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public boolean containsValid() {
+        return log.contains(validSerials[next++ & (LOOKUPS - 1)]);
+    }
+
+}
@@ -0,0 +1,157 @@
+package verify;
+
+import benchmark.Fixtures;
+import com.google.common.base.Charsets;
+import crypto.AlgorithmType;
+import crypto.CodeGen;
+import io.DBConnection;
+import io.Format;
+import io.source.DataSource;
+import main.args.config.UserConfig;
+import main.args.option.Granularity;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.SQLDialect;
+import org.jooq.impl.DSL;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import parse.ICDBQuery;
+import stats.RunStatistics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     OCTQueryVerifier/OCFQueryVerifier.verifyRecord against synthetic jOOQ records of a SELECT * FROM salaries,
+ *     signed the way convert-db signs them. Lives in the verify package to reach the protected verifyRecord.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VerifierBenchmark {
+
+    private static final int RECORDS = 1024;
+
+    @Param({"AES", "SHA", "RSA"})
+    public AlgorithmType algorithm;
+
+    @Param({"TUPLE", "FIELD"})
+    public Granularity granularity;
+
+    private QueryVerifier verifier;
+    private ICDBQuery query;
+    private Record[] records;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        final UserConfig config = Fixtures.config(algorithm, granularity);
+        final DBConnection icdb = Fixtures.icdb(granularity);
+        final RunStatistics statistics = new RunStatistics();
+
+        query = granularity.getQuery("SELECT * FROM " + Fixtures.TABLE, icdb, config.codeGen, statistics);
+        verifier = granularity.getVerifier(icdb, config, 1, DataSource.Fetch.EAGER, statistics);
+
+        records = new Record[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            records[i] = granularity == Granularity.TUPLE
+                    ? tupleRecord(config.codeGen, Fixtures.row(i), i)
+                    : fieldRecord(config.codeGen, Fixtures.row(i), i);
+
+            if (!verifier.verifyRecord(records[i], query)) {
+                throw new IllegalStateException("Synthetic record does not verify: " + records[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean verifyRecord() {
+        return verifier.verifyRecord(records[next++ & (RECORDS - 1)], query);
+    }
+
+    /**
+     * @return a row with one code: the values and delimiters plus the table name
+     */
+    private static Record tupleRecord(CodeGen codeGen, List<String> values, long serial) {
+        final StringBuilder message = new StringBuilder();
+        values.forEach(value -> message.append(value).append(','));
+        message.append(Fixtures.TABLE);
+
+        final List<Field<Object>> fields = new ArrayList<>();
+        final List<Object> row = new ArrayList<>(values);
+        Fixtures.COLUMNS.forEach(column -> fields.add(DSL.field(DSL.name(column))));
+
+        fields.add(DSL.field(DSL.name(Format.IC_COLUMN)));
+        fields.add(DSL.field(DSL.name(Format.SERIAL_COLUMN)));
+        row.add(sign(codeGen, message.toString(), serial));
+        row.add(serial);
+
+        return record(fields, row);
+    }
+
+    /**
+     * @return a row with one code per field, in the column order of the verify query: each message is the value and
+     * delimiter, the primary key values, the attribute name and the table name
+     */
+    private Record fieldRecord(CodeGen codeGen, List<String> values, long serial) {
+        final StringBuilder keys = new StringBuilder();
+        Fixtures.PRIMARY_KEYS.forEach(key -> keys.append(values.get(Fixtures.COLUMNS.indexOf(key))));
+
+        final List<Field<Object>> fields = new ArrayList<>();
+        final List<Object> row = new ArrayList<>();
+        final List<Object> codes = new ArrayList<>();
+
+        for (int i = 0; i < query.attributeNames.size(); i++) {
+            final String column = query.attributeNames.get(i);
+            final String value = values.get(Fixtures.COLUMNS.indexOf(column));
+            final long fieldSerial = serial * Fixtures.COLUMNS.size() + i;
+            final String message = value + ',' + keys + column + query.attributetables.get(i);
+
+            fields.add(DSL.field(DSL.name(column)));
+            row.add(value);
+            codes.add(sign(codeGen, message, fieldSerial));
+            codes.add(fieldSerial);
+        }
+
+        for (String column : query.attributeNames) {
+            fields.add(DSL.field(DSL.name(column + Format.IC_SUFFIX)));
+            fields.add(DSL.field(DSL.name(column + Format.SERIAL_SUFFIX)));
+        }
+        row.addAll(codes);
+
+        return record(fields, row);
+    }
+
+    private static byte[] sign(CodeGen codeGen, String message, long serial) {
+        final byte[] data = message.getBytes(Charsets.UTF_8);
+        return codeGen.generateSignature(ByteBuffer.allocate(data.length + 8).put(data).putLong(serial).array());
+    }
+
+    private static Record record(List<Field<Object>> fields, List<Object> values) {
+        final DSLContext create = DSL.using(SQLDialect.MYSQL);
+        final Record record = create.newRecord(fields.toArray(new Field<?>[fields.size()]));
+
+        for (int i = 0; i < fields.size(); i++) {
+            record.set(fields.get(i), values.get(i));
+        }
+        return record;
+    }
+
+}
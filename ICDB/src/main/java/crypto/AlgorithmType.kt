@@ -107,12 +107,96 @@ enum class AlgorithmType {
 
         override fun verifyelgamal(data: ByteArray,ecparam: ECParams, signature: ByteArray) =
                 ECSigner(ecparam).verify(signature,data)
+    },
+    SIPHASH {
+        override fun generateSignature(data: ByteArray, key: Key) =
+                MacSigner.generate(data, key.sipHashKey, MacSigner.sipHash)
+
+        override fun verify(data: ByteArray, key: Key, signature: ByteArray) =
+                MacSigner.verify(data, key.sipHashKey, signature, MacSigner.sipHash)
+    },
+    SIPHASH_AGGREGATE {
+        override fun generateSignature(data: ByteArray, key: Key) =
+                MacSigner.generate(data, key.sipHashKey, MacSigner.sipHash)
+
+        override fun verify(data: ByteArray, key: Key, signature: ByteArray) =
+                MacSigner.verify(data, key.sipHashKey, signature, MacSigner.sipHash)
+    },
+    SIPHASH128 {
+        override fun generateSignature(data: ByteArray, key: Key) =
+                MacSigner.generate(data, key.sipHashKey, MacSigner.sipHash128)
+
+        override fun verify(data: ByteArray, key: Key, signature: ByteArray) =
+                MacSigner.verify(data, key.sipHashKey, signature, MacSigner.sipHash128)
+    },
+    SIPHASH128_AGGREGATE {
+        override fun generateSignature(data: ByteArray, key: Key) =
+                MacSigner.generate(data, key.sipHashKey, MacSigner.sipHash128)
+
+        override fun verify(data: ByteArray, key: Key, signature: ByteArray) =
+                MacSigner.verify(data, key.sipHashKey, signature, MacSigner.sipHash128)
+    },
+    BLAKE2B {
+        override fun generateSignature(data: ByteArray, key: Key) =
+                MacSigner.generate(data, key.blake2bKey, MacSigner.blake2b)
+
+        override fun verify(data: ByteArray, key: Key, signature: ByteArray) =
+                MacSigner.verify(data, key.blake2bKey, signature, MacSigner.blake2b)
+    },
+    BLAKE2B_AGGREGATE {
+        override fun generateSignature(data: ByteArray, key: Key) =
+                MacSigner.generate(data, key.blake2bKey, MacSigner.blake2b)
+
+        override fun verify(data: ByteArray, key: Key, signature: ByteArray) =
+                MacSigner.verify(data, key.blake2bKey, signature, MacSigner.blake2b)
+    },
+    POLY1305 {
+        override fun generateSignature(data: ByteArray, key: Key) =
+                MacSigner.generatePoly1305(data, key)
+
+        override fun verify(data: ByteArray, key: Key, signature: ByteArray) =
+                MacSigner.verifyPoly1305(data, key, signature)
+    },
+    POLY1305_AGGREGATE {
+        override fun generateSignature(data: ByteArray, key: Key) =
+                MacSigner.generatePoly1305(data, key)
+
+        override fun verify(data: ByteArray, key: Key, signature: ByteArray) =
+                MacSigner.verifyPoly1305(data, key, signature)
     }
     ;
 
     abstract fun generateSignature(data: ByteArray, key: Key): ByteArray
-    abstract fun generateSignatureelgamal(data: ByteArray, ecparam: ECParams): ByteArray
+
+    open fun generateSignatureelgamal(data: ByteArray, ecparam: ECParams): ByteArray =
+            ECSigner(ecparam).computeECCode(data)
 
     abstract fun verify(data: ByteArray, key: Key, signature: ByteArray): Boolean
-    abstract fun verifyelgamal(data: ByteArray, ecparam: ECParams, signature: ByteArray): Boolean
+
+    open fun verifyelgamal(data: ByteArray, ecparam: ECParams, signature: ByteArray): Boolean =
+            ECSigner(ecparam).verify(signature, data)
+
+    /**
+     * True for the ICDB-aggregate modes, which verify a query with one aggregate signature instead of per row
+     */
+    val isAggregate: Boolean
+        get() = name.endsWith("_AGGREGATE")
+
+    /**
+     * True for the aggregate modes of the MACs, whose aggregate is a hash over the concatenated codes
+     */
+    val isMacAggregate: Boolean
+        get() = isAggregate && this != RSA_AGGREGATE
+
+    /**
+     * True for the MACs, whose codes are compared by regenerating them and so may be truncated
+     */
+    val isMac: Boolean
+        get() = this != RSA && this != RSA_AGGREGATE && this != ECElgamal
+
+    /**
+     * True if every code of the algorithm has the same length (RSA codes drop leading zero bytes)
+     */
+    val isFixedLength: Boolean
+        get() = this != RSA && this != RSA_AGGREGATE
 }
@@ -1,31 +1,68 @@
 package crypto
 
+import stats.Metrics
+import java.security.MessageDigest
+
 /**
  * A wrapper class containing a key and an algorithm to generate a signature from a message
  * This class has methods to generate signature for the data to be protected and a method to verify the signature.
  *
- *
+ * MAC codes may be truncated to their first tagLength bytes, trading forgery resistance for storage: a t-byte tag is
+ * forged with probability 2^-8t per attempt.
  */
 class CodeGen(var algorithm: AlgorithmType, private val key: Key, private val ecparam: ECParams) {
 
+    /**
+     * The length MAC codes are truncated to, or 0 to keep full codes
+     */
+    var tagLength: Int = 0
 
     fun generateSignature(data: ByteArray): ByteArray {
-        if(algorithm == AlgorithmType.ECElgamal){
-            return algorithm.generateSignatureelgamal(data, ecparam)
-        }
-
-        return algorithm.generateSignature(data, key)
+        Metrics.macOperations(algorithm).mark()
+        return sign(data)
     }
 
     fun verify(data: ByteArray, signature: ByteArray): Boolean {
+        Metrics.macOperations(algorithm).mark()
+
         if(algorithm == AlgorithmType.ECElgamal){
             return algorithm.verifyelgamal(data,ecparam,signature)
         }
 
+        if (isTruncated()) {
+            return MessageDigest.isEqual(sign(data), signature)
+        }
+
         return algorithm.verify(data, key, signature)
     }
 
+    /**
+     * @return true if the codes of the algorithm are truncated
+     */
+    fun isTruncated(): Boolean = tagLength > 0 && algorithm.isMac
+
+    /**
+     * @return the length of a code, the largest length for algorithms whose codes vary in length
+     */
+    fun getCodeLength(): Int {
+        if (!algorithm.isFixedLength) {
+            // The modulus length, plus the sign byte of BigInteger.toByteArray()
+            return (key.modulus.bitLength() + 7) / 8 + 1
+        }
+        // A one-byte probe, as EC-ElGamal cannot encode the empty message
+        return sign(ByteArray(1)).size
+    }
+
     fun getKey(): Key{
         return key
     }
+
+    private fun sign(data: ByteArray): ByteArray {
+        if(algorithm == AlgorithmType.ECElgamal){
+            return algorithm.generateSignatureelgamal(data, ecparam)
+        }
+
+        val signature = algorithm.generateSignature(data, key)
+        return if (isTruncated() && tagLength < signature.size) signature.copyOf(tagLength) else signature
+    }
 }
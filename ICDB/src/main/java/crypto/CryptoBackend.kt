@@ -0,0 +1,67 @@
+package crypto
+
+import crypto.signer.JceAesEngine
+import crypto.signer.JceCmac
+import crypto.signer.JceHmac
+import crypto.signer.MacSigner
+import org.bouncycastle.crypto.BlockCipher
+import org.bouncycastle.crypto.Mac
+import org.bouncycastle.crypto.digests.SHA1Digest
+import org.bouncycastle.crypto.digests.ShortenedDigest
+import org.bouncycastle.crypto.engines.AESFastEngine
+import org.bouncycastle.crypto.macs.CMac
+import org.bouncycastle.crypto.macs.HMac
+import java.security.MessageDigest
+
+/**
+ * Enumerates the implementations of the primitives behind the algorithms. Both produce identical codes, so an ICDB
+ * converted with one verifies with the other; JCE uses the JVM's providers, which are accelerated with AES-NI (and,
+ * on newer JVMs, SHA) intrinsics, while BC uses BouncyCastle's pure Java lightweight classes.
+ */
+enum class CryptoBackend {
+    BC {
+        override fun hmacSha1(macSize: Int): Mac = HMac(ShortenedDigest(SHA1Digest(), macSize))
+
+        override fun cmacAes(): Mac = CMac(AESFastEngine())
+
+        override fun aes(): BlockCipher = AESFastEngine()
+
+        override fun sha1(data: ByteArray): ByteArray {
+            val digest = SHA1Digest()
+            val hash = ByteArray(digest.digestSize)
+            digest.update(data, 0, data.size)
+            digest.doFinal(hash, 0)
+            return hash
+        }
+    },
+    JCE {
+        override fun hmacSha1(macSize: Int): Mac = JceHmac("SHA-1", macSize)
+
+        override fun cmacAes(): Mac = JceCmac()
+
+        override fun aes(): BlockCipher = JceAesEngine()
+
+        override fun sha1(data: ByteArray): ByteArray = sha1Digests.get().digest(data)
+    }
+    ;
+
+    /**
+     * @return HMAC-SHA1 with the inner and outer hashes truncated to macSize bytes
+     */
+    abstract fun hmacSha1(macSize: Int): Mac
+
+    abstract fun cmacAes(): Mac
+
+    abstract fun aes(): BlockCipher
+
+    abstract fun sha1(data: ByteArray): ByteArray
+
+    companion object {
+        // The backend used by MacSigner and RSASHA1Signer, set from the configuration
+        @JvmStatic var current = BC
+
+        private val sha1Digests = object : ThreadLocal<MessageDigest>() {
+            override fun initialValue(): MessageDigest = MessageDigest.getInstance("SHA-1")
+        }
+    }
+}
@@ -8,6 +8,10 @@ import org.bouncycastle.crypto.params.ECPublicKeyParameters;
 import org.bouncycastle.crypto.params.ParametersWithRandom;
 import org.bouncycastle.math.ec.ECConstants;
 import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECMultiplier;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointUtil;
 import org.bouncycastle.util.encoders.Hex;
 
 import java.io.BufferedReader;
@@ -19,15 +23,30 @@ import java.util.HashMap;
 
 /**
  * Created by ujwal-mac on 11/30/16.
- * This class was created to test ELgamal algorithm.
- * The experimental result make no use of this class. This is an additional class.
+ * The curve and keys of the EC-ElGamal algorithm, read from the ecKeys file.
+ * The comb tables of the two fixed points, the generator G and the public key Q, are computed once here, so each
+ * code costs two fixed-base multiplications (of G and of Q) instead of two full scalar multiplications.
  */
 public class ECParams {
+
+    // The comb width FixedPointCombMultiplier uses for curves of up to 257 bits, so the tables built here are reused
+    private static final int COMB_WIDTH = 5;
+
     public ECCurve.Fp curve;
     public  ECPublicKeyParameters pubKey;
     public ECPrivateKeyParameters priKey;
     public  ParametersWithRandom pRandom;
     public ECEncryptor encryptor;
+
+    // The fixed points, whose instances carry the precomputed tables, and their multiplier
+    public final ECPoint G;
+    public final ECPoint Q;
+    public final BigInteger n;
+    public final ECMultiplier fixedPointMultiplier = new FixedPointCombMultiplier();
+
+    // The length of a compressed point: the tag byte and the x coordinate
+    public final int pointLength;
+
     public ECParams(){
         HashMap keymaps = new HashMap();
 
@@ -77,5 +96,12 @@ public class ECParams {
         this.encryptor = new ECElGamalEncryptor();
         encryptor.init(this.pRandom);
 
+        this.n = n;
+        this.G = params.getG();
+        this.Q = pubKey.getQ();
+        this.pointLength = (curve.getFieldSize() + 7) / 8 + 1;
+        FixedPointUtil.precompute(G, COMB_WIDTH);
+        FixedPointUtil.precompute(Q, COMB_WIDTH);
+
     }
 }
@@ -1,6 +1,8 @@
 package crypto
 
 import org.bouncycastle.crypto.AsymmetricCipherKeyPair
+import org.bouncycastle.crypto.digests.SHA256Digest
+import org.bouncycastle.crypto.generators.Poly1305KeyGenerator
 import org.bouncycastle.crypto.params.*
 import org.bouncycastle.crypto.util.PrivateKeyFactory
 import org.bouncycastle.crypto.util.PublicKeyFactory
@@ -36,6 +38,11 @@ class Key(macKey: String, rsaKeyFile: String) {
 
     val rawMacKey = Convert.fromBase64(macKey)
     val macKey = KeyParameter(rawMacKey)
+
+    // Keys of the MACs that need a fixed key length, derived from the MAC key so one configured key serves them all
+    val sipHashKey = KeyParameter(deriveKey("siphash", 16))
+    val blake2bKey = KeyParameter(deriveKey("blake2b", 32))
+    val poly1305Key = KeyParameter(deriveKey("poly1305", 32).apply { Poly1305KeyGenerator.clamp(this) })
     var modulus: BigInteger =  BigInteger("1")
     var exponent: BigInteger =  BigInteger("1")
     private val rsaKeyPair = readRSAKeys(rsaKeyFile)
@@ -45,6 +52,21 @@ class Key(macKey: String, rsaKeyFile: String) {
     val publicRsaKey: AsymmetricKeyParameter = rsaKeyPair.public
     val privateRsaKey: AsymmetricKeyParameter = rsaKeyPair.private
 
+    /**
+     * @return the first bytes of SHA-256(label || MAC key), so keys derived for different MACs are independent
+     */
+    private fun deriveKey(label: String, length: Int): ByteArray {
+        val digest = SHA256Digest()
+        val hash = ByteArray(digest.digestSize)
+        val labelBytes = label.toByteArray(Charsets.UTF_8)
+
+        digest.update(labelBytes, 0, labelBytes.size)
+        digest.update(rawMacKey, 0, rawMacKey.size)
+        digest.doFinal(hash, 0)
+
+        return hash.copyOf(length)
+    }
+
     private fun readRSAKeys(rsaKeyFile: String): AsymmetricCipherKeyPair {
         FileReader(rsaKeyFile).use { reader ->
             val parser = PEMParser(reader)
@@ -0,0 +1,99 @@
+package crypto;
+
+/**
+ * <p>
+ *     The versions of the key codes are signed with, so the MAC key, the RSA key or the algorithm can be rotated without
+ *     converting the database again. The key version of a code is stored in the high bits of its serial: new serials
+ *     carry the configured version, and the serials of a database converted before any rotation carry version 0. The
+ *     serial is signed along with the data, so the version of a code cannot be changed without invalidating it.
+ * </p>
+ * <p>
+ *     While a rotation is in progress, codes of the previous version are verified with the previous key, until the
+ *     re-signing job (see parse.Resigner) has signed them again with the current one.
+ * </p>
+ */
+public class KeyRing {
+
+    public static final int VERSION_SHIFT = 48;
+
+    // The sign bit is left clear, so serials stay positive
+    public static final int MAX_VERSION = (1 << (63 - VERSION_SHIFT)) - 1;
+
+    private static final long COUNTER_MASK = (1L << VERSION_SHIFT) - 1;
+
+    private static int version = 0;
+    private static CodeGen previous = null;
+
+    /**
+     * Sets the current key version, and the key of the previous version if a rotation is in progress
+     * @param keyVersion the version of the current key
+     * @param previousCodeGen the code generator of the previous key, or null once every code is signed with the current key
+     */
+    public static void configure(int keyVersion, CodeGen previousCodeGen) {
+        if (keyVersion < 0 || keyVersion > MAX_VERSION) {
+            throw new IllegalArgumentException("The key version must be between 0 and " + MAX_VERSION);
+        }
+        if (previousCodeGen != null && keyVersion == 0) {
+            throw new IllegalArgumentException("The key version must be at least 1 when a previous key is configured");
+        }
+
+        version = keyVersion;
+        previous = previousCodeGen;
+    }
+
+    public static int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the code generator of the previous key, or null if no rotation is in progress
+     */
+    public static CodeGen getPrevious() {
+        return previous;
+    }
+
+    public static boolean isRotating() {
+        return previous != null;
+    }
+
+    /**
+     * @return a serial counter tagged with the current key version
+     */
+    public static long serial(long counter) {
+        return ((long) version << VERSION_SHIFT) | (counter & COUNTER_MASK);
+    }
+
+    /**
+     * @return the version of the key a code was signed with
+     */
+    public static int versionOf(long serial) {
+        return (int) (serial >>> VERSION_SHIFT);
+    }
+
+    /**
+     * @return true if a code is signed with the current key
+     */
+    public static boolean isCurrent(long serial) {
+        return versionOf(serial) == version;
+    }
+
+    /**
+     * @return the code generator of the key a code was signed with, or null if its version is neither the current
+     * one nor, during a rotation, the previous one
+     */
+    public static CodeGen codeGenFor(long serial, CodeGen current) {
+        final int codeVersion = versionOf(serial);
+        if (codeVersion == version) {
+            return current;
+        }
+        return previous != null && codeVersion == version - 1 ? previous : null;
+    }
+
+    /**
+     * Verifies a code without a serial (such as a Merkle root) with the current key or, during a rotation, the previous one
+     */
+    public static boolean verify(CodeGen current, byte[] data, byte[] signature) {
+        return current.verify(data, signature) || (previous != null && previous.verify(data, signature));
+    }
+
+}
@@ -0,0 +1,38 @@
+package crypto.signer
+
+import org.bouncycastle.crypto.CipherParameters
+import org.bouncycastle.crypto.Mac
+import org.bouncycastle.crypto.digests.Blake2bDigest
+import org.bouncycastle.crypto.params.KeyParameter
+
+/**
+ * BLAKE2b in its keyed mode, which is a MAC by itself (no HMAC construction needed)
+ * @param macSize the output size in bytes, which BLAKE2b binds into its parameter block
+ */
+class Blake2bMac(private val macSize: Int) : Mac {
+
+    private var digest: Blake2bDigest? = null
+
+    override fun init(params: CipherParameters) {
+        if (params !is KeyParameter) {
+            throw IllegalArgumentException("BLAKE2b MAC requires a key parameter")
+        }
+        digest = Blake2bDigest(params.key, macSize, null, null)
+    }
+
+    override fun getAlgorithmName() = "BLAKE2b-MAC"
+
+    override fun getMacSize() = macSize
+
+    override fun update(input: Byte) = initialized().update(input)
+
+    override fun update(input: ByteArray, inOff: Int, len: Int) = initialized().update(input, inOff, len)
+
+    override fun doFinal(out: ByteArray, outOff: Int) = initialized().doFinal(out, outOff)
+
+    override fun reset() {
+        digest?.reset()
+    }
+
+    private fun initialized() = digest ?: throw IllegalStateException("BLAKE2b MAC not initialised")
+}
@@ -1,139 +1,85 @@
 package crypto.signer;
 
 import crypto.ECParams;
-import org.apache.commons.io.output.ByteArrayOutputStream;
-import org.apache.commons.lang3.ArrayUtils;
-import org.bouncycastle.crypto.ec.*;
-import org.bouncycastle.crypto.params.ECDomainParameters;
-import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
-import org.bouncycastle.crypto.params.ECPublicKeyParameters;
-import org.bouncycastle.crypto.params.ParametersWithRandom;
-import org.bouncycastle.math.ec.ECConstants;
-import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.crypto.ec.ECPair;
+import org.bouncycastle.math.ec.ECAlgorithms;
 import org.bouncycastle.math.ec.ECPoint;
-import org.bouncycastle.util.encoders.Hex;
+import org.bouncycastle.util.BigIntegers;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
 import java.math.BigInteger;
-import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.HashMap;
-
-import static org.junit.Assert.fail;
 
 /**
  * Created by ujwal-mac on 11/30/16.
- * This is an optional class to test for the El-gamal signature generation and is not used for any experimental results in the research
+ * Generates and verifies EC-ElGamal integrity codes. The code of a message m is the ElGamal encryption of the point
+ * mG under the public key Q, (kG, kQ + mG) for a random k, stored as the two compressed points.
+ *
+ * Both encryption multiplications have a fixed base, so they run on the comb tables of ECParams. Verification
+ * decrypts by checking kQ + mG = d(kG) + mG, with both multiplications of the right side interleaved (Shamir's
+ * trick), which shares one chain of doublings instead of decrypting and encoding mG separately.
  */
 public class ECSigner {
-    ECParams params;
-   // private  ParametersWithRandom pRandom;
 
-    public ECSigner(ECParams params){
-//        HashMap keymaps = new HashMap();
-//
-//
-//        BufferedReader br = null;
-//
-//        try {
-//
-//
-//            String sCurrentLine;
-//
-//            br = new BufferedReader(new FileReader("/Users/ujwal-mac/IdeaProjects/IntegrityCodedDatabase-ECelgamal/ICDB/src/main/resources/ecKeys"));
-//
-//            while ((sCurrentLine = br.readLine()) != null) {
-//                String[] output = sCurrentLine.split("\\:");
-//                keymaps.put(output[0],output[1]);
-//            }
-//
-//        } catch (IOException e) {
-//            e.printStackTrace();
-//        } finally {
-//            try {
-//                if (br != null)br.close();
-//            } catch (IOException ex) {
-//                ex.printStackTrace();
-//            }
-//        }
-//
-//        BigInteger n = new BigInteger(keymaps.get("n").toString());
-//       this.curve = new ECCurve.Fp(
-//                new BigInteger(keymaps.get("q").toString()), // q
-//                new BigInteger(keymaps.get("a").toString(), 16), // a
-//                new BigInteger(keymaps.get("b").toString(), 16), // b
-//                n, ECConstants.ONE);
-//        ECDomainParameters params = new ECDomainParameters(
-//                curve,
-//                curve.decodePoint(Hex.decode(keymaps.get("G").toString())), // G
-//                n);
-//        this.pubKey = new ECPublicKeyParameters(
-//                curve.decodePoint(Hex.decode(keymaps.get("Q").toString())), // Q
-//                params);
-//        this.priKey = new ECPrivateKeyParameters(
-//                new BigInteger(keymaps.get("d").toString()), // d
-//                params);
-        this.params=params;
-     //   this.pRandom = new ParametersWithRandom(params.pubKey, new SecureRandom());
+    private final ECParams params;
 
+    public ECSigner(ECParams params) {
+        this.params = params;
     }
 
-    public byte[] computeECCode( byte[] msg)
-    {
-        ECPoint data = params.priKey.getParameters().getG().multiply(new BigInteger(msg));
-//        ECEncryptor encryptor = new ECElGamalEncryptor();
-//        encryptor.init(params.pRandom);
-
-        ECPair pair = params.encryptor.encrypt(data);
-
-        byte[] encodedx=pair.getX().getEncoded(true);
-      //  BigInteger encx=new BigInteger(encodedx);
-        byte[] encodedy=pair.getY().getEncoded(true);
-       // BigInteger ency=new BigInteger(encodedy);
-
-//        ByteArrayOutputStream outputStream = new ByteArrayOutputStream( );
-//
-//        try {
-//            outputStream.write( encodedx );
-//            outputStream.write( encodedy );
-//        } catch (IOException e) {
-//            e.printStackTrace();
-//        }
+    public byte[] computeECCode(byte[] msg) {
+        final BigInteger k = BigIntegers.createRandomInRange(BigInteger.ONE, params.n.subtract(BigInteger.ONE),
+                params.pRandom.getRandom());
 
-      //  byte c[] = outputStream.toByteArray( );
+        final ECPoint[] pair = {
+                params.fixedPointMultiplier.multiply(params.G, k),
+                params.fixedPointMultiplier.multiply(params.Q, k).add(encode(msg))
+        };
 
-        byte[] concatBytes = ArrayUtils.addAll(encodedx,encodedy);
-
-        return concatBytes;
+        // One field inversion for both points
+        params.curve.normalizeAll(pair);
 
+        final byte[] code = new byte[2 * params.pointLength];
+        final byte[] x = pair[0].getEncoded(true);
+        final byte[] y = pair[1].getEncoded(true);
+        System.arraycopy(x, 0, code, 0, x.length);
+        System.arraycopy(y, 0, code, params.pointLength, y.length);
+        return code;
     }
 
+    public boolean verify(byte[] c, byte[] msg) {
+        final ECPair pair = decode(c);
+        if (pair == null) {
+            return false;
+        }
 
-    public boolean verify(byte c[], byte[] msg)
-    {
-        ECPoint data = params.priKey.getParameters().getG().multiply(new BigInteger(msg));
-
-        ECPoint decodedx = params.curve.decodePoint(Arrays.copyOfRange(c, 0, 25));
-        ECPoint decodedy = params.curve.decodePoint(Arrays.copyOfRange(c, 25, 50));
-        ECPair newpair= new ECPair(decodedx, decodedy);
-
-
-        ECDecryptor decryptor = new ECElGamalDecryptor();
-        decryptor.init(params.priKey);
-        ECPoint result = decryptor.decrypt(newpair);
+        // The decryption kQ + mG - d(kG) equals mG exactly when kQ + mG = d(kG) + mG, computed in one pass
+        final ECPoint expected = ECAlgorithms.sumOfTwoMultiplies(pair.getX(), params.priKey.getD(),
+                params.G, new BigInteger(msg).mod(params.n));
 
+        return expected.equals(pair.getY());
+    }
 
-        if (!data.equals(result))
-        {
-            fail("point pair failed to decrypt back to original");
-        }else{
+    /**
+     * @return the point mG of a message, with m reduced modulo the order of G (as the comb requires)
+     */
+    private ECPoint encode(byte[] msg) {
+        return params.fixedPointMultiplier.multiply(params.G, new BigInteger(msg).mod(params.n));
+    }
 
-            System.out.println("EC verified");
+    /**
+     * @return the two points of a code, or null if it is not two points of the curve
+     */
+    private ECPair decode(byte[] c) {
+        if (c == null || c.length != 2 * params.pointLength) {
+            return null;
         }
-        return  data.equals(result);
-
 
+        try {
+            return new ECPair(
+                    params.curve.decodePoint(Arrays.copyOfRange(c, 0, params.pointLength)),
+                    params.curve.decodePoint(Arrays.copyOfRange(c, params.pointLength, c.length)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
 }
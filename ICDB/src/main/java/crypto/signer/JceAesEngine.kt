@@ -0,0 +1,57 @@
+package crypto.signer
+
+import org.bouncycastle.crypto.BlockCipher
+import org.bouncycastle.crypto.CipherParameters
+import org.bouncycastle.crypto.params.KeyParameter
+import java.util.*
+import javax.crypto.Cipher
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * A BouncyCastle block cipher over the JCE's AES, so BouncyCastle constructions (e.g. Poly1305-AES) get AES-NI.
+ * The key schedule is set up once per key, direction and thread.
+ */
+class JceAesEngine : BlockCipher {
+
+    private var cipher: Cipher? = null
+
+    override fun init(forEncryption: Boolean, params: CipherParameters) {
+        if (params !is KeyParameter) {
+            throw IllegalArgumentException("AES requires a key parameter")
+        }
+
+        val cache = ciphers.get()
+        val index = if (forEncryption) 0 else 1
+        val cached = cache[index]
+        if (cached != null && Arrays.equals(cached.first, params.key)) {
+            cipher = cached.second
+            return
+        }
+
+        val cipher = Cipher.getInstance("AES/ECB/NoPadding")
+        cipher.init(if (forEncryption) Cipher.ENCRYPT_MODE else Cipher.DECRYPT_MODE, SecretKeySpec(params.key, "AES"))
+        cache[index] = Pair(params.key.clone(), cipher)
+        this.cipher = cipher
+    }
+
+    override fun getAlgorithmName() = "AES"
+
+    override fun getBlockSize() = BLOCK_SIZE
+
+    override fun processBlock(input: ByteArray, inOff: Int, out: ByteArray, outOff: Int): Int {
+        val cipher = cipher ?: throw IllegalStateException("AES not initialised")
+        return cipher.update(input, inOff, BLOCK_SIZE, out, outOff)
+    }
+
+    override fun reset() {
+    }
+
+    companion object {
+        private const val BLOCK_SIZE = 16
+
+        // The encryption and decryption cipher of the last key used on each thread
+        private val ciphers = object : ThreadLocal<Array<Pair<ByteArray, Cipher>?>>() {
+            override fun initialValue(): Array<Pair<ByteArray, Cipher>?> = arrayOfNulls(2)
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package crypto.signer
+
+import org.bouncycastle.crypto.CipherParameters
+import org.bouncycastle.crypto.Mac
+import org.bouncycastle.crypto.params.KeyParameter
+import java.util.*
+import javax.crypto.Cipher
+import javax.crypto.spec.IvParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * AES-CMAC (RFC 4493) over the JCE's AES, which the JVM accelerates with AES-NI. The padded message is encrypted in
+ * one AES/CBC call, whose last block is the MAC, instead of one call per block. Matches BouncyCastle's CMac.
+ * The cipher and the subkeys are set up once per key and thread.
+ */
+class JceCmac : Mac {
+
+    private class State(val key: ByteArray, val cipher: Cipher, val k1: ByteArray, val k2: ByteArray)
+
+    private var state: State? = null
+    private var buffer = ByteArray(64)
+    private var length = 0
+
+    override fun init(params: CipherParameters) {
+        if (params !is KeyParameter) {
+            throw IllegalArgumentException("CMAC requires a key parameter")
+        }
+
+        val cached = states.get()
+        state = if (cached != null && Arrays.equals(cached.key, params.key)) cached else prepare(params.key)
+        length = 0
+    }
+
+    private fun prepare(key: ByteArray): State {
+        val cipher = Cipher.getInstance("AES/CBC/NoPadding")
+        cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(key, "AES"), IvParameterSpec(ByteArray(BLOCK_SIZE)))
+
+        // With a zero IV, one CBC block is the plain AES of the zero block
+        val k1 = doubled(cipher.doFinal(ByteArray(BLOCK_SIZE)))
+        val k2 = doubled(k1)
+
+        val state = State(key.clone(), cipher, k1, k2)
+        states.set(state)
+        return state
+    }
+
+    override fun getAlgorithmName() = "AES/CMAC"
+
+    override fun getMacSize() = BLOCK_SIZE
+
+    override fun update(input: Byte) {
+        ensureCapacity(1)
+        buffer[length++] = input
+    }
+
+    override fun update(input: ByteArray, inOff: Int, len: Int) {
+        ensureCapacity(len)
+        System.arraycopy(input, inOff, buffer, length, len)
+        length += len
+    }
+
+    override fun doFinal(out: ByteArray, outOff: Int): Int {
+        val state = state ?: throw IllegalStateException("CMAC not initialised")
+
+        // A complete last block is masked with K1; a partial (or empty) one is padded with 0x80 0x00.. and masked with K2
+        val complete = length > 0 && length % BLOCK_SIZE == 0
+        val blocks = if (complete) length / BLOCK_SIZE else length / BLOCK_SIZE + 1
+        ensureCapacity(blocks * BLOCK_SIZE - length)
+
+        if (!complete) {
+            buffer[length] = 0x80.toByte()
+            Arrays.fill(buffer, length + 1, blocks * BLOCK_SIZE, 0)
+        }
+
+        val last = (blocks - 1) * BLOCK_SIZE
+        val subkey = if (complete) state.k1 else state.k2
+        for (i in 0 until BLOCK_SIZE) {
+            buffer[last + i] = (buffer[last + i].toInt() xor subkey[i].toInt()).toByte()
+        }
+
+        // doFinal returns the cipher to its zero IV for the next message
+        val encrypted = state.cipher.doFinal(buffer, 0, blocks * BLOCK_SIZE)
+        System.arraycopy(encrypted, last, out, outOff, BLOCK_SIZE)
+
+        reset()
+        return BLOCK_SIZE
+    }
+
+    override fun reset() {
+        length = 0
+    }
+
+    private fun ensureCapacity(extra: Int) {
+        if (length + extra > buffer.size) {
+            buffer = buffer.copyOf(Math.max(buffer.size * 2, length + extra))
+        }
+    }
+
+    companion object {
+        private const val BLOCK_SIZE = 16
+
+        private val states = ThreadLocal<State>()
+
+        /**
+         * @return the block multiplied by x in GF(2^128), the CMAC subkey step
+         */
+        private fun doubled(block: ByteArray): ByteArray {
+            val result = ByteArray(BLOCK_SIZE)
+            var carry = 0
+            for (i in BLOCK_SIZE - 1 downTo 0) {
+                val b = block[i].toInt() and 0xff
+                result[i] = ((b shl 1) or carry).toByte()
+                carry = b ushr 7
+            }
+            if (carry != 0) {
+                result[BLOCK_SIZE - 1] = (result[BLOCK_SIZE - 1].toInt() xor 0x87).toByte()
+            }
+            return result
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package crypto.signer
+
+import org.bouncycastle.crypto.CipherParameters
+import org.bouncycastle.crypto.Mac
+import org.bouncycastle.crypto.params.KeyParameter
+import java.security.MessageDigest
+import java.util.*
+
+/**
+ * HMAC over a JCE digest, with its output truncated to macSize. Matches BouncyCastle's HMac over a ShortenedDigest,
+ * which truncates both the inner and the outer hash, so existing codes verify unchanged.
+ * The digest states after the padded key are computed once per key and thread, then cloned for every message.
+ */
+class JceHmac(private val algorithm: String, private val macSize: Int) : Mac {
+
+    private class State(val key: ByteArray, val inner: MessageDigest, val outer: MessageDigest)
+
+    private var state: State? = null
+    private var digest: MessageDigest? = null
+
+    override fun init(params: CipherParameters) {
+        if (params !is KeyParameter) {
+            throw IllegalArgumentException("HMAC requires a key parameter")
+        }
+
+        val cached = states.get()[algorithm]
+        val state = if (cached != null && Arrays.equals(cached.key, params.key)) cached else prepare(params.key)
+        this.state = state
+        digest = state.inner.clone() as MessageDigest
+    }
+
+    private fun prepare(key: ByteArray): State {
+        val inner = MessageDigest.getInstance(algorithm)
+        val outer = MessageDigest.getInstance(algorithm)
+
+        // A key longer than a block is replaced by its (truncated) hash
+        var padded = if (key.size > BLOCK_SIZE) inner.digest(key).copyOf(macSize) else key
+        padded = padded.copyOf(BLOCK_SIZE)
+
+        inner.update(ByteArray(BLOCK_SIZE) { (padded[it].toInt() xor 0x36).toByte() })
+        outer.update(ByteArray(BLOCK_SIZE) { (padded[it].toInt() xor 0x5c).toByte() })
+
+        val state = State(key.clone(), inner, outer)
+        states.get()[algorithm] = state
+        return state
+    }
+
+    override fun getAlgorithmName() = "$algorithm/HMAC"
+
+    override fun getMacSize() = macSize
+
+    override fun update(input: Byte) = initialized().update(input)
+
+    override fun update(input: ByteArray, inOff: Int, len: Int) = initialized().update(input, inOff, len)
+
+    override fun doFinal(out: ByteArray, outOff: Int): Int {
+        val state = state ?: throw IllegalStateException("HMAC not initialised")
+
+        val outer = state.outer.clone() as MessageDigest
+        outer.update(initialized().digest(), 0, macSize)
+        System.arraycopy(outer.digest(), 0, out, outOff, macSize)
+
+        reset()
+        return macSize
+    }
+
+    override fun reset() {
+        digest = state?.inner?.clone() as MessageDigest?
+    }
+
+    private fun initialized() = digest ?: throw IllegalStateException("HMAC not initialised")
+
+    companion object {
+        // The block size of SHA-1 and SHA-256
+        private const val BLOCK_SIZE = 64
+
+        private val states = object : ThreadLocal<MutableMap<String, State>>() {
+            override fun initialValue(): MutableMap<String, State> = HashMap()
+        }
+    }
+}
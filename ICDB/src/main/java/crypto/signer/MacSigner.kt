@@ -1,20 +1,22 @@
 package crypto.signer
 
+import crypto.CryptoBackend
 import crypto.Key
+import org.bouncycastle.crypto.CipherParameters
 import org.bouncycastle.crypto.Mac
 import org.bouncycastle.crypto.digests.SHA1Digest
 import org.bouncycastle.crypto.digests.SHA256Digest
 import org.bouncycastle.crypto.digests.ShortenedDigest
-import org.bouncycastle.crypto.engines.AESFastEngine
-import org.bouncycastle.crypto.macs.CMac
-import org.bouncycastle.crypto.macs.HMac
+import org.bouncycastle.crypto.macs.Poly1305
 import org.bouncycastle.crypto.macs.SipHash
+import org.bouncycastle.crypto.params.ParametersWithIV
 import org.bouncycastle.crypto.tls.SSL3Mac
 import java.util.*
 
 /**
  * A Message Authentication Code (MAC) is a fast way to generate a signature designed to detect code tampering.
- * Two MAC algorithms are used: HMAC and CMAC
+ * HMAC and CMAC are the original algorithms; SipHash, keyed BLAKE2b and Poly1305-AES are faster alternatives.
+ * Each signature is as long as its MAC's output, e.g. 8 bytes for SipHash-2-4 and 16 bytes for the others.
  */
 object MacSigner {
 
@@ -26,22 +28,19 @@ object MacSigner {
 //    class Signer(mac: Mac, size: Int)
 
     /**
-     * Hash-based MAC
+     * Hash-based MAC, from the configured crypto backend
      */
     val hmacSha: Mac
         get() {
-            val sha = SHA1Digest()
-            val digest = ShortenedDigest(sha, DATA_SIZE)
-            return HMac(digest)
+            return CryptoBackend.current.hmacSha1(DATA_SIZE)
         }
 
     /**
-     * BlockCipher-based MAC
+     * BlockCipher-based MAC, from the configured crypto backend
      */
     val cmacAes: Mac
         get() {
-            val aes = AESFastEngine()
-            return CMac(aes)
+            return CryptoBackend.current.cmacAes()
         }
 
     /**
@@ -52,6 +51,22 @@ object MacSigner {
             return SipHash()
         }
 
+    /**
+     * SipHash with a 128 bit output, for the same tag size as HMAC and CMAC
+     */
+    val sipHash128: Mac
+        get() {
+            return SipHash128()
+        }
+
+    /**
+     * Keyed BLAKE2b, truncated (by its parameter block) to the 16 byte tag size
+     */
+    val blake2b: Mac
+        get() {
+            return Blake2bMac(DATA_SIZE)
+        }
+
     val ssl3Mac: Mac
         get() {
             val sha = SHA1Digest()
@@ -59,10 +74,13 @@ object MacSigner {
             return SSL3Mac(digest)
         }
 
-    fun generate(data: ByteArray, key: Key, mac: Mac): ByteArray {
-        val signature = ByteArray(DATA_SIZE)
+    fun generate(data: ByteArray, key: Key, mac: Mac): ByteArray =
+        generate(data, key.macKey, mac)
+
+    fun generate(data: ByteArray, key: CipherParameters, mac: Mac): ByteArray {
+        val signature = ByteArray(mac.macSize)
 
-        mac.init(key.macKey)
+        mac.init(key)
         mac.update(data, 0, data.size)
         mac.doFinal(signature, 0)
 
@@ -73,4 +91,32 @@ object MacSigner {
         return Arrays.equals(generate(data, key, mac), signature)
     }
 
+    fun verify(data: ByteArray, key: CipherParameters, signature: ByteArray, mac: Mac): Boolean {
+        return Arrays.equals(generate(data, key, mac), signature)
+    }
+
+    /**
+     * Poly1305-AES of a message whose last 8 bytes are its serial. The serial is the nonce: Poly1305 is only secure
+     * while a nonce never authenticates two different messages, which holds because every signed message gets a
+     * fresh serial from the ICRL.
+     */
+    fun generatePoly1305(data: ByteArray, key: Key): ByteArray =
+        generate(data, poly1305Parameters(data, key), Poly1305(CryptoBackend.current.aes()))
+
+    fun verifyPoly1305(data: ByteArray, key: Key, signature: ByteArray): Boolean =
+        verify(data, poly1305Parameters(data, key), signature, Poly1305(CryptoBackend.current.aes()))
+
+    private fun poly1305Parameters(data: ByteArray, key: Key): CipherParameters {
+        if (data.size < SERIAL_SIZE) {
+            throw IllegalArgumentException("Poly1305 messages must end with their serial")
+        }
+
+        // The 16 byte AES nonce is the serial, zero padded
+        val nonce = ByteArray(16)
+        System.arraycopy(data, data.size - SERIAL_SIZE, nonce, 0, SERIAL_SIZE)
+        return ParametersWithIV(key.poly1305Key, nonce)
+    }
+
+    private const val SERIAL_SIZE = 8
+
 }
\ No newline at end of file
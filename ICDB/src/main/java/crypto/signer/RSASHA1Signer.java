@@ -1,10 +1,9 @@
 package crypto.signer;
 
 
+import crypto.CryptoBackend;
+
 import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
 import java.util.Arrays;
 
 
@@ -32,26 +31,7 @@ public class RSASHA1Signer {
 
 
     public byte[] computehash(byte[] data){
-        byte[] hashedData = new byte[0];
-        try
-        {
-            //prepare the input
-            MessageDigest hash =MessageDigest.getInstance("SHA-1", "BC");
-            hash.update(data);
-
-            hashedData=hash.digest();
-        }
-        catch (NoSuchAlgorithmException e)
-        {
-            System.err.println("No such algorithm");
-            e.printStackTrace();
-        }
-        catch (NoSuchProviderException e)
-        {
-            System.err.println("No such provider");
-            e.printStackTrace();
-        }
-        return hashedData;
+        return CryptoBackend.getCurrent().sha1(data);
     }
 
     public byte[] computeRSA(byte[] hash){
@@ -0,0 +1,49 @@
+package crypto.signer
+
+import org.bouncycastle.crypto.macs.SipHash
+import org.bouncycastle.util.Pack
+
+/**
+ * SipHash-2-4 with a 128 bit output. It differs from the 64 bit SipHash in its initial state and in a second
+ * finalization, which yields the upper half of the output.
+ */
+class SipHash128 : SipHash(2, 4) {
+
+    override fun getAlgorithmName() = "SipHash128-$c-$d"
+
+    override fun getMacSize() = 16
+
+    override fun doFinal(out: ByteArray, outOff: Int): Int {
+        // Pad the last word with its length, as SipHash.doFinal() does
+        m = m ushr ((7 - wordPos) shl 3)
+        m = m ushr 8
+        m = m or ((((wordCount shl 3) + wordPos).toLong() and 0xffL) shl 56)
+        processMessageWord()
+
+        v2 = v2 xor 0xeeL
+        applySipRounds(d)
+        Pack.longToLittleEndian(v0 xor v1 xor v2 xor v3, out, outOff)
+
+        v1 = v1 xor 0xddL
+        applySipRounds(d)
+        Pack.longToLittleEndian(v0 xor v1 xor v2 xor v3, out, outOff + 8)
+
+        reset()
+        return macSize
+    }
+
+    /**
+     * @return the low 64 bits of the 128 bit output, i.e. its first 8 bytes read as a little endian long. This is not
+     * the 64 bit SipHash of the message, whose initial state and finalization differ.
+     */
+    override fun doFinal(): Long {
+        val out = ByteArray(macSize)
+        doFinal(out, 0)
+        return Pack.littleEndianToLong(out, 0)
+    }
+
+    override fun reset() {
+        super.reset()
+        v1 = v1 xor 0xeeL
+    }
+}
@@ -0,0 +1,250 @@
+package io;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *     The column groups of a table, for the GROUP granularity. Each group of columns has its own integrity code and
+ *     serial, stored in the columns {@code group<n>_ic} and {@code group<n>_serial} after the data columns, so a query
+ *     only fetches and verifies the groups of the columns it touches.
+ * </p>
+ * <p>
+ *     The groups of each table are listed in the configuration, in order. The columns a table does not list form one
+ *     last group, so a table without groups is signed as a whole, as in OCT. The message of a group is each of its
+ *     values followed by the delimiter, then the primary key values, which bind the group to its row, then the group
+ *     name and the table name.
+ * </p>
+ */
+public class ColumnGroups {
+
+    public static final String GROUP_PREFIX = "group";
+
+    private static final Pattern CODE_COLUMN = Pattern.compile(GROUP_PREFIX + "\\d+(" + Format.IC_SUFFIX + "|" + Format.SERIAL_SUFFIX + ")");
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static Map<String, List<List<String>>> configured = Collections.emptyMap();
+
+    /**
+     * Sets the column groups of each table
+     * @param groups the column names of each group, by table name. Null configures no groups.
+     */
+    public static void configure(Map<String, List<List<String>>> groups) {
+        final Map<String, List<List<String>>> tables = new HashMap<>();
+        if (groups != null) {
+            groups.forEach((table, tableGroups) -> tables.put(table.toLowerCase(), tableGroups));
+        }
+        configured = tables;
+    }
+
+    /**
+     * @return the configured groups, by table name
+     */
+    public static Map<String, List<List<String>>> getConfigured() {
+        return configured;
+    }
+
+    /**
+     * @return true if the column holds the code or serial of a group
+     */
+    public static boolean isCodeColumn(String column) {
+        return CODE_COLUMN.matcher(column.toLowerCase()).matches();
+    }
+
+    /**
+     * @return the column groups of a table, or null if the table is unknown
+     */
+    public static ColumnGroups of(DBConnection db, String table) {
+        final String name = table.replace("`", "");
+        final List<String> fields = db.getFields(name);
+        if (fields == null) {
+            return null;
+        }
+
+        final List<String> dataColumns = fields.stream()
+                .filter(field -> !isCodeColumn(field))
+                .collect(Collectors.toList());
+        final List<String> primaryKeys = db.getPrimaryKeys(name);
+
+        return new ColumnGroups(name, dataColumns, primaryKeys == null ? Collections.emptyList() : primaryKeys,
+                configured.getOrDefault(name.toLowerCase(), Collections.emptyList()));
+    }
+
+    /**
+     * A group of columns, signed together
+     */
+    public static class Group {
+        private final int index;
+        private final String name;
+        private final List<String> columns;
+        private final List<Integer> columnIndexes;
+
+        private Group(int index, List<String> columns, List<Integer> columnIndexes) {
+            this.index = index;
+            this.name = GROUP_PREFIX + (index + 1);
+            this.columns = columns;
+            this.columnIndexes = columnIndexes;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the data columns of the group, in table order
+         */
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public String getIcColumn() {
+            return name + Format.IC_SUFFIX;
+        }
+
+        public String getSerialColumn() {
+            return name + Format.SERIAL_SUFFIX;
+        }
+    }
+
+    private final String table;
+    private final List<String> dataColumns;
+    private final List<String> keyColumns;
+    private final List<Integer> keyIndexes;
+    private final List<Group> groups;
+
+    private ColumnGroups(String table, List<String> dataColumns, List<String> primaryKeys, List<List<String>> tableGroups) {
+        this.table = table;
+        this.dataColumns = dataColumns;
+
+        // The primary keys in table order, as they are appended to each message
+        this.keyIndexes = new ArrayList<>();
+        for (int i = 0; i < dataColumns.size(); i++) {
+            final String column = dataColumns.get(i);
+            if (primaryKeys.stream().anyMatch(column::equalsIgnoreCase)) {
+                keyIndexes.add(i);
+            }
+        }
+        this.keyColumns = keyIndexes.stream().map(dataColumns::get).collect(Collectors.toList());
+
+        // Each column belongs to the first group that lists it, or else to the last group
+        final int[] groupOf = new int[dataColumns.size()];
+        Arrays.fill(groupOf, -1);
+
+        int count = 0;
+        for (List<String> columns : tableGroups) {
+            boolean used = false;
+            for (String column : columns) {
+                final int index = indexOf(column);
+                if (index < 0) {
+                    logger.warn("Column group of {} lists unknown column {}", table, column);
+                } else if (groupOf[index] < 0) {
+                    groupOf[index] = count;
+                    used = true;
+                }
+            }
+            if (used) {
+                count++;
+            }
+        }
+
+        boolean remaining = false;
+        for (int i = 0; i < groupOf.length; i++) {
+            if (groupOf[i] < 0) {
+                groupOf[i] = count;
+                remaining = true;
+            }
+        }
+        if (remaining) {
+            count++;
+        }
+
+        this.groups = new ArrayList<>(count);
+        for (int group = 0; group < count; group++) {
+            final List<String> columns = new ArrayList<>();
+            final List<Integer> indexes = new ArrayList<>();
+            for (int i = 0; i < groupOf.length; i++) {
+                if (groupOf[i] == group) {
+                    columns.add(dataColumns.get(i));
+                    indexes.add(i);
+                }
+            }
+            groups.add(new Group(group, columns, indexes));
+        }
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return the data columns of the table (without group codes and serials), in table order
+     */
+    public List<String> getDataColumns() {
+        return dataColumns;
+    }
+
+    /**
+     * @return the primary key columns, in table order
+     */
+    public List<String> getKeyColumns() {
+        return keyColumns;
+    }
+
+    public List<Group> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return the group of a data column, or null if the table has no such column
+     */
+    public Group groupOf(String column) {
+        final String name = column.replace("`", "");
+        return groups.stream()
+                .filter(group -> group.columns.stream().anyMatch(name::equalsIgnoreCase))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * @return the message of a group, given the values of every data column of a row in table order
+     */
+    public String message(Group group, List<String> values) {
+        return message(group,
+                group.columnIndexes.stream().map(values::get).collect(Collectors.toList()),
+                keyIndexes.stream().map(values::get).collect(Collectors.toList()));
+    }
+
+    /**
+     * @return the message of a group, given its values and the primary key values of its row
+     */
+    public String message(Group group, List<String> groupValues, List<String> keyValues) {
+        final StringBuilder message = new StringBuilder();
+        groupValues.forEach(value -> message.append(value).append(Format.FILE_DELIMITER));
+        keyValues.forEach(message::append);
+        return message.append(group.name).append(table.toLowerCase()).toString();
+    }
+
+    private int indexOf(String column) {
+        for (int i = 0; i < dataColumns.size(); i++) {
+            if (dataColumns.get(i).equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
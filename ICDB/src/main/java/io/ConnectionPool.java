@@ -0,0 +1,98 @@
+package io;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <p>
+ *     A small pool of JDBC connections to one schema. Connections are opened on demand and kept open
+ *     once released, so repeated runs (e.g. benchmarks) do not pay the connection cost again.
+ * </p>
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final DBConnection db;
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    private int open = 0;
+    private int leased = 0;
+
+    ConnectionPool(DBConnection db) {
+        this.db = db;
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /**
+     * Borrows a connection, opening a new one if none are idle
+     */
+    public synchronized Connection borrow() throws SQLException {
+        Connection connection = idle.poll();
+
+        while (connection != null && !connection.isValid(1)) {
+            open--;
+            connection = idle.poll();
+        }
+
+        if (connection == null) {
+            connection = db.openConnection();
+            open++;
+            logger.trace("Opened pooled connection {} to {}", open, db.getName());
+        }
+
+        leased++;
+        return connection;
+    }
+
+    /**
+     * Returns a connection to the pool. Any open transaction is rolled back.
+     */
+    public synchronized void release(Connection connection) {
+        leased--;
+
+        try {
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            idle.push(connection);
+        } catch (SQLException e) {
+            logger.warn("Discarding pooled connection: {}", e.getMessage());
+            open--;
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * @return the number of connections currently borrowed
+     */
+    public synchronized int getLeased() {
+        return leased;
+    }
+
+    /**
+     * @return the number of connections opened by this pool
+     */
+    public synchronized int getOpen() {
+        return open;
+    }
+
+    public synchronized void close() {
+        idle.forEach(ConnectionPool::closeQuietly);
+        idle.clear();
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Ignore
+        }
+    }
+
+}
@@ -8,6 +8,7 @@ import org.jooq.*;
 import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
 import org.jooq.util.derby.sys.Sys;
+import stats.Metrics;
 
 import javax.naming.Reference;
 import java.io.IOException;
@@ -24,7 +25,7 @@ import java.util.stream.Stream;
  * A class for database connection, access and management.
  * Implements methods to get various information of the database as table names, primary keys, fields, all implemented using JOOQ library.
  */
-public class DBConnection {
+public class DBConnection implements AutoCloseable {
 
 //    private static final MysqlDataSource dataSource = new MysqlDataSource();
     private static final Logger logger = LogManager.getLogger();
@@ -56,6 +57,27 @@ public class DBConnection {
         return null;
     }
 
+    /**
+     * Creates a connection-less ICDB with the given table metadata, for running the conversion and verification
+     * code without a MySQL server (e.g. in microbenchmarks). Nothing can be executed against it.
+     * @param fields the columns of each table, in table order
+     * @param primaryKeys the primary key columns of each table
+     */
+    public static DBConnection offline(String dbName, Map<String, List<String>> fields, Map<String, List<String>> primaryKeys) {
+        return new DBConnection(dbName, fields, primaryKeys);
+    }
+
+    /**
+     * Drops the schema if it exists and creates it again, empty
+     */
+    public static void recreateSchema(String dbName) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(getUrl(""))) {
+            final DSLContext create = DSL.using(connection, SQLDialect.MYSQL);
+            create.execute("DROP DATABASE IF EXISTS `" + dbName + "`");
+            create.execute("CREATE DATABASE `" + dbName + "`");
+        }
+    }
+
     private final String dbName;
     private final Connection connection;
     private final DSLContext dbCreate;
@@ -63,19 +85,14 @@ public class DBConnection {
     private final List<String> tableNames;
     private final Map<String, List<String>> fieldMap;
     private final Map<String, List<String>> primaryKeyMap;
+    private ConnectionPool pool;
 
     private DBConnection(String dbName) throws SQLException, DataAccessException {
         this.dbName = dbName;
 //        dataSource.setDatabaseName(dbName);
 
-        final String url = "jdbc:mysql://" + userConfig.ip + ":" + userConfig.port + "/" + dbName + "?" +
-                "user=" + userConfig.user + "&password=" + userConfig.password +
-                "&maxAllowedPacket=1000000000000&autoReconnect=true&useSSL=false" +
-                "&useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=America/Denver";
-
-
 //        connection = dataSource.getConnection();
-        connection = DriverManager.getConnection(url);
+        connection = DriverManager.getConnection(getUrl(dbName));
 
         dbCreate = DSL.using(connection, SQLDialect.MYSQL);
 
@@ -108,16 +125,58 @@ public class DBConnection {
 
     }
 
+    private DBConnection(String dbName, Map<String, List<String>> fields, Map<String, List<String>> primaryKeys) {
+        this.dbName = dbName;
+        this.connection = null;
+        this.dbCreate = DSL.using(SQLDialect.MYSQL);
+        this.dbSchema = null;
+        this.tableNames = new ArrayList<>(fields.keySet());
+        this.fieldMap = new HashMap<>(fields);
+        this.primaryKeyMap = new HashMap<>(primaryKeys);
+    }
+
+    /**
+     * @return the JDBC url for the given schema on the configured MySQL server
+     */
+    private static String getUrl(String dbName) {
+        return "jdbc:mysql://" + userConfig.ip + ":" + userConfig.port + "/" + dbName + "?" +
+                "user=" + userConfig.user + "&password=" + userConfig.password +
+                "&maxAllowedPacket=1000000000000&autoReconnect=true&useSSL=false&rewriteBatchedStatements=true" +
+                "&useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=America/Denver";
+    }
+
     public Connection getConnection() {
         return connection;
     }
 
+    /**
+     * Opens a new connection to this schema, independent of the main connection
+     */
+    public Connection openConnection() throws SQLException {
+        return DriverManager.getConnection(getUrl(dbName));
+    }
+
+    /**
+     * @return a pool of extra connections to this schema, for running queries in parallel
+     */
+    public synchronized ConnectionPool getPool() {
+        if (pool == null) {
+            pool = new ConnectionPool(this);
+            Metrics.register(dbName, pool);
+        }
+        return pool;
+    }
+
+    public String getName() {
+        return dbName;
+    }
+
     public List<String> getTables() {
         return tableNames;
     }
 
     public Table<?> getTable(String name) {
-        return dbSchema.getTable(name);
+        return dbSchema == null ? null : dbSchema.getTable(name);
     }
 
     public List<String> getFields(String table) {
@@ -133,4 +192,22 @@ public class DBConnection {
         return dbCreate;
     }
 
+    /**
+     * Closes the pooled connections and the main connection
+     */
+    @Override
+    public synchronized void close() {
+        if (pool != null) {
+            pool.close();
+        }
+
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warn("Unable to close the connection to {}: {}", dbName, e.getMessage());
+            }
+        }
+    }
+
 }
@@ -6,6 +6,7 @@ import main.ICDBTool;
 import main.args.ConvertDBCommand;
 import main.args.config.UserConfig;
 import main.args.option.Granularity;
+import main.args.option.StorageLayout;
 import org.apache.commons.io.FileUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -41,6 +42,7 @@ public class DBConverter {
     private final boolean skipLoad;
 
     private final Granularity granularity;
+    private final StorageLayout storageLayout;
     private final CodeGen codeGen;
 
     private final Path dataPath;
@@ -57,6 +59,7 @@ public class DBConverter {
         this.skipLoad = convertConfig.skipLoad;
 
         this.granularity = config.granularity;
+        this.storageLayout = config.storageLayout;
         this.codeGen = config.codeGen;
 
         this.dbName = config.schema;
@@ -70,6 +73,8 @@ public class DBConverter {
         export();  // 1. Export data outfile -> .csv files
         convert(); // 2. Read from file -> generate signature -> Write to file
         load();    // 3. Load data infile -> icdb
+        paginate(); // 4. Aggregate the ICs of each primary key page -> icdb
+        buildTrees(); // 5. Hash the rows of each table into a Merkle tree -> icdb, signed root -> client
     }
 
     private void export() {
@@ -122,6 +127,54 @@ public class DBConverter {
         logger.debug("Total data load time: {}", dataLoadTime.elapsed(ICDBTool.TIME_UNIT));
     }
 
+    /**
+     * Builds the page aggregates of each table (see PageAggregates), dropping those of tables that can no longer be
+     * paged
+     */
+    private void paginate() {
+        icdb.getTables().stream()
+            .filter(tableName -> !PageAggregates.isPageTable(tableName) && !MerkleTree.isTreeTable(tableName))
+            .forEach(tableName -> {
+                final PageAggregates pages = granularity == Granularity.TUPLE ? PageAggregates.of(icdb, codeGen, tableName) : null;
+                if (pages == null) {
+                    PageAggregates.drop(icdb.getCreate(), tableName);
+                    return;
+                }
+
+                Stopwatch pageTime = Stopwatch.createStarted();
+                try {
+                    pages.build(icdb.getCreate());
+                    logger.debug("Built page aggregates of table {} in {}", tableName, pageTime.elapsed(ICDBTool.TIME_UNIT));
+                } catch (DataAccessException e) {
+                    logger.error("Failed to build page aggregates of table {}: {}", tableName, e.getMessage());
+                }
+            });
+    }
+
+    /**
+     * Builds the Merkle tree of each table in MERKLE granularity (see MerkleTree), dropping the trees of tables
+     * converted in another granularity
+     */
+    private void buildTrees() {
+        icdb.getTables().stream()
+            .filter(tableName -> !PageAggregates.isPageTable(tableName) && !MerkleTree.isTreeTable(tableName))
+            .forEach(tableName -> {
+                if (granularity != Granularity.MERKLE) {
+                    icdb.getCreate().execute("DROP TABLE IF EXISTS `" + tableName + MerkleTree.TABLE_SUFFIX + "`");
+                    return;
+                }
+
+                Stopwatch treeTime = Stopwatch.createStarted();
+                try {
+                    final MerkleTree tree = new MerkleTree(icdb, codeGen, tableName);
+                    tree.saveRoot(tree.build(icdb.getCreate()));
+                    logger.debug("Built Merkle tree of table {} in {}", tableName, treeTime.elapsed(ICDBTool.TIME_UNIT));
+                } catch (DataAccessException e) {
+                    logger.error("Failed to build Merkle tree of table {}: {}", tableName, e.getMessage());
+                }
+            });
+    }
+
     private void exportData() throws IOException {
         Stopwatch dataExportTime = Stopwatch.createStarted();
 
@@ -157,7 +210,7 @@ public class DBConverter {
 
         FileUtils.cleanDirectory(convertedDataPath.toFile());
 
-        FileConverter converter = new FileConverter(db,codeGen, granularity);
+        FileConverter converter = new FileConverter(db,codeGen, granularity, storageLayout);
 
         // Find all files in the data path
         // TODO: parallelize even more by fetching each table into a stream
@@ -180,7 +233,9 @@ public class DBConverter {
         // Ignore foreign key constraints when migrating
         icdb.getCreate().execute("set FOREIGN_KEY_CHECKS = 0;");
 
-        icdb.getTables().forEach(tableName -> {
+        icdb.getTables().stream()
+            .filter(tableName -> !PageAggregates.isPageTable(tableName) && !MerkleTree.isTreeTable(tableName))
+            .forEach(tableName -> {
             Stopwatch importTime = Stopwatch.createStarted();
 
             // For each table
@@ -230,7 +285,8 @@ public class DBConverter {
                 .forEach(field -> {
                     DataType<?> dataType = field.getDataType().getSQLDataType();
 
-                    if (dataType.equals(SQLDataType.BLOB) || dataType.equals(SQLDataType.OTHER)) {
+                    if (dataType.equals(SQLDataType.BLOB) || dataType.equals(SQLDataType.OTHER) ||
+                            dataType.equals(SQLDataType.BINARY) || dataType.equals(SQLDataType.VARBINARY)) {
                         builder.append("@");
                         setValues.add(field.getName());
                     }
@@ -239,15 +295,19 @@ public class DBConverter {
                 });
 
         builder.setLength(builder.length()-1);
-        builder.append(") SET ");
-
-        setValues.forEach(set -> builder.append(set)
-                .append("=FROM_BASE64(@")
-                .append(set)
-                .append("),")
-        );
+        builder.append(")");
+
+        // Tables without codes (MERKLE) may have no blob column to decode
+        if (!setValues.isEmpty()) {
+            builder.append(" SET ");
+            setValues.forEach(set -> builder.append(set)
+                    .append("=FROM_BASE64(@")
+                    .append(set)
+                    .append("),")
+            );
+            builder.setLength(builder.length()-1);
+        }
 
-        builder.setLength(builder.length()-1);
         builder.append(";");
 
         return builder.toString();
@@ -1,6 +1,7 @@
 package io;
 
 import crypto.CodeGen;
+import crypto.KeyRing;
 import org.apache.commons.lang3.ArrayUtils;
 import verify.serial.AbstractIcrl;
 import verify.serial.Icrl;
@@ -19,7 +20,14 @@ public class DataConverter {
      * Given some data, this method generates codes (IC + serial) from it
      */
     public DataConverter(byte[] data, CodeGen codeGen, AbstractIcrl icrl) {
-        serial = icrl.addNext();
+        this(data, KeyRing.serial(icrl.addNext()), codeGen);
+    }
+
+    /**
+     * Generates codes for the data with a serial already leased from the ICRL
+     */
+    public DataConverter(byte[] data, long serial, CodeGen codeGen) {
+        this.serial = serial;
 
         final byte[] serialBytes = ByteBuffer.allocate(8).putLong(serial).array();
         final byte[] allData = ArrayUtils.addAll(data, serialBytes);
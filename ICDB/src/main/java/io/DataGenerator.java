@@ -0,0 +1,309 @@
+package io;
+
+import com.google.common.base.Stopwatch;
+import main.ICDBTool;
+import main.args.config.UserConfig;
+import main.args.option.KeyType;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.InsertValuesStepN;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *     Generates a database shaped like the employees sample database at a given scale factor: an employees table with
+ *     {@link #EMPLOYEES_PER_SCALE} rows per unit of scale, and a salaries table with {@link #SALARIES_PER_EMPLOYEE}
+ *     rows per employee. Both tables can be widened with extra VARCHAR columns, and keyed by INT or CHAR employee
+ *     numbers. Every row is derived from the seed and its index, so a generator always produces the same data.
+ * </p>
+ */
+public class DataGenerator {
+
+    public static final int EMPLOYEES_PER_SCALE = 1000;
+    public static final int SALARIES_PER_EMPLOYEE = 10;
+
+    public static final String EMPLOYEES = "employees";
+    public static final String SALARIES = "salaries";
+
+    // The first employee number, as in the employees database
+    private static final int FIRST_EMPLOYEE = 10001;
+
+    // The rows written per INSERT statement while loading
+    private static final int BATCH_SIZE = 1000;
+
+    private static final LocalDate FIRST_BIRTH_DATE = LocalDate.of(1952, 2, 1);
+    private static final LocalDate FIRST_HIRE_DATE = LocalDate.of(1985, 1, 1);
+
+    private static final String[] FIRST_NAMES = {
+            "Georgi", "Bezalel", "Parto", "Chirstian", "Kyoichi", "Anneke", "Tzvetan", "Saniya", "Sumant", "Duangkaew"
+    };
+    private static final String[] LAST_NAMES = {
+            "Facello", "Simmel", "Bamford", "Koblick", "Maliniak", "Preusig", "Zielinski", "Kalloufi", "Peac", "Piveteau"
+    };
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final int employees;
+    private final int width;
+    private final KeyType keyType;
+    private final long seed;
+
+    /**
+     * @param scale the scale factor, where 1 is {@link #EMPLOYEES_PER_SCALE} employees
+     * @param width the number of extra VARCHAR columns in each table
+     */
+    public DataGenerator(double scale, int width, KeyType keyType, long seed) {
+        if (scale <= 0 || width < 0) {
+            throw new IllegalArgumentException("The scale must be positive and the width not negative");
+        }
+
+        this.employees = (int) Math.max(1, Math.round(scale * EMPLOYEES_PER_SCALE));
+        this.width = width;
+        this.keyType = keyType;
+        this.seed = seed;
+    }
+
+    public int getEmployees() {
+        return employees;
+    }
+
+    public long getSalaries() {
+        return (long) employees * SALARIES_PER_EMPLOYEE;
+    }
+
+    /**
+     * @return the number of rows in the generated database
+     */
+    public long getRows() {
+        return employees + getSalaries();
+    }
+
+    /**
+     * Drops the schema if it exists, then creates and fills the employees and salaries tables
+     */
+    public void generate(String dbName, UserConfig dbConfig) {
+        logger.info("");
+        logger.info("Generating {} employees with {} salaries in {}", employees, getSalaries(), dbName);
+        Stopwatch generationTime = Stopwatch.createStarted();
+
+        try {
+            DBConnection.recreateSchema(dbName);
+        } catch (SQLException e) {
+            logger.error("Unable to create {}: {}", dbName, e.getMessage());
+            System.exit(1);
+        }
+
+        try (DBConnection db = DBConnection.connect(dbName, dbConfig)) {
+            final DSLContext create = db.getCreate();
+            create.execute(createEmployees());
+            create.execute(createSalaries());
+
+            final List<List<Object>> employeeRows = new ArrayList<>(BATCH_SIZE);
+            final List<List<Object>> salaryRows = new ArrayList<>(BATCH_SIZE);
+
+            for (int i = 0; i < employees; i++) {
+                employeeRows.add(employeeRow(i));
+                if (employeeRows.size() == BATCH_SIZE) {
+                    load(create, EMPLOYEES, employeeColumns(), employeeRows);
+                }
+
+                for (int j = 0; j < SALARIES_PER_EMPLOYEE; j++) {
+                    salaryRows.add(salaryRow(i, j));
+                    if (salaryRows.size() == BATCH_SIZE) {
+                        load(create, SALARIES, salaryColumns(), salaryRows);
+                    }
+                }
+            }
+            load(create, EMPLOYEES, employeeColumns(), employeeRows);
+            load(create, SALARIES, salaryColumns(), salaryRows);
+        }
+
+        logger.debug("Generation time: {}", generationTime.elapsed(ICDBTool.TIME_UNIT));
+    }
+
+    /**
+     * @return the queries of the workloads, on the salaries table
+     */
+    public String selectQuery() {
+        return "SELECT * FROM " + SALARIES;
+    }
+
+    public String aggregateQuery() {
+        return "SELECT SUM(salary) FROM " + SALARIES;
+    }
+
+    /**
+     * @return an INSERT of salaries for employees past the generated ones, so it never collides with existing rows
+     */
+    public String insertQuery(int rows) {
+        final StringBuilder query = new StringBuilder("INSERT INTO `" + SALARIES + "` VALUES ");
+
+        for (int k = 0; k < rows; k++) {
+            final List<Object> row = salaryRow(employees + k / SALARIES_PER_EMPLOYEE, k % SALARIES_PER_EMPLOYEE);
+            query.append(k == 0 ? "(" : ",(")
+                    .append(row.stream().map(DataGenerator::literal).collect(Collectors.joining(",")))
+                    .append(')');
+        }
+
+        return query.append(';').toString();
+    }
+
+    /**
+     * @return a DELETE of every row added by {@link #insertQuery(int)}
+     */
+    public String deleteQuery() {
+        return "DELETE FROM " + SALARIES + " WHERE emp_no > " + literal(key(employees - 1));
+    }
+
+    private String createEmployees() {
+        return "CREATE TABLE `" + EMPLOYEES + "` (" +
+                "emp_no " + keyColumnType() + " NOT NULL, " +
+                "birth_date DATE NOT NULL, " +
+                "first_name VARCHAR(14) NOT NULL, " +
+                "last_name VARCHAR(16) NOT NULL, " +
+                "gender CHAR(1) NOT NULL, " +
+                "hire_date DATE NOT NULL, " +
+                extraColumns() +
+                "PRIMARY KEY (emp_no))";
+    }
+
+    private String createSalaries() {
+        return "CREATE TABLE `" + SALARIES + "` (" +
+                "emp_no " + keyColumnType() + " NOT NULL, " +
+                "salary INT NOT NULL, " +
+                "from_date DATE NOT NULL, " +
+                "to_date DATE NOT NULL, " +
+                extraColumns() +
+                "PRIMARY KEY (emp_no, from_date))";
+    }
+
+    private String keyColumnType() {
+        return keyType == KeyType.INT ? "INT" : "CHAR(10)";
+    }
+
+    private String extraColumns() {
+        final StringBuilder columns = new StringBuilder();
+        for (int i = 1; i <= width; i++) {
+            columns.append("extra_").append(i).append(" VARCHAR(32) NOT NULL, ");
+        }
+        return columns.toString();
+    }
+
+    private List<String> employeeColumns() {
+        final List<String> columns = new ArrayList<>();
+        columns.add("emp_no");
+        columns.add("birth_date");
+        columns.add("first_name");
+        columns.add("last_name");
+        columns.add("gender");
+        columns.add("hire_date");
+        addExtraColumns(columns);
+        return columns;
+    }
+
+    private List<String> salaryColumns() {
+        final List<String> columns = new ArrayList<>();
+        columns.add("emp_no");
+        columns.add("salary");
+        columns.add("from_date");
+        columns.add("to_date");
+        addExtraColumns(columns);
+        return columns;
+    }
+
+    private void addExtraColumns(List<String> columns) {
+        for (int i = 1; i <= width; i++) {
+            columns.add("extra_" + i);
+        }
+    }
+
+    private List<Object> employeeRow(int employee) {
+        final Random random = random(employee, -1);
+
+        final List<Object> row = new ArrayList<>();
+        row.add(key(employee));
+        row.add(FIRST_BIRTH_DATE.plusDays(random.nextInt(5000)).toString());
+        row.add(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+        row.add(LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+        row.add(random.nextBoolean() ? "M" : "F");
+        row.add(hireDate(employee).toString());
+        addExtraValues(row, random);
+        return row;
+    }
+
+    private List<Object> salaryRow(int employee, int year) {
+        final Random random = random(employee, year);
+        final LocalDate from = hireDate(employee).plusYears(year);
+
+        final List<Object> row = new ArrayList<>();
+        row.add(key(employee));
+        row.add(40000 + random.nextInt(90000));
+        row.add(from.toString());
+        row.add(from.plusYears(1).toString());
+        addExtraValues(row, random);
+        return row;
+    }
+
+    private void addExtraValues(List<Object> row, Random random) {
+        for (int i = 0; i < width; i++) {
+            final char[] value = new char[16];
+            for (int c = 0; c < value.length; c++) {
+                value[c] = (char) ('a' + random.nextInt(26));
+            }
+            row.add(new String(value));
+        }
+    }
+
+    private LocalDate hireDate(int employee) {
+        return FIRST_HIRE_DATE.plusDays(random(employee, -2).nextInt(5000));
+    }
+
+    private Object key(int employee) {
+        return keyType == KeyType.INT
+                ? (Object) (FIRST_EMPLOYEE + employee)
+                : String.format("E%09d", FIRST_EMPLOYEE + employee);
+    }
+
+    /**
+     * @return a random source for one row, independent of the order rows are generated in
+     */
+    private Random random(int employee, int row) {
+        return new Random(seed * 31 + employee * 0x9E3779B97F4A7C15L + row);
+    }
+
+    private static String literal(Object value) {
+        return value instanceof Number ? value.toString() : "'" + value + "'";
+    }
+
+    /**
+     * Inserts the rows with a single statement and clears them
+     */
+    private static void load(DSLContext create, String table, List<String> columns, List<List<Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        final List<Field<Object>> fields = columns.stream()
+                .map(column -> DSL.field(DSL.name(column)))
+                .collect(Collectors.toList());
+
+        InsertValuesStepN<Record> insert = create.insertInto(DSL.table(DSL.name(table)), fields);
+        for (List<Object> row : rows) {
+            insert = insert.values(row);
+        }
+        insert.execute();
+
+        rows.clear();
+    }
+
+}
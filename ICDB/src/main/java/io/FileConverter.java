@@ -20,7 +20,10 @@ import com.google.common.base.Stopwatch;
 
 import crypto.CodeGen;
 import crypto.Convert;
+import crypto.KeyRing;
 import main.args.option.Granularity;
+import main.args.option.StorageLayout;
+import stats.Metrics;
 import io.source.FileSource;
 import org.jooq.util.derby.sys.Sys;
 import verify.serial.AbstractIcrl;
@@ -29,7 +32,7 @@ import verify.serial.Icrl;
 /**
  * A FileConverter takes an input DB data file and generates a converted ICDB
  * data file. This class only supports MySQL for now.
- * The conversion is based on the the granularity (OCT or OCF)
+ * The conversion is based on the the granularity (OCT, OCF or GROUP)
  *
  */
 public class FileConverter {
@@ -37,6 +40,7 @@ public class FileConverter {
 	private final CodeGen codeGen;
 	private final Granularity granularity;
 	private final DBConnection db;
+	private final boolean packed;
 
 	private  String delimeter;
 
@@ -44,10 +48,11 @@ public class FileConverter {
 
 	private static final Logger logger = LogManager.getLogger();
 
-	public FileConverter(DBConnection db,CodeGen codeGen, Granularity granularity) {
+	public FileConverter(DBConnection db,CodeGen codeGen, Granularity granularity, StorageLayout layout) {
 		this.codeGen = codeGen;
 		this.granularity = granularity;
 		this.db = db;
+		this.packed = layout.isPacked(granularity);
 		delimeter=",";
 	}
 
@@ -68,6 +73,15 @@ public class FileConverter {
                 case FIELD:
                     csvOutput.write(convertLineOCF(csvInput,input.getName().toLowerCase()));
                     csvInput.close();
+                    break;
+                case GROUP:
+                    csvOutput.write(convertLineGroup(csvInput,input.getName().toLowerCase()));
+                    csvInput.close();
+                    break;
+                case MERKLE:
+                    // The rows are copied as they are, the Merkle tree is built once they are loaded
+                    csvOutput.write(csvInput.peek(line -> Metrics.convertedRows.mark()));
+                    csvInput.close();
                     break;
 			}
 		} catch (IOException e) {
@@ -93,7 +107,8 @@ public class FileConverter {
             // String data = StringUtils.join(line.toArray());
 			data=data.concat(table[0]);
             final byte[] dataBytes = data.getBytes(Charsets.UTF_8);
-            convertLine(line, dataBytes, codeGen, icrl);
+            convertLine(line, dataBytes, codeGen, icrl, false);
+            Metrics.convertedRows.mark();
 
             return line;
         });
@@ -139,21 +154,44 @@ public class FileConverter {
 
 
                 final byte[] dataBytes = field.getBytes(Charsets.UTF_8);
-                convertLine(collector, dataBytes, codeGen, icrl);
+                convertLine(collector, dataBytes, codeGen, icrl, packed);
             }
+            Metrics.convertedRows.mark();
 
             return collector;
         });
 	}
 
+	private Stream<List<String>> convertLineGroup(Stream<List<String>> csvInput, String tablename) throws IOException {
+		String[] table =tablename.split("\\.");
+		final ColumnGroups groups = ColumnGroups.of(db, table[0]);
+		if (groups == null) {
+			throw new IOException("Unknown table " + table[0]);
+		}
+
+		return csvInput.map(line -> {
+			final List<String> collector = new ArrayList<>(line);
+
+			// One code per group, over its values, the primary keys, the group name and the table name
+			for (ColumnGroups.Group group : groups.getGroups()) {
+				final byte[] dataBytes = groups.message(group, line).getBytes(Charsets.UTF_8);
+				convertLine(collector, dataBytes, codeGen, icrl, false);
+			}
+			Metrics.convertedRows.mark();
+
+			return collector;
+		});
+	}
+
 	/**
 	 * Given some data, this method generates codes (svc + serial) from it and
 	 * adds them to the end of the supplied list
 	 * 
 	 * @param collector the list to collect the codes
+	 * @param packed true to add the serial and code as one packed code (see StorageLayout)
 	 */
-	private static void convertLine(final List<String> collector, byte[] data, CodeGen codeGen, AbstractIcrl icrl) {
-        final long serial = icrl.addNext();
+	private static void convertLine(final List<String> collector, byte[] data, CodeGen codeGen, AbstractIcrl icrl, boolean packed) {
+        final long serial = KeyRing.serial(icrl.addNext());
         final String serialString = Long.toString(serial);
 
 		final byte[] serialBytes = ByteBuffer.allocate(8).putLong(serial).array();
@@ -161,12 +199,14 @@ public class FileConverter {
 
 		// Generate the signature
 		final byte[] signature = codeGen.generateSignature(allData);
-		final String signatureString = Convert.toBase64(signature);
-
 
 		// Write the line
-		collector.add(signatureString);
-		collector.add(serialString);
+		if (packed) {
+			collector.add(Convert.toBase64(StorageLayout.pack(serial, signature)));
+		} else {
+			collector.add(Convert.toBase64(signature));
+			collector.add(serialString);
+		}
 	}
 
 	/**
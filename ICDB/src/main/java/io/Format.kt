@@ -22,6 +22,7 @@ object Format {
     // File Naming
     const val DB_DATA_PATH = "./tmp/db-files/data"
     const val ICDB_DATA_PATH = "./tmp/icdb-files/data"
+    const val MERKLE_ROOT_PATH = "./tmp/icdb-files/roots"
 
     const val DATA_FILE_EXTENSION = ".csv"
 
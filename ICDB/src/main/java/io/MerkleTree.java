@@ -0,0 +1,704 @@
+package io;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import crypto.CodeGen;
+import crypto.KeyRing;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bouncycastle.util.encoders.Hex;
+import org.jooq.BatchBindStep;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import stats.Tracer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *     A sparse Merkle tree over the rows of a table, for the MERKLE granularity. Each row has a fixed leaf position
+ *     taken from its primary key: the key itself for a single integer key, or else a 64-bit hash of the key values.
+ *     Node (level, position) hashes its FANOUT children at (level - 1, position * FANOUT ...), so the tree is DEPTH
+ *     levels deep over the 64-bit positions, and a subtree without rows has a fixed empty hash. Only the nodes above
+ *     some row are kept in a side table, {@code <table>_merkle (level, position, hash)}, and the client holds the
+ *     root and row count, signed with the configured algorithm.
+ * </p>
+ * <p>
+ *     A key range is verified from its rows and the siblings of the paths from the ends of the range to the root: at
+ *     most 2 * (FANOUT - 1) hashes per level. The empty positions of the range hash to the empty leaf, so a row left
+ *     out changes the root. A write changes only the leaves of the keys it writes, so it checks and rewrites only the
+ *     paths from those leaves to the root (see update()).
+ * </p>
+ */
+public class MerkleTree {
+
+    public static final String TABLE_SUFFIX = "_merkle";
+    public static final int BITS = 4;
+    public static final int FANOUT = 1 << BITS;
+    public static final int DEPTH = Long.SIZE / BITS;
+
+    // Domain separation of leaves, internal nodes and the positions of keys that are not a single integer
+    private static final byte LEAF = 0;
+    private static final byte NODE = 1;
+    private static final byte KEY = 2;
+
+    // The hash of an empty subtree of each level, from an empty leaf up to an empty tree
+    private static final byte[][] EMPTY = new byte[DEPTH + 1][];
+
+    static {
+        EMPTY[0] = new byte[32];
+        for (int level = 1; level <= DEPTH; level++) {
+            EMPTY[level] = node(level, new byte[FANOUT][]);
+        }
+    }
+
+    // The number of nodes written per batch, and of keys or sibling pages read per query
+    private static final int BATCH_SIZE = 1000;
+
+    // Writes to a tree are serialized, from reading its root to storing the new one
+    private static final Map<String, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * @return true if the table holds the Merkle tree of another table
+     */
+    public static boolean isTreeTable(String table) {
+        return table.endsWith(TABLE_SUFFIX);
+    }
+
+    private final String schema;
+    private final String table;
+    private final List<String> keys;
+    private final String integerKey;
+    private final CodeGen codeGen;
+
+    public MerkleTree(DBConnection icdb, CodeGen codeGen, String table) {
+        this.schema = icdb.getName();
+        this.table = table.replace("`", "");
+        this.keys = icdb.getPrimaryKeys(this.table);
+        this.codeGen = codeGen;
+
+        final org.jooq.Table<?> columns = icdb.getTable(this.table);
+        this.integerKey = keys != null && keys.size() == 1 && (columns == null || columns.field(keys.get(0)) == null ||
+                isInteger(columns.field(keys.get(0)).getType())) ? keys.get(0) : null;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getTreeTable() {
+        return table + TABLE_SUFFIX;
+    }
+
+    /**
+     * @return the primary key columns that place a row in the tree, or an empty list if the table has none, in which
+     * case every column does
+     */
+    public List<String> getKeys() {
+        return keys == null ? new ArrayList<>() : keys;
+    }
+
+    /**
+     * @return the primary key column if it is a single integer, whose values are the leaf positions in key order, or
+     * null if the positions are hashes of the key values
+     */
+    public String getIntegerKey() {
+        return integerKey;
+    }
+
+    /**
+     * @return the ORDER BY clause of the rows of the tree
+     */
+    public String orderBy() {
+        return getKeys().isEmpty() ? "" : " ORDER BY " + getKeys().stream()
+                .map(key -> "`" + key + "`")
+                .collect(Collectors.joining(", "));
+    }
+
+    /**
+     * @return the object to hold while a tree is written, from loading its root to saving the new one
+     */
+    public Object lock() {
+        return LOCKS.computeIfAbsent(schema + "." + table, name -> new Object());
+    }
+
+    private static boolean isInteger(Class<?> type) {
+        return Long.class.isAssignableFrom(type) || Integer.class.isAssignableFrom(type) ||
+                Short.class.isAssignableFrom(type) || Byte.class.isAssignableFrom(type) ||
+                java.math.BigInteger.class.isAssignableFrom(type) || org.jooq.types.UNumber.class.isAssignableFrom(type);
+    }
+
+    ///////////////
+    // POSITIONS //
+    ///////////////
+
+    /**
+     * @return the leaf position of an integer key, which keeps the order of the keys as unsigned positions
+     */
+    public static long keyPosition(long key) {
+        return key ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * @return the leaf position of a row
+     */
+    public long position(Record record) {
+        if (integerKey != null) {
+            return keyPosition(((Number) record.get(integerKey)).longValue());
+        }
+
+        final StringBuilder message = new StringBuilder();
+        if (getKeys().isEmpty()) {
+            for (int i = 0; i < record.size(); i++) {
+                message.append(record.get(i)).append(Format.FILE_DELIMITER);
+            }
+        } else {
+            getKeys().forEach(key -> message.append(record.get(key)).append(Format.FILE_DELIMITER));
+        }
+        message.append(table.toLowerCase());
+
+        return ByteBuffer.wrap(hash(KEY, message.toString().getBytes(Charsets.UTF_8))).getLong();
+    }
+
+    /**
+     * @return the leaves of the rows, by position
+     * @throws IllegalStateException if two rows have the same position
+     */
+    public NavigableMap<Long, byte[]> leaves(Collection<Record> records) {
+        final NavigableMap<Long, byte[]> leaves = new TreeMap<>(Long::compareUnsigned);
+        for (Record record : records) {
+            if (leaves.put(position(record), leaf(record)) != null) {
+                throw new IllegalStateException("Two rows of table " + table + " have the same leaf position");
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * @return the first leaf position below a node
+     */
+    private static long first(int level, long position) {
+        return level == DEPTH ? 0 : position << (BITS * level);
+    }
+
+    /**
+     * @return the last leaf position below a node
+     */
+    private static long last(int level, long position) {
+        return level == DEPTH ? -1 : first(level, position) | ((1L << (BITS * level)) - 1);
+    }
+
+    /**
+     * A set of leaf positions, as disjoint ranges of unsigned positions: the key range of a query, or the keys of
+     * a write. The leaves of a region are known from its rows, and the nodes outside it from a proof.
+     */
+    public static class Region {
+        private final NavigableMap<Long, Long> ranges = new TreeMap<>(Long::compareUnsigned);
+
+        private Region() {
+        }
+
+        /**
+         * @return the positions first..last, or no position if last is below first
+         */
+        public static Region range(long first, long last) {
+            final Region region = new Region();
+            if (Long.compareUnsigned(first, last) <= 0) {
+                region.ranges.put(first, last);
+            }
+            return region;
+        }
+
+        public static Region all() {
+            return range(0, -1);
+        }
+
+        public static Region points(Collection<Long> positions) {
+            final Region region = new Region();
+            positions.forEach(position -> region.ranges.put(position, position));
+            return region;
+        }
+
+        public boolean isEmpty() {
+            return ranges.isEmpty();
+        }
+
+        public boolean contains(long position) {
+            return contains(position, position);
+        }
+
+        private boolean contains(long first, long last) {
+            final Map.Entry<Long, Long> range = ranges.floorEntry(first);
+            return range != null && Long.compareUnsigned(range.getValue(), last) >= 0;
+        }
+
+        private boolean intersects(long first, long last) {
+            final Map.Entry<Long, Long> range = ranges.floorEntry(last);
+            return range != null && Long.compareUnsigned(range.getValue(), first) >= 0;
+        }
+    }
+
+    ///////////
+    // BUILD //
+    ///////////
+
+    /**
+     * Recreates the tree table from the rows of the table. The tree table is emptied rather than dropped, so a
+     * rebuild can run in a transaction. The root is only returned: the caller stores it (see saveRoot()) once the
+     * nodes are committed.
+     * @throws IllegalStateException if two rows have the same leaf position
+     */
+    public Root build(DSLContext create) {
+        final long span = Tracer.begin();
+
+        create.execute("CREATE TABLE IF NOT EXISTS `" + getTreeTable() + "` (" +
+                "level TINYINT NOT NULL, position BIGINT NOT NULL, hash BINARY(32) NOT NULL, PRIMARY KEY (level, position))");
+        create.execute("DELETE FROM `" + getTreeTable() + "`");
+
+        final String insert = "INSERT INTO `" + getTreeTable() + "` VALUES (?, ?, ?)";
+        final BatchBindStep[] batch = { create.batch(insert) };
+        final int[] batched = { 0 };
+
+        final Builder builder = new Builder((level, position, hash) -> {
+            batch[0] = batch[0].bind(level, position, hash);
+            if (++batched[0] == BATCH_SIZE) {
+                batch[0].execute();
+                batch[0] = create.batch(insert);
+                batched[0] = 0;
+            }
+        });
+
+        // Integer keys are read in position order, hashed positions are sorted first
+        try (Cursor<Record> cursor = create.resultQuery("SELECT * FROM `" + table + "`" +
+                (integerKey != null ? " ORDER BY `" + integerKey + "`" : "")).fetchSize(Integer.MIN_VALUE).fetchLazy()) {
+            if (integerKey != null) {
+                for (Record record : cursor) {
+                    builder.add(position(record), leaf(record));
+                }
+            } else {
+                leaves(cursor.fetch()).forEach(builder::add);
+            }
+        }
+
+        final Root root = builder.finish();
+        if (batched[0] > 0) {
+            batch[0].execute();
+        }
+
+        Tracer.end("merkle build", span, "leaves", root.leaves);
+        logger.debug("Built Merkle tree of {} leaves for table {}", root.leaves, table);
+        return root;
+    }
+
+    /**
+     * Receives the nodes of a tree as they are hashed
+     */
+    public interface NodeSink {
+        void node(int level, long position, byte[] hash);
+    }
+
+    /**
+     * Builds a tree from its leaves in position order, keeping only the unfinished page of children of each level
+     */
+    public static class Builder {
+        private final NodeSink sink;
+        private final long[] parents = new long[DEPTH];
+        private final byte[][][] children = new byte[DEPTH][][];
+        private long leaves;
+        private long last;
+
+        public Builder(NodeSink sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * @throws IllegalStateException if the position is not above the previous one
+         */
+        public void add(long position, byte[] leaf) {
+            if (leaves > 0 && Long.compareUnsigned(position, last) <= 0) {
+                throw new IllegalStateException("Leaf " + Long.toUnsignedString(position) + " is out of order");
+            }
+
+            leaves++;
+            last = position;
+            add(0, position, leaf);
+        }
+
+        private void add(int level, long position, byte[] hash) {
+            sink.node(level, position, hash);
+
+            final long parent = position >>> BITS;
+            if (children[level] != null && parents[level] != parent) {
+                finish(level);
+            }
+            if (children[level] == null) {
+                children[level] = new byte[FANOUT][];
+                parents[level] = parent;
+            }
+            children[level][(int) (position & (FANOUT - 1))] = hash;
+        }
+
+        /**
+         * Hashes the page of children of a level into their parent
+         * @return the parent
+         */
+        private byte[] finish(int level) {
+            final byte[] parent = node(level + 1, children[level]);
+            children[level] = null;
+            if (level + 1 < DEPTH) {
+                add(level + 1, parents[level], parent);
+            }
+            return parent;
+        }
+
+        /**
+         * Completes the unfinished pages of each level
+         * @return the root
+         */
+        public Root finish() {
+            byte[] root = EMPTY[DEPTH];
+            for (int level = 0; level < DEPTH; level++) {
+                if (children[level] != null) {
+                    root = finish(level);
+                }
+            }
+            return new Root(leaves, root, null);
+        }
+    }
+
+    ////////////
+    // UPDATE //
+    ////////////
+
+    /**
+     * Replaces the leaves of the rows a write changed, and rewrites the path from each of them to the root. The old
+     * leaves are first hashed up with the siblings of those paths, which are locked until the transaction ends, and
+     * must give the signed root: the siblings are then the ones the root was signed over, and so is the new root.
+     * @param before the rows at the written keys before the write
+     * @param after the rows at the same keys after the write
+     * @return the new root, to be stored once the transaction commits (see saveRoot())
+     * @throws IllegalStateException if the old leaves do not hash to the root
+     */
+    public Root update(DSLContext create, Root root, Collection<Record> before, Collection<Record> after) {
+        final long span = Tracer.begin();
+        final NavigableMap<Long, byte[]> oldLeaves = leaves(before);
+        final NavigableMap<Long, byte[]> newLeaves = leaves(after);
+
+        final Set<Long> positions = new HashSet<>(oldLeaves.keySet());
+        positions.addAll(newLeaves.keySet());
+        if (positions.isEmpty()) {
+            return root;
+        }
+
+        final Region region = Region.points(positions);
+        final List<Map<Long, byte[]>> proof = fetchProof(create, region, true);
+
+        if (!MessageDigest.isEqual(fold(region, oldLeaves, proof, null), root.hash)) {
+            throw new IllegalStateException("The rows of table " + table + " do not match its Merkle root");
+        }
+
+        final List<Object[]> written = new ArrayList<>();
+        final List<String> emptied = new ArrayList<>();
+        final byte[] hash = fold(region, newLeaves, proof, (level, position, node) -> {
+            if (MessageDigest.isEqual(node, EMPTY[level])) {
+                emptied.add("(level = " + level + " AND position = " + position + ")");
+            } else {
+                written.add(new Object[] { level, position, node });
+            }
+        });
+
+        final String upsert = "INSERT INTO `" + getTreeTable() + "` VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE hash = VALUES(hash)";
+        for (List<Object[]> nodes : Lists.partition(written, BATCH_SIZE)) {
+            BatchBindStep batch = create.batch(upsert);
+            for (Object[] node : nodes) {
+                batch = batch.bind(node);
+            }
+            batch.execute();
+        }
+        for (List<String> nodes : Lists.partition(emptied, BATCH_SIZE)) {
+            create.execute("DELETE FROM `" + getTreeTable() + "` WHERE " + String.join(" OR ", nodes));
+        }
+
+        Tracer.end("merkle update", span, "leaves", positions.size());
+        return new Root(root.leaves - oldLeaves.size() + newLeaves.size(), hash, null);
+    }
+
+    /**
+     * Fetches the rows of the given primary key values
+     * @param values the values of the key columns (see getKeys()) of each row
+     * @param lock true to lock the rows, or the gaps where they would be, until the transaction ends
+     */
+    public List<Record> fetchRows(DSLContext create, List<List<Object>> values, boolean lock) {
+        final List<Record> records = new ArrayList<>();
+        final String columns = getKeys().stream().map(key -> "`" + key + "`").collect(Collectors.joining(", "));
+        final String tuple = "(" + String.join(", ", Collections.nCopies(getKeys().size(), "?")) + ")";
+
+        for (List<List<Object>> chunk : Lists.partition(values, BATCH_SIZE)) {
+            final String query = "SELECT * FROM `" + table + "` WHERE (" + columns + ") IN (" +
+                    String.join(", ", Collections.nCopies(chunk.size(), tuple)) + ")" + (lock ? " FOR UPDATE" : "");
+            records.addAll(create.fetch(query, chunk.stream().flatMap(List::stream).toArray()));
+        }
+        return records;
+    }
+
+    /**
+     * @return the primary key values of each row
+     */
+    public List<List<Object>> keyValues(Collection<Record> records) {
+        return records.stream()
+                .map(record -> getKeys().stream().map(record::get).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+    }
+
+    /////////////
+    // PROVING //
+    /////////////
+
+    /**
+     * Fetches the siblings needed to hash the leaves of a region up to the root. A node the tree table does not hold
+     * is an empty subtree.
+     * @param lock true to lock the siblings, or the gaps where they would be, until the transaction ends
+     * @return the sibling hashes of each level below the root, by position
+     */
+    public List<Map<Long, byte[]>> fetchProof(DSLContext create, Region region, boolean lock) {
+        final List<Map<Long, byte[]>> proof = new ArrayList<>();
+        for (int level = 0; level < DEPTH; level++) {
+            proof.add(new HashMap<>());
+        }
+
+        final List<String> conditions = proofPages(region).stream()
+                .map(page -> "(level = " + page[0] + " AND position BETWEEN " + page[1] + " AND " + page[2] + ")")
+                .collect(Collectors.toList());
+
+        for (List<String> chunk : Lists.partition(conditions, BATCH_SIZE)) {
+            create.fetch("SELECT level, position, hash FROM `" + getTreeTable() + "` WHERE " + String.join(" OR ", chunk) +
+                    (lock ? " FOR UPDATE" : ""))
+                    .forEach(record -> proof.get(((Number) record.get(0)).intValue())
+                            .put(((Number) record.get(1)).longValue(), (byte[]) record.get(2)));
+        }
+
+        return proof;
+    }
+
+    /**
+     * @return the pages of siblings {level, firstPosition, lastPosition} under the nodes the region covers in part,
+     * which are the only nodes whose children fold() takes from a proof
+     */
+    public static List<long[]> proofPages(Region region) {
+        final List<long[]> pages = new ArrayList<>();
+        addProofPages(DEPTH, 0, region, pages);
+        return pages;
+    }
+
+    private static void addProofPages(int level, long position, Region region, List<long[]> pages) {
+        if (level == 0 || !region.intersects(first(level, position), last(level, position)) ||
+                region.contains(first(level, position), last(level, position))) {
+            return;
+        }
+
+        // A page of children never spans the sign bit, so its positions are also in order as signed values
+        final long page = position << BITS;
+        pages.add(new long[] { level - 1, page, page | (FANOUT - 1) });
+        for (int i = 0; i < FANOUT; i++) {
+            addProofPages(level - 1, page | i, region, pages);
+        }
+    }
+
+    /**
+     * Hashes the leaves of a region up to the root. The positions of the region without a leaf are empty, and the
+     * nodes outside the region are taken from the proof, or are empty if it does not hold them.
+     * @param region a region of at least one position
+     * @param sink receives every node the region covers at least in part, below the root, or null
+     * @return the root
+     */
+    public static byte[] fold(Region region, NavigableMap<Long, byte[]> leaves, List<Map<Long, byte[]>> proof, NodeSink sink) {
+        return fold(DEPTH, 0, region, leaves, proof, sink);
+    }
+
+    private static byte[] fold(int level, long position, Region region, NavigableMap<Long, byte[]> leaves,
+                               List<Map<Long, byte[]>> proof, NodeSink sink) {
+        final long first = first(level, position);
+        final long last = last(level, position);
+
+        if (!region.intersects(first, last)) {
+            final byte[] sibling = proof.get(level).get(position);
+            return sibling == null ? EMPTY[level] : sibling;
+        }
+
+        final Long leaf = leaves.ceilingKey(first);
+        final boolean empty = leaf == null || Long.compareUnsigned(leaf, last) > 0;
+
+        // An empty part of the region is not descended into, unless the nodes below it are rewritten
+        final byte[] hash;
+        if (level == 0) {
+            hash = empty ? EMPTY[0] : leaves.get(position);
+        } else if (empty && sink == null && region.contains(first, last)) {
+            hash = EMPTY[level];
+        } else {
+            hash = children(level, position, region, leaves, proof, sink);
+        }
+
+        if (sink != null && level < DEPTH) {
+            sink.node(level, position, hash);
+        }
+        return hash;
+    }
+
+    private static byte[] children(int level, long position, Region region, NavigableMap<Long, byte[]> leaves,
+                                   List<Map<Long, byte[]>> proof, NodeSink sink) {
+        final byte[][] children = new byte[FANOUT][];
+        for (int i = 0; i < FANOUT; i++) {
+            children[i] = fold(level - 1, (position << BITS) | i, region, leaves, proof, sink);
+        }
+        return node(level, children);
+    }
+
+    ////////////
+    // HASHES //
+    ////////////
+
+    /**
+     * @return the leaf hash of a row: each value followed by the delimiter, then the table name (as in an OCT message)
+     */
+    public byte[] leaf(Record record) {
+        final StringBuilder message = new StringBuilder();
+        for (int i = 0; i < record.size(); i++) {
+            message.append(record.get(i)).append(Format.FILE_DELIMITER);
+        }
+        message.append(table.toLowerCase());
+
+        return hash(LEAF, message.toString().getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * @return the hash of a node of the given level, where a missing child is an empty subtree
+     */
+    private static byte[] node(int level, byte[][] children) {
+        final byte[][] hashes = new byte[FANOUT][];
+        for (int i = 0; i < FANOUT; i++) {
+            hashes[i] = children[i] == null ? EMPTY[level - 1] : children[i];
+        }
+        return hash(NODE, hashes);
+    }
+
+    /**
+     * @return the hash of an empty subtree of the given level
+     */
+    public static byte[] empty(int level) {
+        return EMPTY[level].clone();
+    }
+
+    private static byte[] hash(byte prefix, byte[]... parts) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(prefix);
+            for (byte[] part : parts) {
+                digest.update(part);
+            }
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //////////
+    // ROOT //
+    //////////
+
+    /**
+     * The root hash and row count of a tree, signed by the client
+     */
+    public static class Root {
+        public final long leaves;
+        public final byte[] hash;
+        private final byte[] signature;
+
+        private Root(long leaves, byte[] hash, byte[] signature) {
+            this.leaves = leaves;
+            this.hash = hash;
+            this.signature = signature;
+        }
+
+        private byte[] message() {
+            return ArrayUtils.addAll(hash, ByteBuffer.allocate(8).putLong(leaves).array());
+        }
+    }
+
+    private File getRootFile() {
+        return new File(Format.MERKLE_ROOT_PATH, schema + "." + table + ".root");
+    }
+
+    /**
+     * Signs a root and stores it on the client. Called once the tree it is the root of is committed, so the client
+     * never holds a root the server does not.
+     */
+    public void saveRoot(Root root) {
+        final byte[] signature = codeGen.generateSignature(root.message());
+        final File file = getRootFile();
+
+        try {
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), Arrays.asList(Long.toString(root.leaves), Hex.toHexString(root.hash),
+                    Hex.toHexString(signature)), Charsets.UTF_8);
+        } catch (IOException e) {
+            logger.error("Failed to store the Merkle root of {}: {}", table, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the root held by the client, or null if there is none or its signature does not verify with the current
+     * key (or, during a key rotation, the previous one)
+     */
+    public Root loadRoot() {
+        try {
+            final List<String> lines = Files.readAllLines(getRootFile().toPath(), Charsets.UTF_8);
+            final Root root = new Root(Long.parseLong(lines.get(0)), Hex.decode(lines.get(1)), Hex.decode(lines.get(2)));
+
+            if (!KeyRing.verify(codeGen, root.message(), root.signature)) {
+                logger.error("The signature of the Merkle root of {} does not verify", table);
+                return null;
+            }
+            return root;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to read the Merkle root of {}: {}", table, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Signs the root held by the client again with the current key, after a key rotation (see KeyRing)
+     * @return false if there is no root, or its signature does not verify
+     */
+    public boolean resignRoot() {
+        final Root root = loadRoot();
+        if (root == null) {
+            return false;
+        }
+
+        saveRoot(root);
+        return true;
+    }
+
+}
@@ -0,0 +1,322 @@
+package io;
+
+import crypto.AlgorithmType;
+import crypto.CodeGen;
+import net.sf.jsqlparser.expression.Expression;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.BatchBindStep;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+import stats.Tracer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *     Precomputed aggregate integrity codes of the fixed-size primary key pages of an OCT table, for ICDB-aggregate
+ *     mode. Page p holds the rows whose key k satisfies floor(k / pageSize) = p, and its aggregate is the product of
+ *     their codes modulo n for RSA_AGGREGATE, or the XOR of their codes for the MAC aggregates. Both are order
+ *     independent, so a range is aggregated from the codes of its whole pages plus the row codes of the pages it only
+ *     partly covers, and the cloud folds O(pages) codes instead of O(rows).
+ * </p>
+ * <p>
+ *     The aggregates are kept in a side table, {@code <table>_pages (page, row_count, ic)}, built by convert-db and
+ *     refreshed from the row codes whenever an INSERT, UPDATE or DELETE changes a page. The server cannot pass off a
+ *     page as whole: a page is only read as whole if the query matches as many of its rows as row_count, and any
+ *     other answer changes the aggregate the client compares against.
+ * </p>
+ */
+public class PageAggregates {
+
+    public static final String TABLE_SUFFIX = "_pages";
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+
+    // The number of page rows written per batch when building
+    private static final int BUILD_BATCH_SIZE = 1000;
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static int pageSize = DEFAULT_PAGE_SIZE;
+
+    /**
+     * Sets the number of primary key values per page
+     * @param size the page size. An argument less than 1 disables page aggregates.
+     */
+    public static void configure(int size) {
+        pageSize = size;
+    }
+
+    public static int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * @return true if the table holds the page aggregates of another table
+     */
+    public static boolean isPageTable(String table) {
+        return table.endsWith(TABLE_SUFFIX);
+    }
+
+    /**
+     * @return the page aggregates of a table, or null if it cannot be paged: page aggregates are disabled, the
+     * algorithm is not an aggregate, or the table has no single integer primary key
+     */
+    public static PageAggregates of(DBConnection icdb, CodeGen codeGen, String table) {
+        final List<String> keys = icdb.getPrimaryKeys(table);
+        if (pageSize < 1 || !codeGen.getAlgorithm().isAggregate() || isPageTable(table) || keys == null || keys.size() != 1) {
+            return null;
+        }
+
+        final String key = keys.get(0);
+        final org.jooq.Table<?> schema = icdb.getTable(table);
+        if (schema != null && schema.field(key) != null && !isInteger(schema.field(key).getType())) {
+            return null;
+        }
+
+        return new PageAggregates(table, key, pageSize, codeGen);
+    }
+
+    /**
+     * @return the page aggregates of a table, or null if it has none in the ICDB
+     */
+    public static PageAggregates find(DBConnection icdb, CodeGen codeGen, String table) {
+        final String name = table.replace("`", "");
+        return icdb.getFields(name + TABLE_SUFFIX) == null ? null : of(icdb, codeGen, name);
+    }
+
+    /**
+     * Drops the page aggregates of a table, if any
+     */
+    public static void drop(DSLContext create, String table) {
+        create.execute("DROP TABLE IF EXISTS `" + table + TABLE_SUFFIX + "`");
+    }
+
+    private static boolean isInteger(Class<?> type) {
+        return Number.class.isAssignableFrom(type) && !BigDecimal.class.isAssignableFrom(type) &&
+                !Double.class.isAssignableFrom(type) && !Float.class.isAssignableFrom(type);
+    }
+
+    private final String table;
+    private final String key;
+    private final int size;
+    private final boolean rsa;
+    private final BigInteger modulus;
+
+    private PageAggregates(String table, String key, int size, CodeGen codeGen) {
+        this.table = table;
+        this.key = key;
+        this.size = size;
+        this.rsa = codeGen.getAlgorithm() == AlgorithmType.RSA_AGGREGATE;
+        this.modulus = rsa ? codeGen.getKey().getModulus() : null;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getPageTable() {
+        return table + TABLE_SUFFIX;
+    }
+
+    /**
+     * @return the page of a primary key value
+     */
+    public long pageOf(long key) {
+        return Math.floorDiv(key, (long) size);
+    }
+
+    /**
+     * @return the pages of the given primary key values, skipping values that are not numbers
+     */
+    public Set<Long> pagesOf(Collection<?> keys) {
+        final Set<Long> pages = new TreeSet<>();
+        for (Object value : keys) {
+            if (value instanceof Number) {
+                pages.add(pageOf(((Number) value).longValue()));
+            } else if (value != null) {
+                try {
+                    pages.add(pageOf(Long.parseLong(value.toString().trim())));
+                } catch (NumberFormatException e) {
+                    logger.debug("Skipping non-integer key {} of table {}", value, table);
+                }
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * @return the pages holding the rows of the table a WHERE clause matches, fetched before the rows are deleted
+     */
+    public Set<Long> pagesWhere(DSLContext create, String from, Expression where) {
+        return new TreeSet<>(create.fetch("SELECT DISTINCT " + page() + " FROM " + from + where(where))
+                .getValues(0, Long.class));
+    }
+
+    /**
+     * The aggregate signature query of the rows of the table a WHERE clause matches: the aggregate of each page whose
+     * rows all match, followed by the codes of the matching rows of every other page
+     * @param from the table of the query, as written in its FROM clause
+     */
+    public String aggregateQuery(String from, Expression where) {
+        final String matched = "SELECT " + page() + " AS icdb_page, COUNT(*) AS icdb_rows FROM " + from + where(where) +
+                " GROUP BY " + page();
+
+        final String join = " FROM `" + getPageTable() + "` icdb_pages JOIN (" + matched + ") icdb_matched" +
+                " ON icdb_matched.icdb_page = icdb_pages.page AND icdb_matched.icdb_rows = icdb_pages.row_count";
+
+        final String wholePages = "SELECT icdb_pages." + Format.IC_COLUMN + join;
+        final String partialRows = "SELECT " + Format.IC_COLUMN + " FROM " + from + " WHERE " +
+                (where == null ? "" : "(" + where + ") AND ") +
+                page() + " NOT IN (SELECT icdb_matched.icdb_page" + join + ")";
+
+        return wholePages + " UNION ALL " + partialRows;
+    }
+
+    /**
+     * Recreates the page table and computes the aggregate of every page, in one pass over the table in key order
+     */
+    public void build(DSLContext create) {
+        final long span = Tracer.begin();
+
+        drop(create, table);
+        create.execute("CREATE TABLE `" + getPageTable() + "` (" +
+                "page BIGINT NOT NULL PRIMARY KEY, row_count INT NOT NULL, " + Format.IC_COLUMN + " BLOB NOT NULL)");
+
+        BatchBindStep batch = create.batch("INSERT INTO `" + getPageTable() + "` VALUES (?, ?, ?)");
+        int batched = 0;
+        long pages = 0;
+
+        try (Cursor<Record> cursor = create.resultQuery("SELECT `" + key + "`, " + Format.IC_COLUMN + " FROM `" + table +
+                "` ORDER BY `" + key + "`").fetchSize(Integer.MIN_VALUE).fetchLazy()) {
+            Fold fold = null;
+            long page = 0;
+
+            for (Record record : cursor) {
+                final long recordPage = pageOf(((Number) record.get(0)).longValue());
+                if (fold != null && recordPage != page) {
+                    batch = batch.bind(page, fold.count, fold.result());
+                    pages++;
+                    if (++batched == BUILD_BATCH_SIZE) {
+                        batch.execute();
+                        batch = create.batch("INSERT INTO `" + getPageTable() + "` VALUES (?, ?, ?)");
+                        batched = 0;
+                    }
+                    fold = null;
+                }
+
+                if (fold == null) {
+                    fold = new Fold();
+                    page = recordPage;
+                }
+                fold.add((byte[]) record.get(1));
+            }
+
+            if (fold != null) {
+                batch = batch.bind(page, fold.count, fold.result());
+                pages++;
+                batched++;
+            }
+        }
+
+        if (batched > 0) {
+            batch.execute();
+        }
+
+        Tracer.end("page build", span, "pages", pages);
+        logger.debug("Built {} page aggregate(s) of {} key(s) for table {}", pages, size, table);
+    }
+
+    /**
+     * Recomputes the aggregates of the given pages from the codes of their rows, in one transaction (nested in the
+     * transaction of the write that changed them, if there is one). The pages are locked in order first, so concurrent
+     * writers of a page refresh it one after the other and the last refresh sees every write.
+     */
+    public void refresh(DSLContext create, Collection<Long> pages) {
+        if (pages.isEmpty()) {
+            return;
+        }
+
+        final long span = Tracer.begin();
+        final SortedSet<Long> sorted = new TreeSet<>(pages);
+
+        create.transaction(configuration -> {
+            final DSLContext transaction = DSL.using(configuration);
+            transaction.execute("SELECT page FROM `" + getPageTable() + "` WHERE page IN (" +
+                    sorted.stream().map(String::valueOf).collect(Collectors.joining(",")) + ") FOR UPDATE");
+
+            for (long page : sorted) {
+                final Fold fold = new Fold();
+                transaction.fetch("SELECT " + Format.IC_COLUMN + " FROM `" + table + "` WHERE `" + key + "` >= ? AND `" + key + "` < ?",
+                        page * size, (page + 1) * size)
+                        .forEach(record -> fold.add((byte[]) record.get(0)));
+
+                if (fold.count == 0) {
+                    transaction.execute("DELETE FROM `" + getPageTable() + "` WHERE page = ?", page);
+                } else {
+                    transaction.execute("REPLACE INTO `" + getPageTable() + "` VALUES (?, ?, ?)", page, fold.count, fold.result());
+                }
+            }
+        });
+
+        Tracer.end("page refresh", span, "pages", sorted.size());
+        logger.debug("Refreshed {} page aggregate(s) of table {}", sorted.size(), table);
+    }
+
+    private String page() {
+        return "FLOOR(`" + key + "` / " + size + ")";
+    }
+
+    private static String where(Expression where) {
+        return where == null ? "" : " WHERE " + where;
+    }
+
+    /**
+     * XORs two codes, padding the shorter one with zeros
+     * @return the XOR, in place of the first code if it is the longer one
+     */
+    public static byte[] xor(byte[] into, byte[] code) {
+        final byte[] result = into.length >= code.length ? into : Arrays.copyOf(into, code.length);
+        for (int i = 0; i < code.length; i++) {
+            result[i] ^= code[i];
+        }
+        return result;
+    }
+
+    /**
+     * The aggregate of the codes of one page, folded as the aggregate signature generator folds row codes
+     */
+    private class Fold {
+        private BigInteger product = BigInteger.ONE;
+        private byte[] xor = new byte[0];
+        private int count;
+
+        void add(byte[] code) {
+            if (rsa) {
+                product = product.multiply(new BigInteger(code)).mod(modulus);
+            } else {
+                xor = xor(xor, code);
+            }
+            count++;
+        }
+
+        byte[] result() {
+            return rsa ? product.toByteArray() : xor;
+        }
+    }
+
+}
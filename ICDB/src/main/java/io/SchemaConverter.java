@@ -2,26 +2,31 @@ package io;
 
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import main.ICDBTool;
 import main.args.config.UserConfig;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jooq.DataType;
 import org.jooq.Table;
 import org.jooq.impl.SQLDataType;
-import org.jooq.util.mysql.MySQLDataType;
 
 import com.google.common.base.Stopwatch;
 
 import main.args.ConvertDBCommand;
 import main.args.option.Granularity;
+import main.args.option.StorageLayout;
 
 /**
  * <p>
  * Converts a given DB schema to an ICDB using a JDBC connection
  * For OCF, each field has corresponding IC and serial fields
  * For OCT, each table has its IC and serial field
+ * For GROUP, each group of columns (see ColumnGroups) has its IC and serial field
+ * The column types follow the configured StorageLayout.
  * If the schema is already converted, the schema conversion is skipped.
  * </p>
  */
@@ -72,10 +77,10 @@ public class SchemaConverter {
 		duplicateDB(dbName, icdbName);
 
 		// Add extra columns and convert all data
-		convertSchema(granularity.equals(Granularity.TUPLE));
+		convertSchema(granularity);
 	}
 
-	private void convertSchema(final boolean oct) {
+	private void convertSchema(final Granularity granularity) {
 		if (skipSchema) {
 			logger.debug("Schema conversion skipped");
 			return;
@@ -92,53 +97,69 @@ public class SchemaConverter {
         }
 
 		// Fetch all table names
-		icdb.getTables().forEach(tableName -> {
+		icdb.getTables().stream()
+				.filter(tableName -> !PageAggregates.isPageTable(tableName) && !MerkleTree.isTreeTable(tableName))
+				.forEach(tableName -> {
 			// For each table
 			Table<?> icdbTable = icdb.getTable(tableName);
 
-			// Add corresponding columns
-			if (oct) {
-				addOCTColumns(icdb, icdbTable);
-			} else {
-				addOCFColumns(icdb, icdbTable);
-			}
+			// Add corresponding columns (a MERKLE table keeps its columns, the tree authenticates its rows)
+			addCodeColumns(icdb, icdbTable);
 		});
 	}
 
-	private void addOCTColumns(final DBConnection icdb, final Table<?> table) {
-		boolean converted = Arrays.stream(table.fields()).anyMatch(field -> field.getName().equals(Format.IC_COLUMN));
+	/**
+	 * Adds the code and serial columns of the granularity to a table, unless it already has them
+	 */
+	private void addCodeColumns(final DBConnection icdb, final Table<?> table) {
+		final StorageLayout layout = dbConfig.storageLayout;
+		final List<String> columns = codeColumns(icdb, table.getName(), granularity, layout);
+		boolean converted = Arrays.stream(table.fields()).anyMatch(field -> columns.contains(field.getName()));
 
 		if (converted) {
 			logger.debug("Table already converted. Skipping {}", table.getName());
 			return;
 		}
 
-		// Create a svc column
-		icdb.getCreate().alterTable(table).add(Format.IC_COLUMN, MySQLDataType.TINYBLOB).execute();
-
-		// Create a serial column
-		icdb.getCreate().alterTable(table).add(Format.SERIAL_COLUMN, SQLDataType.BIGINT).execute();
+		// A svc column (holding the serial too, if packed) or a serial column
+		final DataType<byte[]> codeType = layout.getCodeType(dbConfig.codeGen, layout.isPacked(granularity));
+		columns.forEach(column -> icdb.getCreate().alterTable(table)
+				.add(column, isSerialColumn(column) ? SQLDataType.BIGINT : codeType)
+				.execute());
 	}
 
-	private void addOCFColumns(final DBConnection icdb, final Table<?> table) {
-		boolean converted = Arrays.stream(table.fields())
-				.anyMatch(field -> field.getName().endsWith(Format.IC_SUFFIX));
-
-		if (converted) {
-			logger.debug("Table already converted. Skipping {}", table.getName());
-			return;
+	/**
+	 * @return the columns convertSchema adds to a table, in the order it adds them: the svc and serial column of the
+	 * tuple (OCT), of each field in table order (OCF, only the svc column if packed) or of each group (GROUP), and
+	 * none for MERKLE. The converted queries and inserts rely on this order.
+	 */
+	public static List<String> codeColumns(DBConnection db, String table, Granularity granularity, StorageLayout layout) {
+		final List<String> columns = new ArrayList<>();
+
+		if (granularity == Granularity.TUPLE) {
+			columns.add(Format.IC_COLUMN);
+			columns.add(Format.SERIAL_COLUMN);
+		} else if (granularity == Granularity.FIELD) {
+			db.getFields(table).stream()
+					.filter(field -> !field.endsWith(Format.IC_SUFFIX) && !field.endsWith(Format.SERIAL_SUFFIX))
+					.forEach(field -> {
+						columns.add(field + Format.IC_SUFFIX);
+						if (!layout.isPacked(granularity)) {
+							columns.add(field + Format.SERIAL_SUFFIX);
+						}
+					});
+		} else if (granularity == Granularity.GROUP) {
+			ColumnGroups.of(db, table).getGroups().forEach(group -> {
+				columns.add(group.getIcColumn());
+				columns.add(group.getSerialColumn());
+			});
 		}
 
-		// Loop through each field and create a corresponding column
-		Arrays.stream(table.fields()).forEach(field -> {
-			// Create a svc column
-			icdb.getCreate().alterTable(table).add(field.getName() + Format.IC_SUFFIX, MySQLDataType.TINYBLOB)
-					.execute();
+		return columns;
+	}
 
-			// Create a serial column
-			icdb.getCreate().alterTable(table).add(field.getName() + Format.SERIAL_SUFFIX, SQLDataType.BIGINT)
-					.execute();
-		});
+	private static boolean isSerialColumn(String column) {
+		return column.equals(Format.SERIAL_COLUMN) || column.endsWith(Format.SERIAL_SUFFIX);
 	}
 
 	/**
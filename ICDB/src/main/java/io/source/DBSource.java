@@ -1,6 +1,7 @@
 package io.source;
 
 import io.DBConnection;
+import org.jooq.DSLContext;
 import org.jooq.Record;
 import java.util.stream.Stream;
 
@@ -13,15 +14,19 @@ import java.util.stream.Stream;
 public class DBSource implements DataSource {
 
     public static Stream<Record> stream(DBConnection icdb, String fetchQuery, Fetch strategy) {
-        return new DBSource(icdb, fetchQuery, strategy).stream();
+        return new DBSource(icdb.getCreate(), fetchQuery, strategy).stream();
     }
 
-    private final DBConnection icdb;
+    public static Stream<Record> stream(DSLContext create, String fetchQuery, Fetch strategy) {
+        return new DBSource(create, fetchQuery, strategy).stream();
+    }
+
+    private final DSLContext create;
     private final String fetchQuery;
     private final Fetch strategy;
 
-    private DBSource(DBConnection icdb, String fetchQuery, Fetch strategy) {
-        this.icdb = icdb;
+    private DBSource(DSLContext create, String fetchQuery, Fetch strategy) {
+        this.create = create;
         this.fetchQuery = fetchQuery;
         this.strategy = strategy;
     }
@@ -29,11 +34,16 @@ public class DBSource implements DataSource {
     @Override
     public Stream<Record> stream() {
         switch (strategy) {
-            case EAGER: return icdb.getCreate()
+            case EAGER: return create
                     .fetch(fetchQuery)
                     .stream();
-            case LAZY: return icdb.getCreate()
+            case LAZY: return create
                     .fetchStream(fetchQuery);
+            // MySQL streams rows one at a time, instead of buffering the result, for this fetch size only
+            case STREAM: return create
+                    .resultQuery(fetchQuery)
+                    .fetchSize(Integer.MIN_VALUE)
+                    .fetchStream();
             default: return Stream.empty();
         }
     }
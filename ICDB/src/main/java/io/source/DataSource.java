@@ -16,10 +16,11 @@ public interface DataSource {
     Stream<?> stream();
 
     /**
-     * A strategy for fetching data. Data can be collected eagerly (all in advance), or processed lazily.
+     * A strategy for fetching data. Data can be collected eagerly (all in advance), processed lazily (from rows the
+     * driver buffers), or streamed from the server row by row. AUTO chooses one per query, see {@link FetchPlanner}.
      */
     enum Fetch {
-        EAGER, LAZY
+        EAGER, LAZY, STREAM, AUTO
     }
 
 }
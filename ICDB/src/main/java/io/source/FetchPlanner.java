@@ -0,0 +1,138 @@
+package io.source;
+
+import io.DBConnection;
+import io.source.DataSource.Fetch;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.exception.DataAccessException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *     Chooses the fetch strategy of a query from its estimated result size. The row count comes from the optimizer
+ *     ({@code EXPLAIN}), and the row width from the average row length of each table together with the number of
+ *     columns (data, IC and serial) it holds in the ICDB, which sets the per-field overhead of a decoded record.
+ * </p>
+ * <p>
+ *     A result whose records fit the memory budget is fetched {@link Fetch#EAGER EAGER}, freeing the connection after
+ *     one round trip. A result whose raw rows fit but whose records do not is fetched {@link Fetch#LAZY LAZY}, since
+ *     the driver buffers the rows and only the records in flight are decoded. Anything larger is
+ *     {@link Fetch#STREAM STREAM}ed row by row, in constant memory.
+ * </p>
+ */
+public class FetchPlanner {
+
+    // The heap taken by a decoded record and by each of its fields, beyond the data itself
+    private static final long RECORD_OVERHEAD = 64;
+    private static final long FIELD_OVERHEAD = 40;
+
+    // The width assumed for tables without statistics (e.g. derived tables)
+    private static final long DEFAULT_ROW_LENGTH = 256;
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private static long budget = Runtime.getRuntime().maxMemory() / 4;
+
+    /**
+     * Sets the memory a fetched result may take
+     * @param bytes the budget. An argument less than 1 uses a quarter of the maximum heap.
+     */
+    public static void configure(long bytes) {
+        budget = bytes < 1 ? Runtime.getRuntime().maxMemory() / 4 : bytes;
+    }
+
+    /**
+     * @return the strategy, unless it is AUTO, in which case the strategy chosen for the query
+     */
+    public static Fetch resolve(DBConnection icdb, String query, Fetch strategy) {
+        return strategy == Fetch.AUTO ? plan(icdb, query) : strategy;
+    }
+
+    /**
+     * @return the strategy for the query under the configured memory budget, or LAZY if it cannot be estimated
+     */
+    public static Fetch plan(DBConnection icdb, String query) {
+        final Result<Record> explain;
+        try {
+            explain = icdb.getCreate().fetch("EXPLAIN " + query);
+        } catch (DataAccessException e) {
+            logger.warn("Unable to estimate the result of the query, fetching lazily: {}", e.getMessage());
+            return Fetch.LAZY;
+        }
+
+        // Tables joined in one select are nested loops, so their row estimates multiply
+        final Map<Object, Double> selectRows = new HashMap<>();
+        final Map<Object, Long> selectWidth = new HashMap<>();
+        final Map<Object, Long> selectFields = new HashMap<>();
+
+        for (Record row : explain) {
+            final Object id = row.get("id");
+            final String table = row.get("table") == null ? null : row.get("table").toString();
+            final double rows = number(row, "rows", 1) * number(row, "filtered", 100) / 100;
+
+            selectRows.merge(id, Math.max(rows, 1), (a, b) -> a * b);
+            selectWidth.merge(id, rowLength(icdb, table), Long::sum);
+            selectFields.merge(id, (long) fieldCount(icdb, table), Long::sum);
+        }
+
+        // The first select produces the result
+        final Object first = explain.isEmpty() ? null : explain.get(0).get("id");
+        final long rows = (long) Math.ceil(selectRows.getOrDefault(first, 0.0));
+        final long rawWidth = selectWidth.getOrDefault(first, DEFAULT_ROW_LENGTH);
+        final long recordWidth = rawWidth + RECORD_OVERHEAD + FIELD_OVERHEAD * selectFields.getOrDefault(first, 0L);
+
+        // An eager fetch holds the driver's rows and the decoded records at once
+        final Fetch strategy;
+        if (rows * (rawWidth + recordWidth) <= budget) {
+            strategy = Fetch.EAGER;
+        } else if (rows * rawWidth <= budget) {
+            strategy = Fetch.LAZY;
+        } else {
+            strategy = Fetch.STREAM;
+        }
+
+        logger.debug("Estimated {} row(s) of {} byte(s) ({} decoded) against a budget of {} MB, fetching {}",
+                rows, rawWidth, recordWidth, budget >> 20, strategy);
+        return strategy;
+    }
+
+    private static double number(Record row, String column, double otherwise) {
+        final Object value = row.field(column) == null ? null : row.get(column);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+
+        try {
+            return value == null ? otherwise : Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            return otherwise;
+        }
+    }
+
+    /**
+     * @return the average length of a row of the table, IC and serial columns included
+     */
+    private static long rowLength(DBConnection icdb, String table) {
+        if (table == null || icdb.getFields(table) == null) {
+            return DEFAULT_ROW_LENGTH;
+        }
+
+        final Object length = icdb.getCreate()
+                .fetchValue("SELECT AVG_ROW_LENGTH FROM information_schema.TABLES WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?",
+                        icdb.getName(), table);
+        return length instanceof Number && ((Number) length).longValue() > 0
+                ? ((Number) length).longValue()
+                : DEFAULT_ROW_LENGTH;
+    }
+
+    private static int fieldCount(DBConnection icdb, String table) {
+        final List<String> fields = table == null ? null : icdb.getFields(table);
+        return fields == null ? 1 : fields.size();
+    }
+
+}
@@ -0,0 +1,248 @@
+package io.source;
+
+import io.ConnectionPool;
+import io.DBConnection;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThanEquals;
+import net.sf.jsqlparser.expression.operators.relational.MinorThan;
+import net.sf.jsqlparser.expression.operators.relational.MinorThanEquals;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.SQLDialect;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ *     DataSource that splits a single-table fetch query into primary key ranges and fetches each range over
+ *     its own pooled connection. All connections read from the same consistent snapshot, so the partitions
+ *     together return exactly the rows the original query would.
+ *     Queries that cannot be split (joins, LIMIT, GROUP BY, non-numeric keys) are fetched as one partition.
+ * </p>
+ */
+public class PartitionedDBSource implements DataSource, AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    /**
+     * Prepares the partitions of a fetch query. Nothing is fetched until a partition stream is opened.
+     * @param partitions the number of primary key ranges to split the query into
+     */
+    public static PartitionedDBSource open(DBConnection icdb, String fetchQuery, int partitions, Fetch strategy) {
+        PartitionedDBSource source = new PartitionedDBSource(icdb, strategy);
+
+        if (partitions > 1) {
+            try {
+                source.split(fetchQuery, partitions);
+            } catch (JSQLParserException | SQLException | DataAccessException e) {
+                // Releases any snapshot connections borrowed before the failure
+                logger.warn("Unable to partition query, fetching as one partition: {}", e.getMessage());
+                source.close();
+            }
+        }
+
+        if (source.queries.isEmpty()) {
+            source.queries.add(fetchQuery);
+            source.contexts.add(icdb.getCreate());
+        }
+
+        return source;
+    }
+
+    private final DBConnection icdb;
+    private final Fetch strategy;
+
+    private final List<String> queries = new ArrayList<>();
+    private final List<DSLContext> contexts = new ArrayList<>();
+    private final List<Connection> connections = new ArrayList<>();
+
+    private PartitionedDBSource(DBConnection icdb, Fetch strategy) {
+        this.icdb = icdb;
+        this.strategy = strategy;
+    }
+
+    /**
+     * @return one stream supplier per partition
+     */
+    public List<Supplier<Stream<Record>>> getPartitions() {
+        List<Supplier<Stream<Record>>> partitions = new ArrayList<>(queries.size());
+
+        for (int i = 0; i < queries.size(); i++) {
+            final String query = queries.get(i);
+            final DSLContext create = contexts.get(i);
+            partitions.add(() -> DBSource.stream(create, query, strategy));
+        }
+
+        return partitions;
+    }
+
+    /**
+     * @return all partitions, fetched one after another
+     */
+    @Override
+    public Stream<Record> stream() {
+        return getPartitions().stream().flatMap(Supplier::get);
+    }
+
+    /**
+     * Ends the snapshot transactions and returns the connections to the pool
+     */
+    @Override
+    public void close() {
+        ConnectionPool pool = icdb.getPool();
+        connections.forEach(pool::release);
+        connections.clear();
+        queries.clear();
+        contexts.clear();
+    }
+
+    private void split(String fetchQuery, int partitions) throws JSQLParserException, SQLException {
+        final PlainSelect plainSelect = parse(fetchQuery);
+        if (plainSelect == null
+                || (plainSelect.getJoins() != null && !plainSelect.getJoins().isEmpty())
+                || !(plainSelect.getFromItem() instanceof Table)
+                || plainSelect.getLimit() != null
+                || plainSelect.getGroupByColumnReferences() != null) {
+            logger.debug("Query is not a single-table select, fetching as one partition");
+            return;
+        }
+
+        final Table table = (Table) plainSelect.getFromItem();
+        final String tableName = table.getName().replace("`", "");
+        final List<String> primaryKeys = icdb.getPrimaryKeys(tableName);
+        if (primaryKeys == null || primaryKeys.isEmpty()) {
+            logger.debug("Table {} has no primary key, fetching as one partition", tableName);
+            return;
+        }
+        final String primaryKey = primaryKeys.get(0);
+
+        openSnapshots(tableName, partitions);
+
+        // Find the key range inside the snapshot, so the ranges match the data the partitions will see
+        final Expression where = plainSelect.getWhere();
+        final Record2<Object, Object> range = contexts.get(0)
+                .select(DSL.min(DSL.field(DSL.name(primaryKey))), DSL.max(DSL.field(DSL.name(primaryKey))))
+                .from(DSL.table(table.toString()))
+                .where(where == null ? DSL.trueCondition() : DSL.condition(where.toString()))
+                .fetchOne();
+
+        if (!(range.value1() instanceof Number) || !(range.value2() instanceof Number)) {
+            logger.debug("Primary key {} is empty or not numeric, fetching as one partition", primaryKey);
+            close();
+            return;
+        }
+
+        final long min = ((Number) range.value1()).longValue();
+        final long max = ((Number) range.value2()).longValue();
+        final long step = Math.max(1, (max - min) / partitions + 1);
+
+        for (int i = 0; i < partitions; i++) {
+            final long lower = min + step * i;
+            final boolean last = i == partitions - 1 || lower + step > max;
+
+            final PlainSelect partition = parse(fetchQuery);
+            partition.setWhere(rangeCondition(partition.getWhere(), new Column(primaryKey), lower, last ? max : lower + step, last));
+            queries.add(partition.toString());
+
+            if (last) {
+                break;
+            }
+        }
+
+        // Release any connections that ended up without a range
+        while (contexts.size() > queries.size()) {
+            contexts.remove(contexts.size() - 1);
+            icdb.getPool().release(connections.remove(connections.size() - 1));
+        }
+
+        logger.debug("Split query on {}.{} into {} partition(s) of {} key(s)", tableName, primaryKey, queries.size(), step);
+    }
+
+    /**
+     * Starts one consistent snapshot transaction per partition. Writes to the table are blocked with a read lock
+     * while the snapshots start, so every partition sees the same version of the data.
+     */
+    private void openSnapshots(String tableName, int partitions) throws SQLException {
+        final ConnectionPool pool = icdb.getPool();
+        boolean locked = false;
+
+        try {
+            icdb.getCreate().execute("LOCK TABLES `" + tableName + "` READ");
+            locked = true;
+        } catch (Exception e) {
+            logger.warn("Unable to lock {} while starting snapshots, partitions may see different versions: {}", tableName, e.getMessage());
+        }
+
+        try {
+            for (int i = 0; i < partitions; i++) {
+                final Connection connection = pool.borrow();
+                connections.add(connection);
+
+                connection.setAutoCommit(false);
+                try (java.sql.Statement statement = connection.createStatement()) {
+                    statement.execute("START TRANSACTION WITH CONSISTENT SNAPSHOT");
+                }
+
+                contexts.add(DSL.using(connection, SQLDialect.MYSQL));
+            }
+        } finally {
+            if (locked) {
+                icdb.getCreate().execute("UNLOCK TABLES");
+            }
+        }
+    }
+
+    private static PlainSelect parse(String query) throws JSQLParserException {
+        final Statement statement = CCJSqlParserUtil.parse(query);
+        if (!(statement instanceof Select) || !(((Select) statement).getSelectBody() instanceof PlainSelect)) {
+            return null;
+        }
+        return (PlainSelect) ((Select) statement).getSelectBody();
+    }
+
+    /**
+     * @return where AND key >= lower AND key < upper (or key <= upper for the last range)
+     */
+    private static Expression rangeCondition(Expression where, Column key, long lower, long upper, boolean inclusive) {
+        final GreaterThanEquals lowerBound = new GreaterThanEquals();
+        lowerBound.setLeftExpression(key);
+        lowerBound.setRightExpression(new LongValue(Long.toString(lower)));
+
+        final Expression upperBound;
+        if (inclusive) {
+            final MinorThanEquals bound = new MinorThanEquals();
+            bound.setLeftExpression(key);
+            bound.setRightExpression(new LongValue(Long.toString(upper)));
+            upperBound = bound;
+        } else {
+            final MinorThan bound = new MinorThan();
+            bound.setLeftExpression(key);
+            bound.setRightExpression(new LongValue(Long.toString(upper)));
+            upperBound = bound;
+        }
+
+        final Expression range = new AndExpression(lowerBound, upperBound);
+        return where == null ? range : new AndExpression(new Parenthesis(where), range);
+    }
+
+}
@@ -0,0 +1,158 @@
+package main;
+
+import com.google.common.base.Stopwatch;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import stats.RunStatistics;
+import stats.Statistics;
+import stats.Summary;
+import stats.Tracer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Runs a benchmark task for a number of warmup iterations, whose results are discarded so JIT compilation and
+ *     cold caches do not land in the measurements, followed by the measured iterations. Every iteration runs the
+ *     task once per client, with all clients released at the same time on their own threads.
+ * </p>
+ */
+class BenchmarkRunner {
+
+    /**
+     * One client's share of a benchmark iteration
+     */
+    interface Task {
+        /**
+         * Runs the task for the client (numbered from 0), recording into one run per statistics being collected
+         */
+        void run(int client, RunStatistics... runs) throws Exception;
+    }
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final int warmup;
+    private final int iterations;
+    private final boolean trimOutliers;
+
+    BenchmarkRunner(int warmup, int iterations, boolean trimOutliers) {
+        if (warmup < 0 || iterations < 1) {
+            throw new IllegalArgumentException("Need at least one measured iteration and no negative warmup");
+        }
+
+        this.warmup = warmup;
+        this.iterations = iterations;
+        this.trimOutliers = trimOutliers;
+    }
+
+    int getWarmup() {
+        return warmup;
+    }
+
+    int getIterations() {
+        return iterations;
+    }
+
+    boolean isTrimOutliers() {
+        return trimOutliers;
+    }
+
+    /**
+     * Runs the warmup and measured iterations, adding every measured client run to the statistics
+     * @param statistics the statistics to collect, e.g. one each for the insert, select and delete of a task
+     * @param reset run after every iteration, outside the measurement, to restore the database state (may be null)
+     */
+    void run(String name, int clients, Task task, Runnable reset, Statistics... statistics) {
+        final ExecutorService pool = Executors.newFixedThreadPool(clients);
+        final List<Double> throughput = new ArrayList<>(iterations);
+
+        try {
+            for (int i = 0; i < warmup; i++) {
+                iteration(pool, clients, i + 1, statistics.length, task);
+                if (reset != null) {
+                    reset.run();
+                }
+                logger.info("{}: warmup iteration {}/{} done", name, i + 1, warmup);
+            }
+
+            for (int i = 0; i < iterations; i++) {
+                final Stopwatch iterationTime = Stopwatch.createStarted();
+                final List<RunStatistics[]> runs = iteration(pool, clients, i + 1, statistics.length, task);
+                final long nanos = iterationTime.elapsed(TimeUnit.NANOSECONDS);
+
+                if (reset != null) {
+                    reset.run();
+                }
+
+                for (RunStatistics[] clientRuns : runs) {
+                    for (int j = 0; j < statistics.length; j++) {
+                        statistics[j].addRun(clientRuns[j]);
+                    }
+                }
+                throughput.add(clients * 1e9 / Math.max(nanos, 1));
+                logger.info("{}: iteration {}/{} took {}", name, i + 1, iterations, ICDBTool.TIME_UNIT.convert(nanos, TimeUnit.NANOSECONDS));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        logger.info("{} with {} client(s): {} queries/s (95% CI)", name, clients, new Summary(throughput, trimOutliers));
+    }
+
+    /**
+     * Runs one iteration on every client and waits for all of them to finish
+     */
+    private static List<RunStatistics[]> iteration(ExecutorService pool, int clients, int number, int phases, Task task) {
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<RunStatistics[]>> futures = new ArrayList<>(clients);
+
+        for (int client = 0; client < clients; client++) {
+            final int id = client;
+            futures.add(pool.submit(() -> {
+                final RunStatistics[] runs = new RunStatistics[phases];
+                for (int j = 0; j < phases; j++) {
+                    runs[j] = new RunStatistics();
+                    runs[j].setRun(number);
+                    runs[j].setClient(id + 1);
+                }
+
+                start.await();
+                final Stopwatch runTime = Stopwatch.createStarted();
+                final long span = Tracer.begin();
+                task.run(id, runs);
+                Tracer.end("iteration", span, "iteration", number);
+
+                // The run time covers the client's whole iteration
+                final long elapsed = runTime.elapsed(ICDBTool.TIME_UNIT);
+                for (RunStatistics run : runs) {
+                    run.setRunTime(elapsed);
+                }
+                return runs;
+            }));
+        }
+        start.countDown();
+
+        final List<RunStatistics[]> runs = new ArrayList<>(clients);
+        try {
+            for (Future<RunStatistics[]> future : futures) {
+                runs.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the benchmark clients", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Benchmark client failed: " + e.getCause().getMessage(), e.getCause());
+        }
+
+        return runs;
+    }
+
+}
@@ -5,6 +5,7 @@ import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.security.SecureRandom;
+import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
@@ -16,6 +17,7 @@ import crypto.ECParams;
 import crypto.signer.ECSigner;
 import io.Format;
 import io.source.DataSource;
+import io.source.FetchPlanner;
 import main.args.*;
 import main.args.config.UserConfig;
 import main.args.option.Granularity;
@@ -26,9 +28,11 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.google.common.base.Stopwatch;
+import com.google.gson.JsonParseException;
 
 import io.DBConnection;
 import io.DBConverter;
+import io.DataGenerator;
 import io.SchemaConverter;
 import main.args.config.ConfigArgs;
 import org.bouncycastle.crypto.ec.*;
@@ -39,13 +43,24 @@ import org.bouncycastle.crypto.params.ParametersWithRandom;
 import org.bouncycastle.crypto.tls.ECPointFormat;
 import org.bouncycastle.math.ec.*;
 import org.bouncycastle.util.encoders.Hex;
+import parse.BulkInsert;
 import parse.ICDBQuery;
+import parse.QueryTemplateCache;
+import parse.Resigner;
+import stats.Comparison;
+import stats.Metrics;
+import stats.ResultRecord;
+import stats.ResultStore;
 import stats.RunStatistics;
 import stats.Statistics;
 import stats.StatisticsMetadata;
+import stats.Summary;
+import stats.ThroughputCurve;
+import stats.Tracer;
 import verify.QueryVerifier;
 import verify.serial.AbstractIcrl;
 import verify.serial.Icrl;
+import verify.serial.IcrlLog;
 
 import static org.bouncycastle.crypto.tls.TlsECCUtils.isCompressionPreferred;
 import static org.junit.Assert.fail;
@@ -64,12 +79,13 @@ public class ICDBTool {
     // The time unit for all timed log statements
     public static final TimeUnit TIME_UNIT = TimeUnit.MILLISECONDS;
 
+    // Identifies the statistics files written by this process
+    private static final String START_TIME = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+
 	private static final Logger logger = LogManager.getLogger();
 
     protected AbstractIcrl icrl = Icrl.Companion.getIcrl();
 
-    public  static Map<Integer, Long> ICRLmap;
-
 
     public static void main(String[] args) throws FileNotFoundException {
 
@@ -90,46 +106,53 @@ public class ICDBTool {
 
         Icrl.Companion.debug(!dbConfig.validateIcrl);
 
-        //load the ICRL hash MAP
-        ///update ICRLHASH for newly updated ICRL file (NOTE:TIME is not reported for background update of ICRLMAP)
+        // Load the ICRL snapshot and log (importing a legacy ICRL.txt on first use)
+        Stopwatch icrlLoadTime = Stopwatch.createStarted();
+        IcrlLog icrlLog = IcrlLog.Companion.getLog();
+        logger.debug("Loaded {} revoked serial(s) in {}", icrlLog.getSize(), icrlLoadTime.elapsed(ICDBTool.TIME_UNIT));
 
+		DBConnection.configure(dbConfig);
 
-        ICRLmap=new HashMap<>();
-        try {
-            File f = new File("ICRL.txt");
-            if(!f.exists())
-                f.createNewFile();
+		// Export live metrics while the command runs
+		Metrics.start(cmd.metricsPort);
 
-            try(Stream<String> lines = Files.lines(Paths.get("ICRL.txt"))){
-                try {
-                    Files.lines(Paths.get("ICRL.txt")).forEach(
-                            line -> ICRLmap.putIfAbsent(line.hashCode(), Long.valueOf(line))
-                    );
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+		if (cmd.tracePath != null) {
+			Tracer.start(new File(cmd.tracePath));
+		}
+		FetchPlanner.configure((long) cmd.fetchMemory << 20);
 
-		DBConnection.configure(dbConfig);
+		// Append every run to the result store, except when comparing stores
+		if (!cmd.isCommand(CommandLineArgs.COMPARE)) {
+			ResultStore.open(new File(cmd.resultsPath));
+		}
 
-		// Execute a command
-		if (cmd.isCommand(CommandLineArgs.CONVERT_DB)) {
-			convertDB(cmd, dbConfig);
-		} else if (cmd.isCommand(CommandLineArgs.CONVERT_QUERY)) {
-			convertQuery(cmd, dbConfig);
-		} else if (cmd.isCommand(CommandLineArgs.EXECUTE_QUERY)) {
-			executeQuery(cmd, dbConfig);
-		} else if (cmd.isCommand(CommandLineArgs.EXECUTE_QUERY_SINGLE_BENCHMARK)) {
-            executeQuerybenchmark(cmd, dbConfig);
-        }
-		else if (cmd.isCommand(CommandLineArgs.BENCHMARK)) {
-            benchmark(cmd, dbConfig);
-		} else { // TODO: add revoke serial command
-			cmd.jCommander.usage();
-			System.exit(0);
+		// Execute a command, then stop the metrics endpoint so its server thread does not keep the JVM alive
+		try {
+			if (cmd.isCommand(CommandLineArgs.CONVERT_DB)) {
+				convertDB(cmd.convertDBCommand, dbConfig);
+			} else if (cmd.isCommand(CommandLineArgs.CONVERT_QUERY)) {
+				convertQuery(cmd, dbConfig);
+			} else if (cmd.isCommand(CommandLineArgs.EXECUTE_QUERY)) {
+				executeQuery(cmd, dbConfig);
+			} else if (cmd.isCommand(CommandLineArgs.EXECUTE_QUERY_SINGLE_BENCHMARK)) {
+				executeQuerybenchmark(cmd, dbConfig);
+			}
+			else if (cmd.isCommand(CommandLineArgs.BENCHMARK)) {
+				benchmark(cmd, dbConfig);
+			} else if (cmd.isCommand(CommandLineArgs.GENERATE)) {
+				generate(cmd, dbConfig);
+			} else if (cmd.isCommand(CommandLineArgs.SUITE)) {
+				suite(cmd, dbConfig);
+			} else if (cmd.isCommand(CommandLineArgs.COMPARE)) {
+				compare(cmd);
+			} else if (cmd.isCommand(CommandLineArgs.RESIGN)) {
+				resign(cmd, dbConfig);
+			} else { // TODO: add revoke serial command
+				cmd.jCommander.usage();
+				System.exit(0);
+			}
+		} finally {
+			Metrics.stop();
 		}
 
 
@@ -142,38 +165,30 @@ public class ICDBTool {
 	/**
 	 * Converts the specified DB to an ICDB
 	 */
-	private static void convertDB(CommandLineArgs cmd, UserConfig dbConfig) {
-	    //delete the ICRL FILE if exists for the new database!
-
-        try{
-
-            File file = new File("ICRL.txt");
-
-            if(file.delete()){
-                System.out.println(file.getName() + " is deleted!");
-            }else{
-                System.out.println("Delete operation is failed.");
-            }
-
-        }catch(Exception e){
-
-            e.printStackTrace();
-
+	private static void convertDB(ConvertDBCommand convertConfig, UserConfig dbConfig) {
+	    // Clear the ICRL for the new database
+        try {
+            IcrlLog.Companion.getLog().clear();
+        } catch (IOException e) {
+            logger.error("Unable to clear the ICRL: {}", e.getMessage());
+            return;
         }
 
-
-		final ConvertDBCommand convertConfig = cmd.convertDBCommand;
-
 		// Duplicate the DB, and add additional columns
-		DBConnection db = DBConnection.connect(dbConfig.schema, dbConfig);
-		SchemaConverter.convertSchema(db, dbConfig, convertConfig);
+		try (DBConnection db = DBConnection.connect(dbConfig.schema, dbConfig)) {
+			SchemaConverter.convertSchema(db, dbConfig, convertConfig);
 
-		// Connect to the newly created DB
-		DBConnection icdb = DBConnection.connect(dbConfig.icdbSchema, dbConfig);
-		DBConverter dbConverter = new DBConverter(db, icdb, dbConfig, convertConfig);
+			// Connect to the newly created DB
+			try (DBConnection icdb = DBConnection.connect(dbConfig.icdbSchema, dbConfig)) {
+				DBConverter dbConverter = new DBConverter(db, icdb, dbConfig, convertConfig);
+
+				// Export, convert, and load all data
+				dbConverter.convertAll();
+			}
+		}
 
-		// Export, convert, and load all data
-		dbConverter.convertAll();
+		// The cached templates may read page aggregates or group columns the conversion added or dropped
+		QueryTemplateCache.clear();
 	}
 
 	/**
@@ -214,76 +229,102 @@ public class ICDBTool {
 
         Statistics statistics = new Statistics(metadata, new File("./src/main/resources/statistics/data.csv"));
         RunStatistics run = new RunStatistics();
-        statistics.addRun(run);
 
         executeQueryRun(
-            executeQueryCommand.query, executeQueryCommand.fetch, executeQueryCommand.threads, dbConfig, run, true
+            executeQueryCommand.query, executeQueryCommand.fetch, executeQueryCommand.threads, executeQueryCommand.partitions, dbConfig, run, true
         ,icdb);
 
+        statistics.addRun(run);
         statistics.outputRuns();
     }
 
 
     /**
-     * Executes a query for 5 runs
+     * Executes a query for warmup and measured iterations, at each concurrency level
      */
     private static void executeQuerybenchmark(CommandLineArgs cmd, UserConfig dbConfig) {
-        DBConnection icdb = DBConnection.connect(dbConfig.icdbSchema, dbConfig);
         final MultirunBenchmarkCommand executemultirunQueryCommand = cmd.multirunbenchmarkCommand;
-
-        StatisticsMetadata metadata = new StatisticsMetadata(
-                dbConfig.codeGen.getAlgorithm(), dbConfig.granularity, dbConfig.icdbSchema,
-                executemultirunQueryCommand.fetch, executemultirunQueryCommand.threads, executemultirunQueryCommand.query
+        final BenchmarkRunner runner = new BenchmarkRunner(
+                executemultirunQueryCommand.warmup, executemultirunQueryCommand.iterations, !executemultirunQueryCommand.keepOutliers
         );
-        Statistics statistics = new Statistics(metadata, new File("./src/main/resources/statistics/data.csv"));
 
+        final String query;
+        final Runnable reset;
+        final List<Integer> concurrencyLevels;
 
-            for(int i=0; i<5; i++){
-                RunStatistics run = new RunStatistics();
-                run.setRun(i+1);
-                statistics.addRun(run);
+        if (executemultirunQueryCommand.insert) {
+            //read the insert queries from the file, and restore the table after every iteration
+            try {
+                query = String.join("", Files.readAllLines(Paths.get(executemultirunQueryCommand.insertfile), Charsets.UTF_8));
+            } catch (IOException e) {
+                logger.error("Unable to read the insert file {}: {}", executemultirunQueryCommand.insertfile, e.getMessage());
+                return;
+            }
 
+            final String resetStatement = executemultirunQueryCommand.reset != null
+                    ? executemultirunQueryCommand.reset
+                    : truncateStatement(query);
+            if (resetStatement == null) {
+                logger.error("Unable to find the table of the insert query, specify a statement with --reset");
+                return;
+            }
+
+            final DBConnection icdb = DBConnection.connect(dbConfig.icdbSchema, dbConfig);
+            reset = () -> icdb.getCreate().execute(resetStatement);
+
+            // Concurrent clients would insert the same rows
+            if (executemultirunQueryCommand.clients.stream().anyMatch(clients -> clients != 1)) {
+                logger.warn("Inserts are benchmarked with a single client");
+            }
+            concurrencyLevels = Collections.singletonList(1);
+        } else {
+            query = executemultirunQueryCommand.query;
+            reset = null;
+            concurrencyLevels = executemultirunQueryCommand.clients;
+        }
 
+        for (int clients : concurrencyLevels) {
+            // Every client gets its own connection, so their queries run concurrently on the server
+            final DBConnection[] connections = new DBConnection[clients];
+            for (int i = 0; i < clients; i++) {
+                //delete queries with --dbdelete run on the standard/original MySQL database
+                connections[i] = DBConnection.connect(
+                        executemultirunQueryCommand.dbDelete ? dbConfig.schema : dbConfig.icdbSchema, dbConfig
+                );
+            }
 
-                if(executemultirunQueryCommand.insert){
-                    //read the insert queries from the file and write to an datastructure to execute in a loop
-                    //also track the conversio and execution time
-                    StringBuilder builder = new StringBuilder();
-                    try (Stream<String> stream = Files.lines(Paths.get(executemultirunQueryCommand.insertfile))) {
-                        stream.forEach(line -> builder.append(line));
+            try {
+                StatisticsMetadata metadata = new StatisticsMetadata(
+                        dbConfig.codeGen.getAlgorithm(), dbConfig.granularity, dbConfig.icdbSchema,
+                        executemultirunQueryCommand.fetch, executemultirunQueryCommand.threads, query,
+                        runner.getWarmup(), runner.getIterations(), clients, runner.isTrimOutliers()
+                );
+                Statistics statistics = new Statistics(
+                        metadata, statisticsFile(executemultirunQueryCommand.outputPath, dbConfig, "query", clients)
+                );
+
+                runner.run("Query", clients, (client, runs) -> {
+                    final RunStatistics run = runs[0];
+
+                    if (executemultirunQueryCommand.dbDelete) {
+                        Stopwatch queryExecutionTime = Stopwatch.createStarted();
+                        connections[client].getCreate().execute(query);
+                        run.setExecutionTime(queryExecutionTime.elapsed(ICDBTool.TIME_UNIT));
+                        logger.debug("Total query execution time: {}", run.getExecutionTime());
+                    } else {
                         executeQueryRun(
-                                builder.toString(), executemultirunQueryCommand.fetch, executemultirunQueryCommand.threads, dbConfig, run, true,icdb
+                                query, executemultirunQueryCommand.fetch, executemultirunQueryCommand.threads, dbConfig, run, true, connections[client]
                         );
-                        icdb.getCreate().execute("Truncate table salaries;");
-
-                    } catch (IOException e) {
-                        e.printStackTrace();
                     }
+                }, reset, statistics);
 
-                }else if(executemultirunQueryCommand.dbDelete){
-
-                    //run delete query on the standard/original MySQL database
-                    DBConnection DB = DBConnection.connect(dbConfig.schema, dbConfig);
-
-                    Stopwatch queryExecutionTime = Stopwatch.createStarted();
-                    DB.getCreate().execute(executemultirunQueryCommand.query);
-                    run.setExecutionTime(queryExecutionTime.elapsed(ICDBTool.TIME_UNIT));
-                    logger.debug("Total query execution time: {}", run.getExecutionTime());
-
-
-
-
-                }
-                else {
-
-                    executeQueryRun(
-                            executemultirunQueryCommand.query, executemultirunQueryCommand.fetch, executemultirunQueryCommand.threads, dbConfig, run, true, icdb
-                    );
+                statistics.outputRuns();
+            } finally {
+                for (DBConnection connection : connections) {
+                    connection.close();
                 }
             }
-
-
-        statistics.outputRuns();
+        }
     }
 
     /**
@@ -294,6 +335,9 @@ public class ICDBTool {
         DBConnection icdb = DBConnection.connect(dbConfig.icdbSchema, dbConfig);
         final BenchmarkCommand benchmarkCommand = cmd.benchmarkCommand;
         final String dbSchema = benchmarkCommand.schemaName != null ? benchmarkCommand.schemaName : dbConfig.icdbSchema;
+        final BenchmarkRunner runner = new BenchmarkRunner(
+                benchmarkCommand.warmup, benchmarkCommand.iterations, !benchmarkCommand.keepOutliers
+        );
 
         final AlgorithmType algorithm = dbConfig.codeGen.getAlgorithm();
         final Granularity granularity = dbConfig.granularity;
@@ -307,24 +351,26 @@ public class ICDBTool {
 
         Statistics insertStatistics = new Statistics(
             new StatisticsMetadata(
-                    algorithm, granularity, dbSchema, benchmarkCommand.fetch, benchmarkCommand.threads, "insert"
+                    algorithm, granularity, dbSchema, benchmarkCommand.fetch, benchmarkCommand.threads, "insert",
+                    runner.getWarmup(), runner.getIterations(), 1, runner.isTrimOutliers()
             ),
-            new File("./src/main/resources/statistics/" + algorithm + "-" + granularity + "-insert.csv")
+            statisticsFile(benchmarkCommand.outputPath, dbConfig, "insert", 1)
         );
         Statistics selectStatistics = new Statistics(
                 new StatisticsMetadata(
-                        algorithm, granularity, dbSchema, benchmarkCommand.fetch, benchmarkCommand.threads, "select"
+                        algorithm, granularity, dbSchema, benchmarkCommand.fetch, benchmarkCommand.threads, "select",
+                        runner.getWarmup(), runner.getIterations(), 1, runner.isTrimOutliers()
                 ),
-                new File("./src/main/resources/statistics/" + algorithm + "-" + granularity + "-select.csv")
+                statisticsFile(benchmarkCommand.outputPath, dbConfig, "select", 1)
         );
         Statistics deleteStatistics = new Statistics(
                 new StatisticsMetadata(
-                        algorithm, granularity, dbSchema, benchmarkCommand.fetch, benchmarkCommand.threads, "delete"
+                        algorithm, granularity, dbSchema, benchmarkCommand.fetch, benchmarkCommand.threads, "delete",
+                        runner.getWarmup(), runner.getIterations(), 1, runner.isTrimOutliers()
                 ),
-                new File("./src/main/resources/statistics/" + algorithm + "-" + granularity + "-delete.csv")
+                statisticsFile(benchmarkCommand.outputPath, dbConfig, "delete", 1)
         );
 
-
         List<String> insertQueries = Arrays.stream(insertFiles)
             .sorted((f1, f2) -> f1.toString().compareTo(f2.toString()))
             .map(file -> {
@@ -352,37 +398,28 @@ public class ICDBTool {
 
 
         for (int i = 0; i < insertQueries.size(); i++) {
-            final int numRuns = 5; // Number of the same run
-
-            for (int j = 0; j < numRuns; j++) {
-                RunStatistics insertRun = new RunStatistics();
-                RunStatistics selectRun = new RunStatistics();
-                RunStatistics deleteRun = new RunStatistics();
-                insertRun.setRun(j+1);
-                selectRun.setRun(j+1);
-                deleteRun.setRun(j+1);
+            final String insertQuery = insertQueries.get(i);
+            final String selectQuery = selectQueries.get(i);
+            final String deleteQuery = deleteQueries.get(i);
 
-                // Insert values, then delete
-                Stopwatch executionTime = Stopwatch.createStarted();
+            // Insert values, then delete, leaving the database as it was for the next iteration
+            runner.run("Benchmark " + (i + 1), 1, (client, runs) -> {
+                final RunStatistics insertRun = runs[0];
+                final RunStatistics selectRun = runs[1];
+                final RunStatistics deleteRun = runs[2];
 
                 if (benchmarkCommand.baseline) {
-                    executeBaselineRun(insertQueries.get(i), dbConfig, insertRun);
-                    executeBaselineRun(selectQueries.get(i), dbConfig, selectRun);
-                    executeBaselineRun(deleteQueries.get(i), dbConfig, deleteRun);
+                    executeBaselineRun(insertQuery, dbConfig, insertRun);
+                    executeBaselineRun(selectQuery, dbConfig, selectRun);
+                    executeBaselineRun(deleteQuery, dbConfig, deleteRun);
                 } else {
-                    executeQueryRun(insertQueries.get(i), benchmarkCommand.fetch, benchmarkCommand.threads, dbConfig, insertRun, true,icdb);
-                    executeQueryRun(selectQueries.get(i), benchmarkCommand.fetch, benchmarkCommand.threads, dbConfig, selectRun, true,icdb);
-                    executeQueryRun(deleteQueries.get(i), benchmarkCommand.fetch, benchmarkCommand.threads, dbConfig, deleteRun, true,icdb);
+                    executeQueryRun(insertQuery, benchmarkCommand.fetch, benchmarkCommand.threads, dbConfig, insertRun, true,icdb);
+                    executeQueryRun(selectQuery, benchmarkCommand.fetch, benchmarkCommand.threads, dbConfig, selectRun, true,icdb);
+                    executeQueryRun(deleteQuery, benchmarkCommand.fetch, benchmarkCommand.threads, dbConfig, deleteRun, true,icdb);
                 }
 
-                logger.debug("Run time: {}", executionTime.elapsed(ICDBTool.TIME_UNIT));
-
                 insertRun.setQueryFetchSize(deleteRun.getQueryFetchSize());
-
-                deleteStatistics.addRun(deleteRun);
-                selectStatistics.addRun(selectRun);
-                insertStatistics.addRun(insertRun);
-            }
+            }, null, insertStatistics, selectStatistics, deleteStatistics);
         }
 
         deleteStatistics.outputRuns();
@@ -390,16 +427,201 @@ public class ICDBTool {
         insertStatistics.outputRuns();
     }
 
+    /**
+     * Generates a synthetic employees database
+     */
+    private static void generate(CommandLineArgs cmd, UserConfig dbConfig) {
+        final GenerateCommand generateCommand = cmd.generateCommand;
+
+        new DataGenerator(generateCommand.scale, generateCommand.width, generateCommand.keyType, generateCommand.seed)
+                .generate(generateCommand.schemaName, dbConfig);
+    }
+
+    /**
+     * Generates a database at each scale factor, converts it with every algorithm and granularity, and measures the
+     * throughput of the convert-db, select, aggregate, insert and delete workloads over the data size
+     */
+    private static void suite(CommandLineArgs cmd, UserConfig dbConfig) {
+        final SuiteCommand suiteCommand = cmd.suiteCommand;
+        final BenchmarkRunner runner = new BenchmarkRunner(
+                suiteCommand.warmup, suiteCommand.iterations, !suiteCommand.keepOutliers
+        );
+        final ThroughputCurve curve = new ThroughputCurve(new File(suiteCommand.outputPath, "suite-" + START_TIME + ".csv"));
+
+        final List<AlgorithmType> algorithms = new ArrayList<>();
+        final List<Granularity> granularities = new ArrayList<>();
+        try {
+            suiteCommand.algorithms.forEach(algorithm -> algorithms.add(AlgorithmType.valueOf(algorithm.toUpperCase())));
+            suiteCommand.granularities.forEach(granularity -> granularities.add(Granularity.valueOf(granularity.toUpperCase())));
+        } catch (IllegalArgumentException e) {
+            logger.error("Invalid algorithm or granularity: {}", e.getMessage());
+            return;
+        }
+
+        for (double scale : suiteCommand.scales) {
+            final DataGenerator generator = new DataGenerator(scale, suiteCommand.width, suiteCommand.keyType, suiteCommand.seed);
+            final String schema = suiteCommand.prefix + "_sf" + String.valueOf(scale).replace('.', '_');
+            generator.generate(schema, dbConfig);
+
+            for (AlgorithmType algorithm : algorithms) {
+                for (Granularity granularity : granularities) {
+                    final UserConfig config = new UserConfig(
+                            cmd.getConfig().with(schema, schema + "_icdb", algorithm, granularity)
+                    );
+
+                    // Conversion runs once, it takes far longer than the other workloads
+                    Stopwatch conversionTime = Stopwatch.createStarted();
+                    convertDB(new ConvertDBCommand(), config);
+                    final long conversionNanos = Math.max(conversionTime.elapsed(TimeUnit.NANOSECONDS), 1);
+                    curve.add(scale, generator.getRows(), algorithm, granularity, "convert-db",
+                            new Summary(Collections.singletonList(generator.getRows() * 1e9 / conversionNanos)));
+
+                    // Each combination opens its own connections, close them before the next one
+                    try (DBConnection icdb = DBConnection.connect(config.icdbSchema, config)) {
+                        final String insertQuery = generator.insertQuery(suiteCommand.batch);
+                        final String deleteQuery = generator.deleteQuery();
+                        final Runnable insert = () -> executeQueryRun(
+                                insertQuery, suiteCommand.fetch, suiteCommand.threads, config, new RunStatistics(), true, icdb
+                        );
+                        final Runnable delete = () -> executeQueryRun(
+                                deleteQuery, suiteCommand.fetch, suiteCommand.threads, config, new RunStatistics(), true, icdb
+                        );
+
+                        suiteWorkload("select", generator.selectQuery(), generator.getSalaries(), null,
+                                suiteCommand, runner, config, icdb, scale, generator.getRows(), curve);
+                        suiteWorkload("aggregate", generator.aggregateQuery(), generator.getSalaries(), null,
+                                suiteCommand, runner, config, icdb, scale, generator.getRows(), curve);
+
+                        // Each insert is undone after its iteration, and each delete has its rows inserted again
+                        suiteWorkload("insert", insertQuery, suiteCommand.batch, delete,
+                                suiteCommand, runner, config, icdb, scale, generator.getRows(), curve);
+                        insert.run();
+                        suiteWorkload("delete", deleteQuery, suiteCommand.batch, insert,
+                                suiteCommand, runner, config, icdb, scale, generator.getRows(), curve);
+                        delete.run();
+                    }
+                }
+            }
+
+            // Keep the points measured so far, in case a larger scale fails
+            curve.output();
+        }
+    }
+
+    /**
+     * Measures one workload of the suite, adding its throughput in rows per second to the curve
+     * @param rows the number of rows the query processes
+     */
+    private static void suiteWorkload(String workload, String query, long rows, Runnable reset, SuiteCommand suiteCommand,
+                                      BenchmarkRunner runner, UserConfig config, DBConnection icdb, double scale,
+                                      long totalRows, ThroughputCurve curve) {
+        final Statistics statistics = new Statistics(
+                new StatisticsMetadata(
+                        config.codeGen.getAlgorithm(), config.granularity, config.icdbSchema, suiteCommand.fetch,
+                        suiteCommand.threads, query, runner.getWarmup(), runner.getIterations(), 1, runner.isTrimOutliers()
+                ),
+                statisticsFile(suiteCommand.outputPath, config, config.schema + "-" + workload, 1)
+        );
+
+        runner.run(workload, 1, (client, runs) -> executeQueryRun(
+                query, suiteCommand.fetch, suiteCommand.threads, config, runs[0], true, icdb
+        ), reset, statistics);
+
+        statistics.outputRuns();
+        curve.add(scale, totalRows, config.codeGen.getAlgorithm(), config.granularity, workload,
+                statistics.summarize("Run Time", runTime -> rows * 1000.0 / Math.max(TIME_UNIT.toMillis(runTime), 1)));
+    }
+
+    /**
+     * Re-signs the codes of the ICDB with the current key version, after a key or algorithm rotation
+     */
+    private static void resign(CommandLineArgs cmd, UserConfig dbConfig) {
+        final ResignCommand resignCommand = cmd.resignCommand;
+
+        DBConnection icdb = DBConnection.connect(dbConfig.icdbSchema, dbConfig);
+        Resigner resigner = new Resigner(icdb, dbConfig, resignCommand.batchSize,
+                resignCommand.rowsPerSecond, resignCommand.kbPerSecond * 1024);
+
+        resigner.resign(resignCommand.tables.isEmpty() ? null : resignCommand.tables);
+    }
+
+    /**
+     * Compares two result sets, printing the difference of every metric of the groups found in both
+     */
+    private static void compare(CommandLineArgs cmd) {
+        final CompareCommand compareCommand = cmd.compareCommand;
+
+        final List<ResultRecord> baseline;
+        final List<ResultRecord> candidate;
+        try {
+            baseline = runs(ResultStore.read(new File(compareCommand.baseline)), compareCommand.baselineRun);
+            candidate = runs(ResultStore.read(new File(compareCommand.candidate)), compareCommand.candidateRun);
+        } catch (IOException | JsonParseException e) {
+            logger.error("Unable to read the results: {}", e.getMessage());
+            return;
+        }
+        logger.info("Comparing {} baseline run(s) with {} candidate run(s)", baseline.size(), candidate.size());
+
+        Comparison comparison = new Comparison(baseline, candidate, compareCommand.threshold, compareCommand.alpha);
+        comparison.getDifferences().forEach(difference -> logger.info(difference));
+
+        final long improvements = comparison.getDifferences().stream()
+                .filter(difference -> difference.getVerdict() == Comparison.Verdict.IMPROVEMENT)
+                .count();
+        logger.info("{} regression(s), {} improvement(s) beyond {}% at p < {}",
+                comparison.getRegressions().size(), improvements, compareCommand.threshold, compareCommand.alpha);
+
+        if (compareCommand.failOnRegression && !comparison.getRegressions().isEmpty()) {
+            System.exit(2);
+        }
+    }
+
+    /**
+     * @return the records of the run, or all records if no run id is given
+     */
+    private static List<ResultRecord> runs(List<ResultRecord> records, String runId) {
+        return runId == null ? records : records.stream()
+                .filter(record -> record.getRunId().equals(runId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return a statistics file named after the configuration and the start of this process, so that benchmarks
+     * never overwrite earlier results
+     */
+    private static File statisticsFile(String directory, UserConfig dbConfig, String kind, int clients) {
+        return new File(directory, String.format(
+                "%s-%s-%s-%dc-%s.csv", dbConfig.codeGen.getAlgorithm(), dbConfig.granularity, kind, clients, START_TIME
+        ));
+    }
+
+    /**
+     * @return a statement emptying the table of an INSERT ... VALUES query, or null if the table cannot be found
+     */
+    private static String truncateStatement(String insertQuery) {
+        final BulkInsert insert = BulkInsert.parse(insertQuery);
+        return insert == null ? null : "TRUNCATE TABLE `" + insert.getTable() + "`";
+    }
+
     /**
      * Executes a query
      */
     private static void executeQueryRun(String query, DataSource.Fetch fetch, int threads, UserConfig dbConfig, RunStatistics run, boolean execute,DBConnection icdb) {
+        executeQueryRun(query, fetch, threads, 1, dbConfig, run, execute, icdb);
+    }
 
+    /**
+     * Executes a query, splitting the verify query into the given number of partitions
+     */
+    private static void executeQueryRun(String query, DataSource.Fetch fetch, int threads, int partitions, UserConfig dbConfig, RunStatistics run, boolean execute,DBConnection icdb) {
+
+        final long span = Tracer.begin();
         ICDBQuery icdbQuery = dbConfig.granularity.getQuery(query, icdb, dbConfig.codeGen, run);
 
         logger.info("Original Query: {}", Format.limit(query));
 
         QueryVerifier verifier = dbConfig.granularity.getVerifier(icdb, dbConfig, threads, fetch, run);
+        verifier.setPartitions(partitions);
 
         if (!icdbQuery.needsVerification()) {
             if (execute) {
@@ -424,6 +646,8 @@ public class ICDBTool {
             logger.info("List of corrupted data items:");
             logger.info(verifier.getError());
         }
+
+        Tracer.end("query", span);
     }
 
     /**
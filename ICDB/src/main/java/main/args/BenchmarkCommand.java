@@ -16,10 +16,10 @@ public class BenchmarkCommand {
     @Parameter(names = { "-db", "--database" }, description = "Specify a custom database schema name")
     public String schemaName;
 
-    @Parameter(names = { "-f", "--fetch" }, description = "Use eager or lazy fetching. (Default: LAZY)")
-    public DataSource.Fetch fetch = DataSource.Fetch.LAZY;
+    @Parameter(names = { "-f", "--fetch" }, description = "Use eager, lazy or streaming fetching, or AUTO to choose one per query from its estimated result size. (Default: AUTO)")
+    public DataSource.Fetch fetch = DataSource.Fetch.AUTO;
 
-    @Parameter(names = { "-t", "--threads" }, description = "The number of worker threads for verification. An argument of 0 will use the JVM default configuration, which usually results in the best parallel performance. (Default: 0)")
+    @Parameter(names = { "-t", "--threads" }, description = "The number of worker threads for verification. An argument of 0 adapts the number of threads and their batch size to the measured verify cost and fetch rate. (Default: 0)")
     public Integer threads = 0;
 
     @Parameter(names = { "-s", "--select" }, description = "Specify a path for all select queries")
@@ -37,4 +37,16 @@ public class BenchmarkCommand {
     @Parameter(names = { "-b", "--baseline" }, description = "Do baseline queries")
     public Boolean baseline = false;
 
+    @Parameter(names = { "-w", "--warmup" }, description = "The number of warmup iterations to run and discard before measuring. (Default: 2)")
+    public Integer warmup = 2;
+
+    @Parameter(names = { "-n", "--iterations" }, description = "The number of measured iterations. (Default: 5)")
+    public Integer iterations = 5;
+
+    @Parameter(names = { "-o", "--output" }, description = "The directory to write the statistics CSV files to. (Default: ./src/main/resources/statistics)")
+    public String outputPath = "./src/main/resources/statistics";
+
+    @Parameter(names = { "--keep-outliers" }, description = "Keep runs outside Tukey's fences in the mean and confidence interval")
+    public Boolean keepOutliers = false;
+
 }
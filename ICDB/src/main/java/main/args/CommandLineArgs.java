@@ -21,6 +21,10 @@ public class CommandLineArgs {
     public static final String EXECUTE_QUERY = "execute-query";
     public static final String EXECUTE_QUERY_SINGLE_BENCHMARK = "execute-query-benchmark";
     public static final String BENCHMARK = "benchmark";
+    public static final String GENERATE = "generate";
+    public static final String SUITE = "suite";
+    public static final String COMPARE = "compare";
+    public static final String RESIGN = "resign";
 
     public final JCommander jCommander;
 
@@ -29,12 +33,28 @@ public class CommandLineArgs {
     public final ExecuteQueryCommand executeQueryCommand;
     public final MultirunBenchmarkCommand multirunbenchmarkCommand;
     public final BenchmarkCommand benchmarkCommand;
+    public final GenerateCommand generateCommand;
+    public final SuiteCommand suiteCommand;
+    public final CompareCommand compareCommand;
+    public final ResignCommand resignCommand;
 
 
 
     @Parameter(names = {"-c", "--config"}, converter = ReaderConverter.class, description = "The path of the JSON configuration file")
     public Reader readerConfig = new FileReader("config.json");
 
+    @Parameter(names = {"--metrics-port"}, description = "Serve live metrics as Prometheus text at http://localhost:<port>/metrics (metrics are always exported over JMX)")
+    public int metricsPort = 0;
+
+    @Parameter(names = {"--results"}, description = "The JSON Lines result store every run is appended to")
+    public String resultsPath = "./src/main/resources/statistics/results.jsonl";
+
+    @Parameter(names = {"--trace"}, description = "Write a Chrome trace (chrome://tracing, Perfetto) of the phases of every query to this file")
+    public String tracePath;
+
+    @Parameter(names = {"--fetch-memory"}, description = "The memory (MB) a fetched result may take when the fetch is AUTO. (Default: a quarter of the maximum heap)")
+    public int fetchMemory = 0;
+
     private ConfigArgs config;
 
     public CommandLineArgs(String[] args) throws FileNotFoundException {
@@ -46,12 +66,20 @@ public class CommandLineArgs {
         executeQueryCommand = new ExecuteQueryCommand();
         benchmarkCommand = new BenchmarkCommand();
         multirunbenchmarkCommand= new MultirunBenchmarkCommand();
+        generateCommand = new GenerateCommand();
+        suiteCommand = new SuiteCommand();
+        compareCommand = new CompareCommand();
+        resignCommand = new ResignCommand();
 
         jCommander.addCommand(convertDBCommand);
         jCommander.addCommand(convertQueryCommand);
         jCommander.addCommand(executeQueryCommand);
         jCommander.addCommand(benchmarkCommand);
         jCommander.addCommand(multirunbenchmarkCommand);
+        jCommander.addCommand(generateCommand);
+        jCommander.addCommand(suiteCommand);
+        jCommander.addCommand(compareCommand);
+        jCommander.addCommand(resignCommand);
 
         try {
             jCommander.parse(args);
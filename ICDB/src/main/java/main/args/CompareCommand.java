@@ -0,0 +1,35 @@
+package main.args;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+/**
+ * <p>
+ *     JCommander Command for comparing two benchmark result sets
+ * </p>
+ */
+@Parameters(commandNames = { CommandLineArgs.COMPARE }, commandDescription = "Compare two benchmark result sets and flag significant regressions")
+public class CompareCommand {
+
+    @Parameter(names = { "--baseline" }, required = true, description = "The baseline results: a JSON Lines result store or a statistics CSV file")
+    public String baseline;
+
+    @Parameter(names = { "--candidate" }, required = true, description = "The candidate results: a JSON Lines result store or a statistics CSV file")
+    public String candidate;
+
+    @Parameter(names = { "--baseline-run" }, description = "Only compare the baseline runs with this run id")
+    public String baselineRun;
+
+    @Parameter(names = { "--candidate-run" }, description = "Only compare the candidate runs with this run id")
+    public String candidateRun;
+
+    @Parameter(names = { "--threshold" }, description = "The change in percent beyond which a significant difference is flagged. (Default: 5)")
+    public Double threshold = 5.0;
+
+    @Parameter(names = { "--alpha" }, description = "The significance level of Welch's t-test. (Default: 0.05)")
+    public Double alpha = 0.05;
+
+    @Parameter(names = { "--fail-on-regression" }, description = "Exit with status 2 if any regression is flagged")
+    public Boolean failOnRegression = false;
+
+}
@@ -25,10 +25,13 @@ public class ExecuteQueryCommand extends ConfigCommand {
     @Parameter(names = { "-C", "--convert" }, description = "Convert the query before executing")
     public Boolean convert = false;
 
-    @Parameter(names = { "-f", "--fetch" }, description = "Use eager or lazy fetching. (Default: LAZY)")
-    public DataSource.Fetch fetch = DataSource.Fetch.LAZY;
+    @Parameter(names = { "-f", "--fetch" }, description = "Use eager, lazy or streaming fetching, or AUTO to choose one per query from its estimated result size. (Default: AUTO)")
+    public DataSource.Fetch fetch = DataSource.Fetch.AUTO;
 
-    @Parameter(names = { "-t", "--threads" }, description = "The number of worker threads for verification. An argument of 0 will use the JVM default configuration, which usually results in the best parallel performance. (Default: 1)")
+    @Parameter(names = { "-t", "--threads" }, description = "The number of worker threads for verification. An argument of 0 adapts the number of threads and their batch size to the measured verify cost and fetch rate. (Default: 1)")
     public Integer threads = 1;
 
+    @Parameter(names = { "-p", "--partitions" }, description = "Split single-table verify queries into this many primary key ranges, fetched concurrently over pooled connections. (Default: 1)")
+    public Integer partitions = 1;
+
 }
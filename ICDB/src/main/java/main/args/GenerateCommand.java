@@ -0,0 +1,30 @@
+package main.args;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import main.args.option.KeyType;
+
+/**
+ * <p>
+ *     JCommander Command for generating an employees-shaped database at a scale factor
+ * </p>
+ */
+@Parameters(commandNames = { CommandLineArgs.GENERATE }, commandDescription = "Generate a synthetic employees database")
+public class GenerateCommand {
+
+    @Parameter(names = { "-db", "--database" }, required = true, description = "The schema to generate. An existing schema with this name is dropped")
+    public String schemaName;
+
+    @Parameter(names = { "--scale" }, description = "The scale factor; each unit adds 1000 employees with 10 salaries each. (Default: 1)")
+    public Double scale = 1.0;
+
+    @Parameter(names = { "--width" }, description = "The number of extra VARCHAR columns in each table. (Default: 0)")
+    public Integer width = 0;
+
+    @Parameter(names = { "--key" }, description = "The type of the employee number key, INT or STRING. (Default: INT)")
+    public KeyType keyType = KeyType.INT;
+
+    @Parameter(names = { "--seed" }, description = "The seed the data is derived from. (Default: 42)")
+    public Long seed = 42L;
+
+}
@@ -4,6 +4,9 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import io.source.DataSource;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * <p>
  *     JCommander Command for executing an ICDB query
@@ -12,7 +15,7 @@ import io.source.DataSource;
  *
  * @author Dan Kondratyuk
  */
-@Parameters(commandNames = { CommandLineArgs.EXECUTE_QUERY_SINGLE_BENCHMARK }, commandDescription = "Execute queries for a loop of 5 on an ICDB Schema")
+@Parameters(commandNames = { CommandLineArgs.EXECUTE_QUERY_SINGLE_BENCHMARK }, commandDescription = "Execute a query for warmup and measured iterations on an ICDB Schema")
 public class MultirunBenchmarkCommand extends ConfigCommand {
 
     @Parameter(names = { "-q", "--query" }, description = "Execute a query as an argument")
@@ -21,11 +24,11 @@ public class MultirunBenchmarkCommand extends ConfigCommand {
     @Parameter(names = { "-C", "--convert" }, description = "Convert the query before executing")
     public Boolean convert = false;
 
-    @Parameter(names = { "-f", "--fetch" }, description = "Use eager or lazy fetching. (Default: LAZY)")
-    public DataSource.Fetch fetch = DataSource.Fetch.LAZY;
+    @Parameter(names = { "-f", "--fetch" }, description = "Use eager, lazy or streaming fetching, or AUTO to choose one per query from its estimated result size. (Default: AUTO)")
+    public DataSource.Fetch fetch = DataSource.Fetch.AUTO;
 
-    @Parameter(names = { "-t", "--threads" }, description = "The number of worker threads for verification. An argument of 0 will use the JVM default configuration, which usually results in the best parallel performance. (Default: 1)")
-    public Integer threads = 1;
+    @Parameter(names = { "-t", "--threads" }, description = "The number of worker threads for verification. An argument of 0 adapts the number of threads and their batch size to the measured verify cost and fetch rate. (Default: 0)")
+    public Integer threads = 0;
 
     @Parameter(names = { "-i", "--insert" }, description = "check if insert query")
     public Boolean insert = false;
@@ -36,5 +39,22 @@ public class MultirunBenchmarkCommand extends ConfigCommand {
     @Parameter(names = { "-db", "--dbdelete" }, description = "request for delete from original DB")
     public Boolean dbDelete = false;
 
+    @Parameter(names = { "-w", "--warmup" }, description = "The number of warmup iterations to run and discard before measuring. (Default: 2)")
+    public Integer warmup = 2;
+
+    @Parameter(names = { "-n", "--iterations" }, description = "The number of measured iterations. (Default: 5)")
+    public Integer iterations = 5;
+
+    @Parameter(names = { "-o", "--output" }, description = "The directory to write the statistics CSV files to. (Default: ./src/main/resources/statistics)")
+    public String outputPath = "./src/main/resources/statistics";
+
+    @Parameter(names = { "--keep-outliers" }, description = "Keep runs outside Tukey's fences in the mean and confidence interval")
+    public Boolean keepOutliers = false;
+
+    @Parameter(names = { "--clients" }, description = "Comma-separated concurrency levels; each level is benchmarked with that many clients running the query at once, on their own connections. Inserts always use one client. (Default: 1)")
+    public List<Integer> clients = Collections.singletonList(1);
+
+    @Parameter(names = { "--reset" }, description = "A statement to restore the database after every insert iteration. (Default: truncate the table of the insert)")
+    public String reset;
 
 }
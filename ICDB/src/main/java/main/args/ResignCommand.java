@@ -0,0 +1,29 @@
+package main.args;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *     JCommander Command for re-signing an ICDB with the current key, after the key or algorithm has been rotated
+ * </p>
+ */
+@Parameters(commandNames = { CommandLineArgs.RESIGN }, commandDescription = "Re-sign the codes of an ICDB with the current key version, online")
+public class ResignCommand {
+
+    @Parameter(names = { "--tables" }, description = "Comma-separated tables to re-sign. (Default: every table)")
+    public List<String> tables = new ArrayList<>();
+
+    @Parameter(names = { "--batch-size" }, description = "The number of rows read and rewritten per transaction. (Default: 100)")
+    public Integer batchSize = 100;
+
+    @Parameter(names = { "--rows-per-second" }, description = "The number of rows read per second, or 0 for no limit. (Default: 1000)")
+    public Double rowsPerSecond = 1000.0;
+
+    @Parameter(names = { "--kb-per-second" }, description = "The data and codes read and written per second (KB), or 0 for no limit. (Default: 0)")
+    public Double kbPerSecond = 0.0;
+
+}
@@ -0,0 +1,61 @@
+package main.args;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import io.source.DataSource;
+import main.args.option.KeyType;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>
+ *     JCommander Command for the end-to-end throughput suite over generated databases
+ * </p>
+ */
+@Parameters(commandNames = { CommandLineArgs.SUITE }, commandDescription = "Measure throughput over data size for each algorithm and granularity")
+public class SuiteCommand {
+
+    @Parameter(names = { "--scales" }, description = "Comma-separated scale factors of the generated databases. (Default: 1,2,4)")
+    public List<Double> scales = Arrays.asList(1.0, 2.0, 4.0);
+
+    @Parameter(names = { "--algorithms" }, description = "Comma-separated algorithms to convert each database with. (Default: AES,SHA,RSA)")
+    public List<String> algorithms = Arrays.asList("AES", "SHA", "RSA");
+
+    @Parameter(names = { "--granularities" }, description = "Comma-separated granularities to convert each database with. (Default: TUPLE,FIELD)")
+    public List<String> granularities = Arrays.asList("TUPLE", "FIELD");
+
+    @Parameter(names = { "--width" }, description = "The number of extra VARCHAR columns in each table. (Default: 0)")
+    public Integer width = 0;
+
+    @Parameter(names = { "--key" }, description = "The type of the employee number key, INT or STRING. (Default: INT)")
+    public KeyType keyType = KeyType.INT;
+
+    @Parameter(names = { "--seed" }, description = "The seed the data is derived from. (Default: 42)")
+    public Long seed = 42L;
+
+    @Parameter(names = { "--prefix" }, description = "The prefix of the generated schemas, which are dropped and recreated. (Default: icdb_suite)")
+    public String prefix = "icdb_suite";
+
+    @Parameter(names = { "--batch" }, description = "The number of rows inserted and deleted by the insert and delete workloads. (Default: 1000)")
+    public Integer batch = 1000;
+
+    @Parameter(names = { "-f", "--fetch" }, description = "Use eager, lazy or streaming fetching, or AUTO to choose one per query from its estimated result size. (Default: AUTO)")
+    public DataSource.Fetch fetch = DataSource.Fetch.AUTO;
+
+    @Parameter(names = { "-t", "--threads" }, description = "The number of worker threads for verification. An argument of 0 adapts the number of threads and their batch size to the measured verify cost and fetch rate. (Default: 0)")
+    public Integer threads = 0;
+
+    @Parameter(names = { "-w", "--warmup" }, description = "The number of warmup iterations to run and discard before measuring. (Default: 2)")
+    public Integer warmup = 2;
+
+    @Parameter(names = { "-n", "--iterations" }, description = "The number of measured iterations. (Default: 5)")
+    public Integer iterations = 5;
+
+    @Parameter(names = { "-o", "--output" }, description = "The directory to write the statistics CSV files to. (Default: ./src/main/resources/statistics)")
+    public String outputPath = "./src/main/resources/statistics";
+
+    @Parameter(names = { "--keep-outliers" }, description = "Keep runs outside Tukey's fences in the mean and confidence interval")
+    public Boolean keepOutliers = false;
+
+}
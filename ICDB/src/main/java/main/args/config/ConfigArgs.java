@@ -1,7 +1,13 @@
 package main.args.config;
 
 import crypto.AlgorithmType;
+import crypto.CryptoBackend;
+import main.args.option.DeleteMode;
 import main.args.option.Granularity;
+import main.args.option.StorageLayout;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a configuration file
@@ -20,4 +26,43 @@ public class ConfigArgs {
     public String macKey;
     public String rsaKeyFile;
     public boolean validateIcrl;
+    public DeleteMode deleteMode;
+    public CryptoBackend cryptoBackend;
+    public Integer pageSize;
+    public StorageLayout storageLayout;
+    public Integer tagLength;
+    public Map<String, List<List<String>>> columnGroups;
+    public Integer keyVersion;
+    public String previousMacKey;
+    public String previousRsaKeyFile;
+    public AlgorithmType previousAlgorithm;
+
+    /**
+     * @return a copy of this configuration with other schemas, algorithm and granularity
+     */
+    public ConfigArgs with(String schema, String icdbSchema, AlgorithmType algorithm, Granularity granularity) {
+        final ConfigArgs copy = new ConfigArgs();
+        copy.ip = ip;
+        copy.port = port;
+        copy.user = user;
+        copy.password = password;
+        copy.schema = schema;
+        copy.icdbSchema = icdbSchema;
+        copy.granularity = granularity;
+        copy.algorithm = algorithm;
+        copy.macKey = macKey;
+        copy.rsaKeyFile = rsaKeyFile;
+        copy.validateIcrl = validateIcrl;
+        copy.deleteMode = deleteMode;
+        copy.cryptoBackend = cryptoBackend;
+        copy.pageSize = pageSize;
+        copy.storageLayout = storageLayout;
+        copy.tagLength = tagLength;
+        copy.columnGroups = columnGroups;
+        copy.keyVersion = keyVersion;
+        copy.previousMacKey = previousMacKey;
+        copy.previousRsaKeyFile = previousRsaKeyFile;
+        copy.previousAlgorithm = previousAlgorithm;
+        return copy;
+    }
 }
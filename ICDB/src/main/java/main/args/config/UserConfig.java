@@ -2,9 +2,15 @@ package main.args.config;
 
 import crypto.AlgorithmType;
 import crypto.CodeGen;
+import crypto.CryptoBackend;
 import crypto.ECParams;
 import crypto.Key;
+import crypto.KeyRing;
+import io.ColumnGroups;
+import io.PageAggregates;
+import main.args.option.DeleteMode;
 import main.args.option.Granularity;
+import main.args.option.StorageLayout;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -27,6 +33,16 @@ public class UserConfig {
         logger.info("Algorithm: {}", configArgs.algorithm);
         logger.info("Granularity: {}", configArgs.granularity);
         logger.info("ICDB Schema: {}", configArgs.icdbSchema);
+        logger.info("Delete Mode: {}", userConfig.deleteMode);
+        logger.info("Crypto Backend: {}", CryptoBackend.getCurrent());
+        logger.info("Page Size: {}", PageAggregates.getPageSize());
+        logger.info("Storage Layout: {}", userConfig.storageLayout);
+        logger.info("Tag Length: {}", userConfig.codeGen.isTruncated() ? userConfig.codeGen.getTagLength() : "full");
+        logger.info("Column Groups: {}", ColumnGroups.getConfigured());
+        logger.info("Key Version: {}", KeyRing.getVersion());
+        if (KeyRing.isRotating()) {
+            logger.info("Previous Key: version {}, {}", KeyRing.getVersion() - 1, KeyRing.getPrevious().getAlgorithm());
+        }
         logger.info("------------------------------");
 
         return userConfig;
@@ -46,6 +62,8 @@ public class UserConfig {
     public Granularity granularity;
     public final CodeGen codeGen;
     public final boolean validateIcrl;
+    public final DeleteMode deleteMode;
+    public final StorageLayout storageLayout;
 
     public UserConfig(ConfigArgs configArgs) {
         ip = configArgs.ip;
@@ -56,11 +74,29 @@ public class UserConfig {
         icdbSchema = configArgs.icdbSchema;
         granularity = configArgs.granularity;
         validateIcrl = configArgs.validateIcrl;
+        deleteMode = configArgs.deleteMode == null ? DeleteMode.VERIFY : configArgs.deleteMode;
+        storageLayout = configArgs.storageLayout == null ? StorageLayout.BLOB : configArgs.storageLayout;
+        CryptoBackend.setCurrent(configArgs.cryptoBackend == null ? CryptoBackend.BC : configArgs.cryptoBackend);
+        PageAggregates.configure(configArgs.pageSize == null ? PageAggregates.DEFAULT_PAGE_SIZE : configArgs.pageSize);
+        ColumnGroups.configure(configArgs.columnGroups);
 
         final Key key = new Key(configArgs.macKey, configArgs.rsaKeyFile);
         final AlgorithmType algorithm = configArgs.algorithm;
         ECParams params=new ECParams();
         codeGen = new CodeGen(algorithm, key, params);
+        codeGen.setTagLength(configArgs.tagLength == null ? 0 : configArgs.tagLength);
+
+        // The key being rotated out, if any: each of its parts defaults to the current one
+        CodeGen previousCodeGen = null;
+        if (configArgs.previousMacKey != null || configArgs.previousRsaKeyFile != null || configArgs.previousAlgorithm != null) {
+            final Key previousKey = new Key(
+                    configArgs.previousMacKey == null ? configArgs.macKey : configArgs.previousMacKey,
+                    configArgs.previousRsaKeyFile == null ? configArgs.rsaKeyFile : configArgs.previousRsaKeyFile
+            );
+            previousCodeGen = new CodeGen(configArgs.previousAlgorithm == null ? algorithm : configArgs.previousAlgorithm, previousKey, params);
+            previousCodeGen.setTagLength(codeGen.getTagLength());
+        }
+        KeyRing.configure(configArgs.keyVersion == null ? 0 : configArgs.keyVersion, previousCodeGen);
     }
 
     public void setAlgorithm(AlgorithmType algorithm) {
@@ -0,0 +1,16 @@
+package main.args.option;
+
+/**
+ * Configures how a DELETE query is checked before it is executed
+ */
+public enum DeleteMode {
+    /**
+     * Fetch and verify every deleted row, revoking the serials of the verified rows
+     */
+    VERIFY,
+
+    /**
+     * Fetch only the serial columns of the deleted rows and revoke them, without verifying the deleted data
+     */
+    SERIAL_ONLY
+}
@@ -4,18 +4,23 @@ import crypto.CodeGen;
 import io.DBConnection;
 import io.source.DataSource;
 import main.args.config.UserConfig;
+import parse.GroupQuery;
 import parse.ICDBQuery;
+import parse.MerkleQuery;
 import parse.OCFQuery;
 import parse.OCTQuery;
 import stats.RunStatistics;
 import stats.Statistics;
 import stats.StatisticsMetadata;
+import verify.GroupQueryVerifier;
+import verify.MerkleQueryVerifier;
 import verify.OCFQueryVerifier;
 import verify.OCTQueryVerifier;
 import verify.QueryVerifier;
 
 /**
- * ICDB Granularity is configured for one code per tuple (OCT) or one code per field (OCF)
+ * ICDB Granularity is configured for one code per tuple (OCT), one code per field (OCF), one code per group of columns
+ * (see ColumnGroups), or one Merkle tree per table
  * The granularity is useful in query conversion as well as data conversion and signature verification
  *
  */
@@ -41,6 +46,28 @@ public enum Granularity {
         public QueryVerifier getVerifier(DBConnection icdb, UserConfig dbConfig, int threads, DataSource.Fetch fetch, RunStatistics statistics) {
             return new OCFQueryVerifier(icdb, dbConfig, threads, fetch, statistics);
         }
+    },
+    GROUP {
+        @Override
+        public ICDBQuery getQuery(String query, DBConnection icdb, CodeGen codeGen, RunStatistics statistics) {
+            return new GroupQuery(query, icdb, codeGen, statistics);
+        }
+
+        @Override
+        public QueryVerifier getVerifier(DBConnection icdb, UserConfig dbConfig, int threads, DataSource.Fetch fetch, RunStatistics statistics) {
+            return new GroupQueryVerifier(icdb, dbConfig, threads, fetch, statistics);
+        }
+    },
+    MERKLE {
+        @Override
+        public ICDBQuery getQuery(String query, DBConnection icdb, CodeGen codeGen, RunStatistics statistics) {
+            return new MerkleQuery(query, icdb, codeGen, statistics);
+        }
+
+        @Override
+        public QueryVerifier getVerifier(DBConnection icdb, UserConfig dbConfig, int threads, DataSource.Fetch fetch, RunStatistics statistics) {
+            return new MerkleQueryVerifier(icdb, dbConfig, threads, fetch, statistics);
+        }
     };
 
     public abstract ICDBQuery getQuery(String query, DBConnection icdb, CodeGen codeGen, RunStatistics statistics);
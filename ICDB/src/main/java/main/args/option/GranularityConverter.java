@@ -16,7 +16,7 @@ public class GranularityConverter implements IStringConverter<Granularity> {
         try {
             return Granularity.valueOf(value.toUpperCase());
         } catch (IllegalArgumentException e) {
-            throw new ParameterException("Value " + value + " is not valid. Available values are: tuple, field");
+            throw new ParameterException("Value " + value + " is not valid. Available values are: tuple, field, group, merkle");
         }
     }
 
@@ -0,0 +1,16 @@
+package main.args.option;
+
+/**
+ * The type of the employee number key in a generated database
+ */
+public enum KeyType {
+    /**
+     * An INT key, as in the employees database
+     */
+    INT,
+
+    /**
+     * A zero-padded CHAR key, which sorts like the numbers it is made of
+     */
+    STRING
+}
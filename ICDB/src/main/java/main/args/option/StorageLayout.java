@@ -0,0 +1,93 @@
+package main.args.option;
+
+import crypto.CodeGen;
+import main.args.config.UserConfig;
+import org.jooq.DataType;
+import org.jooq.impl.SQLDataType;
+import org.jooq.util.mysql.MySQLDataType;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Configures how the integrity code and serial of each tuple (OCT) or field (OCF) are stored in the ICDB
+ */
+public enum StorageLayout {
+    /**
+     * A TINYBLOB code column and a BIGINT serial column
+     */
+    BLOB,
+
+    /**
+     * A BINARY code column as wide as the codes of the algorithm (VARBINARY for RSA, whose codes vary in length), and a
+     * BIGINT serial column. The codes are stored inline in the row, without the length prefix of a blob.
+     */
+    BINARY,
+
+    /**
+     * One BINARY column holding the serial (8 bytes, big endian) followed by the code, in place of the code and serial
+     * columns of each field. Packing applies to OCF, which otherwise stores three columns per field; OCT and GROUP
+     * tables are stored as BINARY.
+     */
+    PACKED;
+
+    public static final int SERIAL_LENGTH = 8;
+
+    /**
+     * @return the configured layout, BLOB if there is no configuration
+     */
+    public static StorageLayout current() {
+        return UserConfig.getInstance() == null || UserConfig.getInstance().storageLayout == null
+                ? BLOB
+                : UserConfig.getInstance().storageLayout;
+    }
+
+    /**
+     * @return true if serials are packed with the codes, for the given granularity
+     */
+    public boolean isPacked(Granularity granularity) {
+        return this == PACKED && granularity == Granularity.FIELD;
+    }
+
+    /**
+     * @return the type of a code column (which holds the serial too if packed)
+     */
+    public DataType<byte[]> getCodeType(CodeGen codeGen, boolean packed) {
+        if (this == BLOB) {
+            return MySQLDataType.TINYBLOB;
+        }
+
+        final int length = codeGen.getCodeLength() + (packed ? SERIAL_LENGTH : 0);
+        return codeGen.getAlgorithm().isFixedLength()
+                ? SQLDataType.BINARY.length(length)
+                : SQLDataType.VARBINARY.length(length);
+    }
+
+    /**
+     * @return the serial followed by the code
+     */
+    public static byte[] pack(long serial, byte[] code) {
+        return ByteBuffer.allocate(SERIAL_LENGTH + code.length).putLong(serial).put(code).array();
+    }
+
+    /**
+     * @return the serial of a packed code
+     */
+    public static long unpackSerial(byte[] packed) {
+        return ByteBuffer.wrap(packed, 0, SERIAL_LENGTH).getLong();
+    }
+
+    /**
+     * @return the code of a packed code
+     */
+    public static byte[] unpackCode(byte[] packed) {
+        return Arrays.copyOfRange(packed, SERIAL_LENGTH, packed.length);
+    }
+
+    /**
+     * @return the SQL expression of the code of a packed column, for queries that fetch codes only
+     */
+    public static String unpackCodeSql(String column) {
+        return "SUBSTRING(" + column + ", " + (SERIAL_LENGTH + 1) + ")";
+    }
+}
@@ -0,0 +1,218 @@
+package parse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *     A streaming view of an INSERT ... VALUES statement. Instead of parsing the whole statement into an AST, the value
+ *     tuples are tokenized one at a time, so bulk loads with many thousands of rows can be converted in bounded batches.
+ *     Only literal values (strings, numbers, NULL) are supported. Anything else is rejected with an
+ *     IllegalArgumentException, so the caller can fall back to the regular parser.
+ * </p>
+ */
+public class BulkInsert {
+
+    private static final Pattern HEADER = Pattern.compile(
+            "^\\s*INSERT\\s+INTO\\s+`?([\\w$]+)`?\\s*(?:\\(([^)]*)\\))?\\s*VALUES\\s*",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    /**
+     * @return the bulk insert, or null if the query is not a plain INSERT INTO ... VALUES statement
+     */
+    public static BulkInsert parse(String query) {
+        final Matcher matcher = HEADER.matcher(query);
+        if (!matcher.find()) {
+            return null;
+        }
+
+        final List<String> columns = matcher.group(2) == null ? null : Arrays.stream(matcher.group(2).split(","))
+                .map(column -> column.trim().replace("`", ""))
+                .collect(Collectors.toList());
+
+        return new BulkInsert(query, matcher.group(1), columns, matcher.end());
+    }
+
+    private final String query;
+    private final String table;
+    private final List<String> columns;
+    private final int valuesStart;
+
+    private BulkInsert(String query, String table, List<String> columns, int valuesStart) {
+        this.query = query;
+        this.table = table;
+        this.columns = columns;
+        this.valuesStart = valuesStart;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return the column list of the statement, or null if the values follow the table's column order
+     */
+    public List<String> getColumns() {
+        return columns == null ? null : Collections.unmodifiableList(columns);
+    }
+
+    /**
+     * @return an iterator that tokenizes the value tuples on demand
+     */
+    public Iterator<List<Value>> rows() {
+        return new Iterator<List<Value>>() {
+            private int position = skipWhitespace(valuesStart);
+
+            @Override
+            public boolean hasNext() {
+                return position < query.length() && query.charAt(position) != ';';
+            }
+
+            @Override
+            public List<Value> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                expect('(');
+                final List<Value> row = new ArrayList<>(columns == null ? 8 : columns.size());
+
+                while (true) {
+                    position = skipWhitespace(position);
+                    row.add(readValue());
+                    position = skipWhitespace(position);
+
+                    if (position < query.length() && query.charAt(position) == ',') {
+                        position++;
+                    } else {
+                        expect(')');
+                        break;
+                    }
+                }
+
+                // Move past the separator to the next tuple
+                position = skipWhitespace(position);
+                if (position < query.length() && query.charAt(position) == ',') {
+                    position = skipWhitespace(position + 1);
+                }
+
+                return row;
+            }
+
+            private void expect(char c) {
+                position = skipWhitespace(position);
+                if (position >= query.length() || query.charAt(position) != c) {
+                    throw new IllegalArgumentException("Expected '" + c + "' at position " + position);
+                }
+                position++;
+            }
+
+            private Value readValue() {
+                final int start = position;
+
+                if (position < query.length() && query.charAt(position) == '\'') {
+                    final StringBuilder text = new StringBuilder();
+                    position++;
+
+                    while (position < query.length()) {
+                        final char c = query.charAt(position);
+                        if (c == '\\' && position + 1 < query.length()) {
+                            text.append(unescape(query.charAt(position + 1)));
+                            position += 2;
+                        } else if (c == '\'' && position + 1 < query.length() && query.charAt(position + 1) == '\'') {
+                            text.append('\'');
+                            position += 2;
+                        } else if (c == '\'') {
+                            position++;
+                            return new Value(query.substring(start, position), text.toString());
+                        } else {
+                            text.append(c);
+                            position++;
+                        }
+                    }
+
+                    throw new IllegalArgumentException("Unterminated string at position " + start);
+                }
+
+                while (position < query.length()) {
+                    final char c = query.charAt(position);
+                    if (c == ',' || c == ')' || Character.isWhitespace(c)) {
+                        break;
+                    }
+                    if (c == '(' || c == '\'' || c == '"') {
+                        throw new IllegalArgumentException("Unsupported value at position " + start);
+                    }
+                    position++;
+                }
+
+                final String sql = query.substring(start, position);
+                if (sql.isEmpty()) {
+                    throw new IllegalArgumentException("Missing value at position " + start);
+                }
+                if (sql.startsWith("0x") || sql.startsWith("0b")) {
+                    throw new IllegalArgumentException("Unsupported value at position " + start);
+                }
+
+                return sql.equalsIgnoreCase("NULL") ? new Value(sql, null) : new Value(sql, sql);
+            }
+        };
+    }
+
+    private int skipWhitespace(int position) {
+        while (position < query.length() && Character.isWhitespace(query.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static char unescape(char c) {
+        switch (c) {
+            case '0': return '\0';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'Z': return '\032';
+            default: return c;
+        }
+    }
+
+    /**
+     * A literal value of an inserted row
+     */
+    public static class Value {
+        private final String sql;
+        private final String text;
+
+        Value(String sql, String text) {
+            this.sql = sql;
+            this.text = text;
+        }
+
+        /**
+         * @return the value as written in the statement
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return the value as the database returns it (unquoted and unescaped), or null for NULL
+         */
+        public String getText() {
+            return text;
+        }
+
+        public boolean isNull() {
+            return text == null;
+        }
+    }
+
+}
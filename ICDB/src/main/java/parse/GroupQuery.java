@@ -0,0 +1,453 @@
+package parse;
+
+import com.google.common.base.Charsets;
+import crypto.CodeGen;
+import crypto.Convert;
+import io.ColumnGroups;
+import io.DBConnection;
+import io.DataConverter;
+import main.args.option.DeleteMode;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.ExpressionVisitorAdapter;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.HexValue;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
+import net.sf.jsqlparser.expression.operators.relational.ItemsList;
+import net.sf.jsqlparser.expression.operators.relational.MultiExpressionList;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.delete.Delete;
+import net.sf.jsqlparser.statement.insert.Insert;
+import net.sf.jsqlparser.statement.select.FromItem;
+import net.sf.jsqlparser.statement.select.Join;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectExpressionItem;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import net.sf.jsqlparser.statement.update.Update;
+import net.sf.jsqlparser.util.SelectUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import stats.RunStatistics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *     Parses queries of the GROUP granularity, where each group of columns of a table has its own integrity code and
+ *     serial (see ColumnGroups). The verify query of a single-table SELECT fetches only the groups of the columns the
+ *     query projects, filters, groups, orders or aggregates on, plus the primary key values the group codes are bound
+ *     to, so a narrow projection of a wide table fetches and verifies a fraction of each row. Joins, SELECT * and
+ *     writes verify every group of their rows.
+ * </p>
+ * <p>
+ *     In ICDB-aggregate mode the verify query fetches the serials of the groups and the aggregate query their codes,
+ *     in the same order.
+ * </p>
+ */
+public class GroupQuery extends ICDBQuery {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    public GroupQuery(String query, DBConnection icdb, CodeGen codeGen, RunStatistics statistics) {
+        super(query, icdb, codeGen, statistics);
+    }
+
+    ////////////
+    // SELECT //
+    ////////////
+
+    @Override
+    protected Statement parseConvertedQuery(Select select) {
+        return select;
+    }
+
+    @Override
+    protected Statement parseVerifyQuery(Select select) {
+        return parseSelect(select, false);
+    }
+
+    @Override
+    protected Statement parseASVQuery(Select select) {
+        return parseSelect(select, true);
+    }
+
+    /**
+     * Replaces the select items of a SELECT with the groups it reads from each table
+     * @param codesOnly true to select the group codes alone, for the aggregate query
+     * @return the converted query, or null if it cannot be verified
+     */
+    private Statement parseSelect(Select select, boolean codesOnly) {
+        if (!(select.getSelectBody() instanceof PlainSelect)) {
+            logger.warn("Only plain SELECT queries are verified in GROUP granularity");
+            return null;
+        }
+
+        final PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
+        final Map<String, String> qualifiers = getQualifiers(plainSelect);
+        if (qualifiers == null) {
+            logger.warn("Only queries on tables are verified in GROUP granularity");
+            return null;
+        }
+        queryTableName = new ArrayList<>(qualifiers.keySet());
+
+        // A join reads every group of its tables
+        final Set<String> columns = plainSelect.getJoins() == null ? getReadColumns(plainSelect) : null;
+
+        final List<SelectItem> selectItems = new ArrayList<>();
+        for (Map.Entry<String, String> table : qualifiers.entrySet()) {
+            final ColumnGroups groups = ColumnGroups.of(icdb, table.getKey());
+            if (groups == null) {
+                logger.warn("Unknown table {}", table.getKey());
+                return null;
+            }
+
+            selectItems.addAll(getSelectItems(groups, getReadGroups(groups, columns), table.getValue(), codesOnly));
+        }
+
+        plainSelect.setSelectItems(selectItems);
+        return select;
+    }
+
+    /**
+     * @return the name each table of the query is referred to by (its alias, if any), by table name, or null if the
+     * query reads from a subquery
+     */
+    private static Map<String, String> getQualifiers(PlainSelect plainSelect) {
+        final List<FromItem> fromItems = new ArrayList<>();
+        fromItems.add(plainSelect.getFromItem());
+        if (plainSelect.getJoins() != null) {
+            plainSelect.getJoins().stream().map(Join::getRightItem).forEach(fromItems::add);
+        }
+
+        final Map<String, String> qualifiers = new LinkedHashMap<>();
+        for (FromItem fromItem : fromItems) {
+            if (!(fromItem instanceof Table)) {
+                return null;
+            }
+
+            final Table table = (Table) fromItem;
+            qualifiers.put(table.getName(), table.getAlias() == null ? table.getName() : table.getAlias().getName());
+        }
+        return qualifiers;
+    }
+
+    /**
+     * @return the table each qualifier of a converted query refers to, by qualifier (its alias, if any, or its name)
+     * in lower case, or null if the query is not a plain SELECT on tables
+     */
+    public static Map<String, String> getQualifiedTables(String query) {
+        final Statement statement;
+        try {
+            statement = CCJSqlParserUtil.parse(query);
+        } catch (JSQLParserException e) {
+            return null;
+        }
+
+        if (!(statement instanceof Select) || !(((Select) statement).getSelectBody() instanceof PlainSelect)) {
+            return null;
+        }
+
+        final Map<String, String> qualifiers = getQualifiers((PlainSelect) ((Select) statement).getSelectBody());
+        if (qualifiers == null) {
+            return null;
+        }
+
+        final Map<String, String> tables = new HashMap<>();
+        qualifiers.forEach((table, qualifier) ->
+                tables.putIfAbsent(qualifier.replace("`", "").toLowerCase(), table.replace("`", "")));
+        return tables;
+    }
+
+    /**
+     * Finds the columns a single-table query reads, and the aggregate functions it computes
+     * @return the column names, or null if the query reads every column
+     */
+    private Set<String> getReadColumns(PlainSelect plainSelect) {
+        final Set<String> columns = new HashSet<>();
+        final ExpressionVisitorAdapter collector = new ExpressionVisitorAdapter() {
+            @Override
+            public void visit(Column column) {
+                columns.add(column.getColumnName().replace("`", "").toLowerCase());
+            }
+        };
+
+        for (SelectItem item : plainSelect.getSelectItems()) {
+            if (!(item instanceof SelectExpressionItem)) {
+                return null; // * or table.*
+            }
+
+            final Expression expression = ((SelectExpressionItem) item).getExpression();
+            if (expression instanceof Function) {
+                final Function function = (Function) expression;
+                if (function.getParameters() != null) {
+                    isAggregateQuery = true;
+                    //map column name with operation for verification of aggregate function result
+                    columnOperation.put(function.getName() + function.getParameters(), function.getName());
+                } else if (function.isAllColumns()) {
+                    isAggregateQuery = true;
+                    columnOperation.put(function.getName() + "(*)", function.getName());
+                }
+            }
+            expression.accept(collector);
+        }
+
+        if (plainSelect.getWhere() != null) {
+            plainSelect.getWhere().accept(collector);
+        }
+        if (plainSelect.getHaving() != null) {
+            plainSelect.getHaving().accept(collector);
+        }
+        if (plainSelect.getGroupByColumnReferences() != null) {
+            plainSelect.getGroupByColumnReferences().forEach(expression -> expression.accept(collector));
+        }
+        if (plainSelect.getOrderByElements() != null) {
+            plainSelect.getOrderByElements().forEach(element -> element.getExpression().accept(collector));
+        }
+
+        return columns;
+    }
+
+    /**
+     * @return the groups holding the given columns, the first group if none do (so that the rows are still verified),
+     * or every group if columns is null
+     */
+    private static List<ColumnGroups.Group> getReadGroups(ColumnGroups groups, Set<String> columns) {
+        if (columns == null) {
+            return groups.getGroups();
+        }
+
+        final List<ColumnGroups.Group> read = groups.getGroups().stream()
+                .filter(group -> group.getColumns().stream().anyMatch(column -> columns.contains(column.toLowerCase())))
+                .collect(Collectors.toList());
+
+        return read.isEmpty() ? groups.getGroups().subList(0, 1) : read;
+    }
+
+    /**
+     * @return the values of the given groups and the primary keys, then the group codes and serials (serials only in
+     * ICDB-aggregate mode), or the group codes alone
+     */
+    private List<SelectItem> getSelectItems(ColumnGroups groups, List<ColumnGroups.Group> read, String qualifier, boolean codesOnly) {
+        final Table table = new Table(qualifier);
+        final List<SelectItem> selectItems = new ArrayList<>();
+
+        if (codesOnly) {
+            read.forEach(group -> selectItems.add(new SelectExpressionItem(new Column(table, group.getIcColumn()))));
+            return selectItems;
+        }
+
+        final List<String> columns = new ArrayList<>();
+        read.forEach(group -> columns.addAll(group.getColumns()));
+        groups.getKeyColumns().stream()
+                .filter(key -> !columns.contains(key))
+                .forEach(columns::add);
+        columns.forEach(column -> selectItems.add(new SelectExpressionItem(new Column(table, column))));
+
+        for (ColumnGroups.Group group : read) {
+            //if aggregate, exclude the IC column (ic is handled by aggregate signature generator)
+            if (!codeGen.getAlgorithm().isAggregate()) {
+                selectItems.add(new SelectExpressionItem(new Column(table, group.getIcColumn())));
+            }
+            selectItems.add(new SelectExpressionItem(new Column(table, group.getSerialColumn())));
+        }
+
+        return selectItems;
+    }
+
+    /**
+     * Builds the verify (or aggregate) query of a DELETE or UPDATE, selecting every group of the affected rows
+     */
+    private Statement parseRowQuery(Table table, Expression where, Limit limit, List<OrderByElement> orderByElements, boolean codesOnly) {
+        final ColumnGroups groups = ColumnGroups.of(icdb, table.getName());
+        if (groups == null) {
+            logger.warn("Unknown table {}", table.getName());
+            return null;
+        }
+
+        if (!queryTableName.contains(table.getName())) {
+            queryTableName.add(table.getName());
+        }
+
+        final String qualifier = table.getAlias() == null ? table.getName() : table.getAlias().getName();
+        final List<SelectItem> selectItems = getSelectItems(groups, groups.getGroups(), qualifier, codesOnly);
+
+        final Select select = SelectUtils.buildSelectFromTableAndSelectItems(table, selectItems.toArray(new SelectItem[0]));
+        final PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
+        plainSelect.setWhere(where);
+        plainSelect.setLimit(limit);
+        plainSelect.setOrderByElements(orderByElements);
+
+        return select;
+    }
+
+    ////////////
+    // INSERT //
+    ////////////
+
+    @Override
+    protected Statement parseConvertedQuery(Insert insert) {
+        final String table = insert.getTable().getName();
+        final ItemsList itemsList = insert.getItemsList();
+
+        if (itemsList instanceof MultiExpressionList) {
+            ((MultiExpressionList) itemsList).getExprList().stream()
+                    .map(ExpressionList::getExpressions)
+                    .forEach(expressions -> convertExpressionList(table, expressions));
+        } else {
+            convertExpressionList(table, ((ExpressionList) itemsList).getExpressions());
+        }
+
+        return insert;
+    }
+
+    @Override
+    protected Statement parseVerifyQuery(Insert insert) {
+        return null; // Verifying an insert statement is not necessary
+    }
+
+    @Override
+    protected Statement parseASVQuery(Insert insert) {
+        return null;
+    }
+
+    ////////////
+    // DELETE //
+    ////////////
+
+    @Override
+    protected Statement parseConvertedQuery(Delete delete) {
+        return delete; // Delete does not require any conversion
+    }
+
+    @Override
+    protected Statement parseVerifyQuery(Delete delete) {
+        if (deleteMode == DeleteMode.SERIAL_ONLY) {
+            final String table = delete.getTable().getName();
+            final ColumnGroups groups = ColumnGroups.of(icdb, table);
+            if (groups == null) {
+                logger.warn("Unknown table {}", table);
+                return null;
+            }
+            queryTableName.add(table);
+
+            return getSerialQuery(delete, groups.getGroups().stream()
+                    .map(ColumnGroups.Group::getSerialColumn)
+                    .collect(Collectors.toList()));
+        }
+
+        // We verify delete so that we can revoke all deleted serial numbers
+        return parseRowQuery(delete.getTable(), delete.getWhere(), delete.getLimit(), delete.getOrderByElements(), false);
+    }
+
+    @Override
+    protected Statement parseASVQuery(Delete delete) {
+        if (deleteMode == DeleteMode.SERIAL_ONLY) {
+            return null; // Deleted rows are not verified, so there is no aggregate signature
+        }
+        return parseRowQuery(delete.getTable(), delete.getWhere(), delete.getLimit(), delete.getOrderByElements(), true);
+    }
+
+    ////////////
+    // UPDATE //
+    ////////////
+
+    @Override
+    protected Statement parseConvertedQuery(Update update) {
+        return update; // Executed by re-signing the updated groups of the verified rows (see UpdateExecutor)
+    }
+
+    /**
+     * The whole row is verified, as UpdateExecutor rebuilds the messages of the updated groups from every column
+     */
+    @Override
+    protected Statement parseVerifyQuery(Update update) {
+        // UpdateExecutor rejects multi-table updates, so the update has one table
+        return parseRowQuery(update.getTables().get(0), update.getWhere(), null, null, false);
+    }
+
+    @Override
+    protected Statement parseASVQuery(Update update) {
+        return parseRowQuery(update.getTables().get(0), update.getWhere(), null, null, true);
+    }
+
+    @Override
+    protected List<String> getDataColumns(String table) {
+        final ColumnGroups groups = ColumnGroups.of(icdb, table);
+        return groups == null ? null : groups.getDataColumns();
+    }
+
+    @Override
+    protected List<String[]> getCodeColumns(String table) {
+        return ColumnGroups.of(icdb, table).getGroups().stream()
+                .map(group -> new String[] { group.getIcColumn(), group.getSerialColumn() })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Each group has its own code, so only the groups of the updated columns are re-signed
+     */
+    @Override
+    protected List<Integer> getChangedMessages(String table, List<Integer> updatedColumns) {
+        final ColumnGroups groups = ColumnGroups.of(icdb, table);
+        return updatedColumns.stream()
+                .map(index -> groups.groupOf(groups.getDataColumns().get(index)).getIndex())
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * One message per group (see ColumnGroups), in group order
+     */
+    @Override
+    protected java.util.function.Function<List<String>, List<String>> getInsertMessageBuilder(String table) {
+        final ColumnGroups groups = ColumnGroups.of(icdb, table);
+
+        return values -> groups.getGroups().stream()
+                .map(group -> groups.message(group, values))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Generates a serial number and signature for each group, and adds them to the list of expressions
+     */
+    private void convertExpressionList(String table, List<Expression> expressions) {
+        final List<String> values = expressions.stream()
+                .map(expression -> {
+                    // Get rid of those pesky quotes
+                    if (expression instanceof StringValue) {
+                        return ((StringValue) expression).getValue();
+                    }
+
+                    return expression.toString();
+                })
+                .collect(Collectors.toList());
+
+        for (String message : getInsertMessageBuilder(table).apply(values)) {
+            DataConverter converter = new DataConverter(message.getBytes(Charsets.UTF_8), codeGen, icrl);
+
+            // Add base64 representation of signature to store it in the query properly
+            final String signatureString = Convert.toBase64(converter.getSignature());
+            expressions.add(new HexValue("from_base64('" + signatureString + "')"));
+
+            // Add serial number to expression list
+            expressions.add(new LongValue(Long.toString(converter.getSerial())));
+        }
+    }
+
+}
@@ -1,36 +1,62 @@
 package parse;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Charsets;
 import crypto.CodeGen;
+import crypto.KeyRing;
 import io.DBConnection;
+import io.DataConverter;
 import io.Format;
+import io.PageAggregates;
 import main.ICDBTool;
+import main.args.config.UserConfig;
+import main.args.option.DeleteMode;
+import main.args.option.StorageLayout;
 import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.parser.CCJSqlParserManager;
 import net.sf.jsqlparser.statement.Statement;
 import net.sf.jsqlparser.statement.delete.Delete;
 import net.sf.jsqlparser.statement.insert.Insert;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.statement.select.PlainSelect;
 import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectExpressionItem;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import net.sf.jsqlparser.util.SelectUtils;
 import net.sf.jsqlparser.statement.update.Update;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jooq.ConnectionProvider;
 import org.jooq.DSLContext;
 import org.jooq.Record;
 import org.jooq.Result;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
 import stats.RunStatistics;
 import stats.Statistics;
+import stats.Tracer;
 import verify.serial.AbstractIcrl;
 import verify.serial.Icrl;
+import verify.serial.SerialBuffer;
 
 import java.io.Reader;
 import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
 import java.util.Set;
+import java.util.StringJoiner;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * <p>
@@ -54,12 +80,21 @@ public abstract class ICDBQuery {
     private String convertedQuery;  // The converted query, like the original, but with extra columns
     private String verifyQuery;     // A select query responsible for obtaining verification results
     private String aggregateQuery;
+    private BulkInsert bulkInsert;  // A bulk INSERT, converted and executed one batch at a time
+    private int[] bulkInsertOrder;  // The position in the inserted tuples of each column of the table
     public List<String> queryTableName= new ArrayList<>();
 
+    // The number of rows per converted bulk INSERT statement
+    public static final int INSERT_BATCH_SIZE = 1000;
+
     protected AbstractIcrl icrl = Icrl.Companion.getIcrl();
 
     // Update the ICRL if this query was successful
-    public List<Long> serialsToBeRevoked = new ArrayList<>();
+    public final SerialBuffer serialsToBeRevoked = new SerialBuffer();
+
+    // How a DELETE is checked before it is executed
+    protected final DeleteMode deleteMode = UserConfig.getInstance() == null ? DeleteMode.VERIFY : UserConfig.getInstance().deleteMode;
+    protected final StorageLayout storageLayout = StorageLayout.current();
 
     public Map<String, String> columnOperation = new ConcurrentHashMap<String, String>();
     public boolean isAggregateQuery;
@@ -67,6 +102,9 @@ public abstract class ICDBQuery {
     public boolean isDeleteQuery;
     public boolean requiresUpdate;
 
+    // The aggregate query reads whole-page aggregates (see PageAggregates) besides row codes
+    public boolean isPagedAggregate;
+
     private static final Logger logger = LogManager.getLogger();
 
 
@@ -84,14 +122,194 @@ public abstract class ICDBQuery {
 
         // Obtain ICDB queries
         Stopwatch queryConversionTime = Stopwatch.createStarted();
-        this.verifyQuery = parse(originalQuery, QueryType.VERIFY);
-        this.convertedQuery = parse(originalQuery, QueryType.CONVERT);
-        this.aggregateQuery = parse(originalQuery, QueryType.AGGREGATE);
+        final long span = Tracer.begin();
+        final BulkInsert bulkInsert = BulkInsert.parse(originalQuery);
+        if (bulkInsert != null) {
+            try {
+                this.bulkInsertOrder = planBulkInsert(bulkInsert);
+                this.bulkInsert = bulkInsert;
+                this.verifyQuery = "";
+                this.aggregateQuery = "";
+            } catch (IllegalArgumentException e) {
+                logger.debug("Unable to stream insert, converting the query directly: {}", e.getMessage());
+            }
+        }
+
+        if (this.bulkInsert == null) {
+            convert();
+        }
 
         statistics.setQueryConversionTime(queryConversionTime.elapsed(ICDBTool.TIME_UNIT));
+        Tracer.end("convert", span);
         logger.debug("Query conversion time: {}", statistics.getQueryConversionTime());
     }
 
+    /**
+     * Converts the query, reusing the cached conversion of its shape if there is one
+     */
+    private void convert() {
+        final QueryTemplate template = isCacheable() ? QueryTemplate.normalize(originalQuery) : null;
+        final String key = template == null ? null : QueryTemplateCache.key(this, template);
+        QueryTemplateCache.Entry entry = key == null ? null : QueryTemplateCache.get(key);
+
+        if (entry != null) {
+            logger.debug("Query template cache hit");
+            entry.restore(this);
+        } else if (template != null && isValid(template.getShape())) {
+            entry = new QueryTemplateCache.Entry(
+                this,
+                parse(template.getShape(), QueryType.VERIFY),
+                parse(template.getShape(), QueryType.CONVERT),
+                parse(template.getShape(), QueryType.AGGREGATE)
+            );
+            QueryTemplateCache.put(key, entry);
+        }
+
+        if (entry != null) {
+            this.verifyQuery = template.bind(entry.verifyQuery);
+            this.convertedQuery = template.bind(entry.convertedQuery);
+            this.aggregateQuery = template.bind(entry.aggregateQuery);
+        } else {
+            this.verifyQuery = parse(originalQuery, QueryType.VERIFY);
+            this.convertedQuery = parse(originalQuery, QueryType.CONVERT);
+            this.aggregateQuery = parse(originalQuery, QueryType.AGGREGATE);
+        }
+    }
+
+    /**
+     * @return true if the serial of each code is packed with it in one column (see StorageLayout)
+     */
+    protected boolean isPacked() {
+        return false;
+    }
+
+    /**
+     * @return true if the conversion of a query may be shared by the queries of the same shape, i.e. it does not
+     * depend on the literals of the query
+     */
+    protected boolean isCacheable() {
+        return true;
+    }
+
+    /**
+     * Maps each column of the table of a bulk INSERT to its position in the inserted tuples. The rows themselves are
+     * only read when the batches are converted (see insertBatches()).
+     * @throws IllegalArgumentException if the statement cannot be streamed (e.g. an unknown table or a partial column list)
+     */
+    private int[] planBulkInsert(BulkInsert insert) {
+        final String table = insert.getTable();
+        final List<String> dataColumns = getDataColumns(table);
+        if (dataColumns == null) {
+            throw new IllegalArgumentException("Unknown table " + table);
+        }
+
+        final int[] order = new int[dataColumns.size()];
+        if (insert.getColumns() == null) {
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+        } else {
+            if (insert.getColumns().size() != dataColumns.size()) {
+                throw new IllegalArgumentException("Column list does not cover every column of " + table);
+            }
+            for (int i = 0; i < order.length; i++) {
+                final String column = dataColumns.get(i);
+                order[i] = IntStream.range(0, insert.getColumns().size())
+                        .filter(j -> insert.getColumns().get(j).equalsIgnoreCase(column))
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException("Missing column " + column));
+            }
+        }
+
+        queryTableName.add(table);
+        return order;
+    }
+
+    /**
+     * Converts a bulk INSERT in batches of INSERT_BATCH_SIZE rows, while the value tuples are tokenized. A batch is
+     * only converted when the iterator reaches it, so a single batch of rows and codes is held in memory at a time.
+     * The rows of a batch are signed in parallel, with a block of serials leased up front so the serial order
+     * matches the row order.
+     * @throws IllegalArgumentException if a tuple does not have one value per column
+     */
+    private Iterator<InsertBatch> insertBatches() {
+        final String table = bulkInsert.getTable();
+        final Function<List<String>, List<String>> messages = getInsertMessageBuilder(table);
+        final Iterator<List<BulkInsert.Value>> rows = bulkInsert.rows();
+
+        return new Iterator<InsertBatch>() {
+            @Override
+            public boolean hasNext() {
+                return rows.hasNext();
+            }
+
+            @Override
+            public InsertBatch next() {
+                if (!rows.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                final List<List<BulkInsert.Value>> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+                while (rows.hasNext() && batch.size() < INSERT_BATCH_SIZE) {
+                    final List<BulkInsert.Value> row = rows.next();
+                    if (row.size() != bulkInsertOrder.length) {
+                        throw new IllegalArgumentException("Expected " + bulkInsertOrder.length + " values, found " + row.size());
+                    }
+
+                    final List<BulkInsert.Value> ordered = new ArrayList<>(bulkInsertOrder.length);
+                    for (int index : bulkInsertOrder) {
+                        ordered.add(row.get(index));
+                    }
+                    batch.add(ordered);
+                }
+
+                return convertInsertBatch(table, batch, messages);
+            }
+        };
+    }
+
+    private InsertBatch convertInsertBatch(String table, List<List<BulkInsert.Value>> batch, Function<List<String>, List<String>> messages) {
+        final List<List<String>> rowMessages = batch.parallelStream()
+                .map(row -> messages.apply(row.stream().map(BulkInsert.Value::getText).collect(Collectors.toList())))
+                .collect(Collectors.toList());
+
+        // Lease one serial per message
+        final long[] serials = new long[batch.size()];
+        int total = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            serials[i] = total;
+            total += rowMessages.get(i).size();
+        }
+        final long firstSerial = KeyRing.serial(icrl.addNext(total));
+
+        final byte[][][] signatures = new byte[batch.size()][][];
+        IntStream.range(0, batch.size()).parallel().forEach(i -> {
+            final List<String> messagesOfRow = rowMessages.get(i);
+            serials[i] += firstSerial;
+            signatures[i] = new byte[messagesOfRow.size()][];
+
+            for (int j = 0; j < messagesOfRow.size(); j++) {
+                DataConverter converter = new DataConverter(messagesOfRow.get(j).getBytes(Charsets.UTF_8), serials[i] + j, codeGen);
+                signatures[i][j] = converter.getSignature();
+            }
+        });
+
+        return new InsertBatch(table, batch, signatures, serials, isPacked());
+    }
+
+    /**
+     * @return true if the parameterized shape of a query still parses, so its conversion can be cached
+     */
+    private boolean isValid(String shape) {
+        try {
+            parserManager.parse(new StringReader(shape));
+            return true;
+        } catch (JSQLParserException e) {
+            logger.debug("Unable to parse query template, converting the query directly");
+            return false;
+        }
+    }
+
     private String parse(String query, QueryType queryType) {
         Statement statement = null;
 
@@ -110,6 +328,7 @@ public abstract class ICDBQuery {
                 statement = queryType.parseQuery((Delete) statement, this);
             } else if (statement instanceof Update) {
                 requiresUpdate = true;
+                update = (Update) statement;
                 statement = queryType.parseQuery((Update) statement, this);
             } else {
                 logger.error("SQL statement type not supported.");
@@ -138,9 +357,56 @@ public abstract class ICDBQuery {
     protected abstract Statement parseASVQuery(Delete delete);
     protected abstract Statement parseASVQuery(Update update);
 
+    /**
+     * @return the data columns of an ICDB table (without integrity code and serial columns), in table order
+     */
+    protected abstract List<String> getDataColumns(String table);
+
+    /**
+     * @return a function that maps the values of an inserted row (in table column order) to the messages to sign,
+     * one integrity code and serial per message
+     */
+    protected abstract Function<List<String>, List<String>> getInsertMessageBuilder(String table);
+
+    /**
+     * @return the (ic, serial) column pair of each message built by getInsertMessageBuilder, or the code column alone
+     * if serials are packed with their codes
+     */
+    protected abstract List<String[]> getCodeColumns(String table);
+
+    /**
+     * @return the indexes of the messages that must be re-signed when the given data columns are updated
+     */
+    protected abstract List<Integer> getChangedMessages(String table, List<Integer> updatedColumns);
+
+    /**
+     * Builds the serial-only verify query of a DELETE: the given serial columns of every row it deletes
+     */
+    protected static Select getSerialQuery(Delete delete, List<String> serialColumns) {
+        final List<SelectItem> selectItems = serialColumns.stream()
+                .map(column -> new SelectExpressionItem(new Column(column)))
+                .collect(Collectors.toList());
+
+        final Select select = SelectUtils.buildSelectFromTableAndSelectItems(delete.getTable(), selectItems.toArray(new SelectItem[0]));
+        final PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
+        plainSelect.setWhere(delete.getWhere());
+        plainSelect.setLimit(delete.getLimit());
+        plainSelect.setOrderByElements(delete.getOrderByElements());
+
+        return select;
+    }
+
     // TODO: This is a temporary workaround. A better solution would be to pass a context object around with the results.
     protected Result<Record> deleteSelectResults;
-    protected Result<Record> updateSelectResults;
+    protected final Queue<Record> updateSelectResults = new ConcurrentLinkedQueue<>();
+    private Update update;
+
+    /**
+     * Keeps a verified record of an UPDATE, to be re-signed when the update is executed
+     */
+    public void addUpdateRecord(Record record) {
+        updateSelectResults.add(record);
+    }
 
 //    /**
 //     * Obtains data to verify the icdb query.
@@ -162,14 +428,100 @@ public abstract class ICDBQuery {
      * @param icdbCreate the context for executing queries
      */
     public void execute(DSLContext icdbCreate) {
+        if (bulkInsert != null) {
+            final String table = bulkInsert.getTable();
+            final PageAggregates pages = PageAggregates.find(icdb, codeGen, table);
+            final int column = pages == null ? -1 : getDataColumns(table).indexOf(pages.getKey());
+
+            // The rows and the aggregates of their pages commit together
+            icdbCreate.transaction(configuration -> {
+                final DSLContext transaction = DSL.using(configuration);
+                final List<Object> keys = new ArrayList<>();
+                final ConnectionProvider provider = transaction.configuration().connectionProvider();
+                final Connection connection = provider.acquire();
+
+                int rows = 0;
+                int batches = 0;
+                try {
+                    final Iterator<InsertBatch> iterator = insertBatches();
+                    while (iterator.hasNext()) {
+                        final InsertBatch batch = iterator.next();
+                        rows += batch.execute(connection);
+                        batches++;
+                        if (pages != null) {
+                            keys.addAll(batch.getValues(column));
+                        }
+                    }
+                } catch (SQLException e) {
+                    throw new DataAccessException("Failed to execute insert batch", e);
+                } finally {
+                    provider.release(connection);
+                }
+
+                logger.info("Inserted {} row(s) into {} in {} batch(es)", rows, queryTableName, batches);
+
+                if (pages != null) {
+                    pages.refresh(transaction, pages.pagesOf(keys));
+                }
+            });
+            return;
+        }
+
         if (requiresUpdate) {
-            this.convertedQuery = parse(originalQuery, QueryType.CONVERT);
+            // A rejected update is not a successful query, so the failure is left to the caller
+            final UpdateExecutor executor = new UpdateExecutor(this, update);
+            final PageAggregates pages = PageAggregates.find(icdb, codeGen, update.getTables().get(0).getName());
+
+            // The server-side update, the write-back of the new codes and the page aggregates commit together
+            final int rows = icdbCreate.transactionResult(configuration -> {
+                final DSLContext transaction = DSL.using(configuration);
+                final int written = executor.execute(transaction, updateSelectResults);
+
+                if (pages != null) {
+                    // Both the pages the rows were in and the pages they are in now
+                    final List<Object> keys = updateSelectResults.stream()
+                            .map(record -> record.field(pages.getKey()) == null ? null : record.get(pages.getKey()))
+                            .collect(Collectors.toList());
+                    keys.addAll(executor.getWrittenValues(pages.getKey()));
+                    pages.refresh(transaction, pages.pagesOf(keys));
+                }
+                return written;
+            });
+            logger.info("{}\nUpdated {} row(s)", Format.limit(convertedQuery), rows);
+            return;
         }
 
-        String result = icdbCreate.fetch(convertedQuery).toString();
-        logger.info("{}\n{}", Format.limit(convertedQuery), result);
+        // The pages a DELETE removes rows from are found before the rows are gone
+        PageAggregates pages = null;
+        Delete delete = null;
+        if (isDeleteQuery) {
+            try {
+                delete = (Delete) parserManager.parse(new StringReader(convertedQuery));
+                pages = PageAggregates.find(icdb, codeGen, delete.getTable().getName());
+            } catch (JSQLParserException | ClassCastException e) {
+                logger.warn("Unable to find the pages of the deleted rows: {}", e.getMessage());
+            }
+        }
+
+        if (pages != null) {
+            final PageAggregates deletedFrom = pages;
+            final Delete paged = delete;
 
+            // The delete and the aggregates of its pages commit together
+            icdbCreate.transaction(configuration -> {
+                final DSLContext transaction = DSL.using(configuration);
+                final Set<Long> deletedPages = deletedFrom.pagesWhere(transaction, paged.getTable().toString(), paged.getWhere());
+
+                String result = transaction.fetch(convertedQuery).toString();
+                logger.info("{}\n{}", Format.limit(convertedQuery), result);
+
+                deletedFrom.refresh(transaction, deletedPages);
+            });
+            return;
+        }
 
+        String result = icdbCreate.fetch(convertedQuery).toString();
+        logger.info("{}\n{}", Format.limit(convertedQuery), result);
     }
 
     /**
@@ -179,9 +531,6 @@ public abstract class ICDBQuery {
      * @param icdbCreate the context for executing queries
      */
     public boolean executeandmatch(DSLContext icdbCreate, Map < String, Double > columnComputedValue) {
-        if (requiresUpdate) {
-            this.convertedQuery = parse(originalQuery, QueryType.CONVERT);
-        }
         Result result=icdbCreate.fetch(convertedQuery);
 
         Set set = columnComputedValue.entrySet();
@@ -208,9 +557,21 @@ public abstract class ICDBQuery {
     }
 
     public String getConvertedQuery() {
+        if (convertedQuery == null && bulkInsert != null) {
+            final StringJoiner statements = new StringJoiner(";\n");
+            insertBatches().forEachRemaining(batch -> statements.add(batch.toSql()));
+            convertedQuery = statements.toString();
+        }
         return convertedQuery;
     }
 
+    /**
+     * @return the table of a bulk insert, or null if the query is not converted in batches
+     */
+    public String getBulkInsertTable() {
+        return bulkInsert == null ? null : bulkInsert.getTable();
+    }
+
     public String getVerifyQuery() {
         return verifyQuery;
     }
@@ -219,6 +580,13 @@ public abstract class ICDBQuery {
         return aggregateQuery;
     }
 
+    /**
+     * @return true if this is a DELETE whose verify query only fetches serials to revoke, without verifying the data
+     */
+    public boolean isSerialOnly() {
+        return isDeleteQuery && deleteMode == DeleteMode.SERIAL_ONLY;
+    }
+
     /**
      * @return true if this query needs verification
      */
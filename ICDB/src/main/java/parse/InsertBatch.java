@@ -0,0 +1,130 @@
+package parse;
+
+import crypto.Convert;
+import main.args.option.StorageLayout;
+import stats.Metrics;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *     A batch of converted rows of a bulk INSERT: the row values plus their integrity codes and serials.
+ *     The batch is executed as a JDBC prepared statement batch, so the codes are sent as binary parameters instead of
+ *     Base64 literals, and the server does not parse a megabyte-sized statement.
+ * </p>
+ */
+public class InsertBatch {
+
+    private final String table;
+    private final List<List<BulkInsert.Value>> rows;
+    private final byte[][][] signatures;   // The integrity codes of each row
+    private final long[] serials;          // The first serial of each row, one consecutive serial per code
+    private final boolean packed;          // True if each serial is packed with its code in one column
+
+    InsertBatch(String table, List<List<BulkInsert.Value>> rows, byte[][][] signatures, long[] serials, boolean packed) {
+        this.table = table;
+        this.rows = rows;
+        this.signatures = signatures;
+        this.serials = serials;
+        this.packed = packed;
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return the text of one column of every row, null for NULL values
+     */
+    public List<String> getValues(int column) {
+        return rows.stream()
+                .map(row -> column < 0 || row.get(column).isNull() ? null : row.get(column).getText())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Inserts the batch with a prepared statement. With rewriteBatchedStatements enabled on the connection,
+     * the driver sends the batch as a single multi-row insert.
+     * @return the number of inserted rows
+     */
+    public int execute(Connection connection) throws SQLException {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        final int columns = rows.get(0).size() + (packed ? 1 : 2) * signatures[0].length;
+        final String sql = "INSERT INTO `" + table + "` VALUES (" +
+                String.join(",", Collections.nCopies(columns, "?")) + ")";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < rows.size(); i++) {
+                int parameter = 1;
+
+                for (BulkInsert.Value value : rows.get(i)) {
+                    if (value.isNull()) {
+                        statement.setNull(parameter++, Types.NULL);
+                    } else {
+                        statement.setString(parameter++, value.getText());
+                    }
+                }
+
+                for (int j = 0; j < signatures[i].length; j++) {
+                    if (packed) {
+                        statement.setBytes(parameter++, StorageLayout.pack(serials[i] + j, signatures[i][j]));
+                    } else {
+                        statement.setBytes(parameter++, signatures[i][j]);
+                        statement.setLong(parameter++, serials[i] + j);
+                    }
+                }
+
+                statement.addBatch();
+            }
+
+            int inserted = 0;
+            for (int count : statement.executeBatch()) {
+                inserted += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+            }
+            Metrics.insertedRows.mark(inserted);
+            return inserted;
+        }
+    }
+
+    /**
+     * @return the batch as an INSERT statement with Base64 literals for the integrity codes
+     */
+    public String toSql() {
+        final StringBuilder builder = new StringBuilder("INSERT INTO `").append(table).append("` VALUES ");
+
+        for (int i = 0; i < rows.size(); i++) {
+            if (i > 0) {
+                builder.append(",\n");
+            }
+
+            builder.append('(').append(rows.get(i).stream().map(BulkInsert.Value::getSql).collect(Collectors.joining(",")));
+            for (int j = 0; j < signatures[i].length; j++) {
+                if (packed) {
+                    builder.append(",from_base64('")
+                            .append(Convert.toBase64(StorageLayout.pack(serials[i] + j, signatures[i][j]))).append("')");
+                } else {
+                    builder.append(",from_base64('").append(Convert.toBase64(signatures[i][j])).append("'),")
+                            .append(serials[i] + j);
+                }
+            }
+            builder.append(')');
+        }
+
+        return builder.toString();
+    }
+
+}
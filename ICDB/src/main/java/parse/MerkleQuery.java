@@ -0,0 +1,488 @@
+package parse;
+
+import crypto.CodeGen;
+import io.DBConnection;
+import io.Format;
+import io.MerkleTree;
+import net.sf.jsqlparser.JSQLParserException;
+import net.sf.jsqlparser.expression.BinaryExpression;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.Function;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.Parenthesis;
+import net.sf.jsqlparser.expression.SignedExpression;
+import net.sf.jsqlparser.expression.operators.conditional.AndExpression;
+import net.sf.jsqlparser.expression.operators.relational.Between;
+import net.sf.jsqlparser.expression.operators.relational.EqualsTo;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThan;
+import net.sf.jsqlparser.expression.operators.relational.GreaterThanEquals;
+import net.sf.jsqlparser.expression.operators.relational.MinorThan;
+import net.sf.jsqlparser.expression.operators.relational.MinorThanEquals;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
+import net.sf.jsqlparser.schema.Column;
+import net.sf.jsqlparser.schema.Table;
+import net.sf.jsqlparser.statement.Statement;
+import net.sf.jsqlparser.statement.delete.Delete;
+import net.sf.jsqlparser.statement.insert.Insert;
+import net.sf.jsqlparser.statement.select.Limit;
+import net.sf.jsqlparser.statement.select.OrderByElement;
+import net.sf.jsqlparser.statement.select.PlainSelect;
+import net.sf.jsqlparser.statement.select.Select;
+import net.sf.jsqlparser.statement.select.SelectExpressionItem;
+import net.sf.jsqlparser.statement.select.SelectItem;
+import net.sf.jsqlparser.statement.update.Update;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.DSLContext;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+import stats.RunStatistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ *     Parses queries of the MERKLE granularity, where the rows carry no codes and a table is authenticated by its
+ *     Merkle tree (see MerkleTree). The verify query of a single-table query fetches the rows of the primary key range
+ *     its WHERE clause bounds, in key order. Conditions on other columns widen the verified rows to the whole range,
+ *     and a table without a single integer key is verified whole.
+ * </p>
+ * <p>
+ *     Writes are executed as they are, and update only the leaves of the keys they write: the keys of the rows a
+ *     DELETE or UPDATE selects, or the key values an INSERT lists. The rows at those keys are read before and after the
+ *     write, in its transaction, and the tree checks the old ones against the signed root before it rewrites their
+ *     paths. The new root is stored once the transaction commits.
+ * </p>
+ */
+public class MerkleQuery extends ICDBQuery {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    // Set while the query is parsed (by the ICDBQuery constructor), so these fields must not have initializers
+    private String table;
+    private String key;
+    private Long low;
+    private Long high;
+    private boolean isInsert;
+    private Expression where;
+    private List<OrderByElement> orderBy;
+    private Limit limit;
+    private List<Column> updated;
+
+    private final String originalQuery;
+
+    public MerkleQuery(String query, DBConnection icdb, CodeGen codeGen, RunStatistics statistics) {
+        super(query, icdb, codeGen, statistics);
+        this.originalQuery = query;
+    }
+
+    /**
+     * @return the table whose tree verifies the query, or null if the query is not verified
+     */
+    public String getTable() {
+        return table;
+    }
+
+    /**
+     * @return the primary key column the verified range is bounded on, or null if the whole table is verified
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the smallest key of the verified range, or null if it is unbounded below
+     */
+    public Long getLow() {
+        return low;
+    }
+
+    /**
+     * @return the largest key of the verified range, or null if it is unbounded above
+     */
+    public Long getHigh() {
+        return high;
+    }
+
+    /**
+     * The key range is taken from the literals of the WHERE clause, so the conversion is not shared between queries of
+     * the same shape
+     */
+    @Override
+    protected boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * Executes the query, updating the tree of the table a write changes
+     * @throws IllegalStateException if the rows a write changes do not match the signed root, or it changes other rows
+     * @throws IllegalArgumentException if the rows a write changes cannot be found by their key
+     */
+    @Override
+    public void execute(DSLContext icdbCreate) {
+        final String written = getBulkInsertTable() != null ? getBulkInsertTable() : table;
+        final boolean inserts = getBulkInsertTable() != null || isInsert;
+        if (written == null || !(inserts || isDeleteQuery || requiresUpdate)) {
+            super.execute(icdbCreate);
+            return;
+        }
+
+        final MerkleTree tree = new MerkleTree(icdb, codeGen, written);
+        if (tree.getKeys().isEmpty()) {
+            throw new IllegalArgumentException("Table " + written + " has no primary key to find the rows a write changes");
+        }
+        if (updated != null && updated.stream().anyMatch(column -> tree.getKeys().stream()
+                .anyMatch(key -> key.equalsIgnoreCase(column.getColumnName().replace("`", ""))))) {
+            throw new IllegalArgumentException("The primary key of a MERKLE table cannot be updated");
+        }
+
+        synchronized (tree.lock()) {
+            final MerkleTree.Root root = icdbCreate.transactionResult(configuration -> {
+                final DSLContext transaction = DSL.using(configuration);
+
+                final MerkleTree.Root current = tree.loadRoot();
+                if (current == null) {
+                    throw new IllegalStateException("No valid Merkle root for table " + written);
+                }
+
+                // The rows at the written keys, locked until the write commits
+                final List<Record> before;
+                final List<List<Object>> keys;
+                if (inserts) {
+                    keys = getInsertedKeys(tree);
+                    before = tree.fetchRows(transaction, keys, true);
+                } else {
+                    before = transaction.fetch(getWrittenRowsQuery());
+                    keys = tree.keyValues(before);
+                }
+
+                if (inserts) {
+                    super.execute(transaction);
+                } else {
+                    final int rows = transaction.execute(getConvertedQuery());
+                    logger.info("{}\n{} {} row(s)", Format.limit(getConvertedQuery()), requiresUpdate ? "Updated" : "Deleted", rows);
+                    if (rows != before.size()) {
+                        throw new IllegalStateException("The write changed " + rows + " row(s) of table " + written +
+                                " instead of the " + before.size() + " it selected");
+                    }
+                }
+
+                return tree.update(transaction, current, before, tree.fetchRows(transaction, keys, false));
+            });
+
+            tree.saveRoot(root);
+        }
+    }
+
+    /**
+     * @return the rows a DELETE or UPDATE changes, locked until the transaction ends
+     */
+    private String getWrittenRowsQuery() {
+        return "SELECT * FROM `" + table + "`" +
+                (where == null ? "" : " WHERE " + where) +
+                (orderBy == null ? "" : PlainSelect.orderByToString(orderBy)) +
+                (limit == null ? "" : limit.toString()) +
+                " FOR UPDATE";
+    }
+
+    /**
+     * @return the primary key values of each row of an INSERT
+     * @throws IllegalArgumentException if a key value is not a literal
+     */
+    private List<List<Object>> getInsertedKeys(MerkleTree tree) {
+        final BulkInsert insert = BulkInsert.parse(originalQuery);
+        if (insert == null) {
+            throw new IllegalArgumentException("Only an INSERT of literal values can be placed in the Merkle tree of " + tree.getTable());
+        }
+
+        final List<String> columns = insert.getColumns() != null ? insert.getColumns() : getDataColumns(tree.getTable());
+        final int[] indexes = tree.getKeys().stream()
+                .mapToInt(key -> IntStream.range(0, columns.size())
+                        .filter(i -> columns.get(i).equalsIgnoreCase(key))
+                        .findFirst()
+                        .orElseThrow(() -> new IllegalArgumentException("The INSERT has no value for key " + key)))
+                .toArray();
+
+        final List<List<Object>> keys = new ArrayList<>();
+        insert.rows().forEachRemaining(row -> {
+            final List<Object> values = new ArrayList<>(indexes.length);
+            for (int index : indexes) {
+                values.add(row.get(index).getText());
+            }
+            keys.add(values);
+        });
+        return keys;
+    }
+
+    ////////////
+    // SELECT //
+    ////////////
+
+    @Override
+    protected Statement parseConvertedQuery(Select select) {
+        return select;
+    }
+
+    @Override
+    protected Statement parseVerifyQuery(Select select) {
+        if (!(select.getSelectBody() instanceof PlainSelect)) {
+            return null;
+        }
+
+        final PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
+        if (!(plainSelect.getFromItem() instanceof Table) || plainSelect.getJoins() != null) {
+            logger.warn("Only single-table queries are verified in MERKLE granularity");
+            return null;
+        }
+
+        final boolean exact = parseRange((Table) plainSelect.getFromItem(), plainSelect.getWhere());
+
+        // Aggregate functions are computed from the verified rows, which are the result only if the range is exact
+        if (exact && plainSelect.getGroupByColumnReferences() == null && plainSelect.getLimit() == null) {
+            for (SelectItem item : plainSelect.getSelectItems()) {
+                if (item instanceof SelectExpressionItem && ((SelectExpressionItem) item).getExpression() instanceof Function) {
+                    final Function function = (Function) ((SelectExpressionItem) item).getExpression();
+                    if (function.getParameters() != null) {
+                        isAggregateQuery = true;
+                        columnOperation.put(function.getName() + function.getParameters(), function.getName());
+                    }
+                }
+            }
+        }
+
+        return getRangeQuery();
+    }
+
+    @Override
+    protected Statement parseASVQuery(Select select) {
+        return null; // The tree replaces aggregate signatures
+    }
+
+    ////////////
+    // INSERT //
+    ////////////
+
+    @Override
+    protected Statement parseConvertedQuery(Insert insert) {
+        table = insert.getTable().getName().replace("`", "");
+        isInsert = true;
+        return insert;
+    }
+
+    @Override
+    protected Statement parseVerifyQuery(Insert insert) {
+        return null;
+    }
+
+    @Override
+    protected Statement parseASVQuery(Insert insert) {
+        return null;
+    }
+
+    ////////////
+    // DELETE //
+    ////////////
+
+    @Override
+    protected Statement parseConvertedQuery(Delete delete) {
+        where = delete.getWhere();
+        orderBy = delete.getOrderByElements();
+        limit = delete.getLimit();
+        return delete;
+    }
+
+    /**
+     * The range of a DELETE is verified before its rows are removed
+     */
+    @Override
+    protected Statement parseVerifyQuery(Delete delete) {
+        parseRange(delete.getTable(), delete.getWhere());
+        return getRangeQuery();
+    }
+
+    @Override
+    protected Statement parseASVQuery(Delete delete) {
+        return null;
+    }
+
+    ////////////
+    // UPDATE //
+    ////////////
+
+    @Override
+    protected Statement parseConvertedQuery(Update update) {
+        where = update.getWhere();
+        orderBy = update.getOrderByElements();
+        limit = update.getLimit();
+        updated = update.getColumns();
+        return update;
+    }
+
+    @Override
+    protected Statement parseVerifyQuery(Update update) {
+        parseRange(update.getTables().get(0), update.getWhere());
+        return getRangeQuery();
+    }
+
+    @Override
+    protected Statement parseASVQuery(Update update) {
+        return null;
+    }
+
+    ///////////
+    // RANGE //
+    ///////////
+
+    /**
+     * Finds the key range of a query on a table
+     * @return true if the WHERE clause is exactly the range, false if it also has other conditions
+     */
+    private boolean parseRange(Table from, Expression where) {
+        table = from.getName().replace("`", "");
+        queryTableName = new ArrayList<>(Collections.singletonList(table));
+
+        key = new MerkleTree(icdb, codeGen, table).getIntegerKey();
+        low = null;
+        high = null;
+
+        final boolean exact = key != null && (where == null || addBounds(where));
+        if (key != null && low == null && high == null) {
+            key = null;
+        }
+
+        return exact || where == null;
+    }
+
+    /**
+     * Narrows the range by the key conditions of an expression
+     * @return true if the expression is only key conditions
+     */
+    private boolean addBounds(Expression expression) {
+        if (expression instanceof AndExpression) {
+            final boolean left = addBounds(((AndExpression) expression).getLeftExpression());
+            final boolean right = addBounds(((AndExpression) expression).getRightExpression());
+            return left && right;
+        }
+
+        if (expression instanceof Parenthesis && !((Parenthesis) expression).isNot()) {
+            return addBounds(((Parenthesis) expression).getExpression());
+        }
+
+        if (expression instanceof Between && !((Between) expression).isNot() && isKey(((Between) expression).getLeftExpression())) {
+            final Long start = literal(((Between) expression).getBetweenExpressionStart());
+            final Long end = literal(((Between) expression).getBetweenExpressionEnd());
+            if (start != null && end != null) {
+                raiseLow(start);
+                lowerHigh(end);
+                return true;
+            }
+            return false;
+        }
+
+        if (!(expression instanceof BinaryExpression) || ((BinaryExpression) expression).isNot()) {
+            return false;
+        }
+
+        final BinaryExpression comparison = (BinaryExpression) expression;
+        final boolean keyLeft = isKey(comparison.getLeftExpression());
+        final Long value = literal(keyLeft ? comparison.getRightExpression() : comparison.getLeftExpression());
+        if (value == null || (!keyLeft && !isKey(comparison.getRightExpression()))) {
+            return false;
+        }
+
+        // With the key on the right, k > x reads as x < k
+        if (comparison instanceof EqualsTo) {
+            raiseLow(value);
+            lowerHigh(value);
+        } else if (comparison instanceof GreaterThan) {
+            if (keyLeft) raiseLow(value + 1); else lowerHigh(value - 1);
+        } else if (comparison instanceof GreaterThanEquals) {
+            if (keyLeft) raiseLow(value); else lowerHigh(value);
+        } else if (comparison instanceof MinorThan) {
+            if (keyLeft) lowerHigh(value - 1); else raiseLow(value + 1);
+        } else if (comparison instanceof MinorThanEquals) {
+            if (keyLeft) lowerHigh(value); else raiseLow(value);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private void raiseLow(long value) {
+        low = low == null ? value : Math.max(low, value);
+    }
+
+    private void lowerHigh(long value) {
+        high = high == null ? value : Math.min(high, value);
+    }
+
+    private boolean isKey(Expression expression) {
+        return expression instanceof Column &&
+                ((Column) expression).getColumnName().replace("`", "").equalsIgnoreCase(key);
+    }
+
+    private static Long literal(Expression expression) {
+        if (expression instanceof LongValue) {
+            return ((LongValue) expression).getValue();
+        }
+        if (expression instanceof SignedExpression && ((SignedExpression) expression).getExpression() instanceof LongValue) {
+            final long value = ((LongValue) ((SignedExpression) expression).getExpression()).getValue();
+            return ((SignedExpression) expression).getSign() == '-' ? -value : value;
+        }
+        return null;
+    }
+
+    /**
+     * @return the rows of the range in key order
+     */
+    private Statement getRangeQuery() {
+        final String from = "SELECT * FROM `" + table + "`";
+        final String query;
+
+        if (key == null) {
+            query = from + new MerkleTree(icdb, codeGen, table).orderBy();
+        } else {
+            final String column = "`" + key + "`";
+            query = from + " WHERE " + (low != null && high != null ? column + " BETWEEN " + low + " AND " + high
+                    : low != null ? column + " >= " + low : column + " <= " + high) + " ORDER BY " + column;
+        }
+
+        try {
+            return CCJSqlParserUtil.parse(query);
+        } catch (JSQLParserException e) {
+            logger.error("Unable to parse the Merkle range query of {}: {}", table, e.getMessage());
+            return null;
+        }
+    }
+
+    ////////////
+    // SCHEMA //
+    ////////////
+
+    @Override
+    protected List<String> getDataColumns(String table) {
+        return icdb.getFields(table);
+    }
+
+    @Override
+    protected List<String[]> getCodeColumns(String table) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    protected List<Integer> getChangedMessages(String table, List<Integer> updatedColumns) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Rows carry no codes, so an inserted row has nothing to sign
+     */
+    @Override
+    protected java.util.function.Function<List<String>, List<String>> getInsertMessageBuilder(String table) {
+        return values -> Collections.emptyList();
+    }
+
+}
@@ -7,6 +7,9 @@ import com.google.common.base.Charsets;
 import io.DBConnection;
 import io.DataConverter;
 import io.Format;
+import main.args.option.DeleteMode;
+import main.args.option.Granularity;
+import main.args.option.StorageLayout;
 import net.sf.jsqlparser.expression.*;
 import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
 import net.sf.jsqlparser.expression.operators.relational.ItemsList;
@@ -68,7 +71,7 @@ public class OCFQuery extends ICDBQuery {
                 for (String table:tables) {
                     List<String> Fields=icdb.getFields(table);
                     int total=Fields.size();
-                    for (int i=0; i<total/3;i++) {
+                    for (int i=0; i<total/getColumnsPerField();i++) {
                         selectItems.add(new SelectExpressionItem(new HexValue(Fields.get(i))));
 
                     }
@@ -80,28 +83,29 @@ public class OCFQuery extends ICDBQuery {
                 for (String table:tables) {
                     List<String> Fields=icdb.getFields(table);
                     int total=Fields.size();
-                    for (int i=0; i<total/3;i++) {
+                    for (int i=0; i<total/getColumnsPerField();i++) {
                         selectItems.add(new SelectExpressionItem(new HexValue(table.toLowerCase()+"."+Fields.get(i))));
                         //for use in OCFVerification (attrname,tablename)
                         attributetables.add(table.toLowerCase());
                         attributeNames.add(Fields.get(i).toLowerCase());
                     }
                 }
-                List<SelectItem> signatureItems = getICSelectItems(selectItems, Format.IC_SUFFIX, Format.SERIAL_SUFFIX);
+                List<SelectItem> signatureItems = getICSelectItems(selectItems, getCodeSuffixes());
                 selectItems.addAll(signatureItems);
 
 
-                if (codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.AES_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.SHA_AGGREGATE ) {
+                if (codeGen.getAlgorithm().isAggregate()) {
                     if(!skipFilter){
                         List<SelectItem> fileteredSelectItems=new ArrayList<>();
-                        final int dataSize = selectItems.size() / 3;
+                        final int codeWidth = getColumnsPerField() - 1;
+                        final int dataSize = selectItems.size() / getColumnsPerField();
                         for (int i = 0; i < dataSize; i++) {
                             //add columns
                             fileteredSelectItems.add(selectItems.get(i));
                         }
                         for (int i = 0; i < dataSize; i++) {
-                            //add serials
-                            fileteredSelectItems.add(selectItems.get(dataSize + 2 * i + 1));
+                            //add serials (the packed codes, if packed)
+                            fileteredSelectItems.add(selectItems.get(dataSize + codeWidth * i + codeWidth - 1));
                         }
                         selectItems.clear();
                         selectItems.addAll(fileteredSelectItems);
@@ -155,23 +159,24 @@ public class OCFQuery extends ICDBQuery {
                 attributeNames.add(item.toString().toLowerCase());
             }
         }
-        List<SelectItem> signatureItems = getICSelectItems(selectItems, Format.IC_SUFFIX, Format.SERIAL_SUFFIX);
+        List<SelectItem> signatureItems = getICSelectItems(selectItems, getCodeSuffixes());
         selectItems.addAll(signatureItems);
 
 
 
         //if RSA_Aggregate, exclude the IC column (ic is handled by aggregate signature generator)
-        if (codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.AES_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.SHA_AGGREGATE ){
+        if (codeGen.getAlgorithm().isAggregate()){
            if(!skipFilter){
                List<SelectItem> fileteredSelectItems=new ArrayList<>();
-               final int dataSize = selectItems.size() / 3;
+               final int codeWidth = getColumnsPerField() - 1;
+               final int dataSize = selectItems.size() / getColumnsPerField();
                for (int i = 0; i < dataSize; i++) {
                    //add columns
                    fileteredSelectItems.add(selectItems.get(i));
                }
                for (int i = 0; i < dataSize; i++) {
-                   //add serials
-                   fileteredSelectItems.add(selectItems.get(dataSize + 2 * i + 1));
+                   //add serials (the packed codes, if packed)
+                   fileteredSelectItems.add(selectItems.get(dataSize + codeWidth * i + codeWidth - 1));
                }
                selectItems.clear();
                selectItems.addAll(fileteredSelectItems);
@@ -192,11 +197,15 @@ public class OCFQuery extends ICDBQuery {
         List<SelectItem> selectItems = plainSelect.getSelectItems();
 
         List<SelectItem> fileteredSelectItems=new ArrayList<>();
-        final int dataSize = selectItems.size() / 3;
+        final int codeWidth = getColumnsPerField() - 1;
+        final int dataSize = selectItems.size() / getColumnsPerField();
 
         for (int i = 0; i < dataSize; i++) {
-            //add ic
-            fileteredSelectItems.add(selectItems.get(dataSize + 2 * i ));
+            //add ic (without the serial, if packed)
+            final SelectItem ic = selectItems.get(dataSize + codeWidth * i);
+            fileteredSelectItems.add(isPacked()
+                    ? new SelectExpressionItem(new HexValue(StorageLayout.unpackCodeSql(ic.toString())))
+                    : ic);
         }
         selectItems.clear();
         selectItems.addAll(fileteredSelectItems);
@@ -246,9 +255,23 @@ public class OCFQuery extends ICDBQuery {
 
     @Override
     protected Statement parseVerifyQuery(Delete delete) {
+        if (deleteMode == DeleteMode.SERIAL_ONLY) {
+            final String table = delete.getTable().getName();
+            queryTableName.add(table);
+
+            return getSerialQuery(delete, getDataColumns(table).stream()
+                .map(column -> column + (isPacked() ? Format.IC_SUFFIX : Format.SERIAL_SUFFIX))
+                .collect(Collectors.toList()));
+        }
+
         // We verify delete so that we can revoke all deleted serial numbers
-        Table table = delete.getTable();
+        return parseVerifyQuery(delete.getTable(), delete.getWhere(), delete.getLimit(), delete.getOrderByElements());
+    }
 
+    /**
+     * Builds the verify query of a DELETE or UPDATE, selecting every field (and its codes) of the affected rows
+     */
+    private Statement parseVerifyQuery(Table table, Expression where, Limit limit, List<OrderByElement> orderByElements) {
         queryTableName.add(table.getName());
 
         // Get all columns, because we are deleting the entire row
@@ -258,23 +281,22 @@ public class OCFQuery extends ICDBQuery {
 
         // Apply the where clause to the SELECT
         PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
-        plainSelect.setWhere(delete.getWhere());
+        plainSelect.setWhere(where);
 
         //get list ot table and attribute names
-        List<SelectItem> selectItems = plainSelect.getSelectItems();
         List<String> Fields=icdb.getFields(table.getName());
         int total=Fields.size();
-        for (int i=0; i<total/3;i++) {
+        for (int i=0; i<total/getColumnsPerField();i++) {
             //for use in OCFVerification (attrname,tablename)
             attributetables.add(table.getName().toLowerCase());
             attributeNames.add(Fields.get(i).toLowerCase());
         }
 
-        plainSelect.setLimit(delete.getLimit());
-        plainSelect.setOrderByElements(delete.getOrderByElements());
+        plainSelect.setLimit(limit);
+        plainSelect.setOrderByElements(orderByElements);
 
         //if aggregate, parse the generated select query
-        if (codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.AES_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.SHA_AGGREGATE )
+        if (codeGen.getAlgorithm().isAggregate())
         {return parseVerifyQuery(select);}
 
         return select;
@@ -282,10 +304,15 @@ public class OCFQuery extends ICDBQuery {
 
     @Override
     protected Statement parseASVQuery(Delete delete) {
+        if (deleteMode == DeleteMode.SERIAL_ONLY) {
+            return null; // Deleted rows are not verified, so there is no aggregate signature
+        }
+        return parseASVQuery(delete.getTable(), delete.getWhere(), delete.getLimit(), delete.getOrderByElements());
+    }
 
-        // We verify delete so that we can revoke all deleted serial numbers
-        Table table = delete.getTable();
+    private Statement parseASVQuery(Table table, Expression where, Limit limit, List<OrderByElement> orderByElements) {
 
+        // We verify delete so that we can revoke all deleted serial numbers
         queryTableName.add(table.getName());
 
         // Get all columns, because we are deleting the entire row
@@ -293,13 +320,13 @@ public class OCFQuery extends ICDBQuery {
 
         // Apply the where clause to the SELECT
         PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
-        plainSelect.setWhere(delete.getWhere());
+        plainSelect.setWhere(where);
 
-        plainSelect.setLimit(delete.getLimit());
-        plainSelect.setOrderByElements(delete.getOrderByElements());
+        plainSelect.setLimit(limit);
+        plainSelect.setOrderByElements(orderByElements);
 
         //if aggregate, parse the generated select query
-        if (codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.AES_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.SHA_AGGREGATE )
+        if (codeGen.getAlgorithm().isAggregate())
         {return parseASVQuery(select);}
 
         return select;
@@ -312,17 +339,87 @@ public class OCFQuery extends ICDBQuery {
 
     @Override
     protected Statement parseConvertedQuery(Update update) {
-        return update; // TODO
+        return update; // Executed by re-signing the updated fields of the verified rows (see UpdateExecutor)
     }
 
     @Override
     protected Statement parseVerifyQuery(Update update) {
-        return null;
+        // UpdateExecutor rejects multi-table updates, so the update has one table
+        return parseVerifyQuery(update.getTables().get(0), update.getWhere(), null, null);
     }
 
     @Override
     protected Statement parseASVQuery(Update update) {
-        return null;
+        return parseASVQuery(update.getTables().get(0), update.getWhere(), null, null);
+    }
+
+    @Override
+    protected List<String> getDataColumns(String table) {
+        final List<String> fields = icdb.getFields(table);
+        return fields == null ? null : fields.subList(0, fields.size() / getColumnsPerField());
+    }
+
+    @Override
+    protected List<String[]> getCodeColumns(String table) {
+        return getDataColumns(table).stream()
+            .map(column -> isPacked()
+                ? new String[] { column + Format.IC_SUFFIX }
+                : new String[] { column + Format.IC_SUFFIX, column + Format.SERIAL_SUFFIX })
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    protected boolean isPacked() {
+        return storageLayout.isPacked(Granularity.FIELD);
+    }
+
+    /**
+     * @return the number of columns of each field: the field, its code and, unless packed, its serial
+     */
+    private int getColumnsPerField() {
+        return isPacked() ? 2 : 3;
+    }
+
+    private String[] getCodeSuffixes() {
+        return isPacked() ? new String[] { Format.IC_SUFFIX } : new String[] { Format.IC_SUFFIX, Format.SERIAL_SUFFIX };
+    }
+
+    /**
+     * Each field has its own code, so only the updated fields are re-signed
+     */
+    @Override
+    protected List<Integer> getChangedMessages(String table, List<Integer> updatedColumns) {
+        return updatedColumns;
+    }
+
+    /**
+     * One message per field: the value and delimiter, the primary key values, the attribute name and the table name
+     * (as in FileConverter)
+     */
+    @Override
+    protected java.util.function.Function<List<String>, List<String>> getInsertMessageBuilder(String table) {
+        final String tableName = table.toLowerCase();
+        final List<String> columns = getDataColumns(table);
+        final List<String> primaryKeys = icdb.getPrimaryKeys(table);
+
+        final List<Integer> keyIndexes = new ArrayList<>();
+        for (int i = 0; i < columns.size(); i++) {
+            final String column = columns.get(i);
+            if (primaryKeys.stream().anyMatch(column::equalsIgnoreCase)) {
+                keyIndexes.add(i);
+            }
+        }
+
+        return values -> {
+            final StringBuilder keys = new StringBuilder();
+            keyIndexes.forEach(index -> keys.append(values.get(index)));
+
+            final List<String> messages = new ArrayList<>(values.size());
+            for (int i = 0; i < values.size(); i++) {
+                messages.add(values.get(i) + ',' + keys + columns.get(i).toLowerCase() + tableName);
+            }
+            return messages;
+        };
     }
 
     private static List<SelectItem> getICSelectItems(List<SelectItem> items, String... suffixes) {
@@ -405,14 +502,20 @@ public class OCFQuery extends ICDBQuery {
                 final byte[] dataBytes = dataString.getBytes(Charsets.UTF_8);
 
                 DataConverter converter = new DataConverter(dataBytes, codeGen, icrl);
+                Long serial = converter.getSerial();
+
+                if (isPacked()) {
+                    final String packedString = Convert.toBase64(StorageLayout.pack(serial, converter.getSignature()));
+                    expressions.add(new HexValue("from_base64('" + packedString + "')"));
+                    return;
+                }
 
                 // Add base64 representation of signature to store it in the query properly
                 final String signatureString = Convert.toBase64(converter.getSignature());
                 expressions.add(new HexValue("from_base64('" + signatureString + "')"));
 
                 // Add serial number to expression list
-                Long serial = converter.getSerial();
-                expressions.add(new DoubleValue(serial.toString()));
+                expressions.add(new LongValue(serial.toString()));
             });
 
     }
@@ -7,10 +7,14 @@ import com.google.common.base.Charsets;
 import io.DBConnection;
 import io.DataConverter;
 import io.Format;
+import io.PageAggregates;
+import main.args.option.DeleteMode;
+import net.sf.jsqlparser.JSQLParserException;
 import net.sf.jsqlparser.expression.*;
 import net.sf.jsqlparser.expression.operators.relational.ExpressionList;
 import net.sf.jsqlparser.expression.operators.relational.ItemsList;
 import net.sf.jsqlparser.expression.operators.relational.MultiExpressionList;
+import net.sf.jsqlparser.parser.CCJSqlParserUtil;
 import net.sf.jsqlparser.schema.Column;
 import net.sf.jsqlparser.schema.Table;
 import net.sf.jsqlparser.statement.Statement;
@@ -20,6 +24,8 @@ import net.sf.jsqlparser.statement.select.*;
 import net.sf.jsqlparser.statement.update.Update;
 import net.sf.jsqlparser.util.SelectUtils;
 import net.sf.jsqlparser.util.TablesNamesFinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.jooq.tools.StringUtils;
 import org.jooq.util.mysql.information_schema.tables.Statistics;
 import stats.RunStatistics;
@@ -35,6 +41,8 @@ import java.util.stream.Collectors;
 
 public class OCTQuery extends ICDBQuery {
 
+    private static final Logger logger = LogManager.getLogger();
+
     public OCTQuery(String query, DBConnection icdb, CodeGen codeGen, RunStatistics statistics) {
         super(query, icdb, codeGen, statistics);
     }
@@ -88,7 +96,7 @@ public class OCTQuery extends ICDBQuery {
 
 
         //if RSA_Aggregate, exclude the IC column (ic is handled by aggregate signature generator)
-        if (codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.AES_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.SHA_AGGREGATE){
+        if (codeGen.getAlgorithm().isAggregate()){
 
             for (String table:tables) {
                 List<String> fieldList=icdb.getFields(table);
@@ -124,6 +132,15 @@ public class OCTQuery extends ICDBQuery {
         TablesNamesFinder tableNamesFinder = new TablesNamesFinder();
         List<String> tables = tableNamesFinder.getTableList(select);
 
+        // A single-table range reads whole-page aggregates where the table has them
+        if (plainSelect.getFromItem() instanceof Table && plainSelect.getJoins() == null &&
+                plainSelect.getLimit() == null && plainSelect.getGroupByColumnReferences() == null) {
+            final Statement paged = parsePagedASVQuery((Table) plainSelect.getFromItem(), plainSelect.getWhere());
+            if (paged != null) {
+                return paged;
+            }
+        }
+
         List<SelectItem> selectList = new ArrayList<>();
         for (String table:tables) {
             selectList.add(new SelectExpressionItem(new HexValue(table+".ic")));
@@ -191,6 +208,10 @@ public class OCTQuery extends ICDBQuery {
 
         queryTableName.add(table.getName());
 
+        if (deleteMode == DeleteMode.SERIAL_ONLY) {
+            return getSerialQuery(delete, Collections.singletonList(Format.SERIAL_COLUMN));
+        }
+
         Select select = SelectUtils.buildSelectFromTableAndSelectItems(table, new AllColumns());
 
         // Apply the where clause to the SELECT
@@ -201,7 +222,7 @@ public class OCTQuery extends ICDBQuery {
         plainSelect.setOrderByElements(delete.getOrderByElements());
 
         //if aggregate, parse the generated select query
-        if (codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.AES_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.SHA_AGGREGATE )
+        if (codeGen.getAlgorithm().isAggregate())
             {return parseVerifyQuery(select);}
 
 
@@ -215,10 +236,20 @@ public class OCTQuery extends ICDBQuery {
      */
     @Override
     protected Statement parseASVQuery(Delete delete) {
+        if (deleteMode == DeleteMode.SERIAL_ONLY) {
+            return null; // Deleted rows are not verified, so there is no aggregate signature
+        }
 
         // We verify delete so that we can revoke all deleted serial numbers
         Table table = delete.getTable();
 
+        if (delete.getLimit() == null) {
+            final Statement paged = parsePagedASVQuery(table, delete.getWhere());
+            if (paged != null) {
+                return paged;
+            }
+        }
+
         Select select = SelectUtils.buildSelectFromTableAndSelectItems(table, new AllColumns());
         PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
         List<SelectItem> selectItems = plainSelect.getSelectItems();
@@ -244,38 +275,7 @@ public class OCTQuery extends ICDBQuery {
 
     @Override
     protected Statement parseConvertedQuery(Update update) {
-        List<Column> allColumns = icdb.getFields(update.getTables().get(0).toString())
-                .stream().map(Column::new)
-                .collect(Collectors.toList());
-        update.setColumns(allColumns);
-
-        List<Expression> expressions = updateSelectResults
-            .map(record -> {
-                List<Expression> values = new ArrayList<>();
-                for (int i = 0; i < record.size() - 2; i++) {
-                    final Object value = record.get(i);
-
-                    if (value instanceof String) {
-                        values.add(new StringValue("'" + value + "'"));
-                    } else {
-                        values.add(new HexValue(value.toString()));
-                    }
-                }
-
-                // Add this serial to be revoked upon successful execution
-                final long serial = (long) record.get(Format.SERIAL_COLUMN);
-                serialsToBeRevoked.add(serial);
-
-                return values;
-            })
-            .stream()
-            .findFirst() // TODO: get all results
-            .orElseThrow(() -> new RuntimeException("Failed to parse query"));
-
-        convertExpressionList(expressions);
-        update.setExpressions(expressions);
-
-        return update;
+        return update; // Executed by re-signing the verified rows (see UpdateExecutor)
     }
 
     @Override
@@ -283,12 +283,18 @@ public class OCTQuery extends ICDBQuery {
         // TODO: one select query per table
         List<Table> tables = update.getTables();
 
+        queryTableName.add(tables.get(0).getName());
+
         Select select = SelectUtils.buildSelectFromTableAndSelectItems(tables.get(0), new AllColumns());
 
         // Apply the where clause to the SELECT
         PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
         plainSelect.setWhere(update.getWhere());
 
+        //if aggregate, parse the generated select query
+        if (codeGen.getAlgorithm().isAggregate())
+            {return parseVerifyQuery(select);}
+
         return select;
     }
 
@@ -303,6 +309,11 @@ public class OCTQuery extends ICDBQuery {
         // TODO: one select query per table
         List<Table> tables = update.getTables();
 
+        final Statement paged = parsePagedASVQuery(tables.get(0), update.getWhere());
+        if (paged != null) {
+            return paged;
+        }
+
         Select select = SelectUtils.buildSelectFromTableAndSelectItems(tables.get(0), new AllColumns());
         PlainSelect plainSelect = (PlainSelect) select.getSelectBody();
         List<SelectItem> selectItems = plainSelect.getSelectItems();
@@ -310,6 +321,7 @@ public class OCTQuery extends ICDBQuery {
         List<SelectItem> selectList = new ArrayList<>();
         selectList.add(new SelectExpressionItem(new HexValue("ic")));
 
+        plainSelect.setWhere(update.getWhere());
 
         // Convert query to a SELECT * to obtain all tuples
         plainSelect.setSelectItems(selectList);
@@ -319,6 +331,66 @@ public class OCTQuery extends ICDBQuery {
     }
 
 
+    /**
+     * Generates an aggregate signature query that reads the aggregate of each page of the table whose rows all match,
+     * plus the ICs of the matching rows of the other pages
+     * @return the query, or null if the table has no page aggregates
+     */
+    private Statement parsePagedASVQuery(Table table, Expression where) {
+        final PageAggregates pages = PageAggregates.find(icdb, codeGen, table.getName());
+        if (pages == null) {
+            return null;
+        }
+
+        try {
+            final Statement statement = CCJSqlParserUtil.parse(pages.aggregateQuery(table.toString(), where));
+            isPagedAggregate = true;
+            return statement;
+        } catch (JSQLParserException e) {
+            logger.warn("Unable to read the page aggregates of {}, aggregating every row: {}", table, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    protected List<String> getDataColumns(String table) {
+        final List<String> fields = icdb.getFields(table);
+        if (fields == null) {
+            return null;
+        }
+
+        return fields.stream()
+                .filter(field -> !field.equals(Format.IC_COLUMN) && !field.equals(Format.SERIAL_COLUMN))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    protected List<String[]> getCodeColumns(String table) {
+        return Collections.singletonList(new String[] { Format.IC_COLUMN, Format.SERIAL_COLUMN });
+    }
+
+    /**
+     * The tuple code covers every column, so any update re-signs it
+     */
+    @Override
+    protected List<Integer> getChangedMessages(String table, List<Integer> updatedColumns) {
+        return Collections.singletonList(0);
+    }
+
+    /**
+     * One message per row: each value followed by the delimiter, then the table name (as in FileConverter)
+     */
+    @Override
+    protected java.util.function.Function<List<String>, List<String>> getInsertMessageBuilder(String table) {
+        final String tableName = table.toLowerCase();
+
+        return values -> {
+            final StringBuilder message = new StringBuilder();
+            values.forEach(value -> message.append(value).append(','));
+            return Collections.singletonList(message.append(tableName).toString());
+        };
+    }
+
     /**
      * Generates a serial number and signature, and adds them to the list of expressions
      */
@@ -345,7 +417,7 @@ public class OCTQuery extends ICDBQuery {
 
         // Add serial number to expression list
         Long serial = converter.getSerial();
-        expressions.add(new DoubleValue(serial.toString()));
+        expressions.add(new LongValue(serial.toString()));
     }
 
 }
@@ -0,0 +1,185 @@
+package parse;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>
+ *     A query with the literals of its WHERE clause replaced by named parameters (e.g. :icdb_p0).
+ *     Queries that differ only in those literals share the same shape, so their conversions can be reused by
+ *     binding the literals back into the converted template.
+ *     Only literals in the top-level WHERE clause are replaced, since the rest of the query (select items, LIMIT)
+ *     can change how a query is converted.
+ * </p>
+ */
+public class QueryTemplate {
+
+    private static final String PARAMETER_PREFIX = ":icdb_p";
+    private static final Pattern PARAMETER = Pattern.compile(PARAMETER_PREFIX + "(\\d+)");
+
+    /**
+     * Strips the WHERE clause literals from a SELECT or DELETE query
+     * @return the template, or null if the query is not a SELECT or DELETE
+     */
+    public static QueryTemplate normalize(String query) {
+        final String trimmed = query.trim();
+        final String command = trimmed.split("\\s+", 2)[0];
+        if (!command.equalsIgnoreCase("SELECT") && !command.equalsIgnoreCase("DELETE")) {
+            return null;
+        }
+
+        final StringBuilder shape = new StringBuilder(trimmed.length());
+        final List<String> literals = new ArrayList<>();
+
+        int depth = 0;
+        boolean inWhere = false;
+        int i = 0;
+
+        while (i < trimmed.length()) {
+            final char c = trimmed.charAt(i);
+
+            if (c == '\'') {
+                // String literal, with '' and \' escapes
+                int end = i + 1;
+                while (end < trimmed.length()) {
+                    final char e = trimmed.charAt(end);
+                    if (e == '\\') {
+                        end += 2;
+                    } else if (e == '\'' && end + 1 < trimmed.length() && trimmed.charAt(end + 1) == '\'') {
+                        end += 2;
+                    } else if (e == '\'') {
+                        break;
+                    } else {
+                        end++;
+                    }
+                }
+                if (end >= trimmed.length()) {
+                    return null; // Unterminated string, let the parser report it
+                }
+                i = append(shape, literals, trimmed.substring(i, end + 1), inWhere, end + 1);
+            } else if (c == '"' || c == '`') {
+                // Quoted identifier
+                final int end = trimmed.indexOf(c, i + 1);
+                if (end < 0) {
+                    return null;
+                }
+                shape.append(trimmed, i, end + 1);
+                i = end + 1;
+            } else if (Character.isDigit(c) && (i == 0 || !isIdentifierPart(trimmed.charAt(i - 1)))) {
+                int end = i;
+                while (end < trimmed.length() && (Character.isDigit(trimmed.charAt(end)) || trimmed.charAt(end) == '.')) {
+                    end++;
+                }
+                if (end < trimmed.length() && isIdentifierPart(trimmed.charAt(end))) {
+                    // Not a plain number (e.g. 0x1F or an identifier starting with a digit)
+                    while (end < trimmed.length() && isIdentifierPart(trimmed.charAt(end))) {
+                        end++;
+                    }
+                    shape.append(trimmed, i, end);
+                    i = end;
+                } else {
+                    i = append(shape, literals, trimmed.substring(i, end), inWhere, end);
+                }
+            } else if (isIdentifierPart(c)) {
+                int end = i;
+                while (end < trimmed.length() && isIdentifierPart(trimmed.charAt(end))) {
+                    end++;
+                }
+                final String word = trimmed.substring(i, end);
+
+                if (depth == 0) {
+                    if (word.equalsIgnoreCase("WHERE")) {
+                        inWhere = true;
+                    } else if (isClauseKeyword(word)) {
+                        inWhere = false;
+                    }
+                }
+
+                shape.append(word);
+                i = end;
+            } else {
+                if (c == '(') {
+                    depth++;
+                } else if (c == ')') {
+                    depth--;
+                } else if (c == ':' || c == '?') {
+                    return null; // The query already has parameters
+                }
+                shape.append(c);
+                i++;
+            }
+        }
+
+        return new QueryTemplate(shape.toString(), literals);
+    }
+
+    private static int append(StringBuilder shape, List<String> literals, String literal, boolean inWhere, int next) {
+        if (inWhere) {
+            shape.append(PARAMETER_PREFIX).append(literals.size());
+            literals.add(literal);
+        } else {
+            shape.append(literal);
+        }
+        return next;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+    }
+
+    private static boolean isClauseKeyword(String word) {
+        switch (word.toUpperCase()) {
+            case "GROUP":
+            case "HAVING":
+            case "ORDER":
+            case "LIMIT":
+            case "UNION":
+            case "FOR":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private final String shape;
+    private final List<String> literals;
+
+    private QueryTemplate(String shape, List<String> literals) {
+        this.shape = shape;
+        this.literals = Collections.unmodifiableList(literals);
+    }
+
+    /**
+     * @return the query with its WHERE clause literals replaced by named parameters
+     */
+    public String getShape() {
+        return shape;
+    }
+
+    public List<String> getLiterals() {
+        return literals;
+    }
+
+    /**
+     * Replaces the named parameters in a converted template with this query's literals
+     */
+    public String bind(String template) {
+        if (literals.isEmpty() || template.isEmpty()) {
+            return template;
+        }
+
+        final Matcher matcher = PARAMETER.matcher(template);
+        final StringBuffer bound = new StringBuffer(template.length() + 16 * literals.size());
+        while (matcher.find()) {
+            final String literal = literals.get(Integer.parseInt(matcher.group(1)));
+            matcher.appendReplacement(bound, Matcher.quoteReplacement(literal));
+        }
+        matcher.appendTail(bound);
+
+        return bound.toString();
+    }
+
+}
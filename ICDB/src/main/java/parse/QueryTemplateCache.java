@@ -0,0 +1,105 @@
+package parse;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.ColumnGroups;
+import io.PageAggregates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *     Caches the converted verify/convert/aggregate templates of SELECT and DELETE queries, keyed by the ICDB
+ *     schema, granularity, algorithm, delete mode, storage layout, page aggregates, column groups and query shape. A
+ *     repeated query shape skips JSqlParser and the AST rewrite, and only binds its literals into the cached templates.
+ *     Commands that change the ICDB schema (convert-db, resign) clear the cache.
+ * </p>
+ */
+public class QueryTemplateCache {
+
+    private static final int MAXIMUM_SIZE = 1024;
+
+    private static final Cache<String, Entry> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAXIMUM_SIZE)
+            .build();
+
+    static String key(ICDBQuery icdbQuery, QueryTemplate template) {
+        // The page tables of the ICDB decide between paged and per-row aggregate queries
+        final String pageTables = icdbQuery.icdb.getTables().stream()
+                .filter(PageAggregates::isPageTable)
+                .sorted()
+                .collect(Collectors.joining(","));
+
+        return icdbQuery.icdb.getName() + '/' + icdbQuery.getClass().getSimpleName() + '/' +
+                icdbQuery.codeGen.getAlgorithm() + '/' + icdbQuery.deleteMode + '/' + icdbQuery.storageLayout + '/' +
+                PageAggregates.getPageSize() + '[' + pageTables + "]/" + ColumnGroups.getConfigured() + '/' +
+                template.getShape();
+    }
+
+    static Entry get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    static void put(String key, Entry entry) {
+        cache.put(key, entry);
+    }
+
+    /**
+     * Drops every cached template, after the ICDB schema changed
+     */
+    public static void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * The converted templates of a query shape, plus the state the conversion left on the query
+     */
+    static class Entry {
+        final String verifyQuery;
+        final String convertedQuery;
+        final String aggregateQuery;
+
+        private final List<String> queryTableName;
+        private final Map<String, String> columnOperation;
+        private final List<String> attributetables;
+        private final List<String> attributeNames;
+        private final boolean isAggregateQuery;
+        private final boolean isJoinQuery;
+        private final boolean isDeleteQuery;
+        private final boolean isPagedAggregate;
+
+        Entry(ICDBQuery icdbQuery, String verifyQuery, String convertedQuery, String aggregateQuery) {
+            this.verifyQuery = verifyQuery;
+            this.convertedQuery = convertedQuery;
+            this.aggregateQuery = aggregateQuery;
+
+            this.queryTableName = new ArrayList<>(icdbQuery.queryTableName);
+            this.columnOperation = new HashMap<>(icdbQuery.columnOperation);
+            this.attributetables = new ArrayList<>(icdbQuery.attributetables);
+            this.attributeNames = new ArrayList<>(icdbQuery.attributeNames);
+            this.isAggregateQuery = icdbQuery.isAggregateQuery;
+            this.isJoinQuery = icdbQuery.isJoinQuery;
+            this.isDeleteQuery = icdbQuery.isDeleteQuery;
+            this.isPagedAggregate = icdbQuery.isPagedAggregate;
+        }
+
+        /**
+         * Copies the conversion state onto a new query of the same shape
+         */
+        void restore(ICDBQuery icdbQuery) {
+            icdbQuery.queryTableName = new ArrayList<>(queryTableName);
+            icdbQuery.columnOperation.putAll(columnOperation);
+            icdbQuery.attributetables.addAll(attributetables);
+            icdbQuery.attributeNames.addAll(attributeNames);
+            icdbQuery.isAggregateQuery = isAggregateQuery;
+            icdbQuery.isJoinQuery = isJoinQuery;
+            icdbQuery.isDeleteQuery = isDeleteQuery;
+            icdbQuery.isPagedAggregate = isPagedAggregate;
+        }
+    }
+
+}
@@ -0,0 +1,431 @@
+package parse;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.RateLimiter;
+import crypto.CodeGen;
+import crypto.KeyRing;
+import io.DBConnection;
+import io.DataConverter;
+import io.MerkleTree;
+import io.PageAggregates;
+import main.ICDBTool;
+import main.args.config.UserConfig;
+import main.args.option.Granularity;
+import main.args.option.StorageLayout;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.DSLContext;
+import org.jooq.DataType;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Result;
+import org.jooq.SelectSeekStepN;
+import org.jooq.SortField;
+import org.jooq.impl.DSL;
+import stats.RunStatistics;
+import verify.serial.IcrlLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ *     Re-signs the codes of an ICDB with the current key, online, after the MAC key, the RSA key or the algorithm has
+ *     been rotated (see KeyRing). Each table is walked in primary key order, one batch of rows at a time. Every code of
+ *     a row that is not signed with the current key version is verified with the key it was signed with, then signed
+ *     again with a new serial, and the batch is written back in one transaction. A code that does not verify is left
+ *     unchanged, so re-signing never makes tampered data valid.
+ * </p>
+ * <p>
+ *     A code is only rewritten if its serial has not changed since it was read, so a concurrent writer, which signs with
+ *     the current key, always wins. The old serials are revoked. The job keeps no state: codes of the current version
+ *     are skipped, so an interrupted job is simply run again. It is throttled to a number of rows and bytes (of data
+ *     and codes read, and codes written) per second, so it can run alongside the regular workload.
+ * </p>
+ */
+public class Resigner {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final DBConnection icdb;
+    private final DSLContext create;
+    private final UserConfig dbConfig;
+    private final CodeGen codeGen;
+    private final int batchSize;
+
+    // The budgets, or null for no limit
+    private final RateLimiter rowLimiter;
+    private final RateLimiter byteLimiter;
+
+    // The codes re-signed, already current and failing verification, and the rows a writer rewrote first
+    private long resigned;
+    private long current;
+    private long failed;
+    private long raced;
+
+    /**
+     * @param batchSize the number of rows read and rewritten per transaction
+     * @param rowsPerSecond the number of rows read per second, or 0 for no limit
+     * @param bytesPerSecond the number of bytes read and written per second, or 0 for no limit
+     */
+    public Resigner(DBConnection icdb, UserConfig dbConfig, int batchSize, double rowsPerSecond, double bytesPerSecond) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1");
+        }
+
+        this.icdb = icdb;
+        this.create = icdb.getCreate();
+        this.dbConfig = dbConfig;
+        this.codeGen = dbConfig.codeGen;
+        this.batchSize = batchSize;
+        this.rowLimiter = rowsPerSecond > 0 ? RateLimiter.create(rowsPerSecond) : null;
+        this.byteLimiter = bytesPerSecond > 0 ? RateLimiter.create(bytesPerSecond) : null;
+    }
+
+    /**
+     * Re-signs the codes of the given tables
+     * @param tables the tables to re-sign, or null for every table
+     * @return true if every code of the tables is now signed with the current key version
+     */
+    public boolean resign(List<String> tables) {
+        final List<String> names = tables != null ? tables : icdb.getTables().stream()
+                .filter(table -> !PageAggregates.isPageTable(table) && !MerkleTree.isTreeTable(table))
+                .collect(Collectors.toList());
+
+        if (!KeyRing.isRotating()) {
+            logger.warn("No previous key is configured, so only codes of key version {} verify", KeyRing.getVersion());
+        }
+
+        final Stopwatch resignTime = Stopwatch.createStarted();
+        for (String table : names) {
+            if (dbConfig.granularity == Granularity.MERKLE) {
+                resignRoot(table);
+            } else {
+                resignTable(table.replace("`", ""));
+            }
+        }
+
+        // The page aggregates and codes the cached templates read were rewritten
+        QueryTemplateCache.clear();
+
+        logger.info("Re-signed {} code(s) with key version {} in {}: {} already current, {} failed to verify, {} row(s) rewritten concurrently",
+                resigned, KeyRing.getVersion(), resignTime.elapsed(ICDBTool.TIME_UNIT), current, failed, raced);
+
+        if (failed > 0) {
+            logger.warn("Some codes are not signed with key version {}; run the job again before removing the previous key", KeyRing.getVersion());
+            return false;
+        }
+
+        logger.info("Every code is signed with key version {}; the previous key can be removed from the configuration", KeyRing.getVersion());
+        return true;
+    }
+
+    /**
+     * A MERKLE table has no row codes: only the root held by the client is signed
+     */
+    private void resignRoot(String table) {
+        if (new MerkleTree(icdb, codeGen, table).resignRoot()) {
+            resigned++;
+        } else {
+            failed++;
+        }
+    }
+
+    private void resignTable(String table) {
+        final List<String> primaryKeys = icdb.getPrimaryKeys(table);
+        if (icdb.getFields(table) == null || primaryKeys == null || primaryKeys.isEmpty()) {
+            logger.error("Unable to re-sign table {}: it is unknown or has no primary key", table);
+            failed++;
+            return;
+        }
+
+        final Stopwatch tableTime = Stopwatch.createStarted();
+        final long resignedBefore = resigned;
+
+        // The codes of the table and their messages, as the queries of the granularity see them
+        final ICDBQuery layout = dbConfig.granularity.getQuery("SELECT * FROM " + table, icdb, codeGen, new RunStatistics());
+        final Pass pass = new Pass(table, primaryKeys, layout);
+        widenCodeColumns(table, pass.codeColumns, layout.isPacked());
+
+        final List<SortField<?>> order = primaryKeys.stream()
+                .<SortField<?>>map(key -> DSL.field(DSL.name(key)).asc())
+                .collect(Collectors.toList());
+
+        Object[] last = null;
+        while (true) {
+            final SelectSeekStepN<Record> select = create.selectFrom(DSL.table(DSL.name(table))).orderBy(order);
+            final Result<Record> batch = last == null
+                    ? select.limit(batchSize).fetch()
+                    : select.seek(last).limit(batchSize).fetch();
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            pass.resign(batch);
+
+            final Record lastRecord = batch.get(batch.size() - 1);
+            last = primaryKeys.stream().map(lastRecord::get).toArray();
+
+            if (batch.size() < batchSize) {
+                break;
+            }
+        }
+
+        logger.debug("Re-signed {} code(s) of table {} in {}", resigned - resignedBefore, table, tableTime.elapsed(ICDBTool.TIME_UNIT));
+    }
+
+    /**
+     * With the BINARY and PACKED layouts, code columns are as wide as the codes of the algorithm. If the rotation
+     * changes the type of the codes, the code columns are first changed to VARBINARY, wide enough for the codes of
+     * both keys. This is a schema change, so the table is rebuilt once.
+     */
+    private void widenCodeColumns(String table, List<String[]> codeColumns, boolean packed) {
+        final CodeGen previous = KeyRing.getPrevious();
+        if (previous == null || dbConfig.storageLayout == StorageLayout.BLOB || codeColumns.isEmpty()) {
+            return;
+        }
+
+        final DataType<byte[]> currentType = dbConfig.storageLayout.getCodeType(codeGen, packed);
+        final DataType<byte[]> previousType = dbConfig.storageLayout.getCodeType(previous, packed);
+        if (currentType.getTypeName().equals(previousType.getTypeName()) && currentType.length() == previousType.length()) {
+            return;
+        }
+
+        // The columns may have been widened by an earlier run
+        final int length = Math.max(currentType.length(), previousType.length());
+        final org.jooq.Table<?> schema = icdb.getTable(table);
+        final Field<?> field = schema == null ? null : schema.field(codeColumns.get(0)[0]);
+        if (field != null && field.getDataType().getTypeName().equalsIgnoreCase("varbinary") && field.getDataType().length() >= length) {
+            return;
+        }
+
+        logger.info("Changing the code columns of {} to VARBINARY({})", table, length);
+        create.execute("ALTER TABLE `" + table + "` " + codeColumns.stream()
+                .map(columns -> "MODIFY `" + columns[0] + "` VARBINARY(" + length + ")")
+                .collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * Appends the serials to the ICRL log, returning once they are durable
+     */
+    private static void revokeSerials(List<Long> serials) {
+        try {
+            IcrlLog.Companion.getLog().revokeAll(serials.stream().mapToLong(Long::longValue).toArray());
+        } catch (IOException e) {
+            logger.error("Unable to revoke serials: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return the signed bytes of a message: the message followed by its serial
+     */
+    private static byte[] withSerial(byte[] message, long serial) {
+        return ArrayUtils.addAll(message, ByteBuffer.allocate(8).putLong(serial).array());
+    }
+
+    /**
+     * A code to sign again with the current key
+     */
+    private static final class Rewrite {
+        private final int message;
+        private final long oldSerial;
+        private final Object oldValue;  // The serial read, or the packed code holding it
+        private final byte[] data;
+        private long serial;
+        private byte[] signature;
+
+        private Rewrite(int message, long oldSerial, Object oldValue, byte[] data) {
+            this.message = message;
+            this.oldSerial = oldSerial;
+            this.oldValue = oldValue;
+            this.data = data;
+        }
+    }
+
+    /**
+     * The re-signing of one table
+     */
+    private final class Pass {
+        private final String table;
+        private final List<String> primaryKeys;
+        private final ICDBQuery layout;
+        private final List<String> dataColumns;
+        private final List<String[]> codeColumns;
+        private final Function<List<String>, List<String>> messages;
+        private final PageAggregates pages;
+
+        private Pass(String table, List<String> primaryKeys, ICDBQuery layout) {
+            this.table = table;
+            this.primaryKeys = primaryKeys;
+            this.layout = layout;
+            this.dataColumns = layout.getDataColumns(table);
+            this.codeColumns = layout.getCodeColumns(table);
+            this.messages = layout.getInsertMessageBuilder(table);
+            this.pages = PageAggregates.find(icdb, codeGen, table);
+        }
+
+        private void resign(Result<Record> batch) {
+            long bytes = 0;
+
+            // The codes to sign again, by row
+            final Map<Record, List<Rewrite>> rows = new LinkedHashMap<>();
+            int total = 0;
+
+            for (Record record : batch) {
+                final List<String> values = dataColumns.stream()
+                        .map(column -> String.valueOf(record.get(column)))
+                        .collect(Collectors.toList());
+                final List<String> rowMessages = messages.apply(values);
+                bytes += values.stream().mapToInt(String::length).sum();
+
+                final List<Rewrite> rewrites = new ArrayList<>();
+                for (int j = 0; j < codeColumns.size(); j++) {
+                    final String[] columns = codeColumns.get(j);
+                    final Object stored = record.get(columns[0]);
+
+                    // The code and serial, or the packed code holding both
+                    final byte[] code;
+                    final Object serial;
+                    if (columns.length == 1) {
+                        code = stored instanceof byte[] ? StorageLayout.unpackCode((byte[]) stored) : null;
+                        serial = stored instanceof byte[] ? StorageLayout.unpackSerial((byte[]) stored) : null;
+                    } else {
+                        code = stored instanceof byte[] ? (byte[]) stored : null;
+                        serial = record.get(columns[1]);
+                        bytes += 8;
+                    }
+
+                    if (code == null || !(serial instanceof Number)) {
+                        logger.warn("Row {} of {} has no code in {}", keyOf(record), table, columns[0]);
+                        failed++;
+                        continue;
+                    }
+                    bytes += ((byte[]) stored).length;
+
+                    final long oldSerial = ((Number) serial).longValue();
+                    if (KeyRing.isCurrent(oldSerial)) {
+                        current++;
+                        continue;
+                    }
+
+                    final byte[] data = rowMessages.get(j).getBytes(Charsets.UTF_8);
+                    final CodeGen signer = KeyRing.codeGenFor(oldSerial, codeGen);
+                    if (signer == null || IcrlLog.Companion.getLog().contains(oldSerial) || !signer.verify(withSerial(data, oldSerial), code)) {
+                        logger.warn("The code in {} of row {} of {} (key version {}) does not verify, leaving it unchanged",
+                                columns[0], keyOf(record), table, KeyRing.versionOf(oldSerial));
+                        failed++;
+                        continue;
+                    }
+
+                    rewrites.add(new Rewrite(j, oldSerial, columns.length == 1 ? stored : serial, data));
+                }
+
+                if (!rewrites.isEmpty()) {
+                    rows.put(record, rewrites);
+                    total += rewrites.size();
+                }
+            }
+
+            if (total > 0) {
+                bytes += write(rows, total);
+            }
+
+            if (rowLimiter != null) {
+                rowLimiter.acquire(batch.size());
+            }
+            if (byteLimiter != null && bytes > 0) {
+                byteLimiter.acquire((int) Math.min(bytes, Integer.MAX_VALUE));
+            }
+        }
+
+        /**
+         * Signs the codes again with leased serials, and writes them back in one transaction
+         * @return the number of bytes written
+         */
+        private long write(Map<Record, List<Rewrite>> rows, int total) {
+            long bytes = 0;
+
+            long serial = KeyRing.serial(layout.icrl.addNext(total));
+            for (List<Rewrite> rewrites : rows.values()) {
+                for (Rewrite rewrite : rewrites) {
+                    rewrite.serial = serial++;
+                    rewrite.signature = new DataConverter(rewrite.data, rewrite.serial, codeGen).getSignature();
+                    bytes += rewrite.signature.length + 8;
+                }
+            }
+
+            final List<Long> revoked = new ArrayList<>();
+            final List<Object> pageKeys = new ArrayList<>();
+
+            create.transaction(configuration -> {
+                final DSLContext transaction = DSL.using(configuration);
+
+                for (Map.Entry<Record, List<Rewrite>> row : rows.entrySet()) {
+                    final List<Object> bindings = new ArrayList<>();
+                    final List<String> assignments = new ArrayList<>();
+                    final List<String> conditions = new ArrayList<>();
+
+                    for (Rewrite rewrite : row.getValue()) {
+                        final String[] columns = codeColumns.get(rewrite.message);
+                        if (columns.length == 1) {
+                            assignments.add("`" + columns[0] + "`=?");
+                            bindings.add(StorageLayout.pack(rewrite.serial, rewrite.signature));
+                        } else {
+                            assignments.add("`" + columns[0] + "`=?");
+                            assignments.add("`" + columns[1] + "`=?");
+                            bindings.add(rewrite.signature);
+                            bindings.add(rewrite.serial);
+                        }
+                    }
+
+                    for (String key : primaryKeys) {
+                        conditions.add("`" + key + "`=?");
+                        bindings.add(row.getKey().get(key));
+                    }
+
+                    // Only if the code has not been rewritten since it was read
+                    for (Rewrite rewrite : row.getValue()) {
+                        final String[] columns = codeColumns.get(rewrite.message);
+                        conditions.add("`" + columns[columns.length - 1] + "`=?");
+                        bindings.add(rewrite.oldValue);
+                    }
+
+                    final String update = "UPDATE `" + table + "` SET " + String.join(",", assignments) +
+                            " WHERE " + String.join(" AND ", conditions);
+
+                    if (transaction.execute(update, bindings.toArray()) > 0) {
+                        row.getValue().forEach(rewrite -> revoked.add(rewrite.oldSerial));
+                        pageKeys.add(row.getKey().get(primaryKeys.get(0)));
+                    } else {
+                        raced++;
+                    }
+                }
+            });
+
+            resigned += revoked.size();
+            layout.icrl.commit();
+            revokeSerials(revoked);
+
+            if (pages != null && !pageKeys.isEmpty()) {
+                pages.refresh(create, pages.pagesOf(pageKeys));
+            }
+
+            return bytes;
+        }
+
+        private String keyOf(Record record) {
+            return primaryKeys.stream()
+                    .map(key -> String.valueOf(record.get(key)))
+                    .collect(Collectors.joining(",", "(", ")"));
+        }
+    }
+
+}
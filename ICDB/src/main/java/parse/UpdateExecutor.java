@@ -0,0 +1,310 @@
+package parse;
+
+import com.google.common.base.Charsets;
+import crypto.KeyRing;
+import io.DataConverter;
+import main.args.option.StorageLayout;
+import net.sf.jsqlparser.expression.DoubleValue;
+import net.sf.jsqlparser.expression.Expression;
+import net.sf.jsqlparser.expression.LongValue;
+import net.sf.jsqlparser.expression.NullValue;
+import net.sf.jsqlparser.expression.SignedExpression;
+import net.sf.jsqlparser.expression.StringValue;
+import net.sf.jsqlparser.statement.update.Update;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.Condition;
+import org.jooq.ConnectionProvider;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ *     Executes a verified UPDATE as a set-based operation. The rows fetched (and verified) by the verify query are
+ *     re-signed with their new values, and only the integrity codes that change are rewritten: the tuple code in OCT,
+ *     the codes of the updated fields in OCF. Rows are written back in batched statements keyed by primary key, and
+ *     the old serials are collected for revocation.
+ *     Literal SET values are applied client-side. Any other expression is evaluated by the server, after which the
+ *     affected rows are fetched again by primary key and re-signed.
+ * </p>
+ */
+class UpdateExecutor {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final ICDBQuery icdbQuery;
+    private final Update update;
+    private final String table;
+    private final List<String> dataColumns;
+    private final List<String> primaryKeys;
+    private final List<String[]> codeColumns;
+
+    private final List<Integer> setColumns = new ArrayList<>();     // Indexes (in dataColumns) of the updated columns
+    private final List<Object> setValues = new ArrayList<>();       // Their new values, if every value is a literal
+    private final List<Integer> changedMessages;
+    private final boolean literal;
+
+    private List<Record> writtenRecords = new ArrayList<>();  // The rows written by execute(), before the literal SET values
+
+    UpdateExecutor(ICDBQuery icdbQuery, Update update) {
+        this.icdbQuery = icdbQuery;
+        this.update = update;
+
+        if (update.getTables().size() != 1) {
+            throw new IllegalArgumentException("Only single-table updates are supported");
+        }
+
+        this.table = update.getTables().get(0).getName().replace("`", "");
+        this.dataColumns = icdbQuery.getDataColumns(table);
+        this.primaryKeys = icdbQuery.icdb.getPrimaryKeys(table);
+        if (dataColumns == null || primaryKeys == null || primaryKeys.isEmpty()) {
+            throw new IllegalArgumentException("Table " + table + " has no primary key");
+        }
+        this.codeColumns = icdbQuery.getCodeColumns(table);
+
+        final org.jooq.Table<?> jooqTable = icdbQuery.icdb.getTable(table);
+        boolean literal = true;
+
+        for (int i = 0; i < update.getColumns().size(); i++) {
+            final String column = update.getColumns().get(i).getColumnName().replace("`", "");
+            final int index = indexOf(dataColumns, column);
+
+            if (index < 0) {
+                throw new IllegalArgumentException("Unknown column " + column);
+            }
+            if (indexOf(primaryKeys, column) >= 0) {
+                throw new IllegalArgumentException("Updating primary key " + column + " is not supported");
+            }
+            setColumns.add(index);
+
+            final Expression expression = update.getExpressions().get(i);
+            if (literal && isLiteral(expression)) {
+                final String text = getLiteralText(expression);
+                final Field<?> field = jooqTable == null ? null : jooqTable.field(dataColumns.get(index));
+                setValues.add(text == null || field == null ? text : field.getDataType().convert(text));
+            } else {
+                literal = false;
+            }
+        }
+
+        if (!literal) {
+            setValues.clear();
+        }
+
+        this.literal = literal;
+        this.changedMessages = icdbQuery.getChangedMessages(table, setColumns);
+    }
+
+    /**
+     * Applies the update to the given (verified) rows. The caller runs it in a transaction, so a server-side update
+     * is never committed without the codes re-signed for it.
+     * @return the number of rows written
+     */
+    int execute(DSLContext create, Collection<Record> verifiedRecords) {
+        List<Record> records = new ArrayList<>(verifiedRecords);
+
+        if (!literal) {
+            // Let the server evaluate the expressions, then read back the new values
+            create.execute(update.toString());
+            records = refetch(create, records);
+        }
+
+        final Function<List<String>, List<String>> messages = icdbQuery.getInsertMessageBuilder(table);
+        final ConnectionProvider provider = create.configuration().connectionProvider();
+        final Connection connection = provider.acquire();
+
+        int written = 0;
+        try (PreparedStatement statement = connection.prepareStatement(getWriteBackQuery())) {
+            for (int start = 0; start < records.size(); start += ICDBQuery.INSERT_BATCH_SIZE) {
+                final List<Record> batch = records.subList(start, Math.min(records.size(), start + ICDBQuery.INSERT_BATCH_SIZE));
+                written += writeBack(statement, batch, messages);
+            }
+        } catch (SQLException e) {
+            throw new org.jooq.exception.DataAccessException("Failed to write back updated rows", e);
+        } finally {
+            provider.release(connection);
+        }
+
+        writtenRecords = records;
+        logger.debug("Re-signed {} row(s) of {}, revoking {} serial(s)", written, table, icdbQuery.serialsToBeRevoked.size());
+        return written;
+    }
+
+    /**
+     * @return the value of a column in each row written by execute(), after the update
+     */
+    List<Object> getWrittenValues(String column) {
+        final int index = indexOf(dataColumns, column);
+        final int set = literal ? setColumns.indexOf(index) : -1;
+
+        return writtenRecords.stream()
+                .map(record -> set >= 0 ? setValues.get(set) : record.field(column) == null ? null : record.get(column))
+                .collect(Collectors.toList());
+    }
+
+    private int writeBack(PreparedStatement statement, List<Record> batch, Function<List<String>, List<String>> messages)
+            throws SQLException {
+        // Re-sign the changed messages of each row, with one leased serial per message
+        final long firstSerial = KeyRing.serial(icdbQuery.icrl.addNext(batch.size() * changedMessages.size()));
+        final byte[][][] signatures = new byte[batch.size()][changedMessages.size()][];
+
+        IntStream.range(0, batch.size()).parallel().forEach(i -> {
+            final List<String> rowMessages = messages.apply(getValues(batch.get(i)));
+
+            for (int j = 0; j < changedMessages.size(); j++) {
+                final long serial = firstSerial + (long) i * changedMessages.size() + j;
+                final byte[] data = rowMessages.get(changedMessages.get(j)).getBytes(Charsets.UTF_8);
+                signatures[i][j] = new DataConverter(data, serial, icdbQuery.codeGen).getSignature();
+            }
+        });
+
+        for (int i = 0; i < batch.size(); i++) {
+            final Record record = batch.get(i);
+            int parameter = 1;
+
+            if (literal) {
+                for (Object value : setValues) {
+                    statement.setObject(parameter++, value);
+                }
+            }
+
+            for (int j = 0; j < changedMessages.size(); j++) {
+                final String[] columns = codeColumns.get(changedMessages.get(j));
+                final long serial = firstSerial + (long) i * changedMessages.size() + j;
+
+                // The old code is replaced, so its serial is no longer valid
+                final Object oldSerial;
+                if (columns.length == 1) {
+                    statement.setBytes(parameter++, StorageLayout.pack(serial, signatures[i][j]));
+                    final Object oldCode = record.get(columns[0]);
+                    oldSerial = oldCode instanceof byte[] ? StorageLayout.unpackSerial((byte[]) oldCode) : null;
+                } else {
+                    statement.setBytes(parameter++, signatures[i][j]);
+                    statement.setLong(parameter++, serial);
+                    oldSerial = record.get(columns[1]);
+                }
+
+                if (oldSerial instanceof Number) {
+                    icdbQuery.serialsToBeRevoked.add(((Number) oldSerial).longValue());
+                }
+            }
+
+            for (String key : primaryKeys) {
+                statement.setObject(parameter++, record.get(key));
+            }
+
+            statement.addBatch();
+        }
+
+        statement.executeBatch();
+        return batch.size();
+    }
+
+    /**
+     * @return UPDATE t SET [updated columns,] codes WHERE primary key
+     */
+    private String getWriteBackQuery() {
+        final List<String> assignments = new ArrayList<>();
+
+        if (literal) {
+            setColumns.forEach(index -> assignments.add("`" + dataColumns.get(index) + "`=?"));
+        }
+        for (int message : changedMessages) {
+            for (String column : codeColumns.get(message)) {
+                assignments.add("`" + column + "`=?");
+            }
+        }
+
+        return "UPDATE `" + table + "` SET " + String.join(",", assignments) + " WHERE " +
+                primaryKeys.stream().map(key -> "`" + key + "`=?").collect(Collectors.joining(" AND "));
+    }
+
+    /**
+     * @return the values of a row after the update, in table column order, as strings for the signed message
+     */
+    private List<String> getValues(Record record) {
+        final List<String> values = new ArrayList<>(dataColumns.size());
+
+        for (int i = 0; i < dataColumns.size(); i++) {
+            final int set = literal ? setColumns.indexOf(i) : -1;
+            final Object value = set >= 0 ? setValues.get(set) : record.get(dataColumns.get(i));
+            values.add(String.valueOf(value));
+        }
+
+        return values;
+    }
+
+    /**
+     * Fetches the current version of the given rows by primary key
+     */
+    private List<Record> refetch(DSLContext create, List<Record> records) {
+        final List<Record> refetched = new ArrayList<>(records.size());
+
+        for (int start = 0; start < records.size(); start += ICDBQuery.INSERT_BATCH_SIZE) {
+            Condition condition = DSL.falseCondition();
+
+            for (Record record : records.subList(start, Math.min(records.size(), start + ICDBQuery.INSERT_BATCH_SIZE))) {
+                Condition key = DSL.trueCondition();
+                for (String primaryKey : primaryKeys) {
+                    key = key.and(DSL.field(DSL.name(primaryKey)).eq(record.get(primaryKey)));
+                }
+                condition = condition.or(key);
+            }
+
+            refetched.addAll(create.selectFrom(DSL.table(DSL.name(table))).where(condition).fetch());
+        }
+
+        return refetched;
+    }
+
+    private static int indexOf(List<String> columns, String column) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLiteral(Expression expression) {
+        if (expression instanceof SignedExpression) {
+            return isLiteral(((SignedExpression) expression).getExpression());
+        }
+        return expression instanceof StringValue || expression instanceof LongValue
+                || expression instanceof DoubleValue || expression instanceof NullValue;
+    }
+
+    /**
+     * @return the value of a literal as the database returns it, or null for NULL
+     */
+    private static String getLiteralText(Expression expression) {
+        if (expression instanceof SignedExpression) {
+            final SignedExpression signed = (SignedExpression) expression;
+            final String value = getLiteralText(signed.getExpression());
+            return signed.getSign() == '-' ? "-" + value : value;
+        }
+        if (expression instanceof StringValue) {
+            return ((StringValue) expression).getValue().replace("''", "'");
+        }
+        if (expression instanceof LongValue) {
+            return ((LongValue) expression).getStringValue();
+        }
+        if (expression instanceof NullValue) {
+            return null;
+        }
+        return expression.toString();
+    }
+
+}
@@ -0,0 +1,185 @@
+package stats
+
+import java.util.*
+
+/**
+ * Compares the runs of a baseline and a candidate result set. Runs are grouped by algorithm, granularity, query,
+ * client count and fetch size, and each timing, throughput and latency column of a group present in both sets is
+ * tested with Welch's t-test. A difference is a regression (or an improvement) when it is significant at the given
+ * level and the candidate mean is worse (or better) than the baseline by more than the threshold.
+ */
+class Comparison(
+    baseline: List<ResultRecord>,
+    candidate: List<ResultRecord>,
+    private val thresholdPercent: Double,
+    private val alpha: Double
+) {
+
+    enum class Verdict { REGRESSION, IMPROVEMENT, UNCHANGED }
+
+    data class Difference(
+        val group: String,
+        val metric: String,
+        val baselineMean: Double,
+        val candidateMean: Double,
+        val changePercent: Double,
+        val pValue: Double,
+        val verdict: Verdict
+    ) {
+        override fun toString(): String = String.format(
+            Locale.ROOT, "%-10s %s | %s: %.2f -> %.2f (%+.1f%%, p=%s)",
+            verdict, group, metric, baselineMean, candidateMean, changePercent,
+            if (pValue.isNaN()) "n/a" else String.format(Locale.ROOT, "%.4f", pValue)
+        )
+    }
+
+    val differences: List<Difference>
+
+    val regressions: List<Difference>
+        get() = differences.filter { it.verdict == Verdict.REGRESSION }
+
+    init {
+        val baselineGroups = baseline.groupBy { group(it) }
+        val candidateGroups = candidate.groupBy { group(it) }
+
+        val differences = ArrayList<Difference>()
+        for ((group, baselineRuns) in baselineGroups.toSortedMap()) {
+            val candidateRuns = candidateGroups[group] ?: continue
+
+            val metrics = baselineRuns.first().values.keys.filter { it !in IGNORED && !it.endsWith("(Bytes)") }
+            for (metric in metrics) {
+                val a = baselineRuns.mapNotNull { it.values[metric]?.toDouble() }
+                val b = candidateRuns.mapNotNull { it.values[metric]?.toDouble() }
+                if (a.isEmpty() || b.isEmpty()) {
+                    continue
+                }
+
+                val baselineMean = a.average()
+                val candidateMean = b.average()
+                if (baselineMean == 0.0 && candidateMean == 0.0) {
+                    continue
+                }
+
+                val change = if (baselineMean == 0.0) Double.POSITIVE_INFINITY else (candidateMean - baselineMean) / baselineMean * 100
+                val pValue = welchPValue(a, b)
+
+                // Throughput is better higher, times and latencies are better lower
+                val worse = if (metric.contains("Throughput")) -change else change
+                val verdict = when {
+                    pValue.isNaN() || pValue >= alpha -> Verdict.UNCHANGED
+                    worse > thresholdPercent -> Verdict.REGRESSION
+                    worse < -thresholdPercent -> Verdict.IMPROVEMENT
+                    else -> Verdict.UNCHANGED
+                }
+
+                differences.add(Difference(group, metric, baselineMean, candidateMean, change, pValue, verdict))
+            }
+        }
+
+        this.differences = differences
+    }
+
+    private fun group(record: ResultRecord): String = listOf(
+        record.metadata["Algorithm"], record.metadata["Granularity"], record.metadata["DB Query"],
+        (record.metadata["Clients"] ?: "1") + " client(s)", (record.values["Query Fetch Size"] ?: 0).toString() + " rows"
+    ).joinToString(" ")
+
+    companion object {
+        // Columns that identify a run rather than measure it
+        private val IGNORED = setOf("run", "Client", "Query Fetch Size")
+
+        /**
+         * @return the two-sided p-value of Welch's t-test that the samples have equal means, or NaN if either sample
+         * has fewer than two values
+         */
+        @JvmStatic fun welchPValue(a: List<Double>, b: List<Double>): Double {
+            if (a.size < 2 || b.size < 2) {
+                return Double.NaN
+            }
+
+            val meanA = a.average()
+            val meanB = b.average()
+            val varA = a.map { (it - meanA) * (it - meanA) }.sum() / (a.size - 1) / a.size
+            val varB = b.map { (it - meanB) * (it - meanB) }.sum() / (b.size - 1) / b.size
+
+            if (varA + varB == 0.0) {
+                return if (meanA == meanB) 1.0 else 0.0
+            }
+
+            val t = (meanA - meanB) / Math.sqrt(varA + varB)
+            val df = (varA + varB) * (varA + varB) /
+                (varA * varA / (a.size - 1) + varB * varB / (b.size - 1))
+
+            return regularizedBeta(df / (df + t * t), df / 2, 0.5)
+        }
+
+        /**
+         * The regularized incomplete beta function I_x(a, b), evaluated with its continued fraction
+         */
+        private fun regularizedBeta(x: Double, a: Double, b: Double): Double {
+            if (x <= 0) return 0.0
+            if (x >= 1) return 1.0
+
+            val front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x) + b * Math.log(1 - x))
+            return if (x < (a + 1) / (a + b + 2)) {
+                front * betaFraction(x, a, b) / a
+            } else {
+                1 - front * betaFraction(1 - x, b, a) / b
+            }
+        }
+
+        private fun betaFraction(x: Double, a: Double, b: Double): Double {
+            val tiny = 1e-300
+            var c = 1.0
+            var d = 1 - (a + b) * x / (a + 1)
+            if (Math.abs(d) < tiny) d = tiny
+            d = 1 / d
+            var h = d
+
+            for (m in 1..300) {
+                val m2 = 2.0 * m
+
+                var aa = m * (b - m) * x / ((a + m2 - 1) * (a + m2))
+                d = 1 + aa * d
+                if (Math.abs(d) < tiny) d = tiny
+                c = 1 + aa / c
+                if (Math.abs(c) < tiny) c = tiny
+                d = 1 / d
+                h *= d * c
+
+                aa = -(a + m) * (a + b + m) * x / ((a + m2) * (a + m2 + 1))
+                d = 1 + aa * d
+                if (Math.abs(d) < tiny) d = tiny
+                c = 1 + aa / c
+                if (Math.abs(c) < tiny) c = tiny
+                d = 1 / d
+                val delta = d * c
+                h *= delta
+
+                if (Math.abs(delta - 1) < 1e-14) break
+            }
+
+            return h
+        }
+
+        // Lanczos approximation (g = 7)
+        private val LANCZOS = doubleArrayOf(
+            0.99999999999980993, 676.5203681218851, -1259.1392167224028, 771.32342877765313, -176.61502916214059,
+            12.507343278686905, -0.13857109526572012, 9.9843695780195716e-6, 1.5056327351493116e-7
+        )
+
+        private fun logGamma(x: Double): Double {
+            if (x < 0.5) {
+                return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * x))) - logGamma(1 - x)
+            }
+
+            val z = x - 1
+            var sum = LANCZOS[0]
+            for (i in 1 until LANCZOS.size) {
+                sum += LANCZOS[i] / (z + i)
+            }
+            val t = z + 7.5
+            return 0.5 * Math.log(2 * Math.PI) + (z + 0.5) * Math.log(t) - t + Math.log(sum)
+        }
+    }
+}
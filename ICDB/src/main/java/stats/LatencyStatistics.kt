@@ -0,0 +1,76 @@
+package stats
+
+import org.HdrHistogram.Histogram
+import org.HdrHistogram.Recorder
+import java.util.EnumMap
+
+/**
+ * Collects per-record latency distributions of the phases of a run. Each phase records into an HdrHistogram
+ * [Recorder], so worker threads never contend on a lock, and the distribution is read once the run ends.
+ */
+class LatencyStatistics {
+
+    /**
+     * The timed phases of a run
+     */
+    enum class Phase(val label: String) {
+        FETCH("Fetch"),             // Transfer and decode of one record
+        VERIFY("Verify"),           // Verification of one record
+        SIGN("Sign"),               // One MAC/signature computation
+        ICRL_CHECK("ICRL Check")    // One ICRL lookup
+    }
+
+    private val recorders = EnumMap<Phase, Recorder>(Phase::class.java)
+    private val histograms = EnumMap<Phase, Histogram>(Phase::class.java)
+
+    init {
+        Phase.values().forEach {
+            recorders[it] = Recorder(SIGNIFICANT_DIGITS)
+            histograms[it] = Histogram(SIGNIFICANT_DIGITS)
+        }
+    }
+
+    /**
+     * Records the latency of one operation
+     */
+    fun record(phase: Phase, nanos: Long) = recorders[phase]!!.recordValue(Math.max(0, nanos))
+
+    /**
+     * Records the latency of one operation started at the given System.nanoTime()
+     */
+    fun recordSince(phase: Phase, startNanos: Long) = record(phase, System.nanoTime() - startNanos)
+
+    /**
+     * @return all latencies recorded so far for the phase, in nanoseconds
+     */
+    @Synchronized fun histogram(phase: Phase): Histogram {
+        val histogram = histograms[phase]!!
+        histogram.add(recorders[phase]!!.intervalHistogram)
+        return histogram
+    }
+
+    /**
+     * @return the number of operations recorded for the phase
+     */
+    fun count(phase: Phase): Long = histogram(phase).totalCount
+
+    /**
+     * @return p50, p99 and p99.9 of each phase in nanoseconds (ICRL lookups take well under a microsecond),
+     * in the order of [HEADER]
+     */
+    fun percentiles(): List<Long> = Phase.values().flatMap { phase ->
+        val histogram = histogram(phase)
+        PERCENTILES.map { histogram.getValueAtPercentile(it) }
+    }
+
+    companion object {
+        private const val SIGNIFICANT_DIGITS = 3
+
+        private val PERCENTILES = listOf(50.0, 99.0, 99.9)
+
+        val HEADER: List<String> = Phase.values().flatMap { phase ->
+            listOf("p50", "p99", "p999").map { "${phase.label} $it (ns)" }
+        }
+    }
+
+}
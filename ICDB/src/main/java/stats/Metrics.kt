@@ -0,0 +1,134 @@
+package stats
+
+import com.codahale.metrics.Counter
+import com.codahale.metrics.Gauge
+import com.codahale.metrics.JmxReporter
+import com.codahale.metrics.Meter
+import com.codahale.metrics.MetricRegistry
+import com.google.common.base.Charsets
+import com.sun.net.httpserver.HttpServer
+import crypto.AlgorithmType
+import io.ConnectionPool
+import org.apache.logging.log4j.LogManager
+import verify.serial.IcrlLog
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.util.EnumMap
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Live metrics of a running conversion, query or benchmark. The registry is exported over JMX (domain "icdb") and,
+ * if a port is given, as Prometheus text at http://localhost:<port>/metrics, so long runs can be watched as they go.
+ */
+object Metrics {
+
+    @JvmField val registry = MetricRegistry()
+
+    // Rows per second through each stage
+    @JvmField val fetchedRecords: Meter = registry.meter("records.fetched")
+    @JvmField val verifiedRecords: Meter = registry.meter("records.verified")
+    @JvmField val convertedRows: Meter = registry.meter("rows.converted")
+    @JvmField val insertedRows: Meter = registry.meter("rows.inserted")
+
+    // Fetch threads currently streaming records from the database
+    @JvmField val inFlightFetches: Counter = registry.counter("fetch.inflight")
+
+    private val macOperations = EnumMap<AlgorithmType, Meter>(AlgorithmType::class.java)
+    private val queues = ConcurrentHashMap.newKeySet<Collection<*>>()
+
+    private var server: HttpServer? = null
+    private var reporter: JmxReporter? = null
+
+    private val logger = LogManager.getLogger()
+
+    init {
+        AlgorithmType.values().forEach { macOperations[it] = registry.meter("mac.ops." + it.name) }
+
+        registry.register("verify.queue.depth", Gauge<Int> { queues.sumBy { it.size } })
+        registry.register("icrl.size", Gauge<Int> { IcrlLog.log.size })
+    }
+
+    /**
+     * @return the meter of MAC/signature operations of the algorithm
+     */
+    @JvmStatic fun macOperations(algorithm: AlgorithmType): Meter = macOperations[algorithm]!!
+
+    /**
+     * Reports the size of a verifier queue while it is in use
+     */
+    @JvmStatic fun track(queue: Collection<*>) = queues.add(queue)
+
+    @JvmStatic fun untrack(queue: Collection<*>) = queues.remove(queue)
+
+    /**
+     * Reports the leased and open connections of a pool
+     */
+    @JvmStatic fun register(name: String, pool: ConnectionPool) {
+        registry.remove("pool.$name.leased")
+        registry.remove("pool.$name.open")
+        registry.register("pool.$name.leased", Gauge<Int> { pool.leased })
+        registry.register("pool.$name.open", Gauge<Int> { pool.open })
+    }
+
+    /**
+     * Starts the JMX reporter and, for a positive port, the HTTP endpoint on the loopback interface
+     */
+    @JvmStatic @Synchronized fun start(port: Int) {
+        if (reporter == null) {
+            reporter = JmxReporter.forRegistry(registry).inDomain("icdb").build()
+            reporter!!.start()
+        }
+
+        if (port > 0 && server == null) {
+            val http = HttpServer.create(InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0)
+            http.createContext("/metrics") { exchange ->
+                val body = prometheusText().toByteArray(Charsets.UTF_8)
+                exchange.responseHeaders.add("Content-Type", "text/plain; version=0.0.4; charset=utf-8")
+                exchange.sendResponseHeaders(200, body.size.toLong())
+                exchange.responseBody.use { it.write(body) }
+            }
+            http.start()
+            server = http
+
+            logger.info("Serving metrics at http://localhost:{}/metrics", port)
+        }
+    }
+
+    @JvmStatic @Synchronized fun stop() {
+        server?.stop(0)
+        server = null
+        reporter?.stop()
+        reporter = null
+    }
+
+    /**
+     * @return the registry in the Prometheus text exposition format
+     */
+    @JvmStatic fun prometheusText(): String {
+        val builder = StringBuilder()
+
+        for ((name, gauge) in registry.gauges) {
+            val value = gauge.value
+            if (value is Number) {
+                sample(builder, name, "gauge", value)
+            }
+        }
+        for ((name, counter) in registry.counters) {
+            sample(builder, name, "gauge", counter.count)
+        }
+        for ((name, meter) in registry.meters) {
+            sample(builder, name + ".total", "counter", meter.count)
+            sample(builder, name + ".rate1m", "gauge", meter.oneMinuteRate)
+            sample(builder, name + ".rate.mean", "gauge", meter.meanRate)
+        }
+
+        return builder.toString()
+    }
+
+    private fun sample(builder: StringBuilder, name: String, type: String, value: Number) {
+        val metric = "icdb_" + name.replace(Regex("[^a-zA-Z0-9_]"), "_")
+        builder.append("# TYPE ").append(metric).append(' ').append(type).append('\n')
+        builder.append(metric).append(' ').append(value).append('\n')
+    }
+
+}
@@ -0,0 +1,162 @@
+package stats
+
+import com.google.common.base.Charsets
+import com.google.gson.JsonObject
+import com.google.gson.JsonParser
+import org.apache.logging.log4j.LogManager
+import org.supercsv.io.CsvListReader
+import org.supercsv.prefs.CsvPreference
+import java.io.File
+import java.io.FileOutputStream
+import java.io.FileReader
+import java.io.IOException
+import java.io.OutputStreamWriter
+import java.io.Writer
+import java.text.SimpleDateFormat
+import java.util.*
+
+/**
+ * One run read back from a result store: its metadata and its statistics, both keyed by column name
+ */
+data class ResultRecord(
+    val runId: String,
+    val metadata: Map<String, String>,
+    val values: Map<String, Long>
+)
+
+/**
+ * An append-only store of benchmark results in JSON Lines. Each line is one run, written and flushed as soon as the
+ * run completes, holding the schema version, the id of the process that produced it, the run metadata and the run
+ * statistics. Stores are never rewritten, so the results of many benchmarks accumulate in one file for comparison.
+ */
+class ResultStore(val file: File) : AutoCloseable {
+
+    private val writer: Writer
+
+    // Identifies the runs of this process
+    val runId: String = SimpleDateFormat("yyyyMMdd-HHmmss").format(Date()) + "-" +
+        java.lang.Long.toHexString(System.nanoTime() and 0xffffff)
+
+    init {
+        file.absoluteFile.parentFile.mkdirs()
+        writer = OutputStreamWriter(FileOutputStream(file, true), Charsets.UTF_8)
+    }
+
+    /**
+     * Appends a run as one JSON line
+     * @param values the values of the run, in the order of RunStatistics.HEADER
+     */
+    @Synchronized fun append(metadata: StatisticsMetadata, values: List<Long>) {
+        val line = JsonObject()
+        line.addProperty("schemaVersion", SCHEMA_VERSION)
+        line.addProperty("runId", runId)
+
+        val meta = JsonObject()
+        StatisticsMetadata.HEADER.zip(metadata.list()).forEach { meta.addProperty(it.first, it.second) }
+        line.add("metadata", meta)
+
+        val statistics = JsonObject()
+        RunStatistics.HEADER.zip(values).forEach { statistics.addProperty(it.first, it.second) }
+        line.add("values", statistics)
+
+        try {
+            writer.write(line.toString())
+            writer.write("\n")
+            writer.flush()
+        } catch (e: IOException) {
+            logger.error("Failed to append to the result store {}: {}", file, e.message)
+        }
+    }
+
+    @Synchronized override fun close() = writer.close()
+
+    companion object {
+        const val SCHEMA_VERSION = 1
+
+        // The store runs are appended to, if any
+        @JvmStatic var current: ResultStore? = null
+
+        private val logger = LogManager.getLogger()
+
+        /**
+         * Opens the store that all statistics are appended to, for the rest of the process
+         */
+        @JvmStatic fun open(file: File) {
+            val store = ResultStore(file)
+            current = store
+            Runtime.getRuntime().addShutdownHook(Thread { store.close() })
+            logger.debug("Appending results to {} as run {}", file, store.runId)
+        }
+
+        /**
+         * Reads the runs of a JSON Lines store, or of a statistics CSV file (which holds a single run id, its file name)
+         */
+        @Throws(IOException::class)
+        @JvmStatic fun read(file: File): List<ResultRecord> =
+            if (file.name.endsWith(".csv")) readCsv(file) else readJsonLines(file)
+
+        private fun readJsonLines(file: File): List<ResultRecord> {
+            val parser = JsonParser()
+            val records = ArrayList<ResultRecord>()
+
+            file.forEachLine(Charsets.UTF_8) { line ->
+                if (line.isNotBlank()) {
+                    val json = parser.parse(line).asJsonObject
+                    val version = json.get("schemaVersion").asInt
+                    if (version > SCHEMA_VERSION) {
+                        throw IOException("Unsupported result schema version $version in $file")
+                    }
+
+                    val metadata = HashMap<String, String>()
+                    for ((key, value) in json.getAsJsonObject("metadata").entrySet()) {
+                        metadata[key] = value.asString
+                    }
+                    val values = HashMap<String, Long>()
+                    for ((key, value) in json.getAsJsonObject("values").entrySet()) {
+                        values[key] = value.asLong
+                    }
+
+                    records.add(ResultRecord(json.get("runId").asString, metadata, values))
+                }
+            }
+
+            return records
+        }
+
+        /**
+         * Reads the metadata row, the header of the runs and every run up to the summary rows. Older files without the
+         * run column are read as well, since the columns are matched by name.
+         */
+        private fun readCsv(file: File): List<ResultRecord> {
+            val reader = CsvListReader(FileReader(file), CsvPreference.STANDARD_PREFERENCE)
+            val records = ArrayList<ResultRecord>()
+
+            try {
+                val metadataHeader = reader.read() ?: return records
+                val metadataValues = reader.read() ?: return records
+                val metadata = metadataHeader.zip(metadataValues).associate { it.first to (it.second ?: "") }
+
+                val header = reader.read() ?: return records
+                while (true) {
+                    val row = reader.read() ?: break
+                    val values = header.zip(row).associate { it.first to parseLong(it.second) }
+                    if (values.values.any { it == null }) {
+                        break // the summary rows
+                    }
+                    records.add(ResultRecord(file.name, metadata, values.mapValues { it.value!! }))
+                }
+            } finally {
+                reader.close()
+            }
+
+            return records
+        }
+
+        private fun parseLong(value: String?): Long? =
+            try {
+                value?.toLong()
+            } catch (e: NumberFormatException) {
+                null
+            }
+    }
+}
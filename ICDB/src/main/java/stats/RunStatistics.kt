@@ -1,5 +1,8 @@
 package stats
 
+import main.ICDBTool
+import stats.LatencyStatistics.Phase
+
 /**
  * Collects statistics about a run
  *
@@ -9,10 +12,14 @@ package stats
 data class RunStatistics(
     // Data collected as the run progresses
     var run: Long = 0,
+    var client: Long = 0,
+    var runTime: Long = 0,
     var queryFetchSize: Long = 0,
     var queryConversionTime: Long = 0,
     var dataFetchTime: Long = 0,
     var verificationTime: Long = 0,
+    var fetchStallTime: Long = 0,
+    var verifyStallTime: Long = 0,
     var executionTime: Long = 0,
     var aggregateOperationTime: Long = 0,
     var aggregateRecordFetchTime: Long = 0,
@@ -24,12 +31,27 @@ data class RunStatistics(
     var totalICSize: Long = 0
 
 ) {
+    // Per-record latency distributions, filled concurrently by the fetch and verifier threads
+    val latencies = LatencyStatistics()
+
+    /**
+     * @return the records per second the phase processed over the given elapsed time (in ICDBTool.TIME_UNIT)
+     */
+    fun throughput(phase: Phase, elapsed: Long): Long {
+        val nanos = ICDBTool.TIME_UNIT.toNanos(elapsed)
+        return if (nanos <= 0) 0 else latencies.count(phase) * 1000000000L / nanos
+    }
+
     fun list(): List<Long> = listOf(
         run,
+        client,
+        runTime,
         queryFetchSize,
         queryConversionTime,
         dataFetchTime,
         verificationTime,
+        fetchStallTime,
+        verifyStallTime,
         executionTime,
         aggregateOperationTime,
             aggregateRecordFetchTime,
@@ -38,6 +60,17 @@ data class RunStatistics(
             icrlRevoketime,
             totalDataSize,
             totalSerialSize,
-            totalICSize
-    )
-}
\ No newline at end of file
+            totalICSize,
+            throughput(Phase.FETCH, dataFetchTime),
+            throughput(Phase.VERIFY, verificationTime)
+    ) + latencies.percentiles()
+
+    companion object {
+        // The column names of list()
+        @JvmField val HEADER = listOf(
+            "run", "Client", "Run Time", "Query Fetch Size", "Query Conversion Time", "Data Fetch Time",
+            "Verification Time", "Fetch Stall Time", "Verify Stall Time", "Execution Time", "Aggregate operation Time", "Aggregate Record(IC) Fetch Time", "Aggregate Sig Generation time", "AGG_finalVerificationtime(microsec)", "ICRL revoke time","Total Data Size (Bytes)","Total Serial Size (Bytes)", "Total IC Size (Bytes)",
+            "Fetch Throughput (records/s)", "Verify Throughput (records/s)"
+        ) + LatencyStatistics.HEADER
+    }
+}
@@ -9,51 +9,100 @@ import java.io.IOException
 import java.util.*
 
 /**
- * Collects a list of statistics runs and outputs them to file
+ * Collects a list of statistics runs and outputs them to file. Each run is written (and appended to the result store,
+ * if one is open) as soon as it is added, so an aborted benchmark keeps the runs it completed.
  *
  * Created on 9/4/2016
  * @author Dan Kondratyuk
  */
 class Statistics(private val metadata: StatisticsMetadata, private val outputFile: File) {
 
-    // The runs are collected in a list
-    private val runs = ArrayList<RunStatistics>()
+    // Only the values of each run are kept for the summary, not the runs themselves
+    private val rows = ArrayList<List<Long>>()
+
+    private var csvWriter: CsvListWriter? = null
 
     private val logger = LogManager.getLogger()
 
     /**
      * Add a run to the statistics list
      */
-    fun addRun(run: RunStatistics) = runs.add(run)
+    @Synchronized fun addRun(run: RunStatistics) {
+        val values = run.list()
+        rows.add(values)
 
-    /**
-     * Output the collected runs to a CSV file
-     */
-    fun outputRuns() {
-        try {
-            outputFile.parentFile.mkdirs()
+        ResultStore.current?.append(metadata, values)
 
-            val writer = FileWriter(outputFile)
-            val csvWriter = CsvListWriter(writer, CsvPreference.STANDARD_PREFERENCE)
+        try {
+            val writer = csvWriter ?: open()
+            writer.write(values)
+            writer.flush()
+        } catch (e: IOException) {
+            logger.error("Failed to output statistics to file: ", e.message)
+        }
+    }
 
-            // Output metadata
-            csvWriter.write(listOf(
-                "Algorithm", "Granularity", "Schema Name", "DB Query", "Fetch Type", "Threads", "Date"
-            ))
-            csvWriter.write(metadata.list())
+    /**
+     * @return the summary of a value derived from one column of each run
+     */
+    @Synchronized fun summarize(column: String, value: (Long) -> Double): Summary {
+        val index = RunStatistics.HEADER.indexOf(column)
+        return Summary(rows.map { value(it[index]) }, metadata.trimOutliers)
+    }
 
-            // Output data
-            csvWriter.write(listOf(
-                "run", "Query Fetch Size", "Query Conversion Time", "Data Fetch Time",
-                "Verification Time", "Execution Time", "Aggregate operation Time", "Aggregate Record(IC) Fetch Time", "Aggregate Sig Generation time", "AGG_finalVerificationtime(microsec)", "ICRL revoke time","Total Data Size (Bytes)","Total Serial Size (Bytes)", "Total IC Size (Bytes)"
-            ))
-            runs.forEach { csvWriter.write(it.list()) }
+    /**
+     * Complete the CSV file with the summary of the collected runs
+     */
+    @Synchronized fun outputRuns() {
+        try {
+            val writer = csvWriter ?: open()
+            summary().forEach { writer.write(it) }
 
-            csvWriter.close()
             writer.close()
+            csvWriter = null
         } catch (e: IOException) {
             logger.error("Failed to output statistics to file: ", e.message)
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Creates the CSV file and outputs the metadata and the header of the runs
+     */
+    private fun open(): CsvListWriter {
+        outputFile.parentFile.mkdirs()
+
+        val writer = CsvListWriter(FileWriter(outputFile), CsvPreference.STANDARD_PREFERENCE)
+        csvWriter = writer
+
+        // Output metadata
+        writer.write(StatisticsMetadata.HEADER)
+        writer.write(metadata.list())
+
+        // Output data
+        writer.write(RunStatistics.HEADER)
+        return writer
+    }
+
+    /**
+     * @return rows with the mean, standard deviation, 95% confidence interval and outlier count of each column,
+     * or nothing if there are too few runs to summarize
+     */
+    private fun summary(): List<List<String>> {
+        if (rows.size < 2) {
+            return emptyList()
+        }
+
+        val summaries = (2 until rows[0].size).map { column ->
+            Summary(rows.map { it[column].toDouble() }, metadata.trimOutliers)
+        }
+
+        fun row(label: String, value: (Summary) -> String) = listOf(label, "") + summaries.map(value)
+        return listOf(
+            row("mean") { String.format(Locale.ROOT, "%.2f", it.mean) },
+            row("stddev") { String.format(Locale.ROOT, "%.2f", it.stddev) },
+            row("ci95") { String.format(Locale.ROOT, "%.2f", it.ci95) },
+            row("outliers") { it.outliers.toString() }
+        )
+    }
+
+}
@@ -3,22 +3,27 @@ package stats
 import crypto.AlgorithmType
 import io.source.DataSource
 import main.args.option.Granularity
+import java.lang.management.ManagementFactory
 import java.text.SimpleDateFormat
 import java.util.*
 
 /**
- * Metadata specified on run initialization
+ * Metadata specified on run initialization, along with the benchmark configuration and the JVM it ran on
  *
  * Created on 9/4/2016
  * @author Dan Kondratyuk
  */
-data class StatisticsMetadata(
+data class StatisticsMetadata @JvmOverloads constructor(
     val algorithm: AlgorithmType,
     val granularity: Granularity,
     val schemaName: String,
     val fetchType: DataSource.Fetch,
     val threads: Int,
-    val dbQuery: String = ""
+    val dbQuery: String = "",
+    val warmup: Int = 0,
+    val iterations: Int = 1,
+    val clients: Int = 1,
+    val trimOutliers: Boolean = false
 ) {
     private val date: String
         get() {
@@ -27,7 +32,27 @@ data class StatisticsMetadata(
             return df.format(calendar.time)
         }
 
+    private val jvm: String
+        get() = "${System.getProperty("java.vm.name")} ${System.getProperty("java.version")} (${System.getProperty("java.vendor")})"
+
+    private val garbageCollectors: String
+        get() = ManagementFactory.getGarbageCollectorMXBeans().joinToString("+") { it.name }
+
+    private val jvmArguments: String
+        get() = ManagementFactory.getRuntimeMXBean().inputArguments.joinToString(" ")
+
     fun list(): List<String> = listOf(
-        algorithm.toString(), granularity.toString(), schemaName, fetchType.toString(), threads.toString(), date, dbQuery
+        algorithm.toString(), granularity.toString(), schemaName, fetchType.toString(), threads.toString(), date, dbQuery,
+        warmup.toString(), iterations.toString(), clients.toString(), trimOutliers.toString(),
+        jvm, garbageCollectors, jvmArguments,
+        Runtime.getRuntime().availableProcessors().toString(), (Runtime.getRuntime().maxMemory() shr 20).toString()
     )
-}
\ No newline at end of file
+
+    companion object {
+        @JvmField val HEADER = listOf(
+            "Algorithm", "Granularity", "Schema Name", "Fetch Type", "Threads", "Date", "DB Query",
+            "Warmup Iterations", "Measured Iterations", "Clients", "Outlier Trimming",
+            "JVM", "Garbage Collectors", "JVM Arguments", "Processors", "Max Heap (MB)"
+        )
+    }
+}
@@ -0,0 +1,71 @@
+package stats
+
+import java.util.*
+
+/**
+ * Mean, sample standard deviation and 95% confidence interval of a benchmark sample. Unless disabled, values outside
+ * Tukey's fences (more than 1.5 interquartile ranges beyond the first or third quartile) are counted as outliers
+ * and left out of the summary.
+ */
+class Summary @JvmOverloads constructor(sample: List<Double>, trimOutliers: Boolean = true) {
+
+    val mean: Double
+    val stddev: Double
+
+    // Half-width of the 95% confidence interval of the mean (Student's t)
+    val ci95: Double
+
+    // The number of values discarded as outliers
+    val outliers: Int
+
+    init {
+        val kept = if (trimOutliers) withinFences(sample) else sample
+        val n = kept.size
+
+        outliers = sample.size - n
+        mean = if (n == 0) Double.NaN else kept.sum() / n
+        stddev = if (n < 2) 0.0 else Math.sqrt(kept.map { (it - mean) * (it - mean) }.sum() / (n - 1))
+        ci95 = if (n < 2) 0.0 else t975(n - 1) * stddev / Math.sqrt(n.toDouble())
+    }
+
+    override fun toString(): String =
+        String.format(Locale.ROOT, "%.2f +/- %.2f (sd %.2f, %d outlier(s))", mean, ci95, stddev, outliers)
+
+    companion object {
+        // Two-sided 95% critical values of Student's t for 1 to 30 degrees of freedom
+        private val T_975 = doubleArrayOf(
+            12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306, 2.262, 2.228,
+            2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+            2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042
+        )
+
+        /**
+         * @return the two-sided 95% critical value of Student's t, using the normal value past 30 degrees of freedom
+         */
+        @JvmStatic fun t975(degreesOfFreedom: Int): Double =
+            if (degreesOfFreedom <= T_975.size) T_975[degreesOfFreedom - 1] else 1.960
+
+        /**
+         * @return the values within Tukey's fences. Samples too small to have meaningful quartiles are kept whole.
+         */
+        private fun withinFences(sample: List<Double>): List<Double> {
+            if (sample.size < 4) {
+                return sample
+            }
+
+            val sorted = sample.sorted()
+            val q1 = quantile(sorted, 0.25)
+            val q3 = quantile(sorted, 0.75)
+            val fence = 1.5 * (q3 - q1)
+
+            return sample.filter { it >= q1 - fence && it <= q3 + fence }
+        }
+
+        private fun quantile(sorted: List<Double>, p: Double): Double {
+            val position = p * (sorted.size - 1)
+            val lower = Math.floor(position).toInt()
+            val upper = Math.ceil(position).toInt()
+            return sorted[lower] + (position - lower) * (sorted[upper] - sorted[lower])
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package stats
+
+import crypto.AlgorithmType
+import main.args.option.Granularity
+import org.apache.logging.log4j.LogManager
+import org.supercsv.io.CsvListWriter
+import org.supercsv.prefs.CsvPreference
+import java.io.File
+import java.io.FileWriter
+import java.io.IOException
+import java.util.*
+
+/**
+ * Collects the throughput of each workload of the suite per data size, algorithm and granularity, and outputs one CSV
+ * row per point of the curves
+ */
+class ThroughputCurve(private val outputFile: File) {
+
+    private val points = ArrayList<List<String>>()
+
+    private val logger = LogManager.getLogger()
+
+    /**
+     * Add a point to the curve of a workload
+     * @param throughput the summary of the rows per second of each measured iteration
+     */
+    fun add(scale: Double, rows: Long, algorithm: AlgorithmType, granularity: Granularity, workload: String, throughput: Summary) {
+        logger.info("{} rows, {} {} {}: {} rows/s", rows, algorithm, granularity, workload, throughput)
+
+        points.add(listOf(
+            scale.toString(), rows.toString(), algorithm.toString(), granularity.toString(), workload,
+            format(throughput.mean), format(throughput.stddev), format(throughput.ci95), throughput.outliers.toString()
+        ))
+    }
+
+    /**
+     * Output the points collected so far to the CSV file
+     */
+    fun output() {
+        try {
+            outputFile.parentFile.mkdirs()
+
+            val writer = FileWriter(outputFile)
+            val csvWriter = CsvListWriter(writer, CsvPreference.STANDARD_PREFERENCE)
+
+            csvWriter.write(HEADER)
+            points.forEach { csvWriter.write(it) }
+
+            csvWriter.close()
+            writer.close()
+        } catch (e: IOException) {
+            logger.error("Failed to output the throughput curves to file: ", e.message)
+        }
+    }
+
+    private fun format(value: Double) = String.format(Locale.ROOT, "%.2f", value)
+
+    companion object {
+        val HEADER = listOf(
+            "Scale Factor", "Rows", "Algorithm", "Granularity", "Workload",
+            "Throughput (rows/s)", "Stddev (rows/s)", "CI95 (rows/s)", "Outliers"
+        )
+    }
+}
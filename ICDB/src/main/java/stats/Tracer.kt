@@ -0,0 +1,129 @@
+package stats
+
+import com.google.common.base.Charsets
+import com.google.gson.stream.JsonWriter
+import org.apache.logging.log4j.LogManager
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.OutputStreamWriter
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Records nanosecond spans of the phases of each query, on every thread, and writes them in the Chrome trace event
+ * format (viewable in chrome://tracing or Perfetto). Tracing is off unless started, and costs one volatile read per
+ * span while off:
+ *
+ *     final long span = Tracer.begin();
+ *     ...
+ *     Tracer.end("execute", span);
+ */
+object Tracer {
+
+    // Spans beyond this many are dropped, so a long run cannot exhaust the heap
+    const val MAX_EVENTS = 1000000
+
+    private class Event(val name: String, val thread: Long, val start: Long, val duration: Long, val argName: String?, val arg: Long)
+
+    private val origin = System.nanoTime()
+    private val threadNames = ConcurrentHashMap<Long, String>()
+    private val count = AtomicInteger()
+
+    @Volatile private var events: ConcurrentLinkedQueue<Event>? = null
+    private var file: File? = null
+
+    private val logger = LogManager.getLogger()
+
+    /**
+     * Starts tracing, writing the trace to the file when the process exits
+     */
+    @JvmStatic fun start(file: File) {
+        this.file = file
+        events = ConcurrentLinkedQueue()
+        Runtime.getRuntime().addShutdownHook(Thread { write() })
+    }
+
+    @JvmStatic fun isEnabled(): Boolean = events != null
+
+    /**
+     * @return the start of a span, to pass to end()
+     */
+    @JvmStatic fun begin(): Long = if (events == null) 0 else System.nanoTime()
+
+    /**
+     * Ends a span on the current thread
+     */
+    @JvmStatic fun end(name: String, start: Long) = end(name, start, null, 0)
+
+    /**
+     * Ends a span on the current thread, with a numeric argument shown in the trace viewer
+     */
+    @JvmStatic fun end(name: String, start: Long, argName: String?, arg: Long) {
+        val events = events ?: return
+        val end = System.nanoTime()
+
+        if (count.incrementAndGet() > MAX_EVENTS) {
+            return
+        }
+
+        val thread = Thread.currentThread()
+        if (!threadNames.containsKey(thread.id)) {
+            threadNames.put(thread.id, thread.name)
+        }
+        events.add(Event(name, thread.id, start, end - start, argName, arg))
+    }
+
+    /**
+     * Writes the spans recorded so far
+     */
+    @Synchronized fun write() {
+        val events = events ?: return
+        val file = file ?: return
+
+        try {
+            file.absoluteFile.parentFile.mkdirs()
+            JsonWriter(OutputStreamWriter(FileOutputStream(file), Charsets.UTF_8)).use { json ->
+                json.beginObject()
+                json.name("displayTimeUnit").value("ns")
+                json.name("traceEvents").beginArray()
+
+                for ((thread, name) in threadNames) {
+                    json.beginObject()
+                    json.name("name").value("thread_name")
+                    json.name("ph").value("M")
+                    json.name("pid").value(1)
+                    json.name("tid").value(thread)
+                    json.name("args").beginObject().name("name").value(name).endObject()
+                    json.endObject()
+                }
+
+                for (event in events) {
+                    json.beginObject()
+                    json.name("name").value(event.name)
+                    json.name("cat").value("icdb")
+                    json.name("ph").value("X")
+                    json.name("pid").value(1)
+                    json.name("tid").value(event.thread)
+                    json.name("ts").value((event.start - origin) / 1000.0)
+                    json.name("dur").value(event.duration / 1000.0)
+                    if (event.argName != null) {
+                        json.name("args").beginObject().name(event.argName).value(event.arg).endObject()
+                    }
+                    json.endObject()
+                }
+
+                json.endArray()
+                json.endObject()
+            }
+
+            if (count.get() > MAX_EVENTS) {
+                logger.warn("Dropped {} span(s) beyond the first {}", count.get() - MAX_EVENTS, MAX_EVENTS)
+            }
+            logger.info("Wrote {} span(s) to {}", events.size, file)
+        } catch (e: IOException) {
+            logger.error("Failed to write the trace to {}: {}", file, e.message)
+        }
+    }
+}
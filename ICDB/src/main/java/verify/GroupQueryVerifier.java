@@ -0,0 +1,303 @@
+package verify;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import crypto.AlgorithmType;
+import crypto.signer.RSASHA1Signer;
+import io.ColumnGroups;
+import io.DBConnection;
+import io.Format;
+import io.source.DataSource;
+import main.ICDBTool;
+import main.args.config.UserConfig;
+import org.apache.commons.lang3.ArrayUtils;
+import org.jooq.Field;
+import org.jooq.Record;
+import parse.GroupQuery;
+import parse.ICDBQuery;
+import stats.RunStatistics;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ *     Executes an ICDB-GROUP query and verifies data integrity. Each group serial column of a record is one code to
+ *     verify: the message of its group is rebuilt from the group values and primary key values of the record, found
+ *     by name. The verify query returns the same columns for every record, so the positions of each group's values
+ *     are resolved once per query, from the fields of its first record.
+ * </p>
+ */
+public class GroupQueryVerifier extends QueryVerifier {
+
+    // The layout of the records of the last query verified
+    private volatile Plan plan;
+
+    public GroupQueryVerifier(DBConnection icdb, UserConfig dbConfig, int threads, DataSource.Fetch fetch, RunStatistics statistics) {
+        super(icdb, dbConfig, threads, fetch, statistics);
+    }
+
+    @Override
+    protected boolean verifyRecord(Record record, ICDBQuery icdbQuery) {
+        final Plan plan = planFor(record, icdbQuery);
+        if (plan.error != null) {
+            errorStatus.append("\n").append(plan.error);
+            return false;
+        }
+
+        for (Code code : plan.codes) {
+            final long serial = ((Number) record.get(code.serial)).longValue();
+            final byte[] signature = (byte[]) record.get(code.ic);
+            final String data = code.message(record);
+
+            final boolean verified = verifyData(serial, signature, data);
+
+            if (!verified) {
+                errorStatus.append("\n")
+                        .append(code.groups.getTable())
+                        .append(" ")
+                        .append(code.group.getName())
+                        .append(" : ")
+                        .append(record)
+                        .append("\n");
+                return false;
+            }
+
+            //if delete query, add the serials to be revoked in the list
+            if (icdbQuery.isDeleteQuery)
+                icdbQuery.serialsToBeRevoked.add(serial);
+        }
+
+        if (icdbQuery.isAggregateQuery) {
+            Stopwatch aggregateOperationTime = Stopwatch.createStarted();
+            computeAggregateOperation(icdbQuery, record);
+            statistics.setAggregateOperationTime(statistics.getAggregateOperationTime() + aggregateOperationTime.elapsed(ICDBTool.TIME_UNIT));
+        }
+
+        return true;
+    }
+
+    /**
+     * for RSA_AGGREGATE, get aggregate message by modular multiplication of the group messages
+     * for the MAC aggregates, regenerate the group codes to combine them
+     */
+    @Override
+    protected boolean aggregateVerifyRecord(Record record, ICDBQuery icdbQuery) {
+        final Plan plan = planFor(record, icdbQuery);
+        if (plan.error != null) {
+            errorStatus.append("\n").append(plan.error);
+            return false;
+        }
+
+        for (Code code : plan.codes) {
+            final long serial = ((Number) record.get(code.serial)).longValue();
+            final String data = code.message(record);
+            totalDataSize.add(data.getBytes(Charsets.UTF_8).length);
+
+            if (isRevoked(serial))
+                return false;
+
+            //generate aggregate message for RSA and regenerate signature for AES and SHA
+            if (codeGen.getAlgorithm() == AlgorithmType.RSA_AGGREGATE) {
+                final byte[] serialBytes = ByteBuffer.allocate(8).putLong(serial).array();
+                final byte[] dataBytes = data.getBytes(Charsets.UTF_8);
+                final byte[] allData = ArrayUtils.addAll(dataBytes, serialBytes);
+                totalSerialSize.add(serialBytes.length);
+
+                RSASHA1Signer signer = new RSASHA1Signer(key.getModulus(), key.getExponent());
+                multiplyMessage(signer.computehash(allData));
+            } else {
+                appendClient(regenerateSignature(serial, data));
+            }
+
+            //if delete query, add the serials to be revoked in the list
+            if (icdbQuery.isDeleteQuery)
+                icdbQuery.serialsToBeRevoked.add(serial);
+        }
+
+        if (icdbQuery.isAggregateQuery) {
+            Stopwatch aggregateOperationTime = Stopwatch.createStarted();
+            computeAggregateOperation(icdbQuery, record);
+            statistics.setAggregateOperationTime(statistics.getAggregateOperationTime() + aggregateOperationTime.elapsed(ICDBTool.TIME_UNIT));
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the layout of the records of a query, resolved from the fields of a record
+     */
+    private Plan planFor(Record record, ICDBQuery icdbQuery) {
+        Plan current = plan;
+        if (current == null || current.query != icdbQuery) {
+            current = new Plan(icdbQuery, record.fields());
+            plan = current;
+        }
+        return current;
+    }
+
+    /**
+     * The positions of the values, primary keys, code and serial of one group in the records of a query
+     */
+    private static final class Code {
+        private final ColumnGroups groups;
+        private final ColumnGroups.Group group;
+        private final int[] values;
+        private final int[] keys;
+        private final int ic;
+        private final int serial;
+
+        private Code(ColumnGroups groups, ColumnGroups.Group group, int[] values, int[] keys, int ic, int serial) {
+            this.groups = groups;
+            this.group = group;
+            this.values = values;
+            this.keys = keys;
+            this.ic = ic;
+            this.serial = serial;
+        }
+
+        private String message(Record record) {
+            return groups.message(group, valuesOf(record, values), valuesOf(record, keys));
+        }
+
+        private static List<String> valuesOf(Record record, int[] indexes) {
+            final List<String> values = new ArrayList<>(indexes.length);
+            for (int index : indexes) {
+                values.add(String.valueOf(record.get(index)));
+            }
+            return values;
+        }
+    }
+
+    /**
+     * The codes of the records of a query, in column order, or the reason they cannot be verified
+     */
+    private final class Plan {
+        private final ICDBQuery query;
+        private final Map<String, String> qualifiedTables;
+        private final List<Code> codes;
+        private final String error;
+
+        private Plan(ICDBQuery query, Field<?>[] fields) {
+            this.query = query;
+            this.qualifiedTables = GroupQuery.getQualifiedTables(query.getVerifyQuery());
+
+            final List<Code> codes = new ArrayList<>();
+            final String error = resolve(fields, codes);
+            this.codes = Collections.unmodifiableList(codes);
+            this.error = error == null && codes.isEmpty() ? "The verify query returns no group codes" : error;
+        }
+
+        /**
+         * Adds the code of each group serial column of the fields
+         * @return the reason the records cannot be verified, or null if they can
+         */
+        private String resolve(Field<?>[] fields, List<Code> codes) {
+            // Index the fields by qualified name, and by name alone
+            final Map<String, Integer> qualified = new HashMap<>();
+            final Map<String, Integer> named = new HashMap<>();
+            final String[] qualifiers = new String[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                final String name = fields[i].getName().toLowerCase();
+                qualifiers[i] = qualifierOf(fields[i]);
+                qualified.putIfAbsent(qualifiers[i] + "." + name, i);
+                named.putIfAbsent(name, i);
+            }
+
+            final Map<String, ColumnGroups> tables = new HashMap<>();
+            for (int i = 0; i < fields.length; i++) {
+                final String name = fields[i].getName().toLowerCase();
+                if (!ColumnGroups.isCodeColumn(name) || !name.endsWith(Format.SERIAL_SUFFIX)) {
+                    continue;
+                }
+
+                final String table = tableOf(qualifiers[i]);
+                final ColumnGroups groups = table == null ? null : tables.computeIfAbsent(table, t -> ColumnGroups.of(icdb, t));
+                if (groups == null) {
+                    return "Unknown table of column " + fields[i];
+                }
+
+                final int number = Integer.parseInt(name.substring(ColumnGroups.GROUP_PREFIX.length(),
+                        name.length() - Format.SERIAL_SUFFIX.length()));
+                if (number < 1 || number > groups.getGroups().size()) {
+                    return "Unknown group " + name + " of table " + table;
+                }
+
+                final ColumnGroups.Group group = groups.getGroups().get(number - 1);
+                final int[] values = indexesOf(group.getColumns(), qualifiers[i], qualified, named);
+                final int[] keys = indexesOf(groups.getKeyColumns(), qualifiers[i], qualified, named);
+                final int ic = indexOf(group.getIcColumn(), qualifiers[i], qualified, named);
+
+                if (values == null || keys == null || (ic < 0 && !codeGen.getAlgorithm().isAggregate())) {
+                    return "The verify query does not return every column of " + table + " " + group.getName();
+                }
+                codes.add(new Code(groups, group, values, keys, ic, i));
+            }
+
+            return null;
+        }
+
+        /**
+         * @return the table a qualifier refers to: a table of the query by alias or name, or its only table
+         */
+        private String tableOf(String qualifier) {
+            if (qualifier != null && qualifiedTables != null && qualifiedTables.containsKey(qualifier)) {
+                return qualifiedTables.get(qualifier);
+            }
+
+            final List<String> tables = query.queryTableName;
+            for (String table : tables) {
+                if (table.replace("`", "").equalsIgnoreCase(qualifier)) {
+                    return table.replace("`", "");
+                }
+            }
+            return tables.size() == 1 ? tables.get(0).replace("`", "") : null;
+        }
+
+        /**
+         * @return the positions of the columns, or null if one is missing
+         */
+        private int[] indexesOf(List<String> columns, String qualifier, Map<String, Integer> qualified,
+                                Map<String, Integer> named) {
+            final int[] indexes = new int[columns.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = indexOf(columns.get(i), qualifier, qualified, named);
+                if (indexes[i] < 0) {
+                    return null;
+                }
+            }
+            return indexes;
+        }
+
+        private int indexOf(String column, String qualifier, Map<String, Integer> qualified, Map<String, Integer> named) {
+            final String name = column.toLowerCase();
+            final Integer index = qualified.get(qualifier + "." + name);
+            if (index != null) {
+                return index;
+            }
+
+            // Unqualified fields can only belong to the only table of the query
+            final Integer unqualified = query.queryTableName.size() == 1 ? named.get(name) : null;
+            return unqualified == null ? -1 : unqualified;
+        }
+    }
+
+    /**
+     * @return the table (or alias) a field is qualified with, or null if it is not qualified
+     */
+    private static String qualifierOf(Field<?> field) {
+        final String rendered = field.toString().replaceAll("[\"`\\[\\]]", "");
+        final String suffix = "." + field.getName();
+        if (!rendered.endsWith(suffix)) {
+            return null;
+        }
+
+        final String qualified = rendered.substring(0, rendered.length() - suffix.length());
+        return qualified.substring(qualified.lastIndexOf('.') + 1).toLowerCase();
+    }
+
+}
@@ -0,0 +1,126 @@
+package verify;
+
+import com.google.common.base.Stopwatch;
+import io.DBConnection;
+import io.Format;
+import io.MerkleTree;
+import io.source.DBSource;
+import io.source.DataSource;
+import main.ICDBTool;
+import main.args.config.UserConfig;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.Record;
+import parse.ICDBQuery;
+import parse.MerkleQuery;
+import stats.RunStatistics;
+import stats.Tracer;
+
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ *     Verifies a MERKLE query against the signed root of its table's Merkle tree. Each row of the key range is the
+ *     leaf at the position of its key, and every other position of the range is an empty leaf, so a row left out or
+ *     added changes the root. The leaves are hashed up to the root with the sibling hashes of the tree table, at most
+ *     2 * (FANOUT - 1) of them per level, and the result must be the root the client signed.
+ * </p>
+ */
+public class MerkleQueryVerifier extends QueryVerifier {
+
+    private static final Logger logger = LogManager.getLogger();
+
+    public MerkleQueryVerifier(DBConnection icdb, UserConfig dbConfig, int threads, DataSource.Fetch fetch, RunStatistics statistics) {
+        super(icdb, dbConfig, threads, fetch, statistics);
+    }
+
+    @Override
+    public boolean verify(ICDBQuery icdbQuery) {
+        final MerkleQuery query = (MerkleQuery) icdbQuery;
+        final long span = Tracer.begin();
+
+        logger.info("Verify Query: {}", Format.limit(query.getVerifyQuery()));
+
+        final MerkleTree tree = new MerkleTree(icdb, codeGen, query.getTable());
+        final MerkleTree.Root root = tree.loadRoot();
+        if (root == null) {
+            errorStatus.append("\nNo valid Merkle root for table ").append(query.getTable());
+            return false;
+        }
+
+        // The key range, or every position if the whole table is verified
+        final MerkleTree.Region region = query.getKey() == null ? MerkleTree.Region.all() : MerkleTree.Region.range(
+                MerkleTree.keyPosition(query.getLow() == null ? Long.MIN_VALUE : query.getLow()),
+                MerkleTree.keyPosition(query.getHigh() == null ? Long.MAX_VALUE : query.getHigh()));
+
+        // Hash the rows as they arrive, checking that each is in the range and at a position of its own
+        final Stopwatch dataFetchTime = Stopwatch.createStarted();
+        final long fetchSpan = Tracer.begin();
+        final NavigableMap<Long, byte[]> leaves = new TreeMap<>(Long::compareUnsigned);
+        boolean placed = true;
+
+        try (Stream<Record> records = DBSource.stream(icdb, query.getVerifyQuery(), fetchFor(query.getVerifyQuery()))) {
+            final Iterator<Record> iterator = records.iterator();
+            while (placed && iterator.hasNext()) {
+                final Record record = iterator.next();
+                final long position = tree.position(record);
+                placed = region.contains(position) && leaves.put(position, tree.leaf(record)) == null;
+
+                if (placed && query.isAggregateQuery) {
+                    computeAggregateOperation(query, record);
+                }
+            }
+        }
+
+        statistics.setQueryFetchSize(leaves.size());
+        statistics.setDataFetchTime(dataFetchTime.elapsed(ICDBTool.TIME_UNIT));
+        Tracer.end("merkle fetch", fetchSpan, "records", leaves.size());
+
+        if (!placed) {
+            errorStatus.append("\nA row is outside the range or repeats the key of another");
+            return false;
+        }
+
+        // Fold the leaves up to the root
+        final Stopwatch verificationTime = Stopwatch.createStarted();
+        final long proofSpan = Tracer.begin();
+        final boolean verified;
+
+        if (region.isEmpty()) {
+            verified = leaves.isEmpty();
+        } else {
+            final List<Map<Long, byte[]>> proof = tree.fetchProof(icdbCreate, region, false);
+            verified = MessageDigest.isEqual(MerkleTree.fold(region, leaves, proof, null), root.hash);
+        }
+
+        statistics.setVerificationTime(verificationTime.elapsed(ICDBTool.TIME_UNIT));
+        Tracer.end("merkle proof", proofSpan, "leaves", root.leaves);
+
+        if (!verified) {
+            errorStatus.append("\nThe rows of table ").append(query.getTable()).append(" do not match the Merkle root");
+        }
+
+        Tracer.end("verify", span, "records", leaves.size());
+        return verified;
+    }
+
+    /**
+     * Rows are verified together by the tree, not one by one
+     */
+    @Override
+    protected boolean verifyRecord(Record record, ICDBQuery icdbQuery) {
+        return false;
+    }
+
+    @Override
+    protected boolean aggregateVerifyRecord(Record record, ICDBQuery icdbQuery) {
+        return false;
+    }
+
+}
@@ -8,10 +8,11 @@ import io.DBConnection;
 import io.source.DataSource;
 import main.ICDBTool;
 import main.args.config.UserConfig;
+import main.args.option.Granularity;
+import main.args.option.StorageLayout;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.bouncycastle.util.encoders.Hex;
 import org.jooq.Field;
 import org.jooq.Record;
 import org.jooq.Table;
@@ -43,28 +44,45 @@ public class OCFQueryVerifier extends QueryVerifier {
 
     private static final Logger logger = LogManager.getLogger();
 
+    private final boolean packed;
 
     public OCFQueryVerifier(DBConnection icdb, UserConfig dbConfig, int threads, DataSource.Fetch fetch, RunStatistics statistics) {
         super(icdb, dbConfig, threads, fetch, statistics);
+        this.packed = dbConfig.storageLayout != null && dbConfig.storageLayout.isPacked(Granularity.FIELD);
+    }
+
+    /**
+     * @return the number of columns of each field: the field, its code and, unless packed, its serial
+     */
+    private int getColumnsPerField() {
+        return packed ? 2 : 3;
     }
 
     @Override
     protected boolean verifyRecord(Record record, ICDBQuery icdbQuery) {
-        final int dataSize = record.size() / 3;
+        final int dataSize = record.size() / getColumnsPerField();
         List<String> tableList=icdbQuery.queryTableName;
         List<Integer> tableFieldCount=new ArrayList<>();
         int tableindex=0;
         int fieldcount=0;  //no of fields counted in loop
         for (String table:tableList) {
-            tableFieldCount.add(icdb.getFields(table).size()/3);
+            tableFieldCount.add(icdb.getFields(table).size()/getColumnsPerField());
         }
 
 
         for (int i = 0; i < dataSize; i++) {
             fieldcount++;
 
-            final long serial = (long) record.get(dataSize + 2 * i + 1);
-            final byte[] signature = (byte[]) record.get(dataSize + 2 * i);
+            final long serial;
+            final byte[] signature;
+            if (packed) {
+                final byte[] code = (byte[]) record.get(dataSize + i);
+                serial = StorageLayout.unpackSerial(code);
+                signature = StorageLayout.unpackCode(code);
+            } else {
+                serial = (long) record.get(dataSize + 2 * i + 1);
+                signature = (byte[]) record.get(dataSize + 2 * i);
+            }
              String data = record.get(i).toString();
             data=data.concat(delimeter);
             //concat the primary keys values
@@ -194,15 +212,18 @@ public class OCFQueryVerifier extends QueryVerifier {
         int tableindex=0;
         int fieldcount=0;  //no of fields counted in loop
         for (String table:tableList) {
-            tableFieldCount.add(icdb.getFields(table).size()/3);
+            tableFieldCount.add(icdb.getFields(table).size()/getColumnsPerField());
         }
 
         for (int i = 0; i < dataSize; i++) {
             fieldcount++;
-            final long serial = (long) record.get(dataSize + i);
+            // The serial column, or the packed code holding the serial
+            final long serial = packed
+                    ? StorageLayout.unpackSerial((byte[]) record.get(dataSize + i))
+                    : (long) record.get(dataSize + i);
           //  final byte[] signature = (byte[]) record.get(dataSize + 2 * i);
              String data = record.get(i).toString();
-            totalDataSize+=data.getBytes().length;
+            totalDataSize.add(data.getBytes().length);
             data=data.concat(delimeter);
 
             //concat the primary keys values
@@ -273,7 +294,7 @@ public class OCFQueryVerifier extends QueryVerifier {
 //            }
 
             //(NEW)
-            if(ICDBTool.ICRLmap.containsKey(String.valueOf(serial).hashCode()))
+            if(isRevoked(serial))
                 return false;
 
 
@@ -285,15 +306,15 @@ public class OCFQueryVerifier extends QueryVerifier {
                 final byte[] serialBytes = ByteBuffer.allocate(8).putLong(serial).array();
 
               //  totalDataSize+=dataBytes.length;
-                totalSerialSize+=serialBytes.length;
+                totalSerialSize.add(serialBytes.length);
 
                 final byte[] allData = ArrayUtils.addAll(dataBytes, serialBytes);
 
                 RSASHA1Signer signer=new RSASHA1Signer(key.getModulus(),key.getExponent());
-                message = message.multiply(new BigInteger(signer.computehash(allData))).mod(key.getModulus());
+                multiplyMessage(signer.computehash(allData));
 
             }else{
-                sigBuilderClient.append(Hex.toHexString(regenerateSignature(serial,data)));
+                appendClient(regenerateSignature(serial,data));
             }
 
           //  if delete query, add the serials to be revoked in the list
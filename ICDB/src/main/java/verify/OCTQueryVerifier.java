@@ -18,7 +18,6 @@ import net.sf.jsqlparser.statement.insert.Insert;
 import net.sf.jsqlparser.statement.select.Select;
 import net.sf.jsqlparser.statement.update.Update;
 import org.apache.commons.lang3.ArrayUtils;
-import org.bouncycastle.util.encoders.Hex;
 import org.jooq.Field;
 import org.jooq.Record;
 import stats.RunStatistics;
@@ -170,7 +169,7 @@ public class OCTQueryVerifier extends QueryVerifier {
 
 
                  String data = builder.toString();
-                totalDataSize+=data.getBytes().length;
+                totalDataSize.add(data.getBytes().length);
 
                 //concat table name to the end
 //                for (String table:icdbQuery.queryTableName) {
@@ -185,7 +184,7 @@ public class OCTQueryVerifier extends QueryVerifier {
 //                }
 
                 //(NEW)
-                if(ICDBTool.ICRLmap.containsKey(String.valueOf(serial).hashCode()))
+                if(isRevoked(serial))
                     return false;
 
                 //generate aggregate message for RSA and regenerate signature for AES and SHA
@@ -195,13 +194,15 @@ public class OCTQueryVerifier extends QueryVerifier {
                     final byte[] allData = ArrayUtils.addAll(dataBytes, serialBytes);
 
                   //  totalDataSize+=dataBytes.length;
-                    totalSerialSize+=serialBytes.length;
+                    totalSerialSize.add(serialBytes.length);
                     //test for RSA without sha hash!
                     RSASHA1Signer signer=new RSASHA1Signer(key.getModulus(),key.getExponent());
-                    message = message.multiply(new BigInteger(signer.computehash(allData))).mod(key.getModulus());
+                    multiplyMessage(signer.computehash(allData));
 
+                }else if (icdbQuery.isPagedAggregate){
+                    foldClient(regenerateSignature(serial,data));
                 }else{
-                    sigBuilderClient.append(Hex.toHexString(regenerateSignature(serial,data)));
+                    appendClient(regenerateSignature(serial,data));
                 }
                 //if delete query, add the serials to be revoked in the list
                 if (icdbQuery.isDeleteQuery)
@@ -2,16 +2,21 @@ package verify;
 
 import crypto.AlgorithmType;
 import crypto.CodeGen;
+import crypto.KeyRing;
 import com.google.common.base.Charsets;
 import com.google.common.base.Stopwatch;
 import crypto.signer.RSASHA1Signer;
 import io.DBConnection;
 import io.Format;
+import io.PageAggregates;
 import io.source.DBSource;
 import io.source.DataSource;
+import io.source.FetchPlanner;
+import io.source.PartitionedDBSource;
 import main.ICDBTool;
 import main.args.config.UserConfig;
 import main.args.option.Granularity;
+import main.args.option.StorageLayout;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -19,17 +24,18 @@ import org.bouncycastle.jcajce.provider.digest.SHA3.DigestSHA3;
 import org.bouncycastle.jcajce.provider.digest.SHA3.Digest256;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.security.MessageDigest;
 
 import org.bouncycastle.util.encoders.Hex;
 import org.jooq.*;
 import parse.ICDBQuery;
+import stats.LatencyStatistics.Phase;
 import stats.RunStatistics;
 import stats.Statistics;
+import stats.Tracer;
 import verify.serial.AbstractIcrl;
 import verify.serial.Icrl;
+import verify.serial.IcrlLog;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
@@ -37,11 +43,11 @@ import java.security.NoSuchAlgorithmException;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static main.ICDBTool.ICRLmap;
 
 
 /**
@@ -70,22 +76,29 @@ public abstract class QueryVerifier {
     protected final int threads;
     private final DataSource.Fetch fetch;
     protected final RunStatistics statistics;
+    private int partitions = 1;
 
     private static final Logger logger = LogManager.getLogger();
 
-    protected Integer totalICSize=0;
-    protected Integer totalDataSize=0;
-    protected Integer totalSerialSize=0;
+    // Updated concurrently by the verifier threads
+    protected final LongAdder totalICSize = new LongAdder();
+    protected final LongAdder totalDataSize = new LongAdder();
+    protected final LongAdder totalSerialSize = new LongAdder();
 
-    protected BigInteger message = BigInteger.valueOf(1);
-    protected BigInteger sig = BigInteger.valueOf(1);
-    protected StringBuilder sigBuilderCloud = new StringBuilder();
+    // The aggregate state on each side, only updated through the synchronized fold and append methods below
+    private BigInteger message = BigInteger.valueOf(1);
+    private BigInteger sig = BigInteger.valueOf(1);
+    private StringBuilder sigBuilderCloud = new StringBuilder();
     protected String AggSigCloud ;
-    protected StringBuilder sigBuilderClient = new StringBuilder();
+    private StringBuilder sigBuilderClient = new StringBuilder();
     protected String AggSigClient ;
 
     BigInteger finalClientSig=BigInteger.ONE;
 
+    // The XOR of the MACs on each side, when the aggregate query reads page aggregates
+    private byte[] xorCloud = new byte[0];
+    private byte[] xorClient = new byte[0];
+
     protected   String delimeter;
 
 
@@ -102,6 +115,14 @@ public abstract class QueryVerifier {
         delimeter=",";
     }
 
+    /**
+     * Splits single-table verify queries into primary key ranges fetched concurrently over pooled connections
+     * @param partitions the number of ranges. 1 fetches the query over the main connection.
+     */
+    public void setPartitions(int partitions) {
+        this.partitions = Math.max(1, partitions);
+    }
+
     /**
      * Executes and verifies a given query
      * @return true if the query is verified
@@ -110,18 +131,21 @@ public abstract class QueryVerifier {
         logger.debug("Using fetch type: {}", fetch);
 
         Stopwatch totalQueryVerificationTime = Stopwatch.createStarted();
+        final long span = Tracer.begin();
 
         logger.info("Verify Query: {}", Format.limit(icdbQuery.getVerifyQuery()));
 
-        Stopwatch queryFetchTime = Stopwatch.createStarted();
-        Stream<Record> records = DBSource.stream(icdb, icdbQuery.getVerifyQuery(), fetch);
-        statistics.setDataFetchTime(queryFetchTime.elapsed(ICDBTool.TIME_UNIT));
-        logger.debug("Data fetch time: {}", statistics.getDataFetchTime());
+        if (icdbQuery.isSerialOnly()) {
+            Stopwatch serialCollectionTime = Stopwatch.createStarted();
+            boolean collected = collectSerials(icdbQuery);
+            statistics.setVerificationTime(serialCollectionTime.elapsed(ICDBTool.TIME_UNIT));
+            Tracer.end("collect serials", span, "records", statistics.getQueryFetchSize());
+            return collected;
+        }
 
         Stopwatch queryVerificationTime = Stopwatch.createStarted();
         //final verification if not AGGREGATE VERIFICATION or aggregate message generation if RSA_AGGREGATE or final Integrity Code Generation(on client) if MAC_AGGREGATE
-        boolean verified = verifyRecords(records,  icdbQuery);
-        records.close();
+        boolean verified = verifyRecords(icdbQuery);
         //generate final IC for client if RSA_AGGREGATE
         if (codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE ){
             RSASHA1Signer signer=new RSASHA1Signer(key.getModulus(),key.getExponent());
@@ -131,40 +155,38 @@ public abstract class QueryVerifier {
 
 
             //set total data and serial size (excluding IC)
-            statistics.setTotalDataSize(totalDataSize);
-            statistics.setTotalSerialSize(totalSerialSize);
+            statistics.setTotalDataSize(totalDataSize.sum());
+            statistics.setTotalSerialSize(totalSerialSize.sum());
 
 
 
 
-        if (codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE  || codeGen.getAlgorithm()==AlgorithmType.AES_AGGREGATE || codeGen.getAlgorithm()==AlgorithmType.SHA_AGGREGATE  ){
+        if (codeGen.getAlgorithm().isAggregate()){
             verified=verifyAggregate(icdbQuery);
         }
 
-        //time to verify the query results, time to
-        logger.debug("Data verification time/final message generation time(for ALGO_AGGREGATE): {}", statistics.getVerificationTime());
+        logger.debug("Data fetch time: {}", statistics.getDataFetchTime());
+        logger.debug("Fetch stall time: {}", statistics.getFetchStallTime());
+        logger.debug("Verify stall time: {}", statistics.getVerifyStallTime());
         logger.debug("Aggregate Query Fetch Time: {}", statistics.getAggregateRecordFetchTime());
         logger.debug("Aggregate Signature generation time: {}", statistics.getAggregateSigGenerationTime());
         logger.debug("Aggregate Final Verification time(microsec): {}", statistics.getAGG_final_verificationTime());
-        //time to verify the query results, time to
-        logger.debug("Data verification time/final message generation time(for ALGO_AGGREGATE): {}", statistics.getVerificationTime());
         logger.debug("Total query verification time: {}", totalQueryVerificationTime.elapsed(ICDBTool.TIME_UNIT));
+        Tracer.end("verify", span, "records", statistics.getQueryFetchSize());
         return verified;
     }
 
 
     public boolean verifyAggregate(ICDBQuery icdbQuery)  {
         boolean verified=false;
-        //get the records (integrity codes) to generate final aggregate signature
-        Stopwatch aggregateRecordFetchTime = Stopwatch.createStarted();
-        Stream<Record> AggregateRecords = DBSource.stream(icdb, icdbQuery.getAggregateQuery(), fetch);
-        statistics.setAggregateRecordFetchTime(aggregateRecordFetchTime.elapsed(ICDBTool.TIME_UNIT));
-
-        //check for aggregate signature generated
+        //get the records (integrity codes) and generate final aggregate signature
         Stopwatch aggregateSigGenerationTime = Stopwatch.createStarted();
-        boolean isAggregateSigGenerated=isAggregateSignatureGenerated(AggregateRecords,icdbQuery);
+        final long fetchSpan = Tracer.begin();
+        boolean isAggregateSigGenerated=isAggregateSignatureGenerated(icdbQuery);
+        Tracer.end("aggregate fetch", fetchSpan, "records", statistics.getQueryFetchSize());
+        final long signSpan = Tracer.begin();
         //do final Hashing on the combined signatures for AES and SHA
-        if (codeGen.getAlgorithm()== AlgorithmType.AES_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.SHA_AGGREGATE){
+        if (codeGen.getAlgorithm().isMacAggregate() && !icdbQuery.isPagedAggregate){
 //            DigestSHA3 md = new DigestSHA3(256); //same as DigestSHA3 md = new SHA3.Digest256();
 //            md.update(sigBuilderCloud.toString().getBytes(Charsets.UTF_8));
 //            sigBuilderCloud.setLength(0);
@@ -183,12 +205,14 @@ public abstract class QueryVerifier {
              // AggSigCloud=Hex.toHexString(codeGen.generateSignature(sigBuilderCloud.toString().getBytes(Charsets.UTF_8)));
         }
         statistics.setAggregateSigGenerationTime(aggregateSigGenerationTime.elapsed(ICDBTool.TIME_UNIT));
+        Tracer.end("aggregate sign", signSpan);
 
 
 
 
         //track the time for AggregateFinalVerification
         Stopwatch aggregateFinalVerificationTime = Stopwatch.createStarted();
+        final long verifySpan = Tracer.begin();
         if(isAggregateSigGenerated && codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE ){
             if(Arrays.equals(finalClientSig.toByteArray(),sig.toByteArray())) {
                 logger.info("ICDB aggregate sign verified");
@@ -196,6 +220,12 @@ public abstract class QueryVerifier {
             }
 
 
+        }else if(isAggregateSigGenerated && icdbQuery.isPagedAggregate){
+            // Page aggregates are XORs of MACs, so both sides fold to the same XOR
+            verified = MessageDigest.isEqual(xorCloud, xorClient);
+            xorCloud = new byte[0];
+            xorClient = new byte[0];
+
         }else if(isAggregateSigGenerated){
             //track the time for MAC_AGGREGATE final verification
             //do final  hashing on the combination of signatures regenerated by the client
@@ -226,9 +256,10 @@ public abstract class QueryVerifier {
             logger.error("Aggregate Signature not generated");
         }
         //set total IC size
-        statistics.setTotalICSize(totalICSize);
+        statistics.setTotalICSize(totalICSize.sum());
         //Note: the millisec value for RSA final aggregate verification gave a 'long' value of 0, to keep the exact record, micro sec is used
         statistics.setAGG_final_verificationTime(aggregateFinalVerificationTime.elapsed(TimeUnit.MICROSECONDS));
+        Tracer.end("aggregate verify", verifySpan);
 
         return verified;
     }
@@ -239,6 +270,7 @@ public abstract class QueryVerifier {
         if (icdbQuery.isAggregateQuery) {
             //compute aggregate average operation if any
             Stopwatch aggregateQueryExecutionTime = Stopwatch.createStarted();
+            final long span = Tracer.begin();
             if (avgOperationCount.size()!=0){
                 avgOperationCount.entrySet().forEach(entry-> {
                     DecimalFormat df = new DecimalFormat("#.0000");
@@ -248,7 +280,9 @@ public abstract class QueryVerifier {
                 );
             }
 
-           if (icdbQuery.executeandmatch(icdbCreate,columnComputedValue)){
+           final boolean matched = icdbQuery.executeandmatch(icdbCreate,columnComputedValue);
+           Tracer.end("aggregate execute", span);
+           if (matched){
             logger.info("aggregate operation matched");
                logger.debug("Total Aggregate Operation time: {}", statistics.getAggregateOperationTime());
                logger.debug("Aggregate query execution and match Time: {}", aggregateQueryExecutionTime.elapsed(ICDBTool.TIME_UNIT));
@@ -257,43 +291,21 @@ public abstract class QueryVerifier {
         }else{
 
             Stopwatch queryExecutionTime = Stopwatch.createStarted();
+            final long span = Tracer.begin();
             icdbQuery.execute(icdbCreate);
             statistics.setExecutionTime(queryExecutionTime.elapsed(ICDBTool.TIME_UNIT));
+            Tracer.end("execute", span);
             logger.debug("Total query execution time: {}", statistics.getExecutionTime());
 
             if (icdbQuery.isDeleteQuery || icdbQuery.requiresUpdate){
-                Writer writer = null;
                 Stopwatch icrlRevokeTime = Stopwatch.createStarted();
-                try {
-                    writer = new BufferedWriter(new OutputStreamWriter(
-                            new FileOutputStream("ICRL.txt",true), "utf-8"));
-
-                    if (!icdbQuery.serialsToBeRevoked.isEmpty()) {
-
-                        for (Long serial:icdbQuery.serialsToBeRevoked
-                                ) {
-                            writer.write(serial.toString()+"\n");
-
-                        }
-                    }
-
-
-                } catch (IOException ex) {
-                    // report
-                } finally {
-                    try {writer.close();} catch (Exception ex) {/*ignore*/}
-                }
+                final long revokeSpan = Tracer.begin();
+                final long[] serials = icdbQuery.serialsToBeRevoked.toArray();
+                revokeSerials(serials);
                 statistics.setIcrlRevoketime(icrlRevokeTime.elapsed(ICDBTool.TIME_UNIT));
+                Tracer.end("icrl revoke", revokeSpan, "serials", serials.length);
                 logger.debug("ICRL revoke time: {}", statistics.getIcrlRevoketime());
 
-
-                ///update ICRLHASH for newly updated ICRL file (NOTE:TIME is not reported for background update of ICRLMAP)
-
-                for (Long serial:icdbQuery.serialsToBeRevoked
-                     ) {
-                    ICRLmap.putIfAbsent(String.valueOf(serial).hashCode(), serial);
-                }
-
                 icdbQuery.serialsToBeRevoked.clear();
 
 
@@ -309,70 +321,120 @@ public abstract class QueryVerifier {
     }
 
 
-    protected long verifyCount = 0;
     /**
-     * Executes and verifies a given query given a cursor into the data records
-     * @return true if the query is verified
+     * Appends the serials to the ICRL log, returning once they are durable. Concurrent revocations share one fsync.
      */
-    private boolean verifyRecords(Stream<Record> records, ICDBQuery icdbQuery) {
+    private static void revokeSerials(long[] serials) {
+        try {
+            IcrlLog.Companion.getLog().revokeAll(serials);
+        } catch (IOException e) {
+            logger.error("Unable to revoke serials: {}", e.getMessage());
+        }
+    }
 
+    /**
+     * Fetches the serial columns (or packed codes) of the rows a DELETE removes, without verifying the data
+     * @return true once all serials are collected
+     */
+    private boolean collectSerials(ICDBQuery icdbQuery) {
+        final VerificationPipeline pipeline = new VerificationPipeline(threads, statistics.getLatencies());
+        final boolean collected;
+
+        try (PartitionedDBSource source = PartitionedDBSource.open(icdb, icdbQuery.getVerifyQuery(), partitions, fetchFor(icdbQuery.getVerifyQuery()))) {
+            collected = pipeline.run(source.getPartitions(), record -> {
+                final long[] serials = new long[record.size()];
+                int count = 0;
+                for (int i = 0; i < record.size(); i++) {
+                    final Object serial = record.get(i);
+                    if (serial instanceof Number) {
+                        serials[count++] = ((Number) serial).longValue();
+                    } else if (serial instanceof byte[]) {
+                        serials[count++] = StorageLayout.unpackSerial((byte[]) serial);
+                    }
+                }
+                icdbQuery.serialsToBeRevoked.addAll(serials, count);
+                return true;
+            });
+        }
 
-        final ForkJoinPool threadPool = threads < 1 ? new ForkJoinPool() : new ForkJoinPool(threads);
+        statistics.setQueryFetchSize(pipeline.getRecordCount());
+        statistics.setDataFetchTime(pipeline.getFetchTime());
+        statistics.setFetchStallTime(pipeline.getFetchStallTime());
+        statistics.setVerifyStallTime(pipeline.getVerifyStallTime());
+
+        logger.debug("Collected {} serial(s) to revoke", icdbQuery.serialsToBeRevoked.size());
+        return collected;
+    }
 
-        logger.debug("Using {} thread(s)", threadPool.getParallelism());
-        verifyCount = 0;
-        List<CompletableFuture<Boolean>> futures;
-        if (codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.AES_AGGREGATE || codeGen.getAlgorithm()== AlgorithmType.SHA_AGGREGATE){
-            futures = records.map(record -> CompletableFuture.supplyAsync(() -> aggregateVerifyRecord(record, icdbQuery), threadPool))
-                    .collect(Collectors.toList());
+    /**
+     * Executes and verifies a given query, overlapping the data fetch with verification
+     * @return true if the query is verified
+     */
+    private boolean verifyRecords(ICDBQuery icdbQuery) {
+        final VerificationPipeline pipeline = new VerificationPipeline(
+                codeGen.getAlgorithm().isAggregate() ? 1 : threads, statistics.getLatencies()
+        );
+        final boolean verified;
+        final DataSource.Fetch fetch = fetchFor(icdbQuery.getVerifyQuery());
+
+        if (codeGen.getAlgorithm().isAggregate()){
+            verified = pipeline.run(() -> DBSource.stream(icdb, icdbQuery.getVerifyQuery(), fetch), record -> retainUpdateRecord(aggregateVerifyRecord(record, icdbQuery), record, icdbQuery));
         }else {
-            futures = records.map(record -> CompletableFuture.supplyAsync(() -> verifyRecord(record, icdbQuery), threadPool))
-                    .collect(Collectors.toList());
+            try (PartitionedDBSource source = PartitionedDBSource.open(icdb, icdbQuery.getVerifyQuery(), partitions, fetch)) {
+                verified = pipeline.run(source.getPartitions(), record -> retainUpdateRecord(verifyRecord(record, icdbQuery), record, icdbQuery));
+            }
         }
 
-        // Asynchronously verify all signatures
-        return futures.stream()
-            .allMatch(f -> {
-                try {
-                    statistics.setQueryFetchSize(++verifyCount);
-                    return f.get();
-                } catch (InterruptedException | ExecutionException e) {
-                    throw new RuntimeException(e);
-                }
-            });
+        statistics.setQueryFetchSize(pipeline.getRecordCount());
+        statistics.setDataFetchTime(pipeline.getFetchTime());
+        statistics.setFetchStallTime(pipeline.getFetchStallTime());
+        statistics.setVerifyStallTime(pipeline.getVerifyStallTime());
+
+        return verified;
+    }
+
+    /**
+     * @return the fetch strategy for a query, chosen from its estimated result size when the fetch is AUTO
+     */
+    protected DataSource.Fetch fetchFor(String query) {
+        final long span = Tracer.begin();
+        final DataSource.Fetch strategy = FetchPlanner.resolve(icdb, query, fetch);
+        Tracer.end("plan fetch", span);
+        return strategy;
+    }
+
+    /**
+     * Keeps the verified rows of an UPDATE, so they can be re-signed without fetching them again
+     * @return the verification result
+     */
+    private static boolean retainUpdateRecord(boolean verified, Record record, ICDBQuery icdbQuery) {
+        if (verified && icdbQuery.requiresUpdate) {
+            icdbQuery.addUpdateRecord(record);
+        }
+        return verified;
     }
 
     /**
      * Hints the completion of Aggregate Sign Generation
      * @return true if Agg Sign generated
      */
-    private boolean isAggregateSignatureGenerated(Stream<Record> records, ICDBQuery icdbQuery) {
-        final ForkJoinPool threadPool = threads < 1 ? new ForkJoinPool() : new ForkJoinPool(threads);
+    private boolean isAggregateSignatureGenerated(ICDBQuery icdbQuery) {
+        // The codes are concatenated in fetch order on both sides, so the aggregate passes run on a single worker
+        final VerificationPipeline pipeline = new VerificationPipeline(1, statistics.getLatencies());
+        final boolean generated;
+        final DataSource.Fetch fetch = fetchFor(icdbQuery.getAggregateQuery());
 
-        logger.debug("Using {} thread(s)", threadPool.getParallelism());
-        verifyCount = 0;
-        List<CompletableFuture<Boolean>> futures;
         if (codeGen.getAlgorithm()== AlgorithmType.RSA_AGGREGATE ){
-            futures=records.map(record -> CompletableFuture.supplyAsync(() -> aggregateRSASignatureGenerator(record, icdbQuery), threadPool))
-                    .collect(Collectors.toList());
+            generated = pipeline.run(() -> DBSource.stream(icdb, icdbQuery.getAggregateQuery(), fetch), record -> aggregateRSASignatureGenerator(record, icdbQuery));
         }else{
             //if HMAC or CMAC
-            futures=records.map(record -> CompletableFuture.supplyAsync(() -> aggregateMACSignatureGenerator(record, icdbQuery), threadPool))
-                    .collect(Collectors.toList());
-
+            generated = pipeline.run(() -> DBSource.stream(icdb, icdbQuery.getAggregateQuery(), fetch), record -> aggregateMACSignatureGenerator(record, icdbQuery));
         }
 
+        statistics.setQueryFetchSize(pipeline.getRecordCount());
+        statistics.setAggregateRecordFetchTime(pipeline.getFetchTime());
 
-        // Asynchronously verify all signatures
-        return futures.stream()
-                .allMatch(f -> {
-                    try {
-                        statistics.setQueryFetchSize(++verifyCount);
-                        return f.get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        throw new RuntimeException(e);
-                    }
-                });
+        return generated;
     }
 
     protected abstract boolean verifyRecord(Record record, ICDBQuery icdbQuery);
@@ -383,13 +445,18 @@ public abstract class QueryVerifier {
 
 
     /**
-     * Verifies data and serial number by regenerating the signature
+     * Verifies data and serial number by regenerating the signature, with the key of the version of the serial (see KeyRing)
      * @param serial the serial number
      * @param signature the original signature
      * @param data the data to verify
      * @return true if the regenerated signature matches the original signature
      */
     protected boolean verifyData(final long serial, final byte[] signature, final String data)  {
+        final CodeGen signer = KeyRing.codeGenFor(serial, codeGen);
+        if (signer == null) {
+            return false;
+        }
+
         final byte[] serialBytes = ByteBuffer.allocate(8).putLong(serial).array();
         final byte[] dataBytes = data.getBytes(Charsets.UTF_8);
 
@@ -397,7 +464,9 @@ public abstract class QueryVerifier {
 
         //final boolean serialVerified = icrl.contains(serial);
        // final boolean serialVerified = verifySerial(String.valueOf(serial));
-        final boolean signatureVerified = codeGen.verify(allBytes, signature);
+        final long start = System.nanoTime();
+        final boolean signatureVerified = signer.verify(allBytes, signature);
+        statistics.getLatencies().recordSince(Phase.SIGN, start);
         return true && signatureVerified;
     }
 
@@ -410,13 +479,26 @@ public abstract class QueryVerifier {
      * @return true if serial is found in the ICRL
      */
     protected boolean verifySerial(final String serial)  {
-        if(ICDBTool.ICRLmap.containsKey(serial.hashCode())){
+        if(isRevoked(Long.parseLong(serial))){
             return false;
         }else return true;
     }
 
+    /**
+     * Checks for the serial number in the ICRL, recording the lookup latency
+     * @return true if the serial has been revoked
+     */
+    protected boolean isRevoked(final long serial) {
+        final long start = System.nanoTime();
+        final boolean revoked = IcrlLog.Companion.getLog().contains(serial);
+        statistics.getLatencies().recordSince(Phase.ICRL_CHECK, start);
+        return revoked;
+    }
+
     /**
      * regenerate serial on the client machine to combine and compute final aggregate IC
+     * The code is regenerated with the key of the version of the serial, or the current key if that version is not
+     * in the key ring, so the aggregate does not verify
      * @param serial
      * @param data
      * @return
@@ -427,9 +509,13 @@ public abstract class QueryVerifier {
 
         final byte[] allBytes = ArrayUtils.addAll(dataBytes, serialBytes);
        // totalDataSize+=dataBytes.length;
-        totalSerialSize+=serialBytes.length;
+        totalSerialSize.add(serialBytes.length);
 
-            return codeGen.generateSignature(allBytes);
+        final long start = System.nanoTime();
+        final CodeGen signer = KeyRing.codeGenFor(serial, codeGen);
+        final byte[] signature = (signer == null ? codeGen : signer).generateSignature(allBytes);
+        statistics.getLatencies().recordSince(Phase.SIGN, start);
+        return signature;
 
     }
 
@@ -448,8 +534,8 @@ public abstract class QueryVerifier {
         for (Field<?> attr : record.fields()) {
 
             final byte[] signature = (byte[]) record.get(index);
-            totalICSize+=signature.length;
-            sig = sig.multiply(new BigInteger(signature)).mod(key.getModulus());
+            totalICSize.add(signature.length);
+            multiplySignature(signature);
 
             index++;
         }
@@ -468,8 +554,12 @@ public abstract class QueryVerifier {
         for (Field<?> attr : record.fields()) {
 
              byte[] signature = (byte[]) record.get(index);
-            totalICSize+=signature.length;
-            sigBuilderCloud.append(Hex.toHexString(signature));
+            totalICSize.add(signature.length);
+            if (icdbQuery.isPagedAggregate) {
+                foldCloud(signature);
+            } else {
+                appendCloud(signature);
+            }
           //  sig = sig.multiply(new BigInteger(signature)).mod(key.getModulus());
             index++;
         }
@@ -479,6 +569,48 @@ public abstract class QueryVerifier {
 
 
 
+    /**
+     * Folds a MAC (or a page aggregate of MACs) returned by the aggregate query into the cloud XOR
+     */
+    protected synchronized void foldCloud(byte[] code) {
+        xorCloud = PageAggregates.xor(xorCloud, code);
+    }
+
+    /**
+     * Folds a MAC regenerated by the client into the client XOR
+     */
+    protected synchronized void foldClient(byte[] code) {
+        xorClient = PageAggregates.xor(xorClient, code);
+    }
+
+    /**
+     * Appends a MAC returned by the aggregate query to the cloud concatenation
+     */
+    protected synchronized void appendCloud(byte[] code) {
+        sigBuilderCloud.append(Hex.toHexString(code));
+    }
+
+    /**
+     * Appends a MAC regenerated by the client to the client concatenation
+     */
+    protected synchronized void appendClient(byte[] code) {
+        sigBuilderClient.append(Hex.toHexString(code));
+    }
+
+    /**
+     * Multiplies the hash of a message into the client aggregate message (RSA_AGGREGATE)
+     */
+    protected synchronized void multiplyMessage(byte[] hash) {
+        message = message.multiply(new BigInteger(hash)).mod(key.getModulus());
+    }
+
+    /**
+     * Multiplies a signature returned by the aggregate query into the cloud aggregate signature (RSA_AGGREGATE)
+     */
+    protected synchronized void multiplySignature(byte[] signature) {
+        sig = sig.multiply(new BigInteger(signature)).mod(key.getModulus());
+    }
+
     /**
      * @return An error message, if it exists
      */
@@ -487,7 +619,10 @@ public abstract class QueryVerifier {
     }
 
 
-    protected void computeAggregateOperation(ICDBQuery icdbQuery,Record record){
+    /**
+     * Folds a record into the computed values of the aggregate functions of the query. Called by the verifier threads.
+     */
+    protected synchronized void computeAggregateOperation(ICDBQuery icdbQuery,Record record){
         icdbQuery.columnOperation.entrySet().forEach(entry -> {
             String ColumnName=((String) entry.getKey()).substring(((String)entry.getKey()).indexOf("(") + 1, ((String)entry.getKey()).indexOf(")"));
             if (entry.getValue().equalsIgnoreCase("SUM")){
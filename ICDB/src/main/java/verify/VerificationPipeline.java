@@ -0,0 +1,405 @@
+package verify;
+
+import com.google.common.base.Stopwatch;
+import main.ICDBTool;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jooq.Record;
+import stats.LatencyStatistics;
+import stats.LatencyStatistics.Phase;
+import stats.Metrics;
+import stats.Tracer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ *     A two-stage fetch/verify pipeline. A fetch thread pulls records from the database (decoding them into jOOQ
+ *     records) and places them in a bounded ring buffer, while verifier workers drain the buffer concurrently.
+ *     Network transfer therefore overlaps with MAC work, and the time each stage spends blocked on the other
+ *     shows which one is the real bottleneck.
+ *     Several sources (e.g. the partitions of a verify query) may feed the same buffer, each with its own fetch thread.
+ * </p>
+ * <p>
+ *     Workers take records from the buffer in batches. A scheduler thread measures the verify cost per record and
+ *     sizes the batches to take about {@link #TARGET_BATCH_NANOS} each, so a cheap MAC is verified in large batches
+ *     and an expensive signature one record at a time. With an adaptive worker count, the pipeline starts a single
+ *     worker and adds workers (up to one per core) while the measured fetch rate needs more verify time than the
+ *     workers have, or while records pile up in the buffer.
+ * </p>
+ */
+public class VerificationPipeline {
+
+    // The number of decoded records that may be waiting for a verifier
+    public static final int BUFFER_CAPACITY = 4096;
+
+    // Marks the end of the record stream
+    private static final Object END = new Object();
+
+    // The number of records per decode and verify span of a trace
+    private static final int TRACE_BATCH = 1024;
+
+    // The verify time a batch should take, long enough to amortize taking it from the buffer
+    static final long TARGET_BATCH_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    static final int MAX_BATCH = 256;
+
+    // How often the scheduler measures the pipeline, and the spare verify capacity it keeps over the fetch rate
+    private static final long SCHEDULE_INTERVAL_MILLIS = 5;
+    private static final double HEADROOM = 1.25;
+
+    private static final Logger logger = LogManager.getLogger();
+
+    private final boolean adaptive;
+    private final int maxWorkers;
+    private final BlockingQueue<Object> buffer;
+    private final LatencyStatistics latencies;
+
+    // Written by the scheduler only
+    private final List<Thread> verifiers = new ArrayList<>();
+    private final AtomicInteger workers = new AtomicInteger();
+    private volatile int batchSize = 1;
+    private volatile double verifyCost;
+
+    private final AtomicLong fetchedCount = new AtomicLong();
+    private final AtomicLong verifyNanos = new AtomicLong();
+
+    private final AtomicBoolean failed = new AtomicBoolean(false);
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private final AtomicLong recordCount = new AtomicLong();
+    private final AtomicLong fetchStallNanos = new AtomicLong();
+    private final AtomicLong verifyStallNanos = new AtomicLong();
+    private final AtomicLong fetchTime = new AtomicLong();
+    private AtomicInteger activeFetchers;
+
+    /**
+     * @param workers the number of verifier threads. An argument less than 1 adapts the number of threads to the
+     *                measured verify cost and fetch rate.
+     */
+    public VerificationPipeline(int workers) {
+        this(workers, new LatencyStatistics());
+    }
+
+    /**
+     * @param workers the number of verifier threads. An argument less than 1 adapts the number of threads to the
+     *                measured verify cost and fetch rate.
+     * @param latencies records the fetch and verify latency of each record
+     */
+    public VerificationPipeline(int workers, LatencyStatistics latencies) {
+        this.adaptive = workers < 1;
+        this.maxWorkers = adaptive ? Runtime.getRuntime().availableProcessors() : workers;
+        this.buffer = new ArrayBlockingQueue<>(BUFFER_CAPACITY);
+        this.latencies = latencies;
+    }
+
+    /**
+     * Fetches all records from the source and verifies each one
+     * @param source opens the record stream. It is called (and the stream closed) on the fetch thread.
+     * @param verifier returns true if a record is verified
+     * @return true if every record is verified
+     */
+    public boolean run(Supplier<Stream<Record>> source, Predicate<Record> verifier) {
+        return run(Collections.singletonList(source), verifier);
+    }
+
+    /**
+     * Fetches all records from each source concurrently and verifies each one
+     * @param sources open the record streams, one fetch thread per source
+     * @param verifier returns true if a record is verified
+     * @return true if every record is verified
+     */
+    public boolean run(List<Supplier<Stream<Record>>> sources, Predicate<Record> verifier) {
+        logger.debug("Using {} fetch thread(s) and {} verifier thread(s)", sources.size(), adaptive ? "adaptive" : maxWorkers);
+
+        activeFetchers = new AtomicInteger(sources.size());
+        final Stopwatch fetchTimer = Stopwatch.createStarted();
+
+        final List<Thread> fetchers = new ArrayList<>(sources.size());
+        for (int i = 0; i < sources.size(); i++) {
+            final Supplier<Stream<Record>> source = sources.get(i);
+            fetchers.add(new Thread(() -> fetch(source, fetchTimer), "icdb-fetch-" + i));
+        }
+
+        final Thread scheduler = new Thread(() -> schedule(verifier), "icdb-verify-scheduler");
+        scheduler.setDaemon(true);
+
+        Metrics.track(buffer);
+        fetchers.forEach(Thread::start);
+        for (int i = adaptive ? 1 : maxWorkers; i > 0; i--) {
+            startVerifier(verifier);
+        }
+        scheduler.start();
+
+        try {
+            for (Thread thread : fetchers) {
+                thread.join();
+            }
+
+            // No more workers are needed once the fetch is done, and none are added after the scheduler stops
+            scheduler.interrupt();
+            scheduler.join();
+
+            for (Thread thread : verifiers) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            Metrics.untrack(buffer);
+        }
+
+        logger.debug("Verified with {} thread(s) in batches of up to {} ({} ns per record)",
+                workers.get(), batchSize, Math.round(verifyCost));
+
+        if (error.get() != null) {
+            throw new RuntimeException(error.get());
+        }
+
+        return !failed.get();
+    }
+
+    private void startVerifier(Predicate<Record> verifier) {
+        final Thread thread = new Thread(() -> verify(verifier), "icdb-verify-" + workers.getAndIncrement());
+        verifiers.add(thread);
+        thread.start();
+    }
+
+    /**
+     * Measures the verify cost per record and the fetch rate, sizing the batches to the cost and, when adaptive,
+     * adding workers until they can keep up with the fetch
+     */
+    private void schedule(Predicate<Record> verifier) {
+        long lastTime = System.nanoTime();
+        long lastFetched = 0;
+        long lastVerified = 0;
+        long lastVerifyNanos = 0;
+
+        while (true) {
+            try {
+                Thread.sleep(SCHEDULE_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            final long time = System.nanoTime();
+            final long fetched = fetchedCount.get();
+            final long verified = recordCount.get();
+            final long nanos = verifyNanos.get();
+
+            final long verifiedDelta = verified - lastVerified;
+            if (verifiedDelta > 0) {
+                // A moving average, so one slow batch (e.g. a GC pause) does not swing the batch size
+                final double sample = (double) (nanos - lastVerifyNanos) / verifiedDelta;
+                verifyCost = verifyCost == 0 ? sample : 0.7 * verifyCost + 0.3 * sample;
+                batchSize = (int) Math.max(1, Math.min(MAX_BATCH, TARGET_BATCH_NANOS / Math.max(verifyCost, 1)));
+            }
+
+            if (adaptive && verifyCost > 0 && workers.get() < maxWorkers) {
+                final double fetchRate = (double) (fetched - lastFetched) / Math.max(time - lastTime, 1);
+                int needed = (int) Math.ceil(fetchRate * verifyCost * HEADROOM);
+
+                // A filling buffer means the fetch is already held back by verification
+                if (buffer.size() > BUFFER_CAPACITY / 2) {
+                    needed = Math.max(needed, workers.get() + 1);
+                }
+
+                while (workers.get() < Math.min(needed, maxWorkers)) {
+                    startVerifier(verifier);
+                }
+            }
+
+            lastTime = time;
+            lastFetched = fetched;
+            lastVerified = verified;
+            lastVerifyNanos = nanos;
+        }
+    }
+
+    /**
+     * Producer stage: reads records into the buffer until the stream ends or verification fails.
+     * The last fetch thread to finish marks the end of the buffer.
+     */
+    private void fetch(Supplier<Stream<Record>> source, Stopwatch fetchTimer) {
+        Metrics.inFlightFetches.inc();
+        final long fetchSpan = Tracer.begin();
+        long fetched = 0;
+
+        try (Stream<Record> records = source.get()) {
+            // Opening the stream (and, when lazy, asking for the first row) runs the query
+            Iterator<Record> iterator = records.iterator();
+            final boolean any = iterator.hasNext();
+            Tracer.end("open cursor", fetchSpan);
+
+            long batchSpan = Tracer.begin();
+            long start = System.nanoTime();
+            while (any && !failed.get() && iterator.hasNext()) {
+                final Record record = iterator.next();
+                latencies.recordSince(Phase.FETCH, start);
+                Metrics.fetchedRecords.mark();
+                put(record);
+                fetchedCount.incrementAndGet();
+
+                if (++fetched % TRACE_BATCH == 0) {
+                    Tracer.end("decode batch", batchSpan, "records", TRACE_BATCH);
+                    batchSpan = Tracer.begin();
+                }
+                start = System.nanoTime();
+            }
+            if (fetched % TRACE_BATCH != 0) {
+                Tracer.end("decode batch", batchSpan, "records", fetched % TRACE_BATCH);
+            }
+        } catch (Throwable e) {
+            error.compareAndSet(null, e);
+            failed.set(true);
+        } finally {
+            Metrics.inFlightFetches.dec();
+            Tracer.end("fetch", fetchSpan, "records", fetched);
+
+            if (activeFetchers.decrementAndGet() == 0) {
+                fetchTime.set(fetchTimer.elapsed(ICDBTool.TIME_UNIT));
+
+                try {
+                    put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Consumer stage: verifies batches of records until the end of the stream. After a failure the remaining records
+     * are drained without being verified, so the fetch thread never blocks on a full buffer.
+     */
+    private void verify(Predicate<Record> verifier) {
+        final List<Object> batch = new ArrayList<>(MAX_BATCH);
+        long batchSpan = Tracer.begin();
+        long verified = 0;
+
+        try {
+            while (true) {
+                batch.add(take());
+                buffer.drainTo(batch, batchSize - 1);
+
+                long batchNanos = 0;
+                int batchCount = 0;
+
+                for (Object item : batch) {
+                    if (item == END) {
+                        // Pass the marker on to the other workers
+                        buffer.put(END);
+                        verifyNanos.addAndGet(batchNanos);
+                        recordCount.addAndGet(batchCount);
+                        if (verified % TRACE_BATCH != 0) {
+                            Tracer.end("verify batch", batchSpan, "records", verified % TRACE_BATCH);
+                        }
+                        return;
+                    }
+
+                    if (failed.get()) {
+                        continue;
+                    }
+
+                    final long start = System.nanoTime();
+                    final boolean valid = verifier.test((Record) item);
+                    final long nanos = System.nanoTime() - start;
+                    latencies.record(Phase.VERIFY, nanos);
+                    batchNanos += nanos;
+                    batchCount++;
+                    Metrics.verifiedRecords.mark();
+
+                    if (!valid) {
+                        failed.set(true);
+                    }
+
+                    if (++verified % TRACE_BATCH == 0) {
+                        Tracer.end("verify batch", batchSpan, "records", TRACE_BATCH);
+                        batchSpan = Tracer.begin();
+                    }
+                }
+
+                verifyNanos.addAndGet(batchNanos);
+                recordCount.addAndGet(batchCount);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            error.compareAndSet(null, e);
+            failed.set(true);
+            drain();
+        }
+    }
+
+    private void put(Object item) throws InterruptedException {
+        if (!buffer.offer(item)) {
+            final long start = System.nanoTime();
+            buffer.put(item);
+            fetchStallNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private Object take() throws InterruptedException {
+        Object item = buffer.poll();
+        if (item == null) {
+            final long start = System.nanoTime();
+            item = buffer.take();
+            verifyStallNanos.addAndGet(System.nanoTime() - start);
+        }
+        return item;
+    }
+
+    private void drain() {
+        try {
+            Object item;
+            while ((item = buffer.take()) != END) {
+                // Discard
+            }
+            buffer.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of records handed to a verifier
+     */
+    public long getRecordCount() {
+        return recordCount.get();
+    }
+
+    /**
+     * @return the time the fetch thread(s) took to transfer and decode all records
+     */
+    public long getFetchTime() {
+        return fetchTime.get();
+    }
+
+    /**
+     * @return the time the fetch thread(s) spent waiting for space in the buffer (the verifiers are the bottleneck)
+     */
+    public long getFetchStallTime() {
+        return ICDBTool.TIME_UNIT.convert(fetchStallNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the mean time a verifier spent waiting for records (the fetch is the bottleneck)
+     */
+    public long getVerifyStallTime() {
+        return ICDBTool.TIME_UNIT.convert(verifyStallNanos.get() / Math.max(workers.get(), 1), TimeUnit.NANOSECONDS);
+    }
+
+}
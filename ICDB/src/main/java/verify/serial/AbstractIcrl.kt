@@ -13,6 +13,12 @@ interface AbstractIcrl {
      */
     fun addNext(): Long
 
+    /**
+     * Leases a block of consecutive serials, so they can be assigned concurrently
+     * @return the first serial of the block
+     */
+    fun addNext(count: Int): Long
+
     /**
      * Commits the running serials to the list
      */
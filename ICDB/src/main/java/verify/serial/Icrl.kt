@@ -51,6 +51,12 @@ class Icrl private constructor() : AbstractIcrl {
      */
     override fun addNext(): Long = next.andIncrement
 
+    /**
+     * Increments the current serial counter by the given count
+     * @return the first serial of the leased block
+     */
+    override fun addNext(count: Int): Long = next.getAndAdd(count.toLong())
+
     override fun commit() {
         if (next.get() == pending.get()) { return }
 
@@ -0,0 +1,390 @@
+package verify.serial
+
+import org.apache.logging.log4j.LogManager
+import stats.Tracer
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.util.Arrays
+import java.util.Collections
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * The Integrity Code Revocation List (ICRL) used for verification, stored as an append-only binary log of revoked
+ * serials plus a sorted snapshot.
+ *
+ * Revocations from concurrent writers are group committed: a single flusher thread appends everything pending to the
+ * log and calls fsync once per batch, and each writer waits only until its own serials are durable. Once the log grows
+ * past [compactionThreshold] serials it is merged into the snapshot and truncated, so startup reads one sorted array
+ * and a short log instead of the whole revocation history.
+ *
+ * A legacy text ICRL (one decimal serial per line) is imported the first time the log is opened.
+ */
+class IcrlLog(directory: File, private val compactionThreshold: Int = COMPACTION_THRESHOLD) : AutoCloseable {
+
+    private val logFile = File(directory, LOG_FILE)
+    private val snapshotFile = File(directory, SNAPSHOT_FILE)
+
+    private val logger = LogManager.getLogger()
+
+    // Revoked serials: the sorted snapshot, plus anything logged since
+    @Volatile private var snapshot = LongArray(0)
+    private val recent: MutableSet<Long> = Collections.newSetFromMap(ConcurrentHashMap<Long, Boolean>())
+
+    private val channel: FileChannel
+
+    // Group commit state, guarded by lock
+    private val lock = ReentrantLock()
+    private val pendingChanged = lock.newCondition()
+    private val durableChanged = lock.newCondition()
+    private var pending = LongArray(1024)
+    private var pendingCount = 0
+    private var appendedBatches = 0L
+    private var durableBatches = 0L
+    private var requestedClears = 0L
+    private var completedClears = 0L
+    private var closed = false
+    private var failure: IOException? = null
+
+    private val flusher = Thread({ flushLoop() }, "icrl-flusher")
+
+    init {
+        directory.mkdirs()
+
+        if (snapshotFile.exists()) {
+            snapshot = readSnapshot(snapshotFile)
+        }
+
+        channel = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)
+        readLog()
+
+        val legacy = File(directory, LEGACY_FILE)
+        if (!snapshotFile.exists() && legacy.exists()) {
+            importLegacy(legacy)
+        }
+
+        logger.debug("Loaded ICRL: {} serial(s) in snapshot, {} in log", snapshot.size, recent.size)
+
+        flusher.isDaemon = true
+        flusher.start()
+    }
+
+    /**
+     * Validates whether the serial has been revoked
+     */
+    operator fun contains(serial: Long): Boolean {
+        return Arrays.binarySearch(snapshot, serial) >= 0 || recent.contains(serial)
+    }
+
+    /**
+     * Revokes the serials, returning once they are durable on disk
+     */
+    @Throws(IOException::class)
+    fun revokeAll(serials: LongArray) {
+        if (serials.isEmpty()) { return }
+
+        lock.withLock {
+            check(!closed) { "ICRL log is closed" }
+
+            serials.forEach { recent.add(it) }
+
+            if (pendingCount + serials.size > pending.size) {
+                pending = Arrays.copyOf(pending, Math.max(pendingCount + serials.size, pending.size * 2))
+            }
+            System.arraycopy(serials, 0, pending, pendingCount, serials.size)
+            pendingCount += serials.size
+
+            val batch = ++appendedBatches
+            pendingChanged.signal()
+
+            while (durableBatches < batch && failure == null) {
+                durableChanged.await()
+            }
+            failure?.let { throw it }
+        }
+    }
+
+    /**
+     * Revokes a single serial, returning once it is durable on disk
+     */
+    @Throws(IOException::class)
+    fun revoke(serial: Long) = revokeAll(longArrayOf(serial))
+
+    /**
+     * The number of revoked serials
+     */
+    val size: Int
+        get() = snapshot.size + recent.size
+
+    /**
+     * Removes every revoked serial, e.g. for a newly converted database. The log is truncated by the flusher, after any
+     * batch it is writing, so no serial revoked before the call is left in the log.
+     */
+    @Throws(IOException::class)
+    fun clear() {
+        lock.withLock {
+            check(!closed) { "ICRL log is closed" }
+
+            val request = ++requestedClears
+            pendingChanged.signal()
+
+            while (completedClears < request && failure == null) {
+                durableChanged.await()
+            }
+            failure?.let { throw it }
+        }
+    }
+
+    /**
+     * Merges the log into the snapshot and truncates the log. Only called by the flusher (or before it starts),
+     * so the log is never truncated under a concurrent append. The lock is only held to copy the revoked serials and
+     * to publish the new snapshot, so revocations are not blocked while it is sorted and written.
+     */
+    private fun compact() {
+        val logged = lock.withLock { recent.toLongArray() }
+        val current = snapshot
+
+        val merged = LongArray(current.size + logged.size)
+        System.arraycopy(current, 0, merged, 0, current.size)
+        System.arraycopy(logged, 0, merged, current.size, logged.size)
+        Arrays.sort(merged)
+
+        // Remove duplicates
+        var unique = 0
+        for (i in merged.indices) {
+            if (i == 0 || merged[i] != merged[i - 1]) {
+                merged[unique++] = merged[i]
+            }
+        }
+        val sorted = merged.copyOf(unique)
+
+        writeSnapshot(sorted)
+
+        // Serials revoked while the snapshot was written stay in recent, and are appended to the log after it is truncated
+        lock.withLock {
+            snapshot = sorted
+            logged.forEach { recent.remove(it) }
+        }
+        channel.truncate(0)
+        channel.force(true)
+
+        logger.debug("Compacted ICRL into a snapshot of {} serial(s)", sorted.size)
+    }
+
+    /**
+     * Drops every revoked serial, on behalf of clear(). Only called by the flusher.
+     */
+    private fun truncate(request: Long) {
+        // An empty snapshot, rather than none, so a legacy ICRL.txt is not imported again
+        writeSnapshot(LongArray(0))
+        channel.truncate(0)
+        channel.force(true)
+
+        lock.withLock {
+            completedClears = request
+            durableChanged.signalAll()
+        }
+    }
+
+    /**
+     * Flushes pending revocations and closes the log
+     */
+    override fun close() {
+        lock.withLock {
+            if (closed) { return }
+            closed = true
+            pendingChanged.signal()
+        }
+        flusher.join()
+        channel.close()
+    }
+
+    private fun flushLoop() {
+        val buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.BIG_ENDIAN)
+
+        while (true) {
+            val batch: LongArray
+            val target: Long
+            val clear: Long
+            val clearing: Boolean
+
+            lock.lock()
+            try {
+                while (pendingCount == 0 && completedClears == requestedClears && !closed) {
+                    pendingChanged.await()
+                }
+                if (pendingCount == 0 && completedClears == requestedClears && closed) {
+                    return
+                }
+
+                clear = requestedClears
+                clearing = completedClears < clear
+                if (clearing) {
+                    // Serials revoked before the clear are dropped, along with the log
+                    pendingCount = 0
+                    durableBatches = appendedBatches
+                    durableChanged.signalAll()
+                    snapshot = LongArray(0)
+                    recent.clear()
+                }
+
+                batch = pending.copyOf(pendingCount)
+                pendingCount = 0
+                target = appendedBatches
+            } finally {
+                lock.unlock()
+            }
+
+            if (clearing) {
+                try {
+                    truncate(clear)
+                } catch (e: IOException) {
+                    logger.error("Unable to clear the ICRL log: {}", e.message)
+                    lock.withLock {
+                        failure = e
+                        durableChanged.signalAll()
+                    }
+                    return
+                }
+                continue
+            }
+
+            try {
+                // One write and one fsync for everything that was pending
+                val span = Tracer.begin()
+                var index = 0
+                while (index < batch.size) {
+                    buffer.clear()
+                    while (index < batch.size && buffer.remaining() >= 8) {
+                        buffer.putLong(batch[index++])
+                    }
+                    buffer.flip()
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer, channel.size())
+                    }
+                }
+                channel.force(false)
+                Tracer.end("icrl write", span, "serials", batch.size.toLong())
+
+                lock.withLock {
+                    durableBatches = target
+                    durableChanged.signalAll()
+                }
+
+                if (recent.size >= compactionThreshold) {
+                    val compactSpan = Tracer.begin()
+                    compact()
+                    Tracer.end("icrl compact", compactSpan)
+                }
+            } catch (e: IOException) {
+                logger.error("Unable to write the ICRL log: {}", e.message)
+                lock.withLock {
+                    failure = e
+                    durableChanged.signalAll()
+                }
+                return
+            }
+        }
+    }
+
+    private fun readLog() {
+        // Ignore a trailing partial record from an interrupted write
+        val length = channel.size() - channel.size() % 8
+        if (length < channel.size()) {
+            channel.truncate(length)
+        }
+
+        val buffer = ByteBuffer.allocate(BUFFER_SIZE)
+        var position = 0L
+        while (position < length) {
+            buffer.clear()
+            val read = channel.read(buffer, position)
+            if (read <= 0) { break }
+            buffer.flip()
+            while (buffer.remaining() >= 8) {
+                // Serials pending during the last compaction can be in both the snapshot and the log
+                val serial = buffer.long
+                if (Arrays.binarySearch(snapshot, serial) < 0) {
+                    recent.add(serial)
+                }
+            }
+            position += read - buffer.remaining()
+        }
+    }
+
+    private fun importLegacy(legacy: File) {
+        legacy.forEachLine { line ->
+            if (line.isNotBlank()) {
+                recent.add(line.trim().toLong())
+            }
+        }
+
+        compact()
+        logger.info("Imported {} serial(s) from {}", snapshot.size, legacy.name)
+    }
+
+    private fun writeSnapshot(serials: LongArray) {
+        val temp = File(snapshotFile.path + ".tmp")
+
+        FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE).use { out ->
+            val buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+            buffer.putInt(SNAPSHOT_MAGIC).putInt(serials.size)
+
+            for (serial in serials) {
+                if (buffer.remaining() < 8) {
+                    buffer.flip()
+                    while (buffer.hasRemaining()) { out.write(buffer) }
+                    buffer.clear()
+                }
+                buffer.putLong(serial)
+            }
+
+            buffer.flip()
+            while (buffer.hasRemaining()) { out.write(buffer) }
+            out.force(true)
+        }
+
+        Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    }
+
+    companion object {
+        const val LOG_FILE = "icrl.log"
+        const val SNAPSHOT_FILE = "icrl.snapshot"
+        const val LEGACY_FILE = "ICRL.txt"
+
+        const val COMPACTION_THRESHOLD = 1 shl 20
+
+        private const val SNAPSHOT_MAGIC = 0x49435231 // "ICR1"
+        private const val BUFFER_SIZE = 1 shl 16
+
+        /**
+         * The ICRL in the working directory, flushed when the JVM exits
+         */
+        val log: IcrlLog by lazy {
+            val log = IcrlLog(File("."))
+            Runtime.getRuntime().addShutdownHook(Thread({ log.close() }))
+            log
+        }
+
+        private fun readSnapshot(file: File): LongArray {
+            FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+                val map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                if (map.remaining() < 8 || map.int != SNAPSHOT_MAGIC) {
+                    throw IOException("Invalid ICRL snapshot: " + file)
+                }
+
+                val serials = LongArray(map.int)
+                map.asLongBuffer().get(serials)
+                return serials
+            }
+        }
+    }
+
+}
@@ -13,6 +13,8 @@ class NullIcrl : AbstractIcrl {
 
     override fun addNext(): Long = next.andIncrement
 
+    override fun addNext(count: Int): Long = next.getAndAdd(count.toLong())
+
     override fun commit() {}
 
     override fun revoke(serial: Long) {}
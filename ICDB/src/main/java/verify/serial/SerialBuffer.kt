@@ -0,0 +1,46 @@
+package verify.serial
+
+import java.util.Arrays
+
+/**
+ * A growable buffer of serial numbers that verifier threads can append to concurrently.
+ * Serials are stored as primitive longs, and a whole record's serials can be appended under a single lock.
+ */
+class SerialBuffer(initialCapacity: Int = 1024) {
+
+    private var serials = LongArray(Math.max(1, initialCapacity))
+    private var count = 0
+
+    @Synchronized fun add(serial: Long) {
+        ensureCapacity(count + 1)
+        serials[count++] = serial
+    }
+
+    /**
+     * Appends the first [length] serials of the array
+     */
+    @Synchronized fun addAll(batch: LongArray, length: Int) {
+        ensureCapacity(count + length)
+        System.arraycopy(batch, 0, serials, count, length)
+        count += length
+    }
+
+    @Synchronized fun size(): Int = count
+
+    @Synchronized fun isEmpty(): Boolean = count == 0
+
+    /**
+     * @return a copy of the buffered serials
+     */
+    @Synchronized fun toArray(): LongArray = serials.copyOf(count)
+
+    @Synchronized fun clear() {
+        count = 0
+    }
+
+    private fun ensureCapacity(capacity: Int) {
+        if (capacity > serials.size) {
+            serials = Arrays.copyOf(serials, Math.max(capacity, serials.size * 2))
+        }
+    }
+}
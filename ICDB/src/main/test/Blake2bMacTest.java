@@ -0,0 +1,80 @@
+import crypto.signer.Blake2bMac;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * <p>
+ *     Known-answer tests for keyed BLAKE2b, against the reference vectors (blake2b-kat.txt of the BLAKE2 reference
+ *     implementation): the key is 00 01 .. 3f, the message of length n is 00 01 .. (n - 1), and the output is 64 bytes.
+ *     The lengths cover the empty message and both sides of the 128 byte block boundaries.
+ * </p>
+ */
+public class Blake2bMacTest {
+
+    private static final Object[][] VECTORS = {
+            { 0, "10ebb67700b1868efb4417987acf4690ae9d972fb7a590c2f02871799aaa4786b5e996e8f0f4eb981fc214b005f42d2ff4233499391653df7aefcbc13fc51568" },
+            { 1, "961f6dd1e4dd30f63901690c512e78e4b45e4742ed197c3c5e45c549fd25f2e4187b0bc9fe30492b16b0d0bc4ef9b0f34c7003fac09a5ef1532e69430234cebd" },
+            { 2, "da2cfbe2d8409a0f38026113884f84b50156371ae304c4430173d08a99d9fb1b983164a3770706d537f49e0c916d9f32b95cc37a95b99d857436f0232c88a965" },
+            { 3, "33d0825dddf7ada99b0e7e307104ad07ca9cfd9692214f1561356315e784f3e5a17e364ae9dbb14cb2036df932b77f4b292761365fb328de7afdc6d8998f5fc1" },
+            { 63, "bd965bf31e87d70327536f2a341cebc4768eca275fa05ef98f7f1b71a0351298de006fba73fe6733ed01d75801b4a928e54231b38e38c562b2e33ea1284992fa" },
+            { 64, "65676d800617972fbd87e4b9514e1c67402b7a331096d3bfac22f1abb95374abc942f16e9ab0ead33b87c91968a6e509e119ff07787b3ef483e1dcdccf6e3022" },
+            { 65, "939fa189699c5d2c81ddd1ffc1fa207c970b6a3685bb29ce1d3e99d42f2f7442da53e95a72907314f4588399a3ff5b0a92beb3f6be2694f9f86ecf2952d5b41c" },
+            { 127, "76d2d819c92bce55fa8e092ab1bf9b9eab237a25267986cacf2b8ee14d214d730dc9a5aa2d7b596e86a1fd8fa0804c77402d2fcd45083688b218b1cdfa0dcbcb" },
+            { 128, "72065ee4dd91c2d8509fa1fc28a37c7fc9fa7d5b3f8ad3d0d7a25626b57b1b44788d4caf806290425f9890a3a2a35a905ab4b37acfd0da6e4517b2525c9651e4" },
+            { 129, "64475dfe7600d7171bea0b394e27c9b00d8e74dd1e416a79473682ad3dfdbb706631558055cfc8a40e07bd015a4540dcdea15883cbbf31412df1de1cd4152b91" },
+            { 255, "142709d62e28fcccd0af97fad0f8465b971e82201dc51070faa0372aa43e92484be1c1e73ba10906d5d1853db6a4106e0a7bf9800d373d6dee2d46d62ef2a461" }
+    };
+
+    private static final byte[] KEY = sequence(64);
+
+    @Test
+    public void referenceVectors() {
+        for (Object[] vector : VECTORS) {
+            final int length = (Integer) vector[0];
+            Assert.assertEquals("message length " + length, vector[1], Hex.toHexString(mac(64, sequence(length))));
+        }
+    }
+
+    @Test
+    public void truncatedOutput() {
+        // The output size is bound into the parameter block, so a 16 byte MAC is not a prefix of the 64 byte one
+        final byte[] out = mac(16, sequence(3));
+        Assert.assertEquals("ccf63a654ecd4b2e373ef98b7e8776f0", Hex.toHexString(out));
+        Assert.assertNotEquals(((String) VECTORS[3][1]).substring(0, 32), Hex.toHexString(out));
+    }
+
+    @Test
+    public void resetAfterFinal() {
+        final Blake2bMac mac = new Blake2bMac(64);
+        mac.init(new KeyParameter(KEY));
+        final byte[] out = new byte[64];
+
+        mac.update(sequence(129), 0, 129);
+        mac.doFinal(out, 0);
+        mac.update(sequence(129), 0, 129);
+        mac.doFinal(out, 0);
+
+        Assert.assertEquals(VECTORS[9][1], Hex.toHexString(out));
+    }
+
+    private static byte[] mac(int size, byte[] message) {
+        final Blake2bMac mac = new Blake2bMac(size);
+        mac.init(new KeyParameter(KEY));
+        mac.update(message, 0, message.length);
+
+        final byte[] out = new byte[mac.getMacSize()];
+        mac.doFinal(out, 0);
+        return out;
+    }
+
+    private static byte[] sequence(int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+}
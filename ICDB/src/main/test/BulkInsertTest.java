@@ -0,0 +1,121 @@
+import org.junit.Assert;
+import org.junit.Test;
+import parse.BulkInsert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <p>
+ *     Tests the value tokenizer of BulkInsert: string escapes, a semicolon inside a string, signed and decimal numbers,
+ *     NULL, multi-row VALUES with irregular whitespace, and the statements it rejects.
+ * </p>
+ */
+public class BulkInsertTest {
+
+    @Test
+    public void header() {
+        final BulkInsert insert = BulkInsert.parse("insert into `salaries` (emp_no, `salary`) values (1, 2)");
+
+        Assert.assertEquals("salaries", insert.getTable());
+        Assert.assertEquals(Arrays.asList("emp_no", "salary"), insert.getColumns());
+        Assert.assertNull(BulkInsert.parse("INSERT INTO t VALUES (1)").getColumns());
+
+        Assert.assertNull(BulkInsert.parse("INSERT INTO t SELECT * FROM u"));
+        Assert.assertNull(BulkInsert.parse("SELECT * FROM t"));
+    }
+
+    @Test
+    public void escapedQuotes() {
+        final List<List<BulkInsert.Value>> rows = rows("INSERT INTO t VALUES ('it''s', 'x\\'y', '', 'a\\\\b', 'c\\nd')");
+
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals(Arrays.asList("it's", "x'y", "", "a\\b", "c\nd"), texts(rows.get(0)));
+        Assert.assertEquals(Arrays.asList("'it''s'", "'x\\'y'", "''", "'a\\\\b'", "'c\\nd'"), sqls(rows.get(0)));
+    }
+
+    @Test
+    public void semicolonInString() {
+        final List<List<BulkInsert.Value>> rows = rows("INSERT INTO t VALUES ('a;b', 1), ('); DROP TABLE t; --', 2);");
+
+        Assert.assertEquals(2, rows.size());
+        Assert.assertEquals(Arrays.asList("a;b", "1"), texts(rows.get(0)));
+        Assert.assertEquals(Arrays.asList("); DROP TABLE t; --", "2"), texts(rows.get(1)));
+    }
+
+    @Test
+    public void numbers() {
+        final List<List<BulkInsert.Value>> rows = rows("INSERT INTO t VALUES (-1, +2, 3.25, -0.5, 1e3, -2.5E-3, NULL, null)");
+
+        Assert.assertEquals(Arrays.asList("-1", "+2", "3.25", "-0.5", "1e3", "-2.5E-3", null, null), texts(rows.get(0)));
+        Assert.assertTrue(rows.get(0).get(6).isNull());
+        Assert.assertEquals("null", rows.get(0).get(7).getSql());
+    }
+
+    @Test
+    public void multiRow() {
+        final String query = "INSERT INTO t (a, b) VALUES(1,'x') ,\n  ( 2 , 'y' ),(3,\t'z,)')  ;  ";
+        final List<List<BulkInsert.Value>> rows = rows(query);
+
+        Assert.assertEquals(3, rows.size());
+        Assert.assertEquals(Arrays.asList("1", "x"), texts(rows.get(0)));
+        Assert.assertEquals(Arrays.asList("2", "y"), texts(rows.get(1)));
+        Assert.assertEquals(Arrays.asList("3", "z,)"), texts(rows.get(2)));
+    }
+
+    @Test
+    public void exhausted() {
+        final Iterator<List<BulkInsert.Value>> rows = BulkInsert.parse("INSERT INTO t VALUES (1)").rows();
+
+        rows.next();
+        Assert.assertFalse(rows.hasNext());
+        try {
+            rows.next();
+            Assert.fail("Read past the last row");
+        } catch (NoSuchElementException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void unsupported() {
+        for (String query : new String[] {
+                "INSERT INTO t VALUES (NOW())",
+                "INSERT INTO t VALUES (0x1F)",
+                "INSERT INTO t VALUES (\"double quoted\")",
+                "INSERT INTO t VALUES ('unterminated)",
+                "INSERT INTO t VALUES (1,)",
+                "INSERT INTO t VALUES (1 2)",
+                "INSERT INTO t VALUES (1), 2"
+        }) {
+            try {
+                rows(query);
+                Assert.fail("Accepted " + query);
+            } catch (IllegalArgumentException e) {
+                // Expected: the caller falls back to the regular parser
+            }
+        }
+    }
+
+    private static List<List<BulkInsert.Value>> rows(String query) {
+        final List<List<BulkInsert.Value>> rows = new ArrayList<>();
+        BulkInsert.parse(query).rows().forEachRemaining(rows::add);
+        return rows;
+    }
+
+    private static List<String> texts(List<BulkInsert.Value> row) {
+        final List<String> texts = new ArrayList<>();
+        row.forEach(value -> texts.add(value.getText()));
+        return texts;
+    }
+
+    private static List<String> sqls(List<BulkInsert.Value> row) {
+        final List<String> sqls = new ArrayList<>();
+        row.forEach(value -> sqls.add(value.getSql()));
+        return sqls;
+    }
+
+}
@@ -0,0 +1,181 @@
+import crypto.CryptoBackend;
+import crypto.signer.MacSigner;
+import crypto.signer.RSASHA1Signer;
+import org.bouncycastle.crypto.BlockCipher;
+import org.bouncycastle.crypto.Mac;
+import org.bouncycastle.crypto.generators.Poly1305KeyGenerator;
+import org.bouncycastle.crypto.macs.Poly1305;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Random;
+
+/**
+ * <p>
+ *     Checks that the JCE backend produces the same codes as the BouncyCastle backend, so an ICDB converted with one
+ *     verifies with the other: the same keys and messages go through both, with messages around the block sizes,
+ *     keys longer than a block, and several keys in a row on one thread (the JCE classes cache per key and thread).
+ * </p>
+ */
+public class CryptoBackendTest {
+
+    private static final int[] MESSAGE_LENGTHS = { 0, 1, 15, 16, 17, 31, 32, 55, 56, 63, 64, 65, 127, 128, 1000 };
+
+    private final Random random = new Random(4493);
+
+    @After
+    public void restoreBackend() {
+        CryptoBackend.setCurrent(CryptoBackend.BC);
+    }
+
+    @Test
+    public void hmacSha1() {
+        for (int keyLength : new int[] { 1, 16, 20, 63, 64, 65, 100 }) {
+            final byte[] key = bytes(keyLength);
+            for (int length : MESSAGE_LENGTHS) {
+                final byte[] message = bytes(length);
+                final String context = keyLength + " byte key, " + length + " byte message";
+
+                Assert.assertEquals(context, hex(mac(CryptoBackend.BC.hmacSha1(MacSigner.DATA_SIZE), key, message)),
+                        hex(mac(CryptoBackend.JCE.hmacSha1(MacSigner.DATA_SIZE), key, message)));
+                Assert.assertEquals(context, hex(mac(CryptoBackend.BC.hmacSha1(MacSigner.DATA_SIZE), key, message)),
+                        hex(byteMac(CryptoBackend.JCE.hmacSha1(MacSigner.DATA_SIZE), key, message)));
+            }
+        }
+    }
+
+    @Test
+    public void cmacAes() {
+        for (int keyLength : new int[] { 16, 24, 32 }) {
+            final byte[] key = bytes(keyLength);
+            for (int length : MESSAGE_LENGTHS) {
+                final byte[] message = bytes(length);
+                final String context = keyLength + " byte key, " + length + " byte message";
+
+                Assert.assertEquals(context, hex(mac(CryptoBackend.BC.cmacAes(), key, message)),
+                        hex(mac(CryptoBackend.JCE.cmacAes(), key, message)));
+                Assert.assertEquals(context, hex(mac(CryptoBackend.BC.cmacAes(), key, message)),
+                        hex(byteMac(CryptoBackend.JCE.cmacAes(), key, message)));
+            }
+        }
+    }
+
+    @Test
+    public void cmacAesReference() {
+        // RFC 4493, example 2 (one complete block), for both backends
+        final byte[] key = Hex.decode("2b7e151628aed2a6abf7158809cf4f3c");
+        final byte[] message = Hex.decode("6bc1bee22e409f96e93d7e117393172a");
+
+        Assert.assertEquals("070a16b46b4d4144f79bdd9dd04a287c", hex(mac(CryptoBackend.BC.cmacAes(), key, message)));
+        Assert.assertEquals("070a16b46b4d4144f79bdd9dd04a287c", hex(mac(CryptoBackend.JCE.cmacAes(), key, message)));
+    }
+
+    @Test
+    public void macReuse() {
+        // One Mac instance per backend over several messages, switching keys, as the signers use them
+        final Mac[] bc = { CryptoBackend.BC.hmacSha1(MacSigner.DATA_SIZE), CryptoBackend.BC.cmacAes() };
+        final Mac[] jce = { CryptoBackend.JCE.hmacSha1(MacSigner.DATA_SIZE), CryptoBackend.JCE.cmacAes() };
+
+        for (int i = 0; i < 20; i++) {
+            final byte[] key = bytes(16 + (i % 3) * 8);
+            final byte[] message = bytes(MESSAGE_LENGTHS[i % MESSAGE_LENGTHS.length]);
+            for (int j = 0; j < bc.length; j++) {
+                Assert.assertEquals(bc[j].getAlgorithmName() + ", message " + i,
+                        hex(mac(bc[j], key, message)), hex(mac(jce[j], key, message)));
+            }
+        }
+    }
+
+    @Test
+    public void aes() {
+        for (int keyLength : new int[] { 16, 24, 32 }) {
+            final byte[] key = bytes(keyLength);
+            final byte[] block = bytes(16);
+
+            final byte[] encrypted = process(CryptoBackend.BC.aes(), true, key, block);
+            Assert.assertEquals(keyLength + " byte key", hex(encrypted), hex(process(CryptoBackend.JCE.aes(), true, key, block)));
+            Assert.assertEquals(keyLength + " byte key", hex(block), hex(process(CryptoBackend.JCE.aes(), false, key, encrypted)));
+            Assert.assertEquals(keyLength + " byte key", hex(block), hex(process(CryptoBackend.BC.aes(), false, key, encrypted)));
+        }
+    }
+
+    @Test
+    public void poly1305Aes() {
+        // Poly1305-AES encrypts its nonce with the backend's AES
+        final byte[] key = bytes(32);
+        Poly1305KeyGenerator.clamp(key);
+        final byte[] nonce = bytes(16);
+        for (int length : MESSAGE_LENGTHS) {
+            final byte[] message = bytes(length);
+            final ParametersWithIV parameters = new ParametersWithIV(new KeyParameter(key), nonce);
+
+            Assert.assertEquals(length + " byte message",
+                    hex(MacSigner.INSTANCE.generate(message, parameters, new Poly1305(CryptoBackend.BC.aes()))),
+                    hex(MacSigner.INSTANCE.generate(message, parameters, new Poly1305(CryptoBackend.JCE.aes()))));
+        }
+    }
+
+    @Test
+    public void rsaSha1() throws Exception {
+        final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        final RSAPrivateKey key = (RSAPrivateKey) generator.generateKeyPair().getPrivate();
+        final RSASHA1Signer signer = new RSASHA1Signer(key.getModulus(), key.getPrivateExponent());
+
+        for (int length : MESSAGE_LENGTHS) {
+            final byte[] message = bytes(length);
+
+            Assert.assertEquals(length + " byte message", hex(CryptoBackend.BC.sha1(message)), hex(CryptoBackend.JCE.sha1(message)));
+
+            CryptoBackend.setCurrent(CryptoBackend.BC);
+            final byte[] bc = signer.computeSHA1RSA(message);
+            CryptoBackend.setCurrent(CryptoBackend.JCE);
+            final byte[] jce = signer.computeSHA1RSA(message);
+
+            Assert.assertEquals(length + " byte message", new BigInteger(bc), new BigInteger(jce));
+            Assert.assertTrue(length + " byte message", signer.verify(message, bc));
+        }
+    }
+
+    private static byte[] mac(Mac mac, byte[] key, byte[] message) {
+        return MacSigner.INSTANCE.generate(message, new KeyParameter(key), mac);
+    }
+
+    /**
+     * @return the MAC of the message, fed one byte at a time
+     */
+    private static byte[] byteMac(Mac mac, byte[] key, byte[] message) {
+        final byte[] out = new byte[mac.getMacSize()];
+        mac.init(new KeyParameter(key));
+        for (byte b : message) {
+            mac.update(b);
+        }
+        mac.doFinal(out, 0);
+        return out;
+    }
+
+    private static byte[] process(BlockCipher cipher, boolean encrypt, byte[] key, byte[] block) {
+        final byte[] out = new byte[cipher.getBlockSize()];
+        cipher.init(encrypt, new KeyParameter(key));
+        cipher.processBlock(block, 0, out, 0);
+        return out;
+    }
+
+    private byte[] bytes(int length) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String hex(byte[] bytes) {
+        return Hex.toHexString(bytes);
+    }
+
+}
@@ -0,0 +1,254 @@
+import io.MerkleTree;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ *     Tests the keyed Merkle tree: the pages of proofPages() are what fold() needs to hash a key range up to the root,
+ *     for ranges at the edges of the FANOUT-wide pages and of the key space, a row left out of a range changes the
+ *     root, and a write that folds the new leaves of its keys rewrites exactly the nodes a rebuild would change.
+ * </p>
+ */
+public class MerkleTreeTest {
+
+    private static final int F = MerkleTree.FANOUT;
+
+    private static final long[] KEYS = { Long.MIN_VALUE, -F * F, -2, -1, 0, 1, F - 1, F, F + 1, F * F - 1, F * F,
+            F * F + 3, 100000, Long.MAX_VALUE - 1, Long.MAX_VALUE };
+
+    /**
+     * A tree over random leaves at the given keys, with every node it emitted
+     */
+    private static class Tree {
+        final NavigableMap<Long, byte[]> leaves = new TreeMap<>(Long::compareUnsigned);
+        final List<Map<Long, byte[]>> nodes = new ArrayList<>();
+        final MerkleTree.Root root;
+
+        Tree(long... keys) {
+            final Random random = new Random(keys.length);
+            for (long key : keys) {
+                final byte[] leaf = new byte[32];
+                random.nextBytes(leaf);
+                leaves.put(MerkleTree.keyPosition(key), leaf);
+            }
+            for (int level = 0; level < MerkleTree.DEPTH; level++) {
+                nodes.add(new HashMap<>());
+            }
+
+            final MerkleTree.Builder builder = new MerkleTree.Builder((level, position, hash) -> nodes.get(level).put(position, hash));
+            leaves.forEach(builder::add);
+            root = builder.finish();
+        }
+
+        /**
+         * @return the siblings of the region, as MerkleTree.fetchProof() reads them from the tree table
+         */
+        List<Map<Long, byte[]>> proof(MerkleTree.Region region) {
+            final List<Map<Long, byte[]>> proof = new ArrayList<>();
+            for (int level = 0; level < MerkleTree.DEPTH; level++) {
+                proof.add(new HashMap<>());
+            }
+
+            for (long[] page : MerkleTree.proofPages(region)) {
+                for (int i = 0; i < F; i++) {
+                    final byte[] hash = nodes.get((int) page[0]).get(page[1] + i);
+                    if (hash != null) {
+                        proof.get((int) page[0]).put(page[1] + i, hash);
+                    }
+                }
+            }
+            return proof;
+        }
+
+        NavigableMap<Long, byte[]> range(long low, long high) {
+            return low > high ? new TreeMap<>(Long::compareUnsigned)
+                    : leaves.subMap(MerkleTree.keyPosition(low), true, MerkleTree.keyPosition(high), true);
+        }
+
+        boolean verifies(long low, long high, NavigableMap<Long, byte[]> rows) {
+            final MerkleTree.Region region = MerkleTree.Region.range(MerkleTree.keyPosition(low), MerkleTree.keyPosition(high));
+            return MessageDigest.isEqual(MerkleTree.fold(region, rows, proof(region), null), root.hash);
+        }
+
+        /**
+         * Replaces the leaves of the given keys as MerkleTree.update() does, applying the nodes it rewrites
+         * @return the number of nodes rewritten
+         */
+        int write(NavigableMap<Long, byte[]> written) {
+            final MerkleTree.Region region = MerkleTree.Region.points(written.keySet());
+            final List<Map<Long, byte[]>> proof = proof(region);
+
+            final NavigableMap<Long, byte[]> old = new TreeMap<>(Long::compareUnsigned);
+            written.keySet().stream().filter(leaves::containsKey).forEach(position -> old.put(position, leaves.get(position)));
+            Assert.assertArrayEquals(root.hash, MerkleTree.fold(region, old, proof, null));
+
+            final NavigableMap<Long, byte[]> added = new TreeMap<>(Long::compareUnsigned);
+            written.forEach((position, leaf) -> {
+                if (leaf != null) {
+                    added.put(position, leaf);
+                }
+            });
+
+            final int[] rewritten = { 0 };
+            MerkleTree.fold(region, added, proof, (level, position, hash) -> {
+                rewritten[0]++;
+                if (Arrays.equals(hash, MerkleTree.empty(level))) {
+                    nodes.get(level).remove(position);
+                } else {
+                    nodes.get(level).put(position, hash);
+                }
+            });
+            return rewritten[0];
+        }
+    }
+
+    @Test
+    public void emptyTree() {
+        final Tree tree = new Tree();
+
+        Assert.assertEquals(0, tree.root.leaves);
+        Assert.assertArrayEquals(MerkleTree.empty(MerkleTree.DEPTH), tree.root.hash);
+        Assert.assertTrue(tree.verifies(Long.MIN_VALUE, Long.MAX_VALUE, tree.leaves));
+        Assert.assertTrue(tree.verifies(5, 10, tree.leaves));
+    }
+
+    @Test
+    public void rangeEdges() {
+        final Tree tree = new Tree(KEYS);
+        Assert.assertEquals(KEYS.length, tree.root.leaves);
+
+        // Every range between the keys, one past them and one before them
+        final TreeSet<Long> bounds = new TreeSet<>();
+        for (long key : KEYS) {
+            bounds.add(key);
+            bounds.add(key == Long.MIN_VALUE ? key : key - 1);
+            bounds.add(key == Long.MAX_VALUE ? key : key + 1);
+        }
+        for (long low : bounds) {
+            for (long high : bounds.tailSet(low)) {
+                Assert.assertTrue(low + ".." + high, tree.verifies(low, high, tree.range(low, high)));
+            }
+        }
+    }
+
+    @Test
+    public void proofPagesPerLevel() {
+        // At most the page of each end of the range per level
+        final List<long[]> pages = MerkleTree.proofPages(MerkleTree.Region.range(MerkleTree.keyPosition(F + 2),
+                MerkleTree.keyPosition(F * F + 4)));
+        Assert.assertTrue(pages.size() <= 2 * MerkleTree.DEPTH);
+
+        for (long[] page : pages) {
+            Assert.assertEquals(F - 1, page[2] - page[1]);
+            Assert.assertEquals(0, page[1] % F);
+        }
+        Assert.assertTrue(MerkleTree.proofPages(MerkleTree.Region.all()).isEmpty());
+    }
+
+    @Test
+    public void tamperedRanges() {
+        final Tree tree = new Tree(KEYS);
+        final long low = -F * F;
+        final long high = F * F;
+        final NavigableMap<Long, byte[]> range = tree.range(low, high);
+
+        // A row left out of the range
+        final NavigableMap<Long, byte[]> dropped = new TreeMap<>(range);
+        dropped.remove(MerkleTree.keyPosition(F));
+        Assert.assertFalse(tree.verifies(low, high, dropped));
+
+        // A row moved to another key
+        final NavigableMap<Long, byte[]> moved = new TreeMap<>(dropped);
+        moved.put(MerkleTree.keyPosition(F + 2), range.get(MerkleTree.keyPosition(F)));
+        Assert.assertFalse(tree.verifies(low, high, moved));
+
+        // A sibling left out of the proof, which then counts as an empty subtree
+        final MerkleTree.Region region = MerkleTree.Region.range(MerkleTree.keyPosition(0), MerkleTree.keyPosition(1));
+        final List<Map<Long, byte[]>> proof = tree.proof(region);
+        proof.get(0).remove(MerkleTree.keyPosition(F - 1));
+        Assert.assertFalse(MessageDigest.isEqual(MerkleTree.fold(region, tree.range(0, 1), proof, null), tree.root.hash));
+    }
+
+    @Test
+    public void insertRewritesPath() {
+        final Tree tree = new Tree(KEYS);
+
+        // A key between two others only adds its own leaf, and no other leaf moves
+        final NavigableMap<Long, byte[]> written = new TreeMap<>(Long::compareUnsigned);
+        final byte[] leaf = new byte[32];
+        new Random(7).nextBytes(leaf);
+        written.put(MerkleTree.keyPosition(7), leaf);
+
+        final NavigableMap<Long, byte[]> expected = new TreeMap<>(tree.leaves);
+        expected.putAll(written);
+        final Map<Long, byte[]> before = new HashMap<>(tree.nodes.get(0));
+
+        Assert.assertEquals(MerkleTree.DEPTH, tree.write(written));
+        assertNodes(rebuilt(expected), tree);
+
+        before.forEach((position, hash) -> Assert.assertArrayEquals(hash, tree.nodes.get(0).get(position)));
+    }
+
+    @Test
+    public void deleteEmptiesPath() {
+        final Tree tree = new Tree(KEYS);
+        final NavigableMap<Long, byte[]> written = new TreeMap<>(Long::compareUnsigned);
+        written.put(MerkleTree.keyPosition(100000), null);
+        written.put(MerkleTree.keyPosition(F), null);
+
+        tree.write(written);
+
+        final NavigableMap<Long, byte[]> remaining = new TreeMap<>(tree.leaves);
+        remaining.keySet().removeAll(written.keySet());
+        assertNodes(rebuilt(remaining), tree);
+    }
+
+    @Test
+    public void outOfOrder() {
+        final MerkleTree.Builder builder = new MerkleTree.Builder((level, position, hash) -> { });
+        builder.add(MerkleTree.keyPosition(-1), new byte[32]);
+        builder.add(MerkleTree.keyPosition(0), new byte[32]);
+
+        try {
+            builder.add(MerkleTree.keyPosition(0), new byte[32]);
+            Assert.fail("Accepted a repeated leaf position");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * @return the nodes of a tree built from the given leaves
+     */
+    private static List<Map<Long, byte[]>> rebuilt(NavigableMap<Long, byte[]> leaves) {
+        final List<Map<Long, byte[]>> nodes = new ArrayList<>();
+        for (int level = 0; level < MerkleTree.DEPTH; level++) {
+            nodes.add(new HashMap<>());
+        }
+        final MerkleTree.Builder builder = new MerkleTree.Builder((level, position, hash) -> nodes.get(level).put(position, hash));
+        leaves.forEach(builder::add);
+        builder.finish();
+        return nodes;
+    }
+
+    private static void assertNodes(List<Map<Long, byte[]>> expected, Tree tree) {
+        for (int level = 0; level < MerkleTree.DEPTH; level++) {
+            Assert.assertEquals("level " + level, expected.get(level).keySet(), tree.nodes.get(level).keySet());
+            for (Map.Entry<Long, byte[]> node : expected.get(level).entrySet()) {
+                Assert.assertArrayEquals("level " + level, node.getValue(), tree.nodes.get(level).get(node.getKey()));
+            }
+        }
+    }
+
+}
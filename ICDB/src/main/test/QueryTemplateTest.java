@@ -0,0 +1,103 @@
+import org.junit.Assert;
+import org.junit.Test;
+import parse.QueryTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * <p>
+ *     Tests the literal extraction of QueryTemplate: string escapes, signed and decimal numbers, parenthesized and
+ *     nested WHERE clauses, and the clauses after the WHERE clause, whose literals stay in the shape. Binding the
+ *     literals back into the shape always gives the original query.
+ * </p>
+ */
+public class QueryTemplateTest {
+
+    @Test
+    public void escapedQuotes() {
+        final String query = "SELECT * FROM t WHERE a = 'it''s' AND b = 'x\\'y' AND c = ''";
+
+        assertTemplate(query, "SELECT * FROM t WHERE a = :icdb_p0 AND b = :icdb_p1 AND c = :icdb_p2",
+                "'it''s'", "'x\\'y'", "''");
+    }
+
+    @Test
+    public void semicolonInString() {
+        final String query = "DELETE FROM t WHERE a = 'x;y' AND b = 'DELETE FROM u WHERE c = 1';";
+
+        assertTemplate(query, "DELETE FROM t WHERE a = :icdb_p0 AND b = :icdb_p1;",
+                "'x;y'", "'DELETE FROM u WHERE c = 1'");
+    }
+
+    @Test
+    public void quotedIdentifiers() {
+        final String query = "SELECT `from`, \"to\" FROM `t1` WHERE `1a` = 1 AND \"b'c\" = 2";
+
+        assertTemplate(query, "SELECT `from`, \"to\" FROM `t1` WHERE `1a` = :icdb_p0 AND \"b'c\" = :icdb_p1", "1", "2");
+    }
+
+    @Test
+    public void numbers() {
+        // The sign stays in the shape, so a - 1 and -1 bind back unchanged
+        final String query = "SELECT * FROM t WHERE a = -5 AND b > 2.75 AND c - 1 = 0 AND d = 0x1F AND e1 = 1e5";
+
+        assertTemplate(query, "SELECT * FROM t WHERE a = -:icdb_p0 AND b > :icdb_p1 AND c - :icdb_p2 = :icdb_p3 AND d = 0x1F AND e1 = 1e5",
+                "5", "2.75", "1", "0");
+    }
+
+    @Test
+    public void parenthesizedWhere() {
+        final String query = "SELECT * FROM t WHERE (a = 1 OR (b BETWEEN 2 AND 3 AND c IN ('x', 'y'))) AND d = 4";
+
+        assertTemplate(query, "SELECT * FROM t WHERE (a = :icdb_p0 OR (b BETWEEN :icdb_p1 AND :icdb_p2 AND c IN (:icdb_p3, :icdb_p4))) AND d = :icdb_p5",
+                "1", "2", "3", "'x'", "'y'", "4");
+    }
+
+    @Test
+    public void nestedSelect() {
+        // A nested ORDER BY or LIMIT does not end the top-level WHERE clause
+        final String query = "SELECT * FROM t WHERE a IN (SELECT b FROM u WHERE c = 7 ORDER BY b) AND d = 8 ORDER BY a LIMIT 10";
+
+        assertTemplate(query, "SELECT * FROM t WHERE a IN (SELECT b FROM u WHERE c = :icdb_p0 ORDER BY b) AND d = :icdb_p1 ORDER BY a LIMIT 10",
+                "7", "8");
+    }
+
+    @Test
+    public void clausesAfterWhere() {
+        final String query = "SELECT a, 5 FROM t WHERE b = 1 GROUP BY a HAVING COUNT(*) > 2 ORDER BY a LIMIT 3";
+
+        assertTemplate(query, "SELECT a, 5 FROM t WHERE b = :icdb_p0 GROUP BY a HAVING COUNT(*) > 2 ORDER BY a LIMIT 3", "1");
+    }
+
+    @Test
+    public void sameShape() {
+        final QueryTemplate first = QueryTemplate.normalize("SELECT * FROM t WHERE a = 1 AND b = 'x'");
+        final QueryTemplate second = QueryTemplate.normalize("SELECT * FROM t WHERE a = 22 AND b = 'it''s'");
+
+        Assert.assertEquals(first.getShape(), second.getShape());
+        Assert.assertEquals("SELECT * FROM t WHERE a = 22 AND b = 'it''s'", second.bind(first.getShape()));
+    }
+
+    @Test
+    public void notTemplated() {
+        Assert.assertNull(QueryTemplate.normalize("INSERT INTO t VALUES (1, 2)"));
+        Assert.assertNull(QueryTemplate.normalize("UPDATE t SET a = 1 WHERE b = 2"));
+        Assert.assertNull(QueryTemplate.normalize("SELECT * FROM t WHERE a = 'unterminated"));
+        Assert.assertNull(QueryTemplate.normalize("SELECT * FROM t WHERE a = ?"));
+        Assert.assertNull(QueryTemplate.normalize("SELECT * FROM t WHERE a = :b"));
+
+        final QueryTemplate noWhere = QueryTemplate.normalize("SELECT * FROM t LIMIT 5");
+        Assert.assertEquals(Collections.emptyList(), noWhere.getLiterals());
+        Assert.assertEquals("SELECT * FROM t LIMIT 5", noWhere.getShape());
+    }
+
+    private static void assertTemplate(String query, String shape, String... literals) {
+        final QueryTemplate template = QueryTemplate.normalize(query);
+
+        Assert.assertEquals(shape, template.getShape());
+        Assert.assertEquals(Arrays.asList(literals), template.getLiterals());
+        Assert.assertEquals(query, template.bind(template.getShape()));
+    }
+
+}